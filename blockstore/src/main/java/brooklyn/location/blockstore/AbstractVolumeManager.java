@@ -1,14 +1,23 @@
 package brooklyn.location.blockstore;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.String.format;
 import static org.apache.brooklyn.util.ssh.BashCommands.dontRequireTtyForSudo;
-import static org.apache.brooklyn.util.ssh.BashCommands.installPackage;
 import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
 
+import java.io.ByteArrayOutputStream;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineNamer;
@@ -25,6 +34,7 @@ import com.google.common.collect.ImmutableList;
 
 import brooklyn.location.blockstore.api.AttachedBlockDevice;
 import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.ModificationState;
 import brooklyn.location.blockstore.api.MountedBlockDevice;
 import brooklyn.location.blockstore.api.VolumeManager;
 import brooklyn.location.blockstore.api.VolumeOptions;
@@ -42,31 +52,104 @@ public abstract class AbstractVolumeManager implements VolumeManager {
     @Override
     public MountedBlockDevice createAndAttachDisk(JcloudsMachineLocation machine, VolumeOptions volumeOptions) {
         if (volumeOptions.getFilesystemOptions() != null) {
-            BlockDeviceOptions blockOptionsCopy = BlockDeviceOptions.copy(volumeOptions.getBlockDeviceOptions());
-            Optional<NodeMetadata> node = machine.getOptionalNode();
-            if (node.isPresent()) {
-                blockOptionsCopy.zone(node.get().getLocation().getId());
-            } else {
-                LOG.warn("JcloudsNodeMetadata is not available for the MachineLocation. Using zone specified from a parameter.");
-            }
+            BlockDeviceOptions blockOptionsCopy = inMachineZone(machine, volumeOptions.getBlockDeviceOptions());
             return createAttachAndMountVolume(machine, blockOptionsCopy, volumeOptions.getFilesystemOptions());
         } else {
             throw new IllegalArgumentException("volume to be provisioned has null FileSystemOptions " + volumeOptions);
         }
     }
 
+    /**
+     * A copy of the options, with the zone set to that of the machine where known.
+     */
+    static BlockDeviceOptions inMachineZone(JcloudsMachineLocation machine, BlockDeviceOptions options) {
+        BlockDeviceOptions blockOptionsCopy = BlockDeviceOptions.copy(options);
+        Optional<NodeMetadata> node = machine.getOptionalNode();
+        if (node.isPresent()) {
+            blockOptionsCopy.zone(node.get().getLocation().getId());
+        } else {
+            LOG.warn("JcloudsNodeMetadata is not available for the MachineLocation. Using zone specified from a parameter.");
+        }
+        return blockOptionsCopy;
+    }
+
     @Override
     public MountedBlockDevice createAttachAndMountVolume(JcloudsMachineLocation machine, BlockDeviceOptions deviceOptions,
             FilesystemOptions filesystemOptions) {
-        BlockDevice device = createBlockDevice(machine.getParent(), deviceOptions);
-        AttachedBlockDevice attached = attachBlockDevice(machine, device, deviceOptions);
-        createFilesystem(attached, filesystemOptions);
-        return mountFilesystem(attached, filesystemOptions);
+        if (deviceOptions.getStripes() > 1) {
+            return new StripedVolumeManager(this).createAttachAndMountVolume(machine, deviceOptions, filesystemOptions);
+        }
+        AttachedBlockDevice attached = createAndAttachBlockDevice(machine, deviceOptions, filesystemOptions);
+        return Iterables.getOnlyElement(createFilesystemsAndMount(machine, ImmutableMap.of(attached, filesystemOptions)));
+    }
+
+    @Override
+    public AttachedBlockDevice createAndAttachBlockDevice(JcloudsMachineLocation machine, BlockDeviceOptions deviceOptions,
+            FilesystemOptions filesystemOptions) {
+        Optional<BlockDevice> pooled = VolumePool.getInstance().take(this, machine.getParent(), deviceOptions, filesystemOptions);
+        BlockDevice device = pooled.isPresent() ? pooled.get() : createBlockDevice(machine.getParent(), deviceOptions);
+        try {
+            return attachBlockDevice(machine, device, deviceOptions);
+        } catch (RuntimeException e) {
+            // Rather than leave an unattached volume behind
+            try {
+                deleteBlockDevice(device);
+            } catch (RuntimeException e2) {
+                LOG.warn("Problem deleting volume " + device + " after failing to attach it (continuing)", e2);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Creates and attaches the volumes one at a time; clouds that add volumes by changing the VM override this
+     * to add them all in one change.
+     */
+    @Override
+    public List<AttachedBlockDevice> createAndAttachBlockDevices(JcloudsMachineLocation machine, List<VolumeOptions> volumes) {
+        List<AttachedBlockDevice> result = Lists.newArrayList();
+        for (VolumeOptions volume : volumes) {
+            result.add(createAndAttachBlockDevice(machine, volume.getBlockDeviceOptions(), volume.getFilesystemOptions()));
+        }
+        return result;
+    }
+
+    /**
+     * On an SSH machine, creates and mounts all the filesystems with a single script in one session; see
+     * {@link FilesystemCommands}. Otherwise each device is set up in turn.
+     */
+    @Override
+    public List<MountedBlockDevice> createFilesystemsAndMount(JcloudsMachineLocation machine,
+            Map<? extends AttachedBlockDevice, FilesystemOptions> devices) {
+        if (!(machine instanceof SshMachineLocation)) {
+            List<MountedBlockDevice> result = Lists.newArrayList();
+            for (Map.Entry<? extends AttachedBlockDevice, FilesystemOptions> entry : devices.entrySet()) {
+                createFilesystem(entry.getKey(), entry.getValue());
+                result.add(mountFilesystem(entry.getKey(), entry.getValue()));
+            }
+            return result;
+        }
+
+        FilesystemCommands commands = new FilesystemCommands();
+        for (Map.Entry<? extends AttachedBlockDevice, FilesystemOptions> entry : devices.entrySet()) {
+            addFilesystemCommands(commands, entry.getKey(), entry.getValue(), true, true);
+        }
+        LOG.debug("Creating and mounting filesystems on {}: {}", machine, devices);
+        execFilesystemCommands((SshMachineLocation) machine, "Creating and mounting filesystems on " + devices.size() + " volume(s)", commands);
+
+        List<MountedBlockDevice> result = Lists.newArrayList();
+        for (Map.Entry<? extends AttachedBlockDevice, FilesystemOptions> entry : devices.entrySet()) {
+            result.add(entry.getKey().mountedAt(entry.getValue().getMountPoint()));
+        }
+        return result;
     }
 
     @Override
     public MountedBlockDevice attachAndMountVolume(JcloudsMachineLocation machine, BlockDevice device,
             BlockDeviceOptions options, FilesystemOptions filesystemOptions) {
+        if (device instanceof StripedBlockDevice) {
+            return new StripedVolumeManager(this).attachAndMountVolume(machine, device, options, filesystemOptions);
+        }
         AttachedBlockDevice attached = attachBlockDevice(machine, device, options);
         return mountFilesystem(attached, filesystemOptions);
     }
@@ -76,22 +159,10 @@ public abstract class AbstractVolumeManager implements VolumeManager {
     public void createFilesystem(AttachedBlockDevice attachedDevice, FilesystemOptions filesystemOptions) {
         JcloudsMachineLocation machine = attachedDevice.getMachine();
         if (machine instanceof SshMachineLocation) {
-            String osDeviceName = getOSDeviceName(attachedDevice.getDeviceSuffix());
-            String filesystemType = filesystemOptions.getFilesystemType();
-            LOG.debug("Creating filesystem: device={}; osDeviceName={}, config={}", new Object[]{attachedDevice, osDeviceName, filesystemOptions});
-
-            // NOTE: also adds an entry to fstab so the mount remains available after a reboot.
-            Map<String, ?> flags = MutableMap.of("allocatePTY", true);
-            int exitCode = ((SshMachineLocation)machine).execCommands(flags, "Creating filesystem on volume", ImmutableList.of(
-                    dontRequireTtyForSudo(),
-                    waitForFileCmd(osDeviceName, 60),
-                    installPackage(ImmutableMap.of("yum", "e4fsprogs"), null),
-                    sudo("/sbin/mkfs -F -t " + filesystemType + " " + osDeviceName)));
-
-            if (exitCode != 0) {
-                throw new RuntimeException(format("Failed to create file system. machine=%s; osDeviceName=%s; filesystemType=%s",
-                        machine, osDeviceName, filesystemType));
-            }
+            LOG.debug("Creating filesystem: device={}; config={}", attachedDevice, filesystemOptions);
+            FilesystemCommands commands = new FilesystemCommands();
+            addFilesystemCommands(commands, attachedDevice, filesystemOptions, true, false);
+            execFilesystemCommands((SshMachineLocation) machine, "Creating filesystem on volume", commands);
         } else if (machine instanceof WinRmMachineLocation) {
             String driveLetter = filesystemOptions.getMountPoint();
             String driveLetterParam = Strings.isNullOrEmpty(driveLetter) ? "-AssignDriveLetter" : "-DriveLetter " + driveLetter;
@@ -146,28 +217,9 @@ public abstract class AbstractVolumeManager implements VolumeManager {
         JcloudsMachineLocation machine = attachedDevice.getMachine();
         if (machine instanceof SshMachineLocation) {
             LOG.debug("Mounting filesystem: device={}; options={}", attachedDevice, options);
-            String osDeviceName = getOSDeviceName(attachedDevice.getDeviceSuffix());
-            String mountPoint = options.getMountPoint();
-            String filesystemType = options.getFilesystemType();
-
-            // NOTE: also adds an entry to fstab so the mount remains available after a reboot.
-            Map<String, ?> flags = MutableMap.of("allocatePTY", true);
-            int exitCode = ((SshMachineLocation)machine).execCommands(flags, "Mounting EBS volume", ImmutableList.of(
-                    dontRequireTtyForSudo(),
-                    "echo making dir",
-                    sudo("mkdir -p -m 755 " + mountPoint),
-                    "echo updating fstab",
-                    waitForFileCmd(osDeviceName, 60),
-                    "echo \"" + osDeviceName + " " + mountPoint + " " + filesystemType + " noatime 0 0\" | " + sudo("tee -a /etc/fstab"),
-                    "echo mounting device",
-                    sudo("mount " + mountPoint),
-                    "echo device mounted"
-            ));
-
-            if (exitCode != 0) {
-                throw new RuntimeException(format("Failed to mount file system. machine=%s; osDeviceName=%s; mountPoint=%s; filesystemType=%s",
-                        attachedDevice.getMachine(), osDeviceName, mountPoint, filesystemType));
-            }
+            FilesystemCommands commands = new FilesystemCommands();
+            addFilesystemCommands(commands, attachedDevice, options, false, true);
+            execFilesystemCommands((SshMachineLocation) machine, "Mounting volume", commands);
         } else if (machine instanceof WinRmMachineLocation) {
             LOG.debug("Ignoring mounting of filesystem on WinRmMachineLocation: device={}; options={}", attachedDevice, options);
         } else {
@@ -187,28 +239,238 @@ public abstract class AbstractVolumeManager implements VolumeManager {
         }
         
         LOG.debug("Unmounting filesystem: {}", mountedDevice);
-        String osDeviceName = getOSDeviceName(mountedDevice.getDeviceSuffix());
-        String osDeviceNameEscaped = osDeviceName.replaceAll("/", "\\\\/");
+        String mountPoint = mountedDevice.getMountPoint();
 
-        // NOTE: also strips out entry from fstab
-        Map<String, ?> flags = MutableMap.of("allocatePTY", true);
-        ((SshMachineLocation)machine).execCommands(flags, "Unmounting EBS volume", ImmutableList.of(
+        // NOTE: also strips out entry from fstab. That is matched by mount point, as the device may have been
+        // mounted under any of its names (see getOSDeviceNames).
+        ImmutableList.Builder<String> commands = ImmutableList.<String>builder().add(
                 dontRequireTtyForSudo(),
-                "echo unmounting " + osDeviceName,
-                sudo("sed -i.bk '/" + osDeviceNameEscaped + "/d' /etc/fstab"),
-                sudo("umount " + osDeviceName),
-                "echo unmounted " + osDeviceName
-        ));
+                "echo unmounting " + mountPoint,
+                sudo("sed -i.bk '\\| " + mountPoint + " |d' /etc/fstab"),
+                sudo("umount " + mountPoint),
+                "echo unmounted " + mountPoint);
+        if (mountedDevice instanceof StripedBlockDevice.Attached) {
+            // Stop the array so that its members can be detached; it stays recorded to be reassembled if reattached
+            commands.add(sudo("mdadm --stop " + mountedDevice.getDeviceName()));
+        }
+        Map<String, ?> flags = MutableMap.of("allocatePTY", true);
+        ((SshMachineLocation)machine).execCommands(flags, "Unmounting volume", commands.build());
         return mountedDevice;
     }
 
     @Override
     public BlockDevice unmountFilesystemAndDetachVolume(MountedBlockDevice mountedDevice) {
+        if (mountedDevice instanceof StripedBlockDevice.Attached) {
+            return new StripedVolumeManager(this).unmountFilesystemAndDetachVolume(mountedDevice);
+        }
         unmountFilesystem(mountedDevice);
         return detachBlockDevice(mountedDevice);
     }
 
-    protected String getOrMakeName(JcloudsLocation location, BlockDeviceOptions options) {
+    /**
+     * Returns a plain device for the volume id; clouds whose operations need more than the id (e.g. the disk's own
+     * record) override this to look the volume up.
+     */
+    @Override
+    public AttachedBlockDevice findAttachedBlockDevice(JcloudsMachineLocation machine, String volumeId, char deviceSuffix) {
+        return Devices.newBlockDevice(machine.getParent(), volumeId)
+                .attachedTo(machine, getVolumeDeviceName(deviceSuffix));
+    }
+
+    @Override
+    public MountedBlockDevice resizeBlockDevice(MountedBlockDevice mountedDevice, int newSizeInGb) {
+        checkArgument(newSizeInGb > 0, "newSizeInGb must be positive, but was %s", newSizeInGb);
+        if (mountedDevice instanceof StripedBlockDevice.Attached) {
+            return new StripedVolumeManager(this).resizeBlockDevice(mountedDevice, newSizeInGb);
+        }
+        LOG.info("Resizing device: {}; newSizeInGb={}", mountedDevice, newSizeInGb);
+        resizeVolume(mountedDevice, newSizeInGb);
+        growFilesystem(mountedDevice, newSizeInGb);
+        return mountedDevice;
+    }
+
+    @Override
+    public void growFilesystem(MountedBlockDevice mountedDevice) {
+        growFilesystem(mountedDevice, 0);
+    }
+
+    private void growFilesystem(MountedBlockDevice mountedDevice, int newSizeInGb) {
+        JcloudsMachineLocation machine = mountedDevice.getMachine();
+        if (!(machine instanceof SshMachineLocation)) {
+            throw new IllegalStateException("Cannot grow filesystem for "+machine+" of type "+machine.getClass().getName()+"; expected "+SshMachineLocation.class.getSimpleName());
+        }
+        LOG.debug("Growing filesystem: {}", mountedDevice);
+        String osDeviceName = (mountedDevice instanceof StripedBlockDevice.Attached)
+                ? mountedDevice.getDeviceName()
+                : getOSDeviceName(mountedDevice.getDeviceSuffix());
+        FilesystemCommands commands = new FilesystemCommands()
+                .grow(osDeviceName, new FilesystemOptions(mountedDevice.getMountPoint()), newSizeInGb);
+        execFilesystemCommands((SshMachineLocation) machine, "Growing filesystem", commands);
+    }
+
+    /**
+     * Changes the size of the given volume while it stays attached, returning once the cloud reports the new size.
+     * The filesystem is grown afterwards, by {@link #resizeBlockDevice(MountedBlockDevice, int)}.
+     *
+     * @throws UnsupportedOperationException If the cloud's API does not allow it; the volume can then be resized
+     *         by other means and its filesystem grown with {@link #growFilesystem(MountedBlockDevice)}
+     */
+    protected void resizeVolume(AttachedBlockDevice attachedDevice, int newSizeInGb) {
+        throw new UnsupportedOperationException("Cannot resize volume " + attachedDevice + " with " + getClass().getSimpleName()
+                + "; resize it with the cloud's own tools and then grow its filesystem");
+    }
+
+    @Override
+    public ModificationState modifyPerformance(AttachedBlockDevice attachedDevice, PerformanceOptions options) {
+        if (attachedDevice instanceof StripedBlockDevice.Attached) {
+            return new StripedVolumeManager(this).modifyPerformance(attachedDevice, options);
+        }
+        LOG.info("Changing performance of device: {}; options={}", attachedDevice, options);
+        return modifyVolumePerformance(attachedDevice, options);
+    }
+
+    @Override
+    public ModificationState getModificationState(AttachedBlockDevice attachedDevice) {
+        if (attachedDevice instanceof StripedBlockDevice.Attached) {
+            return new StripedVolumeManager(this).getModificationState(attachedDevice);
+        }
+        return ModificationState.COMPLETED;
+    }
+
+    /**
+     * Changes the performance settings of the given volume while it stays attached, returning once the cloud
+     * reports that the volume has them.
+     *
+     * @throws UnsupportedOperationException If the cloud's API does not allow it
+     */
+    protected ModificationState modifyVolumePerformance(AttachedBlockDevice attachedDevice, PerformanceOptions options) {
+        throw new UnsupportedOperationException("Cannot change the performance of volume " + attachedDevice + " with "
+                + getClass().getSimpleName() + ": " + options);
+    }
+
+    /**
+     * Runs an operation that changes the machine's disks once no other such operation is in progress on the
+     * machine; see {@link MachineOperationQueue}.
+     */
+    protected <T> T executeOnMachine(JcloudsMachineLocation machine, Callable<T> operation) {
+        return MachineOperationQueue.getInstance().execute(MachineOperationQueue.keyFor(machine), operation);
+    }
+
+    /**
+     * Creates and attaches the volumes with {@link #createAndAttachBlockDevicesNow}, once no other operation is in
+     * progress on the machine, in one batch with any other volumes queued for the machine meanwhile; see
+     * {@link MachineOperationQueue}.
+     */
+    protected List<AttachedBlockDevice> createAndAttachBlockDevicesQueued(final JcloudsMachineLocation machine,
+            List<VolumeOptions> volumes) {
+        return MachineOperationQueue.getInstance().submit(MachineOperationQueue.keyFor(machine), "create-and-attach", volumes,
+                new Function<List<List<VolumeOptions>>, List<List<AttachedBlockDevice>>>() {
+                    @Override
+                    public List<List<AttachedBlockDevice>> apply(List<List<VolumeOptions>> requests) {
+                        List<AttachedBlockDevice> attached = createAndAttachBlockDevicesNow(machine,
+                                ImmutableList.copyOf(Iterables.concat(requests)));
+                        List<List<AttachedBlockDevice>> result = Lists.newArrayList();
+                        int i = 0;
+                        for (List<VolumeOptions> request : requests) {
+                            result.add(attached.subList(i, i + request.size()));
+                            i += request.size();
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    /**
+     * Creates and attaches the volumes in one change to the machine, for clouds that use
+     * {@link #createAndAttachBlockDevicesQueued}; called while no other operation is in progress on the machine.
+     */
+    protected List<AttachedBlockDevice> createAndAttachBlockDevicesNow(JcloudsMachineLocation machine, List<VolumeOptions> volumes) {
+        throw new UnsupportedOperationException("Cannot create volumes in one change to the machine with "
+                + getClass().getSimpleName() + ": " + volumes);
+    }
+
+    /**
+     * Whether {@link #createBlockDevice(JcloudsLocation, BlockDeviceOptions)} works before there is a machine to
+     * attach the volume to. Clouds that create a disk as part of attaching it to a VM return false.
+     */
+    public boolean canCreateBlockDeviceWithoutMachine() {
+        return true;
+    }
+
+    /**
+     * Whether volumes can be taken from a {@link VolumePool}: requires creating a volume separately from
+     * attaching it, and {@link #findAvailableBlockDevices finding} volumes by tag.
+     */
+    protected boolean supportsPooling() {
+        return false;
+    }
+
+    /**
+     * Finds the volumes that are not attached to any machine and have all the given tags.
+     */
+    protected List<BlockDevice> findAvailableBlockDevices(JcloudsLocation location, Map<String, String> tags) {
+        throw new UnsupportedOperationException("Cannot find volumes by tag in " + location);
+    }
+
+    /**
+     * Adds the given tags to the volume, overwriting any existing tags with the same keys.
+     */
+    protected void tagBlockDevice(BlockDevice device, Map<String, String> tags) {
+        throw new UnsupportedOperationException("Cannot tag volume " + device);
+    }
+
+    /**
+     * The paths under which the attached device may appear on the machine, in order of preference. The first is
+     * the conventional name for its suffix; clouds whose devices can also appear under other names (e.g. NVMe)
+     * add those.
+     */
+    protected List<String> getOSDeviceNames(AttachedBlockDevice attachedDevice) {
+        return ImmutableList.of(getOSDeviceName(attachedDevice.getDeviceSuffix()));
+    }
+
+    private void addFilesystemCommands(FilesystemCommands commands, AttachedBlockDevice device, FilesystemOptions options,
+            boolean format, boolean mount) {
+        if (device instanceof StripedBlockDevice.Attached) {
+            StripedBlockDevice.Attached striped = (StripedBlockDevice.Attached) device;
+            List<List<String>> members = Lists.newArrayList();
+            for (AttachedBlockDevice member : striped.getMembers()) {
+                members.add(getOSDeviceNames(member));
+            }
+            commands.striped(striped.getDeviceName(), members, StripedVolumeManager.CHUNK_SIZE_KB, options, format, mount);
+        } else if (format && mount) {
+            commands.formatAndMount(getOSDeviceNames(device), options);
+        } else if (format) {
+            commands.format(getOSDeviceNames(device), options);
+        } else {
+            commands.mount(getOSDeviceNames(device), options);
+        }
+    }
+
+    /**
+     * Runs the script in a session without a PTY. If sudo on the machine insists on a tty, runs it again with one
+     * (having first relaxed that requirement, as the per-step commands used to).
+     *
+     * @throws RuntimeException If the set up of any of the devices failed
+     */
+    protected void execFilesystemCommands(SshMachineLocation machine, String summary, FilesystemCommands commands) {
+        String script = commands.build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exitCode = machine.execScript(MutableMap.of("out", out), summary, ImmutableList.of(script));
+        if (exitCode == FilesystemCommands.EXIT_SUDO_REQUIRES_TTY) {
+            LOG.debug("sudo requires a tty on {}; running again with a PTY: {}", machine, summary);
+            out = new ByteArrayOutputStream();
+            exitCode = machine.execScript(MutableMap.of("allocatePTY", true, "out", out), summary,
+                    ImmutableList.of(dontRequireTtyForSudo(), script));
+        }
+        if (exitCode != 0) {
+            Map<String, String> results = FilesystemCommands.parseResults(new String(out.toByteArray(), Charsets.UTF_8));
+            Map<String, String> failures = Maps.filterValues(results, Predicates.not(Predicates.equalTo(FilesystemCommands.OK)));
+            throw new RuntimeException(format("%s failed. machine=%s; exitCode=%s; failures=%s",
+                    summary, machine, exitCode, failures.isEmpty() ? results : failures));
+        }
+    }
+
+    public String getOrMakeName(JcloudsLocation location, BlockDeviceOptions options) {
         if (!Strings.isNullOrEmpty(options.getName())) {
             return options.getName();
         } else {
@@ -216,22 +478,4 @@ public abstract class AbstractVolumeManager implements VolumeManager {
         }
     }
 
-    // TODO Move to CommonCommands
-    protected String waitForFileCmd(String file, int timeoutSecs) {
-        return "found=false; " +
-                "for i in {1.." + timeoutSecs + "}; do " +
-                "if [ -a " + file + " ]; then " +
-                "echo \"file " + file + " found\"; " +
-                "found=true; " +
-                "break; " +
-                "else " +
-                "echo \"file " + file + " does not exist (waiting)\"; " +
-                "sleep 1; " +
-                "fi; " +
-                "done; " +
-                "if [ \"$found\" == \"false\" ]; then " +
-                "exit 1; " +
-                "fi";
-    }
-
 }
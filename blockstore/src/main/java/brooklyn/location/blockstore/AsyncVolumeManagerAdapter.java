@@ -0,0 +1,271 @@
+package brooklyn.location.blockstore;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import brooklyn.location.blockstore.api.AsyncVolumeManager;
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.MountedBlockDevice;
+import brooklyn.location.blockstore.api.VolumeManager;
+import brooklyn.location.blockstore.wait.WaitResult;
+import brooklyn.location.blockstore.wait.WaitStrategy;
+import brooklyn.location.blockstore.wait.Waits;
+
+/**
+ * Exposes a {@link VolumeManager} (whether built in or from a plugin) as an {@link AsyncVolumeManager} by running
+ * each blocking call on the given executor.
+ * <p>
+ * Subclasses for particular clouds replace the blocking waits with {@link #poll polling} scheduled on the
+ * executor, so that no thread is held while a volume changes state.
+ */
+public class AsyncVolumeManagerAdapter implements AsyncVolumeManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncVolumeManagerAdapter.class);
+
+    protected final VolumeManager delegate;
+    protected final ListeningScheduledExecutorService executor;
+
+    public AsyncVolumeManagerAdapter(VolumeManager delegate, ListeningScheduledExecutorService executor) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.executor = checkNotNull(executor, "executor");
+    }
+
+    public VolumeManager getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public ListenableFuture<BlockDevice> createBlockDevice(final JcloudsLocation location, final BlockDeviceOptions options) {
+        return executor.submit(new Callable<BlockDevice>() {
+            @Override
+            public BlockDevice call() throws Exception {
+                return delegate.createBlockDevice(location, options);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<AttachedBlockDevice> attachBlockDevice(final JcloudsMachineLocation machine, final BlockDevice blockDevice,
+            final BlockDeviceOptions options) {
+        return executor.submit(new Callable<AttachedBlockDevice>() {
+            @Override
+            public AttachedBlockDevice call() throws Exception {
+                return delegate.attachBlockDevice(machine, blockDevice, options);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<BlockDevice> detachBlockDevice(final AttachedBlockDevice attachedBlockDevice) {
+        return executor.submit(new Callable<BlockDevice>() {
+            @Override
+            public BlockDevice call() throws Exception {
+                return delegate.detachBlockDevice(attachedBlockDevice);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> deleteBlockDevice(final BlockDevice blockDevice) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                delegate.deleteBlockDevice(blockDevice);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> createFilesystem(final AttachedBlockDevice attachedDevice, final FilesystemOptions options) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                delegate.createFilesystem(attachedDevice, options);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<MountedBlockDevice> mountFilesystem(final AttachedBlockDevice attachedDevice, final FilesystemOptions options) {
+        return executor.submit(new Callable<MountedBlockDevice>() {
+            @Override
+            public MountedBlockDevice call() throws Exception {
+                return delegate.mountFilesystem(attachedDevice, options);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<AttachedBlockDevice> unmountFilesystem(final MountedBlockDevice mountedDevice) {
+        return executor.submit(new Callable<AttachedBlockDevice>() {
+            @Override
+            public AttachedBlockDevice call() throws Exception {
+                return delegate.unmountFilesystem(mountedDevice);
+            }
+        });
+    }
+
+    /**
+     * Runs the whole pipeline as a single task on the executor, so that clouds which cannot create a volume
+     * separately from attaching it (e.g. Azure, vCloud Director) are handled by their own override of
+     * {@link VolumeManager#createAndAttachBlockDevice}.
+     */
+    @Override
+    public ListenableFuture<MountedBlockDevice> createAttachAndMountVolume(final JcloudsMachineLocation machine,
+            final BlockDeviceOptions blockDeviceOptions, final FilesystemOptions filesystemOptions) {
+        return executor.submit(new Callable<MountedBlockDevice>() {
+            @Override
+            public MountedBlockDevice call() throws Exception {
+                return delegate.createAttachAndMountVolume(machine, blockDeviceOptions, filesystemOptions);
+            }
+        });
+    }
+
+    /**
+     * Chains the steps through {@link #createBlockDevice} and {@link #attachBlockDevice}, so that each step's own
+     * (possibly non-blocking) implementation is used, and then creates and mounts the filesystem in one session.
+     */
+    protected ListenableFuture<MountedBlockDevice> chainCreateAttachAndMountVolume(final JcloudsMachineLocation machine,
+            final BlockDeviceOptions blockDeviceOptions, final FilesystemOptions filesystemOptions) {
+        ListenableFuture<BlockDevice> created = createBlockDevice(machine.getParent(), blockDeviceOptions);
+        ListenableFuture<AttachedBlockDevice> attached = then(created, new Function<BlockDevice, ListenableFuture<AttachedBlockDevice>>() {
+            @Override
+            public ListenableFuture<AttachedBlockDevice> apply(BlockDevice device) {
+                return attachBlockDevice(machine, device, blockDeviceOptions);
+            }
+        });
+        return then(attached, new Function<AttachedBlockDevice, ListenableFuture<MountedBlockDevice>>() {
+            @Override
+            public ListenableFuture<MountedBlockDevice> apply(final AttachedBlockDevice device) {
+                return executor.submit(new Callable<MountedBlockDevice>() {
+                    @Override
+                    public MountedBlockDevice call() throws Exception {
+                        return Iterables.getOnlyElement(delegate.createFilesystemsAndMount(machine,
+                                ImmutableMap.of(device, filesystemOptions)));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns a future that completes with the result of {@code next}, applied once {@code first} has succeeded.
+     * A failure or cancellation of {@code first} is propagated without calling {@code next}.
+     */
+    protected static <A, B> ListenableFuture<B> then(final ListenableFuture<A> first, final Function<? super A, ListenableFuture<B>> next) {
+        final SettableFuture<B> result = SettableFuture.create();
+        first.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    propagate(next.apply(first.get()), result);
+                } catch (ExecutionException e) {
+                    result.setException(e.getCause());
+                } catch (Throwable t) {
+                    result.setException(t);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    private static <T> void propagate(final ListenableFuture<T> source, final SettableFuture<T> target) {
+        source.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    target.set(source.get());
+                } catch (ExecutionException e) {
+                    target.setException(e.getCause());
+                } catch (Throwable t) {
+                    target.setException(t);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Calls {@code probe} immediately and then repeatedly on the executor, backing off as {@code strategy}
+     * dictates, until {@code done} accepts its result. No thread is held between probes.
+     * <p>
+     * Like the blocking waits in the volume managers, if the strategy's timeout expires the future completes
+     * with the last value seen (logging an error), so that the caller can decide whether to continue. Exceptions
+     * from the probe are treated as transient; the last one is reported if no value was ever obtained.
+     *
+     * @param name The kind of wait, under which its duration is {@link Waits#record recorded}
+     */
+    protected <T> ListenableFuture<T> poll(final String name, final String description, final Callable<T> probe,
+            final Predicate<? super T> done, final WaitStrategy strategy) {
+        final SettableFuture<T> result = SettableFuture.create();
+        final long started = System.currentTimeMillis();
+        final long deadline = started + strategy.getTimeout().toMilliseconds();
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicReference<T> latest = new AtomicReference<T>();
+        final AtomicReference<Exception> lastError = new AtomicReference<Exception>();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (result.isDone()) {
+                    return;
+                }
+                int attempt = attempts.incrementAndGet();
+                try {
+                    T current = probe.call();
+                    latest.set(current);
+                    lastError.set(null);
+                    if (done.apply(current)) {
+                        record(true);
+                        result.set(current);
+                        return;
+                    }
+                } catch (Exception e) {
+                    LOG.debug("Problem " + description + " (will retry)", e);
+                    lastError.set(e);
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining > 0) {
+                    long delay = Math.min(strategy.getDelay(attempt).toMilliseconds(), remaining);
+                    executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+                } else if (latest.get() == null && lastError.get() != null) {
+                    record(false);
+                    result.setException(lastError.get());
+                } else {
+                    record(false);
+                    LOG.error("Still {} after {}. Last known was: {}; continuing", new Object[] {description, strategy.getTimeout(), latest.get()});
+                    result.set(latest.get());
+                }
+            }
+
+            private void record(boolean success) {
+                Waits.record(name, description, new WaitResult<T>(success, latest.get(), lastError.get(), attempts.get(),
+                        Duration.millis(System.currentTimeMillis() - started)));
+            }
+        });
+        return result;
+    }
+
+}
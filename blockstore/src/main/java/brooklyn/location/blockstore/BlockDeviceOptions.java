@@ -20,8 +20,14 @@ public class BlockDeviceOptions {
     private char deviceSuffix = 'h';
     private boolean deleteOnTermination;
     private Maybe<Integer> iops = Maybe.absent();
+    private Maybe<Integer> throughputMiBps = Maybe.absent();
     private Maybe<Boolean> encrypted = Maybe.absent();
     private Maybe<String> volumeType = Maybe.absent();
+    private Maybe<String> hostCaching = Maybe.absent();
+    private Maybe<String> scsiController = Maybe.absent();
+    private Maybe<Integer> scsiControllers = Maybe.absent();
+    private Maybe<String> storageProfile = Maybe.absent();
+    private int stripes = 1;
 
     // For more convenient yaml input
     public static BlockDeviceOptions fromMap(Map<String, ?> map) {
@@ -69,12 +75,33 @@ public class BlockDeviceOptions {
         if (map.containsKey("iops")) {
             result.iops = Maybe.of(TypeCoercions.coerce(checkNotNull(map.get("iops"), "iops"), Integer.class));
         }
+        if (map.containsKey("throughputMiBps")) {
+            result.throughputMiBps = Maybe.of(TypeCoercions.coerce(checkNotNull(map.get("throughputMiBps"), "throughputMiBps"), Integer.class));
+            checkArgument(result.throughputMiBps.get() > 0, "throughputMiBps should be greater than zero");
+        }
         if (map.containsKey("encrypted")) {
             result.encrypted = Maybe.of(TypeCoercions.coerce(checkNotNull(map.get("encrypted"), "encrypted"), Boolean.class));
         }
         if (map.containsKey("volumeType")) {
             result.volumeType = Maybe.of(checkNotNull(map.get("volumeType"), "volumeType").toString());
         }
+        if (map.containsKey("hostCaching")) {
+            result.hostCaching = Maybe.of(checkNotNull(map.get("hostCaching"), "hostCaching").toString());
+        }
+        if (map.containsKey("scsiController")) {
+            result.scsiController = Maybe.of(checkNotNull(map.get("scsiController"), "scsiController").toString());
+        }
+        if (map.containsKey("scsiControllers")) {
+            result.scsiControllers = Maybe.of(TypeCoercions.coerce(checkNotNull(map.get("scsiControllers"), "scsiControllers"), Integer.class));
+            checkArgument(result.scsiControllers.get() > 0, "scsiControllers should be greater than zero");
+        }
+        if (map.containsKey("storageProfile")) {
+            result.storageProfile = Maybe.of(checkNotNull(map.get("storageProfile"), "storageProfile").toString());
+        }
+        if (map.containsKey("stripes")) {
+            result.stripes = TypeCoercions.coerce(checkNotNull(map.get("stripes"), "stripes"), Integer.class);
+            checkArgument(result.stripes > 0, "stripes should be greater than zero");
+        }
         return result;
     }
     
@@ -87,8 +114,14 @@ public class BlockDeviceOptions {
                 .deviceSuffix(other.deviceSuffix)
                 .deleteOnTermination(other.deleteOnTermination)
                 .iops(other.iops)
+                .throughputMiBps(other.throughputMiBps)
                 .encrypted(other.encrypted)
-                .volumeType(other.volumeType);
+                .volumeType(other.volumeType)
+                .hostCaching(other.hostCaching)
+                .scsiController(other.scsiController)
+                .scsiControllers(other.scsiControllers)
+                .storageProfile(other.storageProfile)
+                .stripes(other.stripes);
     }
     
     public String getName() {
@@ -141,6 +174,16 @@ public class BlockDeviceOptions {
         return this;
     }
 
+    public BlockDeviceOptions throughputMiBps(Integer throughputMiBps) {
+        this.throughputMiBps = Maybe.of(checkNotNull(throughputMiBps, "throughputMiBps"));
+        return this;
+    }
+
+    public BlockDeviceOptions throughputMiBps(Maybe<Integer> throughputMiBps) {
+        this.throughputMiBps = checkNotNull(throughputMiBps, "throughputMiBps");
+        return this;
+    }
+
     public BlockDeviceOptions encrypted(Boolean encrypted) {
         this.encrypted = Maybe.of(checkNotNull(encrypted, "encrypted"));
         return this;
@@ -161,6 +204,53 @@ public class BlockDeviceOptions {
         return this;
     }
 
+    public BlockDeviceOptions hostCaching(String hostCaching) {
+        this.hostCaching = Maybe.of(checkNotNull(hostCaching, "hostCaching"));
+        return this;
+    }
+
+    public BlockDeviceOptions hostCaching(Maybe<String> hostCaching) {
+        this.hostCaching = checkNotNull(hostCaching, "hostCaching");
+        return this;
+    }
+
+    public BlockDeviceOptions scsiController(String scsiController) {
+        this.scsiController = Maybe.of(checkNotNull(scsiController, "scsiController"));
+        return this;
+    }
+
+    public BlockDeviceOptions scsiController(Maybe<String> scsiController) {
+        this.scsiController = checkNotNull(scsiController, "scsiController");
+        return this;
+    }
+
+    public BlockDeviceOptions scsiControllers(Integer scsiControllers) {
+        checkArgument(checkNotNull(scsiControllers, "scsiControllers") > 0, "scsiControllers should be greater than zero");
+        this.scsiControllers = Maybe.of(scsiControllers);
+        return this;
+    }
+
+    public BlockDeviceOptions scsiControllers(Maybe<Integer> scsiControllers) {
+        this.scsiControllers = checkNotNull(scsiControllers, "scsiControllers");
+        return this;
+    }
+
+    public BlockDeviceOptions storageProfile(String storageProfile) {
+        this.storageProfile = Maybe.of(checkNotNull(storageProfile, "storageProfile"));
+        return this;
+    }
+
+    public BlockDeviceOptions storageProfile(Maybe<String> storageProfile) {
+        this.storageProfile = checkNotNull(storageProfile, "storageProfile");
+        return this;
+    }
+
+    public BlockDeviceOptions stripes(int stripes) {
+        checkArgument(stripes > 0, "stripes should be greater than zero");
+        this.stripes = stripes;
+        return this;
+    }
+
     public String getZone() {
         return zone;
     }
@@ -189,6 +279,13 @@ public class BlockDeviceOptions {
         return iops;
     }
 
+    /**
+     * The provisioned throughput, where the volume type allows it to be set separately from the IOPS (e.g. EBS gp3).
+     */
+    public Maybe<Integer> getThroughputMiBps() {
+        return throughputMiBps;
+    }
+
     public Maybe<Boolean> getEncrypted() {
         return encrypted;
     }
@@ -197,6 +294,47 @@ public class BlockDeviceOptions {
         return volumeType;
     }
 
+    /**
+     * The host caching of the disk (None, ReadOnly or ReadWrite), on clouds that have it (e.g. Azure).
+     */
+    public Maybe<String> getHostCaching() {
+        return hostCaching;
+    }
+
+    /**
+     * The kind of SCSI controller the disk is attached to (lsilogicsas or paravirtual), on clouds where the
+     * controller is chosen per disk (e.g. vCloud Director).
+     */
+    public Maybe<String> getScsiController() {
+        return scsiController;
+    }
+
+    /**
+     * The number of SCSI controllers of the {@link #getScsiController() kind} over which the machine's disks are
+     * spread, on clouds where the controller is chosen per disk (e.g. vCloud Director).
+     */
+    public Maybe<Integer> getScsiControllers() {
+        return scsiControllers;
+    }
+
+    /**
+     * The storage profile (or tier) for the disk, if not the machine's default, on clouds that have them
+     * (e.g. vCloud Director).
+     */
+    public Maybe<String> getStorageProfile() {
+        return storageProfile;
+    }
+
+    /**
+     * The number of volumes to stripe together (RAID 0) into one device of {@link #getSizeInGb() sizeInGb};
+     * 1 (the default) for a plain volume.
+     *
+     * @see StripedVolumeManager
+     */
+    public int getStripes() {
+        return stripes;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -207,8 +345,14 @@ public class BlockDeviceOptions {
                 .add("deviceSuffix", deviceSuffix)
                 .add("deleteOnTermination", deleteOnTermination)
                 .add("iops", iops)
+                .add("throughputMiBps", throughputMiBps)
                 .add("encrypted", encrypted)
                 .add("volumeType", volumeType)
+                .add("hostCaching", hostCaching)
+                .add("scsiController", scsiController)
+                .add("scsiControllers", scsiControllers)
+                .add("storageProfile", storageProfile)
+                .add("stripes", stripes)
                 .toString();
     }
 }
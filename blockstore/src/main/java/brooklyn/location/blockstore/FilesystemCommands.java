@@ -0,0 +1,484 @@
+package brooklyn.location.blockstore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.brooklyn.util.ssh.BashCommands.installPackage;
+import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Builds a single bash script that prepares any number of attached devices on a machine: waits for each device
+ * (under any of its names), installs the filesystem tools once, creates the filesystems in parallel and then
+ * mounts them all. This lets all the volumes of a machine be set up in one SSH session.
+ * <p>
+ * For each device the script prints a line {@code BLOCKSTORE-RESULT <device> <status>}, where status is
+ * {@code ok} or the step that failed; see {@link #parseResults(String)}. The script exits non-zero if any
+ * device failed, or with {@link #EXIT_SUDO_REQUIRES_TTY} if sudo cannot be used without a tty.
+ */
+public class FilesystemCommands {
+
+    public static final String RESULT_MARKER = "BLOCKSTORE-RESULT";
+    public static final String OK = "ok";
+
+    /** Exit code of the script when sudo requires a tty, so must be re-run with a PTY. */
+    public static final int EXIT_SUDO_REQUIRES_TTY = 99;
+
+    private static final int DEVICE_TIMEOUT_SECS = 60;
+
+    private static final Pattern EXTENDED_OPTIONS = Pattern.compile("-E\\s+(\\S+)");
+
+    private static final String SCSI_TARGET_PREFIX = "scsi-target:";
+
+    /**
+     * Shell functions to wait for the first of several paths to appear as a block device, printing that path.
+     * Rather than polling every second, each round blocks until udev has processed its pending events (which
+     * is when a hot-plugged disk's node and by-id links are created) and then on inotify for new entries under
+     * /dev, so returns as soon as the device is there. Falls back to a short sleep where neither tool exists.
+     * <p>
+     * A {@link #scsiTarget SCSI target} is looked up in sysfs each round: the driver's hosts are ordered by their
+     * sysfs path, which follows their PCI addresses, and the disk is the block device of the target on the host at
+     * the given index.
+     */
+    private static final List<String> WAIT_FOR_DEVICE_FUNCTIONS = ImmutableList.of(
+            "blockstore_scsi_device() {",
+            "  host=$(for h in /sys/class/scsi_host/host*; do",
+            "      if [ \"$(cat $h/proc_name 2> /dev/null)\" = \"$1\" ]; then echo \"$(readlink -f $h) $(basename $h)\"; fi",
+            "    done | sort | awk -v n=$(( $2 + 1 )) 'NR == n { print $2 }')",
+            "  if [ -z \"$host\" ]; then return 1; fi",
+            "  for block in /sys/class/scsi_device/${host#host}:0:$3:0/device/block/*; do",
+            "    if [ -b \"/dev/$(basename $block)\" ]; then echo \"/dev/$(basename $block)\"; return 0; fi",
+            "  done",
+            "  return 1",
+            "}",
+            "blockstore_find_device() {",
+            "  for candidate in \"$@\"; do",
+            "    case \"$candidate\" in",
+            "      " + SCSI_TARGET_PREFIX + "*)",
+            "        if blockstore_scsi_device $(echo \"${candidate#" + SCSI_TARGET_PREFIX + "}\" | tr ':' ' '); then return 0; fi ;;",
+            "      *)",
+            "        if [ -b \"$candidate\" ]; then echo \"$candidate\"; return 0; fi ;;",
+            "    esac",
+            "  done",
+            "  return 1",
+            "}",
+            "blockstore_wait_for_device() {",
+            "  deadline=$(( $(date +%s) + $1 )); shift",
+            "  while ! blockstore_find_device \"$@\"; do",
+            "    if [ $(date +%s) -ge $deadline ]; then return 1; fi",
+            "    if command -v udevadm > /dev/null 2>&1; then",
+            "      udevadm settle --timeout=1 --exit-if-exists=\"$1\" > /dev/null 2>&1 || true",
+            "      if blockstore_find_device \"$@\"; then return 0; fi",
+            "    fi",
+            "    watched=$(ls -d /dev /dev/disk/by-id 2> /dev/null)",
+            "    if command -v inotifywait > /dev/null 2>&1; then",
+            "      inotifywait -qq -t 1 -e create $watched > /dev/null 2>&1; [ $? -ne 1 ] || sleep 0.1",
+            "    else",
+            "      sleep 0.1",
+            "    fi",
+            "  done",
+            "}");
+
+    /**
+     * Shell function to grow the partition holding the given device (if it is one) to fill its disk, once the
+     * disk is at least the given number of 512-byte sectors. SCSI disks (e.g. on Azure and vCloud) are rescanned
+     * first, as the kernel does not otherwise notice that they have grown; NVMe and Xen disks update themselves.
+     */
+    private static final List<String> GROW_DEVICE_FUNCTIONS = ImmutableList.of(
+            "blockstore_grow_device() {",
+            "  name=$(basename \"$(readlink -f \"$1\")\"); disk=$name",
+            "  if [ -e /sys/class/block/$name/partition ]; then disk=$(basename \"$(readlink -f /sys/class/block/$name/..)\"); fi",
+            "  if [ -e /sys/class/block/$disk/device/rescan ]; then echo 1 | " + sudo("tee /sys/class/block/$disk/device/rescan") + " > /dev/null; fi",
+            "  deadline=$(( $(date +%s) + " + DEVICE_TIMEOUT_SECS + " ))",
+            "  while [ $(cat /sys/class/block/$disk/size) -lt $2 ]; do",
+            "    if [ $(date +%s) -ge $deadline ]; then echo \"/dev/$disk has not grown after " + DEVICE_TIMEOUT_SECS + "s\"; return 1; fi",
+            "    sleep 1",
+            "  done",
+            "  if [ \"$disk\" != \"$name\" ]; then",
+            "    if ! command -v growpart > /dev/null 2>&1; then echo \"growpart not installed; cannot grow partition /dev/$name\"; return 1; fi",
+            // growpart exits 1 if the partition already fills the disk
+            "    " + sudo("growpart /dev/$disk $(cat /sys/class/block/$name/partition)") + "; [ $? -ne 2 ]",
+            "  fi",
+            "}");
+
+    private final List<Device> devices = Lists.newArrayList();
+
+    private static class Device {
+        private final String osDeviceName;
+        private final List<String> aliases;
+        private final List<List<String>> members;
+        private final int chunkKb;
+        private final FilesystemOptions options;
+        private final boolean format;
+        private final boolean mount;
+        private final int growToSizeInGb;
+
+        private Device(List<String> osDeviceNames, FilesystemOptions options, boolean format, boolean mount) {
+            this(osDeviceNames, ImmutableList.<List<String>>of(), 0, options, format, mount);
+        }
+
+        private Device(String osDeviceName, FilesystemOptions options, int growToSizeInGb) {
+            this(ImmutableList.of(osDeviceName), ImmutableList.<List<String>>of(), 0, options, false, false, growToSizeInGb);
+        }
+
+        private Device(List<String> osDeviceNames, List<List<String>> members, int chunkKb, FilesystemOptions options,
+                boolean format, boolean mount) {
+            this(osDeviceNames, members, chunkKb, options, format, mount, -1);
+        }
+
+        private Device(List<String> osDeviceNames, List<List<String>> members, int chunkKb, FilesystemOptions options,
+                boolean format, boolean mount, int growToSizeInGb) {
+            checkArgument(!osDeviceNames.isEmpty(), "no device names");
+            this.osDeviceName = osDeviceNames.get(0);
+            this.aliases = ImmutableList.copyOf(osDeviceNames);
+            this.members = ImmutableList.copyOf(members);
+            this.chunkKb = chunkKb;
+            this.options = options;
+            this.format = format;
+            this.mount = mount;
+            this.growToSizeInGb = growToSizeInGb;
+        }
+
+        private boolean isStriped() {
+            return !members.isEmpty();
+        }
+
+        private boolean isGrow() {
+            return growToSizeInGb >= 0;
+        }
+    }
+
+    /**
+     * A name for a SCSI disk that is found by its target rather than by a path, for use among the names of a device;
+     * e.g. where the order in which Linux names the disks does not follow their targets.
+     *
+     * @param driver The driver of the disk's SCSI host, as in {@code /sys/class/scsi_host/host<n>/proc_name}
+     * @param hostIndex The index of the disk's host among the hosts of that driver, in order of PCI address
+     * @param target The disk's SCSI target (unit) on the host
+     */
+    public static String scsiTarget(String driver, int hostIndex, int target) {
+        checkArgument(driver.matches("[A-Za-z0-9_-]+"), "invalid SCSI driver name %s", driver);
+        checkArgument(hostIndex >= 0 && target >= 0, "SCSI host index and target must not be negative");
+        return SCSI_TARGET_PREFIX + driver + ":" + hostIndex + ":" + target;
+    }
+
+    /**
+     * Creates a filesystem on the device, and then mounts it.
+     */
+    public FilesystemCommands formatAndMount(String osDeviceName, FilesystemOptions options) {
+        return formatAndMount(ImmutableList.of(osDeviceName), options);
+    }
+
+    /**
+     * Creates a filesystem on the device, and then mounts it.
+     *
+     * @param osDeviceNames The paths under which the device may appear, e.g. for NVMe, or its {@link #scsiTarget SCSI
+     *                      target}; the first that appears is used, and the first is the name under which the result
+     *                      is reported
+     */
+    public FilesystemCommands formatAndMount(List<String> osDeviceNames, FilesystemOptions options) {
+        devices.add(new Device(osDeviceNames, options, true, true));
+        return this;
+    }
+
+    public FilesystemCommands format(String osDeviceName, FilesystemOptions options) {
+        return format(ImmutableList.of(osDeviceName), options);
+    }
+
+    public FilesystemCommands format(List<String> osDeviceNames, FilesystemOptions options) {
+        devices.add(new Device(osDeviceNames, options, true, false));
+        return this;
+    }
+
+    public FilesystemCommands mount(String osDeviceName, FilesystemOptions options) {
+        return mount(ImmutableList.of(osDeviceName), options);
+    }
+
+    public FilesystemCommands mount(List<String> osDeviceNames, FilesystemOptions options) {
+        devices.add(new Device(osDeviceNames, options, false, true));
+        return this;
+    }
+
+    /**
+     * Stripes the member devices together (RAID 0) with mdadm into the given array, or if not formatting
+     * reassembles the array from them (e.g. on a replacement VM); then proceeds as for a single device, with
+     * the filesystem aligned to the stripes.
+     *
+     * @param memberNames For each member, the paths under which it may appear
+     */
+    public FilesystemCommands striped(String arrayDevice, List<List<String>> memberNames, int chunkKb, FilesystemOptions options,
+            boolean format, boolean mount) {
+        checkArgument(!memberNames.isEmpty(), "no members for %s", arrayDevice);
+        devices.add(new Device(ImmutableList.of(arrayDevice), memberNames, chunkKb, options, format, mount));
+        return this;
+    }
+
+    /**
+     * Grows the filesystem mounted at the options' mount point, and the partition it is on (if any), to fill the
+     * device, while it stays mounted. The device is the one mounted there, whatever its name.
+     *
+     * @param osDeviceName The name under which the result is reported
+     * @param minSizeInGb The size the device has been resized to, which the script waits for the machine to
+     *                    see before growing; or 0 to grow into whatever space there is
+     */
+    public FilesystemCommands grow(String osDeviceName, FilesystemOptions options, int minSizeInGb) {
+        checkArgument(minSizeInGb >= 0, "minSizeInGb must not be negative");
+        devices.add(new Device(osDeviceName, options, minSizeInGb));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return devices.isEmpty();
+    }
+
+    public String build() {
+        List<String> lines = Lists.newArrayList();
+        lines.add("failed=0");
+        lines.add("if [ \"$(id -u)\" -ne 0 ] && sudo -n true 2>&1 | grep -qi tty; then");
+        lines.add("  echo \"sudo requires a tty\"; exit " + EXIT_SUDO_REQUIRES_TTY);
+        lines.add("fi");
+        lines.addAll(WAIT_FOR_DEVICE_FUNCTIONS);
+
+        boolean anyFormat = false;
+        boolean anyStriped = false;
+        boolean anyGrow = false;
+        for (Device device : devices) {
+            anyFormat |= device.format;
+            anyStriped |= device.isStriped();
+            anyGrow |= device.isGrow();
+        }
+        if (anyGrow) {
+            lines.addAll(GROW_DEVICE_FUNCTIONS);
+        }
+        if (anyFormat) {
+            lines.add("if ! ( " + installPackage(ImmutableMap.of("yum", "e4fsprogs"), null) + " ); then");
+            lines.add("  echo \"WARNING: could not install filesystem tools (continuing)\"");
+            lines.add("fi");
+        }
+        if (anyStriped) {
+            lines.add("if ! ( " + installPackage("mdadm") + " ); then");
+            lines.add("  echo \"WARNING: could not install mdadm (continuing)\"");
+            lines.add("fi");
+        }
+
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            lines.add("status_" + i + "=" + OK);
+            if (device.isStriped()) {
+                addStripedArray(lines, i, device);
+                continue;
+            } else if (device.isGrow()) {
+                continue;
+            }
+            lines.add("if dev_" + i + "=$(blockstore_wait_for_device " + DEVICE_TIMEOUT_SECS + " " + Joiner.on(" ").join(device.aliases) + "); then");
+            lines.add("  echo \"device " + device.osDeviceName + " is $dev_" + i + "\"");
+            lines.add("else");
+            lines.add("  echo \"device " + device.osDeviceName + " not found after " + DEVICE_TIMEOUT_SECS + "s\"; status_" + i + "=device-not-found");
+            lines.add("fi");
+        }
+
+        // With formatIfNeeded, keep a filesystem that is already there (e.g. a volume re-attached to a new VM)
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            lines.add("existing_" + i + "=");
+            if (!device.format || !device.options.isFormatIfNeeded()) continue;
+            String type = device.options.getFilesystemType();
+            lines.add("if [ \"$status_" + i + "\" = " + OK + " ]; then");
+            lines.add("  existing_" + i + "=$(" + sudo("blkid -o value -s TYPE $dev_" + i) + " 2> /dev/null || true)");
+            if (!"auto".equals(type)) {
+                lines.add("  if [ -n \"$existing_" + i + "\" ] && [ \"$existing_" + i + "\" != \"" + type + "\" ]; then");
+                lines.add("    echo \"device " + device.osDeviceName + " has a $existing_" + i + " filesystem, expected " + type + "; leaving it untouched\"");
+                lines.add("    status_" + i + "=wrong-filesystem");
+                lines.add("  elif [ -n \"$existing_" + i + "\" ]; then");
+            } else {
+                lines.add("  if [ -n \"$existing_" + i + "\" ]; then");
+            }
+            lines.add("    echo \"device " + device.osDeviceName + " already has a $existing_" + i + " filesystem; not formatting\"");
+            lines.add("  fi");
+            lines.add("fi");
+        }
+
+        // mkfs is mostly I/O bound, so format all the devices at once
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (!device.format) continue;
+            lines.add("pid_" + i + "=");
+            lines.add("if [ \"$status_" + i + "\" = " + OK + " ] && [ -z \"$existing_" + i + "\" ]; then");
+            lines.add("  ( " + formatCmd("$dev_" + i, device.options, stripeMkfsOptions(device)) + " ) > /tmp/blockstore-mkfs-$$-" + i + ".log 2>&1 &");
+            lines.add("  pid_" + i + "=$!");
+            lines.add("fi");
+        }
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (!device.format) continue;
+            lines.add("if [ -n \"$pid_" + i + "\" ]; then");
+            lines.add("  if ! wait $pid_" + i + "; then status_" + i + "=mkfs-failed; fi");
+            lines.add("  cat /tmp/blockstore-mkfs-$$-" + i + ".log; rm -f /tmp/blockstore-mkfs-$$-" + i + ".log");
+            lines.add("fi");
+        }
+
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (!device.mount) continue;
+            lines.add("if [ \"$status_" + i + "\" = " + OK + " ]; then");
+            lines.add("  if ! ( " + mountCmd("$dev_" + i, device.options) + " ); then status_" + i + "=mount-failed; fi");
+            lines.add("fi");
+            lines.add("if [ \"$status_" + i + "\" = " + OK + " ] && [ -n \"$existing_" + i + "\" ]; then");
+            lines.add("  if ! ( " + growCmd("$dev_" + i, "$existing_" + i, device.options.getMountPoint()) + " ); then");
+            lines.add("    echo \"WARNING: could not grow filesystem on " + device.osDeviceName + " (continuing)\"");
+            lines.add("  fi");
+            lines.add("fi");
+        }
+
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (!device.isGrow()) continue;
+            addGrow(lines, i, device);
+        }
+
+        for (int i = 0; i < devices.size(); i++) {
+            lines.add("echo \"" + RESULT_MARKER + " " + devices.get(i).osDeviceName + " $status_" + i + "\"");
+            lines.add("if [ \"$status_" + i + "\" != " + OK + " ]; then failed=1; fi");
+        }
+        lines.add("exit $failed");
+        return Joiner.on("\n").join(lines);
+    }
+
+    private static void addStripedArray(List<String> lines, int i, Device device) {
+        String array = device.osDeviceName;
+        lines.add("dev_" + i + "=" + array);
+        lines.add("members_" + i + "=");
+        for (List<String> member : device.members) {
+            lines.add("if member=$(blockstore_wait_for_device " + DEVICE_TIMEOUT_SECS + " " + Joiner.on(" ").join(member) + "); then");
+            lines.add("  members_" + i + "=\"$members_" + i + " $member\"");
+            lines.add("else");
+            lines.add("  echo \"device " + member.get(0) + " of " + array + " not found after " + DEVICE_TIMEOUT_SECS + "s\"; status_" + i + "=device-not-found");
+            lines.add("fi");
+        }
+        String assemble = sudo("mdadm --assemble " + array + " $members_" + i);
+        String create = sudo("mdadm --create " + array + " --run --level=0 --chunk=" + device.chunkKb
+                + " --raid-devices=" + device.members.size() + " $members_" + i);
+        // With formatIfNeeded, an array already on the members is kept, as is the filesystem on it
+        String mdadm = !device.format ? assemble
+                : device.options.isFormatIfNeeded() ? "{ " + assemble + " || " + create + "; }"
+                : create;
+        lines.add("if [ \"$status_" + i + "\" = " + OK + " ]; then");
+        lines.add("  if [ -b " + array + " ]; then");
+        lines.add("    echo \"array " + array + " is already active\"");
+        lines.add("  elif ! ( " + mdadm + " ); then");
+        lines.add("    status_" + i + "=raid-failed");
+        lines.add("  fi");
+        lines.add("fi");
+        // Record the array so that it is assembled under the same name after a reboot
+        lines.add("if [ \"$status_" + i + "\" = " + OK + " ]; then");
+        lines.add("  conf=/etc/mdadm.conf; if [ -d /etc/mdadm ]; then conf=/etc/mdadm/mdadm.conf; fi");
+        lines.add("  if ! grep -q \"" + array + " \" $conf 2> /dev/null; then");
+        lines.add("    " + sudo("mdadm --detail --brief " + array) + " | " + sudo("tee -a $conf"));
+        lines.add("  fi");
+        lines.add("fi");
+    }
+
+    private static void addGrow(List<String> lines, int i, Device device) {
+        String mountPoint = device.options.getMountPoint();
+        long minSectors = device.growToSizeInGb * 1024L * 1024L * 2L;
+        // The device and filesystem type as mounted, so whichever name the device was mounted under
+        lines.add("dev_" + i + "=$(awk '$2 == \"" + mountPoint + "\" { d = $1 } END { print d }' /proc/mounts)");
+        lines.add("existing_" + i + "=$(awk '$2 == \"" + mountPoint + "\" { t = $3 } END { print t }' /proc/mounts)");
+        lines.add("if [ -z \"$dev_" + i + "\" ]; then");
+        lines.add("  echo \"nothing mounted at " + mountPoint + "\"; status_" + i + "=not-mounted");
+        lines.add("elif ! blockstore_grow_device $dev_" + i + " " + minSectors + "; then");
+        lines.add("  status_" + i + "=device-not-grown");
+        lines.add("elif ! ( " + growCmd("$dev_" + i, "$existing_" + i, mountPoint) + " ); then");
+        lines.add("  status_" + i + "=grow-failed");
+        lines.add("fi");
+    }
+
+    /**
+     * @return The status reported by the script for each device, keyed by OS device name
+     */
+    public static Map<String, String> parseResults(String output) {
+        Map<String, String> result = Maps.newLinkedHashMap();
+        for (String line : Splitter.on('\n').trimResults().omitEmptyStrings().split(output)) {
+            if (!line.startsWith(RESULT_MARKER + " ")) continue;
+            List<String> parts = Splitter.on(' ').omitEmptyStrings().splitToList(line);
+            if (parts.size() >= 3) {
+                result.put(parts.get(1), parts.get(2));
+            }
+        }
+        return result;
+    }
+
+    static String formatCmd(String osDeviceName, FilesystemOptions options, String extraMkfsOptions) {
+        String type = options.getFilesystemType();
+        // mkfs.xfs and mkfs.btrfs take -f rather than -F to overwrite an existing filesystem
+        String force = ("xfs".equals(type) || "btrfs".equals(type)) ? "-f" : "-F";
+        String mkfsOptions = mergeMkfsOptions(options.getEffectiveMkfsOptions(), extraMkfsOptions);
+        return sudo("/sbin/mkfs -t " + type + " " + force + (mkfsOptions.isEmpty() ? "" : " " + mkfsOptions) + " " + osDeviceName);
+    }
+
+    static String mountCmd(String osDeviceName, FilesystemOptions options) {
+        String mountPoint = options.getMountPoint();
+        // NOTE: also adds an entry to fstab (unless already there) so the mount remains available after a reboot.
+        return sudo("mkdir -p -m 755 " + mountPoint) + " && " +
+                "{ grep -q \" " + mountPoint + " \" /etc/fstab || " +
+                "echo \"" + osDeviceName + " " + mountPoint + " " + options.getFilesystemType() + " " + options.getEffectiveMountOptions() + " 0 0\" | " + sudo("tee -a /etc/fstab") + "; } && " +
+                "{ mountpoint -q " + mountPoint + " || " + sudo("mount " + mountPoint) + "; }";
+    }
+
+    /**
+     * Options to align the filesystem to the stripes of the array: for ext* the stride and stripe width in 4k
+     * blocks, for xfs the stripe unit and width.
+     */
+    private static String stripeMkfsOptions(Device device) {
+        if (!device.isStriped()) {
+            return "";
+        }
+        String type = device.options.getFilesystemType();
+        int n = device.members.size();
+        if (type.startsWith("ext")) {
+            int stride = Math.max(1, device.chunkKb / 4);
+            return "-E stride=" + stride + ",stripe_width=" + (stride * n);
+        } else if ("xfs".equals(type)) {
+            return "-d su=" + device.chunkKb + "k,sw=" + n;
+        }
+        return "";
+    }
+
+    /**
+     * Appends the extra options. mke2fs only honours the last -E, so extended options from both are combined
+     * into the first.
+     */
+    static String mergeMkfsOptions(String options, String extra) {
+        if (extra.isEmpty()) return options;
+        if (options.isEmpty()) return extra;
+        Matcher existing = EXTENDED_OPTIONS.matcher(options);
+        Matcher added = EXTENDED_OPTIONS.matcher(extra);
+        if (existing.find() && added.find()) {
+            String combined = options.substring(0, existing.end(1)) + "," + added.group(1) + options.substring(existing.end(1));
+            String rest = (extra.substring(0, added.start()) + extra.substring(added.end())).trim();
+            return rest.isEmpty() ? combined : combined + " " + rest;
+        }
+        return options + " " + extra;
+    }
+
+    /**
+     * Grows the mounted filesystem of the given type to fill the device, which is a no-op if it already does.
+     */
+    static String growCmd(String osDeviceName, String filesystemType, String mountPoint) {
+        return "case \"" + filesystemType + "\" in " +
+                "ext2|ext3|ext4) " + sudo("resize2fs " + osDeviceName) + " ;; " +
+                "xfs) " + sudo("xfs_growfs " + mountPoint) + " ;; " +
+                "btrfs) " + sudo("btrfs filesystem resize max " + mountPoint) + " ;; " +
+                "*) echo \"not growing " + filesystemType + " filesystem\" ;; " +
+                "esac";
+    }
+}
@@ -4,14 +4,22 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Map;
 
+import org.apache.brooklyn.util.core.flags.TypeCoercions;
+
+import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
+import com.google.common.base.Strings;
 
 public class FilesystemOptions {
 
     private String mountPoint;
     private String filesystemType;
     private String volumeLabel;
+    private boolean formatIfNeeded;
+    private FilesystemProfile profile;
+    private String mkfsOptions;
+    private String mountOptions;
 
     // For more convenient yaml input
     public static FilesystemOptions fromMap(Map<String, ?> map) {
@@ -19,6 +27,14 @@ public class FilesystemOptions {
         result.mountPoint = (String) map.get("mountPoint");
         result.filesystemType = (String) map.get("filesystemType");
         result.volumeLabel = (String) map.get("volumeLabel");
+        if (map.containsKey("formatIfNeeded")) {
+            result.formatIfNeeded = TypeCoercions.coerce(map.get("formatIfNeeded"), Boolean.class);
+        }
+        if (map.get("profile") != null) {
+            result.profile = TypeCoercions.coerce(map.get("profile"), FilesystemProfile.class);
+        }
+        result.mkfsOptions = (String) map.get("mkfsOptions");
+        result.mountOptions = (String) map.get("mountOptions");
         return result;
     }
 
@@ -64,12 +80,85 @@ public class FilesystemOptions {
         return volumeLabel;
     }
 
+    /*
+    Linux only. If true, a device that already has a filesystem of the expected type is not formatted (its filesystem is
+    grown instead, in case the device has been enlarged), e.g. when re-attaching an existing volume to a replacement VM.
+    A device with a filesystem of another type is left untouched and reported as a failure.
+     */
+    public boolean isFormatIfNeeded() {
+        return formatIfNeeded;
+    }
+
+    public FilesystemOptions formatIfNeeded(boolean formatIfNeeded) {
+        this.formatIfNeeded = formatIfNeeded;
+        return this;
+    }
+
+    /*
+    Linux only. Named set of mkfs and mount options for a kind of workload; see FilesystemProfile. May be null.
+     */
+    public FilesystemProfile getProfile() {
+        return profile;
+    }
+
+    public FilesystemOptions profile(FilesystemProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /*
+    Linux only. Extra options passed to mkfs, e.g. "-E lazy_itable_init=1,nodiscard" for ext4, after those of the profile.
+     */
+    public String getMkfsOptions() {
+        return mkfsOptions;
+    }
+
+    public FilesystemOptions mkfsOptions(String mkfsOptions) {
+        this.mkfsOptions = mkfsOptions;
+        return this;
+    }
+
+    /*
+    Linux only. The options for the fstab entry, e.g. "noatime,commit=60"; replaces those of the profile.
+     */
+    public String getMountOptions() {
+        return mountOptions;
+    }
+
+    public FilesystemOptions mountOptions(String mountOptions) {
+        this.mountOptions = mountOptions;
+        return this;
+    }
+
+    /**
+     * @return The profile's mkfs options for this filesystem type followed by any {@link #getMkfsOptions() mkfsOptions}
+     */
+    public String getEffectiveMkfsOptions() {
+        String fromProfile = (profile != null) ? profile.getMkfsOptions(filesystemType) : "";
+        return Joiner.on(" ").skipNulls().join(Strings.emptyToNull(fromProfile), Strings.emptyToNull(mkfsOptions));
+    }
+
+    /**
+     * @return The {@link #getMountOptions() mountOptions} if given, else the profile's for this filesystem type,
+     *         else {@value FilesystemProfile#DEFAULT_MOUNT_OPTIONS}
+     */
+    public String getEffectiveMountOptions() {
+        if (!Strings.isNullOrEmpty(mountOptions)) {
+            return mountOptions;
+        }
+        return (profile != null) ? profile.getMountOptions(filesystemType) : FilesystemProfile.DEFAULT_MOUNT_OPTIONS;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("mountPoint", mountPoint)
                 .add("filesystemType", filesystemType)
                 .add("volumeLabel", volumeLabel)
+                .add("formatIfNeeded", formatIfNeeded)
+                .add("profile", profile)
+                .add("mkfsOptions", mkfsOptions)
+                .add("mountOptions", mountOptions)
                 .toString();
     }
 }
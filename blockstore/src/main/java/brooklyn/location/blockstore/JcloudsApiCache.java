@@ -0,0 +1,240 @@
+package brooklyn.location.blockstore;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.jclouds.Context;
+import org.jclouds.ContextBuilder;
+import org.jclouds.encryption.bouncycastle.config.BouncyCastleCryptoModule;
+import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
+import org.jclouds.sshj.config.SshjSshClientModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Module;
+
+/**
+ * Shares jclouds APIs that are built separately from a location's own compute-service context (e.g. the
+ * Cinder and Nova APIs for OpenStack volumes), so that each operation does not re-run Guice injection and
+ * re-authenticate.
+ * <p>
+ * APIs are keyed by provider, endpoint, credentials and API type. There is one entry per account in use, so
+ * the cache is not bounded by size, which could evict (and close) an API still in use when many accounts are.
+ * Entries idle for longer than the expiry are evicted, but callers may still hold an evicted API (e.g. while
+ * polling an operation), so it is only closed once a further grace period has passed.
+ */
+public class JcloudsApiCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JcloudsApiCache.class);
+
+    private static final long EXPIRE_AFTER_ACCESS_MINUTES = 30;
+    private static final long CLOSE_AFTER_EXPIRY_MINUTES = 30;
+
+    private static final JcloudsApiCache INSTANCE = new JcloudsApiCache(EXPIRE_AFTER_ACCESS_MINUTES, CLOSE_AFTER_EXPIRY_MINUTES,
+            TimeUnit.MINUTES, Ticker.systemTicker());
+
+    public static JcloudsApiCache getInstance() {
+        return INSTANCE;
+    }
+
+    private final Cache<Key, Closeable> apis;
+    private final Ticker ticker;
+    private final long closeAfterExpiryNanos;
+    /** Expired APIs waiting to be closed, in order of expiry. */
+    private final Queue<Expired> expired = new ConcurrentLinkedQueue<Expired>();
+
+    JcloudsApiCache(long expireAfterAccess, long closeAfterExpiry, TimeUnit unit, Ticker ticker) {
+        this.ticker = checkNotNull(ticker, "ticker");
+        this.closeAfterExpiryNanos = unit.toNanos(closeAfterExpiry);
+        apis = CacheBuilder.newBuilder()
+                .expireAfterAccess(expireAfterAccess, unit)
+                .ticker(ticker)
+                .removalListener(new RemovalListener<Key, Closeable>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Key, Closeable> notification) {
+                        if (notification.getCause() == RemovalCause.EXPLICIT) {
+                            close(notification.getKey(), notification.getValue());
+                        } else {
+                            LOG.debug("Expired jclouds api {} ({}); will close later", notification.getKey(), notification.getCause());
+                            expired.add(new Expired(notification.getKey(), notification.getValue(), JcloudsApiCache.this.ticker.read()));
+                        }
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns an API for the given provider, using the endpoint and credentials of the location.
+     */
+    public <A extends Closeable> A getApi(JcloudsLocation location, String provider, Class<A> type) {
+        return getApi(provider, location.getEndpoint(), location.getIdentity(), location.getCredential(), type);
+    }
+
+    /**
+     * Returns the cached API for the given provider, endpoint and credentials, building it if necessary.
+     */
+    public <A extends Closeable> A getApi(final String provider, @Nullable final String endpoint, final String identity,
+            final String credential, final Class<A> type) {
+        Key key = new Key(provider, endpoint, identity, credential, type);
+        return getApi(key, type, new Callable<A>() {
+            @Override
+            public A call() throws Exception {
+                LOG.debug("Building jclouds api {} for {} at {}", new Object[] {type.getSimpleName(), provider, endpoint});
+                return newContextBuilder(provider, endpoint, identity, credential).buildApi(type);
+            }
+        });
+    }
+
+    private static ContextBuilder newContextBuilder(String provider, @Nullable String endpoint, String identity, String credential) {
+        Iterable<Module> modules = ImmutableSet.<Module> of(
+                new SshjSshClientModule(),
+                new SLF4JLoggingModule(),
+                new BouncyCastleCryptoModule());
+        ContextBuilder builder = ContextBuilder.newBuilder(provider)
+                .credentials(identity, credential)
+                .modules(modules);
+        if (endpoint != null) {
+            builder.endpoint(endpoint);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns the cached context for the given provider, endpoint and credentials, building it if necessary; for
+     * requests that its API has no methods for, see {@link JcloudsHttp}.
+     */
+    public Context getContext(final String provider, @Nullable final String endpoint, final String identity, final String credential) {
+        Key key = new Key(provider, endpoint, identity, credential, Context.class);
+        return getApi(key, Context.class, new Callable<Context>() {
+            @Override
+            public Context call() throws Exception {
+                LOG.debug("Building jclouds context for {} at {}", provider, endpoint);
+                return newContextBuilder(provider, endpoint, identity, credential).build();
+            }
+        });
+    }
+
+    <A extends Closeable> A getApi(Key key, Class<A> type, Callable<A> builder) {
+        try {
+            return type.cast(apis.get(key, builder));
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } finally {
+            closeExpired(false);
+        }
+    }
+
+    /**
+     * Closes and discards all cached APIs, including expired ones still in their grace period.
+     */
+    public void invalidateAll() {
+        apis.invalidateAll();
+        closeExpired(true);
+    }
+
+    public long size() {
+        apis.cleanUp();
+        closeExpired(false);
+        return apis.size();
+    }
+
+    private void closeExpired(boolean all) {
+        long now = ticker.read();
+        while (true) {
+            Expired next = expired.peek();
+            if (next == null || (!all && now - next.expiredAt < closeAfterExpiryNanos)) {
+                return;
+            }
+            if (expired.remove(next)) {
+                close(next.key, next.api);
+            }
+        }
+    }
+
+    private static void close(Key key, Closeable api) {
+        LOG.debug("Closing jclouds api {}", key);
+        try {
+            api.close();
+        } catch (IOException e) {
+            LOG.warn("Problem closing jclouds api " + key + " (continuing)", e);
+        }
+    }
+
+    private static class Expired {
+        private final Key key;
+        private final Closeable api;
+        private final long expiredAt;
+
+        private Expired(Key key, Closeable api, long expiredAt) {
+            this.key = key;
+            this.api = api;
+            this.expiredAt = expiredAt;
+        }
+    }
+
+    static class Key {
+        private final String provider;
+        private final String endpoint;
+        private final String identity;
+        private final String credential;
+        private final Class<?> type;
+
+        Key(String provider, @Nullable String endpoint, String identity, String credential, Class<?> type) {
+            this.provider = checkNotNull(provider, "provider");
+            this.endpoint = endpoint;
+            this.identity = identity;
+            this.credential = credential;
+            this.type = checkNotNull(type, "type");
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return provider.equals(other.provider)
+                    && Objects.equal(endpoint, other.endpoint)
+                    && Objects.equal(identity, other.identity)
+                    && Objects.equal(credential, other.credential)
+                    && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(provider, endpoint, identity, credential, type);
+        }
+
+        // Deliberately excludes the credential
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("provider", provider)
+                    .add("endpoint", endpoint)
+                    .add("identity", identity)
+                    .add("type", type.getSimpleName())
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package brooklyn.location.blockstore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.json.Json;
+import org.jclouds.location.Provider;
+import org.jclouds.location.suppliers.RegionIdToURISupplier;
+import org.jclouds.rest.HttpClient;
+import org.jclouds.rest.annotations.RequestFilters;
+import org.jclouds.util.Strings2;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
+/**
+ * Makes requests for which a jclouds API has no method yet (e.g. resizing a volume) through the HTTP client of
+ * the API's own context, so that they are authenticated or signed by the same {@link RequestFilters filters} as
+ * the API's methods, and failures are reported by the same error handlers.
+ */
+public class JcloudsHttp {
+
+    private final Injector injector;
+
+    public JcloudsHttp(Injector injector) {
+        this.injector = checkNotNull(injector, "injector");
+    }
+
+    /**
+     * @return Instances of the filters that jclouds applies to every request of the given API interface
+     * @throws IllegalArgumentException If the API declares no filters
+     */
+    public List<HttpRequestFilter> getFilters(Class<?> api) {
+        RequestFilters annotation = api.getAnnotation(RequestFilters.class);
+        checkArgument(annotation != null, "%s has no request filters", api.getName());
+        ImmutableList.Builder<HttpRequestFilter> result = ImmutableList.builder();
+        for (Class<? extends HttpRequestFilter> filter : annotation.value()) {
+            result.add(injector.getInstance(filter));
+        }
+        return result.build();
+    }
+
+    /**
+     * @return The endpoint of the API in the given region
+     * @throws IllegalArgumentException If the context knows no such region
+     */
+    public URI getRegionEndpoint(String region) {
+        Map<String, Supplier<URI>> endpoints = injector.getInstance(RegionIdToURISupplier.class).get();
+        Supplier<URI> result = endpoints.get(region);
+        checkArgument(result != null, "No endpoint for region %s; known regions are %s", region, endpoints.keySet());
+        return result.get();
+    }
+
+    /**
+     * @return The endpoint of the context's provider, for APIs that have no regional endpoints (e.g. Azure ARM)
+     */
+    public URI getProviderEndpoint() {
+        return injector.getInstance(Key.get(new TypeLiteral<Supplier<URI>>() {}, Provider.class)).get();
+    }
+
+    public Json getJson() {
+        return injector.getInstance(Json.class);
+    }
+
+    /**
+     * Sends the request, applying its filters, and returns the body of a successful response.
+     * A response with an error status is thrown as by the API's own methods.
+     */
+    public String invoke(HttpRequest request) {
+        HttpResponse response = injector.getInstance(HttpClient.class).invoke(request);
+        if (response.getPayload() == null) {
+            return "";
+        }
+        try {
+            return Strings2.toStringAndClose(response.getPayload().openStream());
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package brooklyn.location.blockstore;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Serializes the operations that change a machine's disks, where the cloud does so by rewriting the whole VM or
+ * disk list (e.g. Azure, vCloud Director), so that concurrent changes to one machine do not overwrite each other.
+ * Operations on different machines run fully in parallel.
+ * <p>
+ * Requests {@link #submit(String, String, Object, Function) submitted} while another operation holds the machine
+ * are queued, and are then carried out together, in a single batched operation, by whichever caller gets the
+ * machine next; each caller gets its own part of the result. If the batched operation fails, every request in the
+ * batch fails with the same error.
+ */
+public class MachineOperationQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MachineOperationQueue.class);
+
+    private static final MachineOperationQueue INSTANCE = new MachineOperationQueue();
+
+    public static MachineOperationQueue getInstance() {
+        return INSTANCE;
+    }
+
+    /** The lanes of the machines currently in use; weakly held, so that those of machines no longer used are dropped. */
+    private final LoadingCache<String, Lane> lanes = CacheBuilder.newBuilder()
+            .weakValues()
+            .build(new CacheLoader<String, Lane>() {
+                @Override
+                public Lane load(String key) {
+                    return new Lane();
+                }
+            });
+
+    MachineOperationQueue() {
+    }
+
+    /**
+     * @return The key by which operations on the given machine are serialized
+     */
+    public static String keyFor(JcloudsMachineLocation machine) {
+        return machine.getParent().getProvider() + ":" + machine.getJcloudsId();
+    }
+
+    /**
+     * Runs the operation once no other operation holds the machine, and returns its result.
+     */
+    public <T> T execute(String key, Callable<T> operation) {
+        Lane lane = lanes.getUnchecked(key);
+        lane.lock.lock();
+        try {
+            return operation.call();
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            lane.lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the request for the machine and returns its result, once it has been carried out along with any other
+     * requests of the same kind queued by then. The batch operation is given the requests in the order they were
+     * queued, and must return one result per request in the same order; all the requests of a kind must use
+     * equivalent batch operations.
+     *
+     * @param kind Which requests can be batched together, e.g. "add-disks"
+     */
+    public <R, V> V submit(String key, String kind, R request, Function<? super List<R>, ? extends List<V>> batchOperation) {
+        Lane lane = lanes.getUnchecked(key);
+        Pending<R, V> pending = new Pending<R, V>(request);
+        lane.queue(kind).add(pending);
+
+        lane.lock.lock();
+        try {
+            if (!pending.result.isDone()) {
+                // Requests are only taken from the queue, and completed, while holding the lock; so this one is
+                // still queued, and is carried out now, along with any others queued since the last batch.
+                runBatch(key, kind, lane.<R, V>drain(kind), batchOperation);
+            }
+        } finally {
+            lane.lock.unlock();
+        }
+
+        try {
+            return pending.result.get();
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        }
+    }
+
+    private <R, V> void runBatch(String key, String kind, List<Pending<R, V>> batch,
+            Function<? super List<R>, ? extends List<V>> batchOperation) {
+        List<R> requests = Lists.newArrayList();
+        for (Pending<R, V> pending : batch) {
+            requests.add(pending.request);
+        }
+        if (batch.size() > 1) {
+            LOG.debug("Carrying out {} queued {} requests for {} together", new Object[] {batch.size(), kind, key});
+        }
+        try {
+            List<V> results = batchOperation.apply(requests);
+            checkState(results != null && results.size() == batch.size(), "%s results for %s requests",
+                    (results == null ? null : results.size()), batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.set(results.get(i));
+            }
+        } catch (Throwable t) {
+            for (Pending<R, V> pending : batch) {
+                pending.result.setException(t);
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+    }
+
+    private static class Lane {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Map<String, Queue<Pending<?, ?>>> queues = Maps.newConcurrentMap();
+
+        private Queue<Pending<?, ?>> queue(String kind) {
+            Queue<Pending<?, ?>> result = queues.get(kind);
+            if (result == null) {
+                synchronized (queues) {
+                    result = queues.get(kind);
+                    if (result == null) {
+                        result = Queues.newConcurrentLinkedQueue();
+                        queues.put(kind, result);
+                    }
+                }
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <R, V> List<Pending<R, V>> drain(String kind) {
+            List<Pending<R, V>> result = Lists.newArrayList();
+            Queue<Pending<?, ?>> queue = queue(kind);
+            Pending<?, ?> next;
+            while ((next = queue.poll()) != null) {
+                result.add((Pending<R, V>) next);
+            }
+            return result;
+        }
+    }
+
+    private static class Pending<R, V> {
+        private final R request;
+        private final SettableFuture<V> result = SettableFuture.create();
+
+        private Pending(R request) {
+            this.request = request;
+        }
+    }
+}
@@ -1,7 +1,18 @@
 package brooklyn.location.blockstore;
 
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.VolumeManager;
 import brooklyn.location.blockstore.api.VolumeOptions;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
@@ -9,11 +20,22 @@ import org.apache.brooklyn.location.jclouds.BasicJcloudsLocationCustomizer;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsLocationConfig;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
 import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.TemplateBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  *
@@ -44,22 +66,68 @@ import java.util.List;
  *             filesystem:
  *               mountPoint: /mount/brooklyn/h
  *               filesystemType: ext4
+ *           parallelism: 4
+ *           failurePolicy: collect_errors
+ *           createEarly: true
  * </pre>
  *
+ * By default the volumes are created and attached one after the other, and then all their filesystems are created
+ * and mounted in a single session on the machine. Setting {@code parallelism} to more than one creates and
+ * attaches the volumes concurrently; {@code failurePolicy} then decides whether the first failure aborts the
+ * remaining volumes and removes those created ({@code fail_fast}) or every volume is attempted and all the
+ * failures are reported together ({@code collect_errors}). With {@code createEarly}, volumes are created while
+ * the VM boots where the zone is known in advance, and only attached and mounted once it is ready.
+ *
  * Important notice is that KVM is configured as the default hypervisor for OpenStack which means that the defined device name will be of type /dev/vd*.
  * This means that the device suffix must be set as the next letter in alphabetical order from the existing device names on the VM.
  */
 public class NewVolumeCustomizer extends BasicJcloudsLocationCustomizer {
     // TODO write a rebind test
 
-    @SuppressWarnings("unused")
     private static final Logger LOG = LoggerFactory.getLogger(NewVolumeCustomizer.class);
 
+    private static final ListeningExecutorService EARLY_EXECUTOR = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("brooklyn-blockstore-early-%d").setDaemon(true).build()));
+
+    private static final ScheduledExecutorService EARLY_TIMEOUT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("brooklyn-blockstore-early-timeout-%d").setDaemon(true).build());
+
     @SuppressWarnings("serial")
     public static final ConfigKey<List<VolumeOptions>> VOLUMES = ConfigKeys.newConfigKey(
             new TypeToken<List<VolumeOptions>>() {},
             "volumes", "List of volumes to be attached");
 
+    public static final ConfigKey<Integer> PARALLELISM = ConfigKeys.newIntegerConfigKey(
+            "parallelism", "Maximum number of volumes to create, attach and mount concurrently; 1 means one at a time", 1);
+
+    public static final ConfigKey<FailurePolicy> FAILURE_POLICY = ConfigKeys.newConfigKey(
+            FailurePolicy.class,
+            "failurePolicy", "What to do when a volume fails while others are being provisioned concurrently",
+            FailurePolicy.FAIL_FAST);
+
+    public static final ConfigKey<Boolean> CREATE_EARLY = ConfigKeys.newBooleanConfigKey(
+            "createEarly", "Whether to start creating the volumes while the VM boots, where the zone is known in advance", false);
+
+    public static final ConfigKey<Duration> CREATE_EARLY_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "createEarlyTimeout", "How long volumes created early are kept for their machine; those not attached by then "
+                    + "(e.g. because the machine failed to come up) are deleted", Duration.ONE_HOUR);
+
+    public enum FailurePolicy {
+        /**
+         * Start no more volumes, and once those in progress are done, detach and delete all those that were
+         * created; then rethrow the first failure.
+         */
+        FAIL_FAST,
+        /** Let every volume run to completion, then report all the failures together. */
+        COLLECT_ERRORS
+    }
+
+    /**
+     * Volumes being created early by this customizer for the machine currently being obtained on this thread;
+     * jclouds calls the template-phase and machine-phase customizers from the same thread.
+     */
+    private final ThreadLocal<List<EarlyVolume>> earlyVolumes = new ThreadLocal<List<EarlyVolume>>();
+
     public NewVolumeCustomizer() {
     }
 
@@ -75,19 +143,379 @@ public class NewVolumeCustomizer extends BasicJcloudsLocationCustomizer {
         this.config().set(VOLUMES,volumes);
     }
 
+    public void setParallelism(int parallelism) {
+        this.config().set(PARALLELISM, parallelism);
+    }
+
+    public void setFailurePolicy(FailurePolicy failurePolicy) {
+        this.config().set(FAILURE_POLICY, failurePolicy);
+    }
+
+    public void setCreateEarly(boolean createEarly) {
+        this.config().set(CREATE_EARLY, createEarly);
+    }
+
+    public void setCreateEarlyTimeout(Duration createEarlyTimeout) {
+        this.config().set(CREATE_EARLY_TIMEOUT, createEarlyTimeout);
+    }
+
+    /**
+     * If {@link #CREATE_EARLY} is set, starts creating the volumes in the background, so that this overlaps
+     * with the VM booting; they are attached and mounted once the machine is ready.
+     * <p>
+     * This is only possible when the zone is known before the VM is placed (an EC2 location whose region is
+     * an availability zone, or a GCE location), and the cloud can create a volume separately from attaching it.
+     * Volumes that are not attached within {@link #CREATE_EARLY_TIMEOUT}, e.g. because obtaining the machine
+     * failed, are deleted.
+     */
+    @Override
+    public void customize(final JcloudsLocation location, ComputeService computeService, TemplateBuilder templateBuilder) {
+        // Volumes left by an earlier attempt on this thread whose machine never came up (e.g. obtain is retrying)
+        discardEarlyVolumes();
+
+        if (!Boolean.TRUE.equals(getConfig(CREATE_EARLY)) || getVolumes() == null || getVolumes().isEmpty()) {
+            return;
+        }
+        Optional<String> zone = getZoneBeforeProvisioning(location);
+        VolumeManager volumeManager = getVolumeManager(location);
+        if (!zone.isPresent() || !(volumeManager instanceof AbstractVolumeManager)
+                || !((AbstractVolumeManager) volumeManager).canCreateBlockDeviceWithoutMachine()) {
+            LOG.debug("Not creating volumes early in {}: zone {}, volume manager {}", new Object[] {location, zone, volumeManager});
+            return;
+        }
+
+        final List<EarlyVolume> early = Lists.newArrayList();
+        for (VolumeOptions volume : getVolumes()) {
+            BlockDeviceOptions options = BlockDeviceOptions.copy(volume.getBlockDeviceOptions()).zone(zone.get());
+            VolumeManager manager = StripedVolumeManager.forOptions(volumeManager, options);
+            early.add(new EarlyVolume(manager, zone.get(), createBlockDeviceAsync(manager, location, options)));
+        }
+        LOG.debug("Creating {} volumes early in {}, zone {}", new Object[] {early.size(), location, zone.get()});
+        earlyVolumes.set(early);
+
+        final Duration timeout = getConfig(CREATE_EARLY_TIMEOUT);
+        EARLY_TIMEOUT_EXECUTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                for (EarlyVolume volume : early) {
+                    if (volume.discard()) {
+                        LOG.warn("Volume created early in {} was not attached within {}; deleting it", location, timeout);
+                    }
+                }
+            }
+        }, timeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public void customize(JcloudsLocation location, ComputeService computeService, JcloudsMachineLocation machine) {
         if (!getVolumes().isEmpty()) {
             createAndAttachDisks(machine);
         } else {
+            discardEarlyVolumes();
             throw new UnsupportedOperationException("There is no volume data populated to create and attach disk.");
         }
     }
 
+    /**
+     * Creates and attaches all the volumes (concurrently if so configured, or in one change to the VM where the
+     * cloud adds volumes that way), and then creates their filesystems and mounts them together, in a single
+     * session on the machine.
+     */
     protected void createAndAttachDisks(JcloudsMachineLocation machine) {
+        List<VolumeOptions> volumes = getVolumes();
+        List<EarlyVolume> early = earlyVolumes.get();
+        earlyVolumes.remove();
+        if (early != null && early.size() != volumes.size()) {
+            LOG.warn("Volumes changed since they were created early for {}; creating them again", machine);
+            discard(early);
+            early = null;
+        }
 
-        for (VolumeOptions volume : getVolumes()) {
-            VolumeManagerFactory.getVolumeManager(machine, getConfig(JcloudsLocationConfig.CLOUD_PROVIDER)).createAndAttachDisk(machine, volume);
+        VolumeManager volumeManager = getVolumeManager(machine);
+        List<AttachedBlockDevice> attached = Lists.newArrayList();
+        List<Throwable> errors = Lists.newArrayList();
+        Integer parallelism = getConfig(PARALLELISM);
+        if (early == null && volumes.size() > 1 && !isStriped(volumes) && volumeManager instanceof AbstractVolumeManager
+                && !((AbstractVolumeManager) volumeManager).canCreateBlockDeviceWithoutMachine()) {
+            attached.addAll(createAndAttachBlockDevices(machine, volumeManager, volumes));
+        } else if (parallelism == null || parallelism <= 1 || volumes.size() <= 1) {
+            for (int i = 0; i < volumes.size(); i++) {
+                attached.add(createAndAttachBlockDevice(machine, volumeManager, volumes.get(i), (early != null) ? early.get(i) : null));
+            }
+        } else {
+            createAndAttachBlockDevicesConcurrently(machine, volumeManager, volumes, early, Math.min(parallelism, volumes.size()),
+                    attached, errors);
+        }
+
+        Map<AttachedBlockDevice, FilesystemOptions> filesystems = Maps.newLinkedHashMap();
+        for (int i = 0; i < volumes.size(); i++) {
+            if (attached.get(i) != null) {
+                filesystems.put(attached.get(i), volumes.get(i).getFilesystemOptions());
+            }
+        }
+        if (!filesystems.isEmpty()) {
+            volumeManager.createFilesystemsAndMount(machine, filesystems);
+        }
+        if (!errors.isEmpty()) {
+            throw Exceptions.create("Failed to create and attach " + errors.size() + " of " + volumes.size()
+                    + " volumes on " + machine, errors);
+        }
+    }
+
+    protected AttachedBlockDevice createAndAttachBlockDevice(JcloudsMachineLocation machine, VolumeManager volumeManager,
+            VolumeOptions volume) {
+        if (volume.getFilesystemOptions() == null) {
+            throw new IllegalArgumentException("volume to be provisioned has null FileSystemOptions " + volume);
+        }
+        BlockDeviceOptions options = AbstractVolumeManager.inMachineZone(machine, volume.getBlockDeviceOptions());
+        return StripedVolumeManager.forOptions(volumeManager, options)
+                .createAndAttachBlockDevice(machine, options, volume.getFilesystemOptions());
+    }
+
+    protected List<AttachedBlockDevice> createAndAttachBlockDevices(JcloudsMachineLocation machine, VolumeManager volumeManager,
+            List<VolumeOptions> volumes) {
+        List<VolumeOptions> inZone = Lists.newArrayList();
+        for (VolumeOptions volume : volumes) {
+            if (volume.getFilesystemOptions() == null) {
+                throw new IllegalArgumentException("volume to be provisioned has null FileSystemOptions " + volume);
+            }
+            inZone.add(new VolumeOptions(AbstractVolumeManager.inMachineZone(machine, volume.getBlockDeviceOptions()),
+                    volume.getFilesystemOptions()));
+        }
+        return volumeManager.createAndAttachBlockDevices(machine, inZone);
+    }
+
+    private static boolean isStriped(List<VolumeOptions> volumes) {
+        for (VolumeOptions volume : volumes) {
+            if (volume.getBlockDeviceOptions().getStripes() > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AttachedBlockDevice createAndAttachBlockDevice(JcloudsMachineLocation machine, VolumeManager volumeManager,
+            VolumeOptions volume, EarlyVolume early) {
+        if (early == null) {
+            return createAndAttachBlockDevice(machine, volumeManager, volume);
+        }
+        Optional<BlockDevice> device = early.get(machine);
+        if (!device.isPresent()) {
+            return createAndAttachBlockDevice(machine, volumeManager, volume);
+        }
+        LOG.debug("Attaching volume {} created early to {}", device.get(), machine);
+        return early.volumeManager.attachBlockDevice(machine, device.get(), volume.getBlockDeviceOptions());
+    }
+
+    protected VolumeManager getVolumeManager(JcloudsMachineLocation machine) {
+        return VolumeManagerFactory.getVolumeManager(machine, getConfig(JcloudsLocationConfig.CLOUD_PROVIDER));
+    }
+
+    protected VolumeManager getVolumeManager(JcloudsLocation location) {
+        String provider = getConfig(JcloudsLocationConfig.CLOUD_PROVIDER);
+        VolumeManagerRegistry registry = VolumeManagerRegistry.getInstance();
+        provider = (provider != null) ? provider : location.getProvider();
+        return registry.isSupported(provider) ? registry.getVolumeManager(location, provider) : null;
+    }
+
+    /**
+     * The zone in which the VM will be placed, if that is known before provisioning.
+     */
+    protected Optional<String> getZoneBeforeProvisioning(JcloudsLocation location) {
+        String region = location.getRegion();
+        if (region == null || region.isEmpty()) {
+            return Optional.absent();
+        }
+        String provider = location.getProvider();
+        if (VolumeManagers.AWS_EC2.equals(provider) && !Character.isDigit(region.charAt(region.length() - 1))) {
+            return Optional.of(region); // e.g. "us-east-1c"
+        } else if (VolumeManagers.GOOGLE_COMPUTE_ENGINE.equals(provider)) {
+            return Optional.of(region); // e.g. "europe-west1-b"
+        }
+        return Optional.absent();
+    }
+
+    private ListenableFuture<BlockDevice> createBlockDeviceAsync(final VolumeManager volumeManager, final JcloudsLocation location,
+            final BlockDeviceOptions options) {
+        return EARLY_EXECUTOR.submit(new Callable<BlockDevice>() {
+            @Override
+            public BlockDevice call() throws Exception {
+                return volumeManager.createBlockDevice(location, options);
+            }
+        });
+    }
+
+    private void discardEarlyVolumes() {
+        List<EarlyVolume> early = earlyVolumes.get();
+        earlyVolumes.remove();
+        if (early != null) {
+            discard(early);
+        }
+    }
+
+    private static void discard(List<EarlyVolume> early) {
+        for (EarlyVolume volume : early) {
+            volume.discard();
+        }
+    }
+
+    /**
+     * Fills {@code attached} with the device for each volume, in order. Under {@link FailurePolicy#COLLECT_ERRORS}
+     * a volume that failed is left null and its failure added to {@code errors}, so that the others are still mounted.
+     * Under {@link FailurePolicy#FAIL_FAST} the volumes that were created despite the failure are detached and
+     * deleted, once those in progress are done, before it is rethrown.
+     */
+    private void createAndAttachBlockDevicesConcurrently(final JcloudsMachineLocation machine, final VolumeManager volumeManager,
+            List<VolumeOptions> volumes, final List<EarlyVolume> early, int parallelism,
+            List<AttachedBlockDevice> attached, List<Throwable> errors) {
+        FailurePolicy failurePolicy = getConfig(FAILURE_POLICY);
+        LOG.debug("Creating {} volumes on {} with parallelism {} and failure policy {}",
+                new Object[] {volumes.size(), machine, parallelism, failurePolicy});
+
+        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-blockstore-volumes-%d").setDaemon(true).build()));
+        // Under FAIL_FAST, set on the first failure so that volumes not yet started are skipped; those in progress
+        // are left to finish rather than interrupted, so that they can be cleaned up
+        final boolean failFast = (failurePolicy != FailurePolicy.COLLECT_ERRORS);
+        final AtomicBoolean failed = new AtomicBoolean();
+        try {
+            List<ListenableFuture<AttachedBlockDevice>> futures = Lists.newArrayList();
+            for (int i = 0; i < volumes.size(); i++) {
+                final VolumeOptions volume = volumes.get(i);
+                final EarlyVolume earlyVolume = (early != null) ? early.get(i) : null;
+                futures.add(executor.submit(new Callable<AttachedBlockDevice>() {
+                    @Override
+                    public AttachedBlockDevice call() throws Exception {
+                        if (failed.get()) {
+                            if (earlyVolume != null) earlyVolume.discard();
+                            return null;
+                        }
+                        try {
+                            return createAndAttachBlockDevice(machine, volumeManager, volume, earlyVolume);
+                        } catch (Exception e) {
+                            if (failFast) failed.set(true);
+                            throw e;
+                        }
+                    }
+                }));
+            }
+
+            if (failurePolicy == FailurePolicy.COLLECT_ERRORS) {
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        attached.add(futures.get(i).get());
+                    } catch (ExecutionException e) {
+                        LOG.warn("Failed to create and attach volume " + volumes.get(i) + " on " + machine, e.getCause());
+                        attached.add(null);
+                        errors.add(e.getCause());
+                    }
+                }
+            } else {
+                try {
+                    attached.addAll(Futures.allAsList(futures).get());
+                } catch (ExecutionException e) {
+                    failed.set(true);
+                    List<AttachedBlockDevice> done = Futures.getUnchecked(Futures.successfulAsList(futures));
+                    for (int i = 0; i < done.size(); i++) {
+                        if (done.get(i) != null) {
+                            deleteAfterFailure(volumeManager, volumes.get(i), done.get(i));
+                        }
+                    }
+                    throw Exceptions.propagate(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void deleteAfterFailure(VolumeManager volumeManager, VolumeOptions volume, AttachedBlockDevice device) {
+        try {
+            LOG.info("Detaching and deleting volume {}, as another volume failed", device);
+            VolumeManager manager = StripedVolumeManager.forOptions(volumeManager, volume.getBlockDeviceOptions());
+            manager.deleteBlockDevice(manager.detachBlockDevice(device));
+        } catch (RuntimeException e) {
+            LOG.warn("Problem deleting volume " + device + " after failure (continuing)", e);
+        }
+    }
+
+    /**
+     * A volume whose creation was started in the template phase, before the machine existed. It is claimed once,
+     * either by its machine or to be deleted.
+     */
+    private static class EarlyVolume {
+        private final VolumeManager volumeManager;
+        private final String zone;
+        private final ListenableFuture<BlockDevice> device;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private EarlyVolume(VolumeManager volumeManager, String zone, ListenableFuture<BlockDevice> device) {
+            this.volumeManager = volumeManager;
+            this.zone = zone;
+            this.device = device;
+        }
+
+        /**
+         * Waits for the volume to be created. Returns absent if that failed, or if the machine ended up in a
+         * different zone (in which case the volume is deleted), or if it has already been deleted, so that the
+         * caller creates one as usual.
+         */
+        private Optional<BlockDevice> get(JcloudsMachineLocation machine) {
+            if (!claimed.compareAndSet(false, true)) {
+                LOG.warn("Volume created early for {} has been deleted, as it was not attached in time; creating it again", machine);
+                return Optional.absent();
+            }
+            BlockDevice result;
+            try {
+                result = device.get();
+            } catch (ExecutionException e) {
+                LOG.warn("Failed to create volume early for " + machine + "; creating it again", e.getCause());
+                return Optional.absent();
+            } catch (InterruptedException e) {
+                throw Exceptions.propagate(e);
+            }
+            Optional<NodeMetadata> node = machine.getOptionalNode();
+            String machineZone = (node.isPresent() && node.get().getLocation() != null) ? node.get().getLocation().getId() : null;
+            if (machineZone != null && !zone.equals(machineZone)) {
+                LOG.warn("Volume {} was created early in zone {}, but machine {} is in {}; creating it again",
+                        new Object[] {result, zone, machine, machineZone});
+                delete(result);
+                return Optional.absent();
+            }
+            return Optional.of(result);
+        }
+
+        /**
+         * Deletes the volume once created, unless it has already been claimed.
+         *
+         * @return Whether it will be deleted
+         */
+        private boolean discard() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            device.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        delete(device.get());
+                    } catch (Exception e) {
+                        // creation failed, so nothing to delete
+                    }
+                }
+            }, EARLY_EXECUTOR);
+            return true;
+        }
+
+        private void delete(BlockDevice blockDevice) {
+            try {
+                LOG.info("Deleting unused volume {} that was created early", blockDevice);
+                volumeManager.deleteBlockDevice(blockDevice);
+            } catch (RuntimeException e) {
+                LOG.warn("Problem deleting unused volume " + blockDevice + " (continuing)", e);
+            }
         }
     }
 }
@@ -0,0 +1,80 @@
+package brooklyn.location.blockstore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import org.apache.brooklyn.util.core.flags.TypeCoercions;
+import org.apache.brooklyn.util.guava.Maybe;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * The performance settings to change on a live volume; see
+ * {@link brooklyn.location.blockstore.api.VolumeManager#modifyPerformance}. Settings that are absent are left as
+ * they are.
+ */
+public class PerformanceOptions {
+
+    private Maybe<String> volumeType = Maybe.absent();
+    private Maybe<Integer> iops = Maybe.absent();
+    private Maybe<Integer> throughputMiBps = Maybe.absent();
+
+    // For more convenient yaml input
+    public static PerformanceOptions fromMap(Map<String, ?> map) {
+        PerformanceOptions result = new PerformanceOptions();
+        if (map.get("volumeType") != null) {
+            result.volumeType(map.get("volumeType").toString());
+        }
+        if (map.get("iops") != null) {
+            result.iops(TypeCoercions.coerce(map.get("iops"), Integer.class));
+        }
+        if (map.get("throughputMiBps") != null) {
+            result.throughputMiBps(TypeCoercions.coerce(map.get("throughputMiBps"), Integer.class));
+        }
+        return result;
+    }
+
+    public PerformanceOptions volumeType(String volumeType) {
+        this.volumeType = Maybe.of(checkNotNull(volumeType, "volumeType"));
+        return this;
+    }
+
+    public PerformanceOptions iops(int iops) {
+        checkArgument(iops > 0, "iops should be greater than zero");
+        this.iops = Maybe.of(iops);
+        return this;
+    }
+
+    public PerformanceOptions throughputMiBps(int throughputMiBps) {
+        checkArgument(throughputMiBps > 0, "throughputMiBps should be greater than zero");
+        this.throughputMiBps = Maybe.of(throughputMiBps);
+        return this;
+    }
+
+    public Maybe<String> getVolumeType() {
+        return volumeType;
+    }
+
+    public Maybe<Integer> getIops() {
+        return iops;
+    }
+
+    public Maybe<Integer> getThroughputMiBps() {
+        return throughputMiBps;
+    }
+
+    public boolean isEmpty() {
+        return volumeType.isAbsent() && iops.isAbsent() && throughputMiBps.isAbsent();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("volumeType", volumeType)
+                .add("iops", iops)
+                .add("throughputMiBps", throughputMiBps)
+                .toString();
+    }
+}
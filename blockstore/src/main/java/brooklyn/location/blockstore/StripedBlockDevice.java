@@ -0,0 +1,140 @@
+package brooklyn.location.blockstore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.MountedBlockDevice;
+
+/**
+ * A device made of several volumes striped together (RAID 0) on the machine; see {@link StripedVolumeManager}.
+ * The id is those of the member volumes, joined with '+'.
+ */
+public class StripedBlockDevice implements BlockDevice {
+
+    /** The array is named after the suffix of its first member, so that it is found again when reattached. */
+    public static final String ARRAY_DEVICE_PREFIX = "/dev/md/blockstore-";
+
+    private final List<? extends BlockDevice> members;
+
+    public StripedBlockDevice(List<? extends BlockDevice> members) {
+        checkArgument(!members.isEmpty(), "no members");
+        this.members = ImmutableList.copyOf(members);
+    }
+
+    public List<? extends BlockDevice> getMembers() {
+        return members;
+    }
+
+    @Override
+    public String getId() {
+        List<String> ids = Lists.newArrayList();
+        for (BlockDevice member : members) {
+            ids.add(member.getId());
+        }
+        return Joiner.on("+").join(ids);
+    }
+
+    @Override
+    public JcloudsLocation getLocation() {
+        return members.get(0).getLocation();
+    }
+
+    /**
+     * Intended for use internally; the members are given consecutive device names starting at that given.
+     */
+    @Override
+    public Attached attachedTo(JcloudsMachineLocation machine, String deviceName) {
+        List<AttachedBlockDevice> attached = Lists.newArrayList();
+        for (int i = 0; i < members.size(); i++) {
+            String memberName = deviceName.substring(0, deviceName.length() - 1) + (char) (deviceName.charAt(deviceName.length() - 1) + i);
+            attached.add(members.get(i).attachedTo(machine, memberName));
+        }
+        return new Attached(attached);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("members", members)
+                .toString();
+    }
+
+    public static class Attached extends StripedBlockDevice implements AttachedBlockDevice {
+
+        public Attached(List<? extends AttachedBlockDevice> members) {
+            super(members);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public List<? extends AttachedBlockDevice> getMembers() {
+            return (List<? extends AttachedBlockDevice>) super.getMembers();
+        }
+
+        /**
+         * @return The name of the array on the machine, e.g. "/dev/md/blockstore-h"
+         */
+        @Override
+        public String getDeviceName() {
+            return ARRAY_DEVICE_PREFIX + getDeviceSuffix();
+        }
+
+        @Override
+        public char getDeviceSuffix() {
+            return getMembers().get(0).getDeviceSuffix();
+        }
+
+        @Override
+        public JcloudsMachineLocation getMachine() {
+            return getMembers().get(0).getMachine();
+        }
+
+        @Override
+        public MountedBlockDevice mountedAt(String mountPoint) {
+            return new Mounted(getMembers(), mountPoint);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("deviceName", getDeviceName())
+                    .add("members", getMembers())
+                    .toString();
+        }
+    }
+
+    public static class Mounted extends Attached implements MountedBlockDevice {
+
+        private final String mountPoint;
+
+        public Mounted(List<? extends AttachedBlockDevice> members, String mountPoint) {
+            super(members);
+            this.mountPoint = mountPoint;
+        }
+
+        @Override
+        public String getMountPoint() {
+            return mountPoint;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("deviceName", getDeviceName())
+                    .add("mountPoint", mountPoint)
+                    .add("members", getMembers())
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package brooklyn.location.blockstore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.ModificationState;
+import brooklyn.location.blockstore.api.MountedBlockDevice;
+import brooklyn.location.blockstore.api.VolumeManager;
+import brooklyn.location.blockstore.api.VolumeOptions;
+
+/**
+ * Decorates a volume manager so that a volume with {@link BlockDeviceOptions#getStripes() stripes} greater than
+ * one is made of that many volumes, created and attached concurrently and striped together (RAID 0) with mdadm
+ * on the machine, with the filesystem aligned to the stripes. The result is a single {@link StripedBlockDevice}.
+ * <p>
+ * The size (and IOPS and throughput, if given) are divided between the members, which get consecutive device
+ * suffixes starting at that given; e.g. four stripes from 'h' use 'h' to 'k'. The array is recorded in mdadm.conf,
+ * and when its members are attached to another machine it is reassembled rather than recreated.
+ * <p>
+ * Other volumes, and the steps on the machine, are passed to the decorated manager, which also sends striped
+ * devices here itself, so this rarely needs to be used directly.
+ */
+public class StripedVolumeManager implements VolumeManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StripedVolumeManager.class);
+
+    /** The mdadm chunk size; also its default. */
+    public static final int CHUNK_SIZE_KB = 512;
+
+    private static final ListeningExecutorService EXECUTOR = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("brooklyn-blockstore-stripes-%d").setDaemon(true).build()));
+
+    private final AbstractVolumeManager delegate;
+
+    public StripedVolumeManager(AbstractVolumeManager delegate) {
+        this.delegate = checkNotNull(delegate, "delegate");
+    }
+
+    public AbstractVolumeManager getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return The manager for volumes with the given options: the given one, decorated if they have stripes
+     */
+    public static VolumeManager forOptions(VolumeManager volumeManager, BlockDeviceOptions options) {
+        if (options.getStripes() <= 1 || volumeManager instanceof StripedVolumeManager) {
+            return volumeManager;
+        } else if (volumeManager instanceof AbstractVolumeManager) {
+            return new StripedVolumeManager((AbstractVolumeManager) volumeManager);
+        }
+        throw new UnsupportedOperationException("Cannot stripe volumes with " + volumeManager);
+    }
+
+    /**
+     * The options for the given member of a striped volume.
+     */
+    static BlockDeviceOptions memberOptions(BlockDeviceOptions options, int index) {
+        int stripes = options.getStripes();
+        char suffix = (char) (options.getDeviceSuffix() + index);
+        checkArgument(suffix <= 'z', "Too many stripes (%s) for device suffix %s", stripes, options.getDeviceSuffix());
+        BlockDeviceOptions result = BlockDeviceOptions.copy(options)
+                .stripes(1)
+                .sizeInGb((options.getSizeInGb() + stripes - 1) / stripes)
+                .deviceSuffix(suffix);
+        if (options.getIops().isPresent()) {
+            result.iops((options.getIops().get() + stripes - 1) / stripes);
+        }
+        if (options.getThroughputMiBps().isPresent()) {
+            result.throughputMiBps((options.getThroughputMiBps().get() + stripes - 1) / stripes);
+        }
+        if (options.getName() != null) {
+            result.name(options.getName() + "-" + index);
+        }
+        return result;
+    }
+
+    /**
+     * The performance settings for each member of a striped volume of the given number of stripes.
+     */
+    static PerformanceOptions memberOptions(PerformanceOptions options, int stripes) {
+        PerformanceOptions result = new PerformanceOptions();
+        if (options.getVolumeType().isPresent()) {
+            result.volumeType(options.getVolumeType().get());
+        }
+        if (options.getIops().isPresent()) {
+            result.iops((options.getIops().get() + stripes - 1) / stripes);
+        }
+        if (options.getThroughputMiBps().isPresent()) {
+            result.throughputMiBps((options.getThroughputMiBps().get() + stripes - 1) / stripes);
+        }
+        return result;
+    }
+
+    /**
+     * The state of a change to a striped volume: failed if any member's change failed, otherwise the least
+     * advanced of the members' states.
+     */
+    static ModificationState combine(List<ModificationState> memberStates) {
+        ModificationState result = ModificationState.COMPLETED;
+        for (ModificationState state : memberStates) {
+            if (state == ModificationState.FAILED) {
+                return state;
+            } else if (state.ordinal() < result.ordinal()) {
+                result = state;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public MountedBlockDevice createAndAttachDisk(JcloudsMachineLocation machine, VolumeOptions volumeOptions) {
+        if (volumeOptions.getFilesystemOptions() == null) {
+            throw new IllegalArgumentException("volume to be provisioned has null FileSystemOptions " + volumeOptions);
+        }
+        BlockDeviceOptions options = AbstractVolumeManager.inMachineZone(machine, volumeOptions.getBlockDeviceOptions());
+        return createAttachAndMountVolume(machine, options, volumeOptions.getFilesystemOptions());
+    }
+
+    @Override
+    public BlockDevice createBlockDevice(final JcloudsLocation location, final BlockDeviceOptions options) {
+        if (options.getStripes() <= 1) {
+            return delegate.createBlockDevice(location, options);
+        }
+        List<Callable<BlockDevice>> tasks = Lists.newArrayList();
+        for (int i = 0; i < options.getStripes(); i++) {
+            final BlockDeviceOptions memberOptions = memberOptions(options, i);
+            tasks.add(new Callable<BlockDevice>() {
+                @Override
+                public BlockDevice call() throws Exception {
+                    return delegate.createBlockDevice(location, memberOptions);
+                }
+            });
+        }
+        return new StripedBlockDevice(invokeAll(tasks, true, new Function<BlockDevice, Void>() {
+            @Override
+            public Void apply(BlockDevice member) {
+                delegate.deleteBlockDevice(member);
+                return null;
+            }
+        }));
+    }
+
+    @Override
+    public AttachedBlockDevice attachBlockDevice(final JcloudsMachineLocation machine, BlockDevice blockDevice,
+            BlockDeviceOptions options) {
+        if (!(blockDevice instanceof StripedBlockDevice)) {
+            return delegate.attachBlockDevice(machine, blockDevice, options);
+        }
+        List<? extends BlockDevice> members = ((StripedBlockDevice) blockDevice).getMembers();
+        List<Callable<AttachedBlockDevice>> tasks = Lists.newArrayList();
+        for (int i = 0; i < members.size(); i++) {
+            final BlockDevice member = members.get(i);
+            final BlockDeviceOptions memberOptions = memberOptions(BlockDeviceOptions.copy(options).stripes(members.size()), i);
+            tasks.add(new Callable<AttachedBlockDevice>() {
+                @Override
+                public AttachedBlockDevice call() throws Exception {
+                    return delegate.attachBlockDevice(machine, member, memberOptions);
+                }
+            });
+        }
+        return new StripedBlockDevice.Attached(invokeAll(tasks, true, null));
+    }
+
+    /**
+     * Creates and attaches the members concurrently, or one at a time where the cloud creates a volume by
+     * changing the VM (e.g. Azure, vCloud Director). If any fails, those already attached are detached and deleted.
+     */
+    @Override
+    public AttachedBlockDevice createAndAttachBlockDevice(final JcloudsMachineLocation machine, BlockDeviceOptions options,
+            final FilesystemOptions filesystemOptions) {
+        if (options.getStripes() <= 1) {
+            return delegate.createAndAttachBlockDevice(machine, options, filesystemOptions);
+        }
+        if (!(machine instanceof SshMachineLocation)) {
+            throw new UnsupportedOperationException("Cannot stripe volumes on " + machine + "; requires ssh");
+        }
+        List<Callable<AttachedBlockDevice>> tasks = Lists.newArrayList();
+        for (int i = 0; i < options.getStripes(); i++) {
+            final BlockDeviceOptions memberOptions = memberOptions(options, i);
+            tasks.add(new Callable<AttachedBlockDevice>() {
+                @Override
+                public AttachedBlockDevice call() throws Exception {
+                    return delegate.createAndAttachBlockDevice(machine, memberOptions, filesystemOptions);
+                }
+            });
+        }
+        LOG.debug("Creating {} striped volumes for {} on {}", new Object[] {options.getStripes(), options, machine});
+        return new StripedBlockDevice.Attached(invokeAll(tasks, delegate.canCreateBlockDeviceWithoutMachine(),
+                new Function<AttachedBlockDevice, Void>() {
+                    @Override
+                    public Void apply(AttachedBlockDevice member) {
+                        delegate.deleteBlockDevice(delegate.detachBlockDevice(member));
+                        return null;
+                    }
+                }));
+    }
+
+    /**
+     * Passes the volumes to the delegate together where none is striped, so that they can be added in one go;
+     * otherwise each is created in turn.
+     */
+    @Override
+    public List<AttachedBlockDevice> createAndAttachBlockDevices(JcloudsMachineLocation machine, List<VolumeOptions> volumes) {
+        boolean striped = false;
+        for (VolumeOptions volume : volumes) {
+            striped |= volume.getBlockDeviceOptions().getStripes() > 1;
+        }
+        if (!striped) {
+            return delegate.createAndAttachBlockDevices(machine, volumes);
+        }
+        List<AttachedBlockDevice> result = Lists.newArrayList();
+        for (VolumeOptions volume : volumes) {
+            result.add(createAndAttachBlockDevice(machine, volume.getBlockDeviceOptions(), volume.getFilesystemOptions()));
+        }
+        return result;
+    }
+
+    @Override
+    public List<MountedBlockDevice> createFilesystemsAndMount(JcloudsMachineLocation machine,
+            Map<? extends AttachedBlockDevice, FilesystemOptions> devices) {
+        return delegate.createFilesystemsAndMount(machine, devices);
+    }
+
+    @Override
+    public MountedBlockDevice attachAndMountVolume(JcloudsMachineLocation machine, BlockDevice blockDevice,
+            BlockDeviceOptions blockDeviceOptions, FilesystemOptions filesystemOptions) {
+        AttachedBlockDevice attached = attachBlockDevice(machine, blockDevice, blockDeviceOptions);
+        return delegate.mountFilesystem(attached, filesystemOptions);
+    }
+
+    @Override
+    public BlockDevice detachBlockDevice(AttachedBlockDevice attachedBlockDevice) {
+        if (!(attachedBlockDevice instanceof StripedBlockDevice.Attached)) {
+            return delegate.detachBlockDevice(attachedBlockDevice);
+        }
+        List<Callable<BlockDevice>> tasks = Lists.newArrayList();
+        for (final AttachedBlockDevice member : ((StripedBlockDevice.Attached) attachedBlockDevice).getMembers()) {
+            tasks.add(new Callable<BlockDevice>() {
+                @Override
+                public BlockDevice call() throws Exception {
+                    return delegate.detachBlockDevice(member);
+                }
+            });
+        }
+        return new StripedBlockDevice(invokeAll(tasks, true, null));
+    }
+
+    @Override
+    public void deleteBlockDevice(BlockDevice blockDevice) {
+        if (!(blockDevice instanceof StripedBlockDevice)) {
+            delegate.deleteBlockDevice(blockDevice);
+            return;
+        }
+        List<Callable<Void>> tasks = Lists.newArrayList();
+        for (final BlockDevice member : ((StripedBlockDevice) blockDevice).getMembers()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    delegate.deleteBlockDevice(member);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks, true, null);
+    }
+
+    @Override
+    public AttachedBlockDevice findAttachedBlockDevice(JcloudsMachineLocation machine, String volumeId, char deviceSuffix) {
+        return delegate.findAttachedBlockDevice(machine, volumeId, deviceSuffix);
+    }
+
+    @Override
+    public void createFilesystem(AttachedBlockDevice attachedDevice, FilesystemOptions options) {
+        delegate.createFilesystem(attachedDevice, options);
+    }
+
+    @Override
+    public MountedBlockDevice mountFilesystem(AttachedBlockDevice attachedDevice, FilesystemOptions options) {
+        return delegate.mountFilesystem(attachedDevice, options);
+    }
+
+    @Override
+    public AttachedBlockDevice unmountFilesystem(MountedBlockDevice mountedDevice) {
+        return delegate.unmountFilesystem(mountedDevice);
+    }
+
+    @Override
+    public MountedBlockDevice createAttachAndMountVolume(JcloudsMachineLocation machine,
+            BlockDeviceOptions blockDeviceOptions, FilesystemOptions filesystemOptions) {
+        AttachedBlockDevice attached = createAndAttachBlockDevice(machine, blockDeviceOptions, filesystemOptions);
+        return Iterables.getOnlyElement(delegate.createFilesystemsAndMount(machine, ImmutableMap.of(attached, filesystemOptions)));
+    }
+
+    @Override
+    public BlockDevice unmountFilesystemAndDetachVolume(MountedBlockDevice mountedDevice) {
+        delegate.unmountFilesystem(mountedDevice);
+        return detachBlockDevice(mountedDevice);
+    }
+
+    /**
+     * Not supported for striped volumes: mdadm cannot grow the members of a RAID 0 array in place.
+     */
+    @Override
+    public MountedBlockDevice resizeBlockDevice(MountedBlockDevice mountedDevice, int newSizeInGb) {
+        if (!(mountedDevice instanceof StripedBlockDevice.Attached)) {
+            return delegate.resizeBlockDevice(mountedDevice, newSizeInGb);
+        }
+        throw new UnsupportedOperationException("Cannot resize striped volume " + mountedDevice
+                + "; mdadm cannot grow the members of a RAID 0 array");
+    }
+
+    @Override
+    public void growFilesystem(MountedBlockDevice mountedDevice) {
+        delegate.growFilesystem(mountedDevice);
+    }
+
+    /**
+     * Changes every member, with the IOPS and throughput divided between them as when they were created.
+     */
+    @Override
+    public ModificationState modifyPerformance(AttachedBlockDevice attachedDevice, PerformanceOptions options) {
+        if (!(attachedDevice instanceof StripedBlockDevice.Attached)) {
+            return delegate.modifyPerformance(attachedDevice, options);
+        }
+        List<? extends AttachedBlockDevice> members = ((StripedBlockDevice.Attached) attachedDevice).getMembers();
+        final PerformanceOptions memberOptions = memberOptions(options, members.size());
+        List<Callable<ModificationState>> tasks = Lists.newArrayList();
+        for (final AttachedBlockDevice member : members) {
+            tasks.add(new Callable<ModificationState>() {
+                @Override
+                public ModificationState call() throws Exception {
+                    return delegate.modifyPerformance(member, memberOptions);
+                }
+            });
+        }
+        return combine(invokeAll(tasks, delegate.canCreateBlockDeviceWithoutMachine(), null));
+    }
+
+    @Override
+    public ModificationState getModificationState(AttachedBlockDevice attachedDevice) {
+        if (!(attachedDevice instanceof StripedBlockDevice.Attached)) {
+            return delegate.getModificationState(attachedDevice);
+        }
+        List<ModificationState> states = Lists.newArrayList();
+        for (AttachedBlockDevice member : ((StripedBlockDevice.Attached) attachedDevice).getMembers()) {
+            states.add(delegate.getModificationState(member));
+        }
+        return combine(states);
+    }
+
+    /**
+     * Runs the tasks (concurrently if requested) and returns their results in order. If any fails, {@code undo}
+     * (if given) is applied to the results of those that succeeded, and then the first failure is rethrown.
+     */
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks, boolean concurrently, Function<? super T, ?> undo) {
+        List<ListenableFuture<T>> futures = Lists.newArrayList();
+        for (Callable<T> task : tasks) {
+            if (concurrently) {
+                futures.add(EXECUTOR.submit(task));
+            } else {
+                try {
+                    futures.add(Futures.immediateFuture(task.call()));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    futures.add(Futures.<T>immediateFailedFuture(e));
+                    break;
+                }
+            }
+        }
+        try {
+            return Futures.allAsList(futures).get();
+        } catch (ExecutionException e) {
+            if (undo != null) {
+                for (T result : Futures.getUnchecked(Futures.successfulAsList(futures))) {
+                    if (result == null) continue;
+                    try {
+                        undo.apply(result);
+                    } catch (RuntimeException e2) {
+                        LOG.warn("Problem cleaning up " + result + " after failure (continuing)", e2);
+                    }
+                }
+            }
+            throw Exceptions.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
@@ -1,20 +1,11 @@
 package brooklyn.location.blockstore;
 
 import brooklyn.location.blockstore.api.VolumeManager;
-import brooklyn.location.blockstore.azure.arm.AzureArmVolumeManager;
-import brooklyn.location.blockstore.ec2.Ec2VolumeManager;
-import brooklyn.location.blockstore.openstack.OpenstackVolumeManager;
-import brooklyn.location.blockstore.vclouddirector15.VcloudVolumeManager;
 import org.apache.brooklyn.core.location.LocationConfigKeys;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
 
-import static brooklyn.location.blockstore.VolumeManagers.AWS_EC2;
-import static brooklyn.location.blockstore.VolumeManagers.AZURE_ARM;
-import static brooklyn.location.blockstore.VolumeManagers.OPENSTACK_NOVA;
-import static brooklyn.location.blockstore.VolumeManagers.VCLOUD_DIRECTOR;
-
 /**
- * Creates a VolumeManager instance.
+ * Gets the shared VolumeManager instance for a machine's location, from the {@link VolumeManagerRegistry}.
  */
 public class VolumeManagerFactory {
     public static VolumeManager getVolumeManager(JcloudsMachineLocation machine) {
@@ -25,19 +16,12 @@ public class VolumeManagerFactory {
             provider = machine.getParent().getProvider();
         }
 
-        switch (provider) {
-            case AWS_EC2:
-                return new Ec2VolumeManager();
-            case OPENSTACK_NOVA:
-                return new OpenstackVolumeManager();
-            case VCLOUD_DIRECTOR:
-                return new VcloudVolumeManager();
-            case AZURE_ARM:
-                return new AzureArmVolumeManager();
-            default:
-                throw new UnsupportedOperationException("Tried to attach volume for a cloud "
-                        + provider + " which is not supported for adding disks. Caller entity " + machine.config().get(LocationConfigKeys.CALLER_CONTEXT));
+        VolumeManagerRegistry registry = VolumeManagerRegistry.getInstance();
+        if (!registry.isSupported(provider)) {
+            throw new UnsupportedOperationException("Tried to attach volume for a cloud "
+                    + provider + " which is not supported for adding disks. Caller entity " + machine.config().get(LocationConfigKeys.CALLER_CONTEXT));
         }
+        return registry.getVolumeManager(machine.getParent(), provider);
     }
 
 }
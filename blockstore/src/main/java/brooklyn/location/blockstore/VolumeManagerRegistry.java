@@ -0,0 +1,220 @@
+package brooklyn.location.blockstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.brooklyn.core.location.Locations;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+import brooklyn.location.blockstore.api.VolumeManager;
+import brooklyn.location.blockstore.api.VolumeManagerProvider;
+import brooklyn.location.blockstore.azure.arm.AzureArmVolumeManager;
+import brooklyn.location.blockstore.ec2.Ec2VolumeManager;
+import brooklyn.location.blockstore.gce.GoogleComputeEngineVolumeManager;
+import brooklyn.location.blockstore.openstack.OpenstackVolumeManager;
+import brooklyn.location.blockstore.rackspace.RackspaceVolumeManager;
+import brooklyn.location.blockstore.vclouddirector15.VcloudVolumeManager;
+
+import static brooklyn.location.blockstore.VolumeManagers.AWS_EC2;
+import static brooklyn.location.blockstore.VolumeManagers.AZURE_ARM;
+import static brooklyn.location.blockstore.VolumeManagers.GOOGLE_COMPUTE_ENGINE;
+import static brooklyn.location.blockstore.VolumeManagers.OPENSTACK_NOVA;
+import static brooklyn.location.blockstore.VolumeManagers.VCLOUD_DIRECTOR;
+
+/**
+ * Hands out one long-lived {@link VolumeManager} per {@link JcloudsLocation} (and provider), so that the
+ * API handles, caches and pollers a manager holds stay warm across customizer and effector calls.
+ * <p>
+ * Managers come from the {@link VolumeManagerProvider} plugins found on the classpath, then the built-in
+ * providers. Locations are held weakly, and a location's manager is released (and closed, if it is
+ * {@link Closeable}) once the location is no longer managed.
+ */
+public class VolumeManagerRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VolumeManagerRegistry.class);
+
+    private static final VolumeManagerRegistry INSTANCE = new VolumeManagerRegistry(
+            Iterables.concat(loadPlugins(), builtInProviders()));
+
+    public static VolumeManagerRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private final List<VolumeManagerProvider> providers;
+    private final ConcurrentMap<JcloudsLocation, ConcurrentMap<String, VolumeManager>> managers = new MapMaker().weakKeys().makeMap();
+
+    public VolumeManagerRegistry(Iterable<? extends VolumeManagerProvider> providers) {
+        this.providers = ImmutableList.copyOf(providers);
+    }
+
+    public boolean isSupported(String provider) {
+        return findProvider(provider).isPresent();
+    }
+
+    public Optional<VolumeManagerProvider> findProvider(String provider) {
+        if (provider == null) return Optional.absent();
+        for (VolumeManagerProvider candidate : providers) {
+            if (candidate.isSupported(provider)) {
+                return Optional.of(candidate);
+            }
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * @see #getVolumeManager(JcloudsLocation, String)
+     */
+    public VolumeManager getVolumeManager(JcloudsLocation location) {
+        return getVolumeManager(location, location.getProvider());
+    }
+
+    /**
+     * Returns the shared volume manager for the given location, treating it as being of the given provider
+     * (which may differ from the location's own, e.g. when overridden by a customizer).
+     * A location that is not managed gets a new manager that is not retained.
+     *
+     * @throws IllegalArgumentException If no provider supports it
+     */
+    public VolumeManager getVolumeManager(JcloudsLocation location, String provider) {
+        releaseUnmanaged();
+        if (!Locations.isManaged(location)) {
+            return newVolumeManager(location, provider);
+        }
+        ConcurrentMap<String, VolumeManager> forLocation = managers.get(location);
+        if (forLocation == null) {
+            ConcurrentMap<String, VolumeManager> newForLocation = Maps.newConcurrentMap();
+            forLocation = managers.putIfAbsent(location, newForLocation);
+            if (forLocation == null) forLocation = newForLocation;
+        }
+        VolumeManager result = forLocation.get(provider);
+        if (result == null) {
+            VolumeManager newManager = newVolumeManager(location, provider);
+            result = forLocation.putIfAbsent(provider, newManager);
+            if (result == null) {
+                LOG.debug("Registered volume manager {} for {} ({})", new Object[] {newManager, location, provider});
+                result = newManager;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a volume manager for the given location and provider, without retaining it.
+     *
+     * @throws IllegalArgumentException If no provider supports it
+     */
+    public VolumeManager newVolumeManager(JcloudsLocation location, String provider) {
+        Optional<VolumeManagerProvider> factory = findProvider(provider);
+        if (!factory.isPresent()) {
+            throw new IllegalArgumentException("Cannot handle volumes in location: " + location + " (provider " + provider + ")");
+        }
+        return factory.get().newVolumeManager(location);
+    }
+
+    /**
+     * Discards any volume managers held for the given location, closing those that are {@link Closeable}.
+     */
+    public void release(JcloudsLocation location) {
+        ConcurrentMap<String, VolumeManager> released = managers.remove(location);
+        if (released != null) {
+            LOG.debug("Released volume managers for {}", location);
+            for (VolumeManager manager : released.values()) {
+                if (manager instanceof Closeable) {
+                    try {
+                        ((Closeable) manager).close();
+                    } catch (IOException e) {
+                        LOG.warn("Problem closing volume manager " + manager + " for " + location + " (continuing)", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of locations for which volume managers are held
+     */
+    public int size() {
+        releaseUnmanaged();
+        return managers.size();
+    }
+
+    private void releaseUnmanaged() {
+        for (JcloudsLocation location : managers.keySet()) {
+            if (!Locations.isManaged(location)) {
+                release(location);
+            }
+        }
+    }
+
+    private static List<VolumeManagerProvider> loadPlugins() {
+        ImmutableList.Builder<VolumeManagerProvider> result = ImmutableList.builder();
+        for (VolumeManagerProvider plugin : ServiceLoader.load(VolumeManagerProvider.class, VolumeManagerRegistry.class.getClassLoader())) {
+            LOG.debug("Found volume manager provider {}", plugin);
+            result.add(plugin);
+        }
+        return result.build();
+    }
+
+    static List<VolumeManagerProvider> builtInProviders() {
+        return ImmutableList.<VolumeManagerProvider>of(
+                new VolumeManagerProvider() {
+                    @Override public boolean isSupported(String provider) {
+                        return provider.equals(AWS_EC2);
+                    }
+                    @Override public VolumeManager newVolumeManager(JcloudsLocation location) {
+                        return new Ec2VolumeManager();
+                    }
+                },
+                new VolumeManagerProvider() {
+                    @Override public boolean isSupported(String provider) {
+                        return provider.startsWith("rackspace-") || provider.startsWith("cloudservers-");
+                    }
+                    @Override public VolumeManager newVolumeManager(JcloudsLocation location) {
+                        return new RackspaceVolumeManager();
+                    }
+                },
+                new VolumeManagerProvider() {
+                    @Override public boolean isSupported(String provider) {
+                        return provider.equals(GOOGLE_COMPUTE_ENGINE);
+                    }
+                    @Override public VolumeManager newVolumeManager(JcloudsLocation location) {
+                        return new GoogleComputeEngineVolumeManager();
+                    }
+                },
+                new VolumeManagerProvider() {
+                    @Override public boolean isSupported(String provider) {
+                        return provider.startsWith(OPENSTACK_NOVA);
+                    }
+                    @Override public VolumeManager newVolumeManager(JcloudsLocation location) {
+                        return new OpenstackVolumeManager();
+                    }
+                },
+                new VolumeManagerProvider() {
+                    @Override public boolean isSupported(String provider) {
+                        return provider.equals(VCLOUD_DIRECTOR);
+                    }
+                    @Override public VolumeManager newVolumeManager(JcloudsLocation location) {
+                        return new VcloudVolumeManager();
+                    }
+                },
+                new VolumeManagerProvider() {
+                    @Override public boolean isSupported(String provider) {
+                        return provider.equals(AZURE_ARM);
+                    }
+                    @Override public VolumeManager newVolumeManager(JcloudsLocation location) {
+                        return new AzureArmVolumeManager();
+                    }
+                });
+    }
+}
@@ -1,16 +1,17 @@
 package brooklyn.location.blockstore;
 
-import brooklyn.location.blockstore.vclouddirector15.VcloudVolumeManager;
 import org.apache.brooklyn.api.location.Location;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
 
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+
+import brooklyn.location.blockstore.api.AsyncVolumeManager;
 import brooklyn.location.blockstore.api.VolumeManager;
-import brooklyn.location.blockstore.azure.arm.AzureArmVolumeManager;
+import brooklyn.location.blockstore.ec2.Ec2AsyncVolumeManager;
 import brooklyn.location.blockstore.ec2.Ec2VolumeManager;
+import brooklyn.location.blockstore.gce.GoogleComputeEngineAsyncVolumeManager;
 import brooklyn.location.blockstore.gce.GoogleComputeEngineVolumeManager;
-import brooklyn.location.blockstore.openstack.OpenstackVolumeManager;
-import brooklyn.location.blockstore.rackspace.RackspaceVolumeManager;
 
 public class VolumeManagers {
     public static final String AWS_EC2 = "aws-ec2";
@@ -27,25 +28,13 @@ public class VolumeManagers {
      *         for the given location.
      */
     public static boolean isVolumeManagerSupportedForLocation(Location location) {
-        if (location == null || !(location instanceof JcloudsLocation || location instanceof JcloudsMachineLocation))
-            return false;
-        String provider;
-        if (location instanceof JcloudsLocation) {
-            provider = JcloudsLocation.class.cast(location).getProvider();
-        } else {
-            provider = JcloudsMachineLocation.class.cast(location).getParent().getProvider();
-        }
-        return provider.equals(AWS_EC2) ||
-                provider.equals(OPENSTACK_NOVA) ||
-                provider.startsWith("rackspace-") ||
-                provider.startsWith("cloudservers-") ||
-                provider.equals(GOOGLE_COMPUTE_ENGINE) ||
-                provider.equals(VCLOUD_DIRECTOR) ||
-                provider.equals(AZURE_ARM);
+        JcloudsLocation jcloudsLocation = toJcloudsLocation(location);
+        return jcloudsLocation != null && VolumeManagerRegistry.getInstance().isSupported(jcloudsLocation.getProvider());
     }
 
     /**
-     * Returns a {@link VolumeManager} suitable for the given location, for creating volumes.
+     * Returns a new {@link VolumeManager} suitable for the given location, for creating volumes.
+     * Prefer {@link #getVolumeManager(Location)}, which shares one manager per location.
      * 
      * See {@link #isVolumeManagerSupportedForLocation(Location)} to check before hand if a
      * given location is supported.
@@ -57,34 +46,61 @@ public class VolumeManagers {
      */
     public static VolumeManager newVolumeManager(Location location) {
         // TODO Add SoftLayer support
-        
+        JcloudsLocation jcloudsLocation = checkSupported(location);
+        return VolumeManagerRegistry.getInstance().newVolumeManager(jcloudsLocation, jcloudsLocation.getProvider());
+    }
+
+    /**
+     * Returns the shared {@link VolumeManager} for the given location, from the {@link VolumeManagerRegistry}.
+     *
+     * @throws IllegalArgumentException If {@link #isVolumeManagerSupportedForLocation}
+     *         returns false for the location argument.
+     */
+    public static VolumeManager getVolumeManager(Location location) {
+        return VolumeManagerRegistry.getInstance().getVolumeManager(checkSupported(location));
+    }
+
+    /**
+     * Returns an {@link AsyncVolumeManager} suitable for the given location, running its work on the given executor.
+     * 
+     * EC2 and GCE get native implementations that poll for state changes without holding a thread;
+     * other clouds get an {@link AsyncVolumeManagerAdapter} over their blocking {@link VolumeManager}.
+     * 
+     * @throws IllegalArgumentException If {@link #isVolumeManagerSupportedForLocation}
+     *         returns false for the location argument.
+     */
+    public static AsyncVolumeManager newAsyncVolumeManager(Location location, ListeningScheduledExecutorService executor) {
+        return newAsyncVolumeManager(getVolumeManager(location), executor);
+    }
+
+    /**
+     * Returns an {@link AsyncVolumeManager} over the given manager, which may come from a
+     * {@link brooklyn.location.blockstore.api.VolumeManagerProvider plugin}, running its work on the given executor.
+     */
+    public static AsyncVolumeManager newAsyncVolumeManager(VolumeManager volumeManager, ListeningScheduledExecutorService executor) {
+        if (volumeManager instanceof Ec2VolumeManager) {
+            return new Ec2AsyncVolumeManager((Ec2VolumeManager) volumeManager, executor);
+        } else if (volumeManager instanceof GoogleComputeEngineVolumeManager) {
+            return new GoogleComputeEngineAsyncVolumeManager((GoogleComputeEngineVolumeManager) volumeManager, executor);
+        } else {
+            return new AsyncVolumeManagerAdapter(volumeManager, executor);
+        }
+    }
+
+    private static JcloudsLocation checkSupported(Location location) {
         if (location == null || !isVolumeManagerSupportedForLocation(location)) {
             throw new IllegalArgumentException("Cannot handle volumes in location: " + location);
         }
+        return toJcloudsLocation(location);
+    }
 
-        JcloudsLocation jcloudsLocation;
+    private static JcloudsLocation toJcloudsLocation(Location location) {
         if (location instanceof JcloudsLocation) {
-            jcloudsLocation = JcloudsLocation.class.cast(location);
-        } else {
-            jcloudsLocation = JcloudsMachineLocation.class.cast(location).getParent();
-        }
-        String provider = jcloudsLocation.getProvider();
-
-        if (provider.equals(AWS_EC2)) {
-            return new Ec2VolumeManager();
-        } else if (provider.startsWith("rackspace-") || provider.startsWith("cloudservers-")) {
-            return new RackspaceVolumeManager();
-        } else if (provider.equals(GOOGLE_COMPUTE_ENGINE)) {
-            return new GoogleComputeEngineVolumeManager();
-        } else if (provider.startsWith(OPENSTACK_NOVA)) {
-            return new OpenstackVolumeManager();
-        } else if (provider.equals(VCLOUD_DIRECTOR)) {
-            return new VcloudVolumeManager();
-        } else if (provider.equals(AZURE_ARM)) {
-            return new AzureArmVolumeManager();
+            return JcloudsLocation.class.cast(location);
+        } else if (location instanceof JcloudsMachineLocation) {
+            return JcloudsMachineLocation.class.cast(location).getParent();
         } else {
-            throw new IllegalArgumentException("Cannot handle volumes in location: " + location +
-                    " (mismatch between isVolumeManagerSupportedForLocation and newVolumeManager)");
+            return null;
         }
     }
 }
@@ -0,0 +1,219 @@
+package brooklyn.location.blockstore;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import brooklyn.location.blockstore.api.BlockDevice;
+
+/**
+ * Keeps a number of ready, unattached volumes per location and (zone, size, type, encryption, filesystem), so that a
+ * machine's volume can be attached straight away instead of waiting for it to be created and become available.
+ * <p>
+ * Enabled per location with {@link #ENABLED}. When a volume is taken, and the pool is left with fewer than
+ * {@link #LOW_WATER_MARK} idle volumes, it is refilled in the background up to {@link #MAX_IDLE}. Pooled volumes
+ * carry a {@link #POOL_TAG} tag, by which they are recovered when Brooklyn restarts; the tag is overwritten when
+ * a volume is taken.
+ * <p>
+ * Only volume managers that can create a volume without attaching it, and find volumes by tag, support
+ * pooling (currently EC2). A volume cannot be formatted until it is attached to a machine, so the filesystem
+ * is still created after attaching; it is part of the key so that a pool serves only one kind of volume.
+ */
+public class VolumePool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VolumePool.class);
+
+    public static final ConfigKey<Boolean> ENABLED = ConfigKeys.newBooleanConfigKey(
+            "blockstore.pool.enabled", "Whether to take new volumes from a pool of pre-created volumes", false);
+
+    public static final ConfigKey<Integer> LOW_WATER_MARK = ConfigKeys.newIntegerConfigKey(
+            "blockstore.pool.lowWaterMark", "Number of idle pooled volumes below which the pool is refilled", 1);
+
+    public static final ConfigKey<Integer> MAX_IDLE = ConfigKeys.newIntegerConfigKey(
+            "blockstore.pool.maxIdle", "Number of idle volumes to which the pool is refilled", 2);
+
+    /** Tag on each pooled volume, whose value identifies its pool; overwritten when the volume is taken. */
+    public static final String POOL_TAG = "brooklyn-blockstore-pool";
+
+    static final String TAKEN = "taken";
+
+    private static final VolumePool INSTANCE = new VolumePool(Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("brooklyn-blockstore-pool-%d").setDaemon(true).build()));
+
+    public static VolumePool getInstance() {
+        return INSTANCE;
+    }
+
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Pool> pools = Maps.newConcurrentMap();
+
+    VolumePool(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Takes an idle volume matching the given options from the pool, tagging it with the options' tags, and
+     * starts a background refill if needed.
+     *
+     * @return The volume, or absent if pooling is not enabled or supported, or no volume is idle.
+     */
+    public Optional<BlockDevice> take(AbstractVolumeManager manager, JcloudsLocation location, BlockDeviceOptions options,
+            FilesystemOptions filesystemOptions) {
+        if (!Boolean.TRUE.equals(location.config().get(ENABLED)) || !manager.supportsPooling()) {
+            return Optional.absent();
+        }
+        Pool pool = getPool(location, options, filesystemOptions);
+        pool.recoverOnce(manager, location);
+
+        BlockDevice device = pool.idle.pollFirst();
+        if (device != null) {
+            LOG.debug("Took pooled volume {} from pool {}", device, pool.name);
+            manager.tagBlockDevice(device, ImmutableMap.<String, String>builder()
+                    .putAll(options.getTags())
+                    .put(POOL_TAG, TAKEN)
+                    .build());
+        } else {
+            LOG.debug("No idle volume in pool {}; creating one on demand", pool.name);
+        }
+        pool.refillIfNeeded(manager, location);
+        return Optional.fromNullable(device);
+    }
+
+    /**
+     * @return The number of idle volumes in the pool for the given location and options
+     */
+    public int getIdleCount(JcloudsLocation location, BlockDeviceOptions options, FilesystemOptions filesystemOptions) {
+        return getPool(location, options, filesystemOptions).idle.size();
+    }
+
+    private Pool getPool(JcloudsLocation location, BlockDeviceOptions options, FilesystemOptions filesystemOptions) {
+        String name = poolName(options, filesystemOptions);
+        String key = Joiner.on(":").useForNull("").join(location.getProvider(), location.getEndpoint(), location.getIdentity(),
+                location.getRegion(), name);
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            Pool newPool = new Pool(name, poolOptions(options, name));
+            pool = pools.putIfAbsent(key, newPool);
+            if (pool == null) pool = newPool;
+        }
+        return pool;
+    }
+
+    /**
+     * The value of the {@link #POOL_TAG} tag for volumes of this kind, e.g. "us-east-1a/100/gp2/ext4"; provisioned
+     * IOPS and throughput, and encryption, are appended where given, e.g.
+     * "us-east-1a/100/gp3/ext4/iops-6000/throughput-500/encrypted-true".
+     */
+    static String poolName(BlockDeviceOptions options, FilesystemOptions filesystemOptions) {
+        String name = Joiner.on("/").join(
+                options.getZone(),
+                options.getSizeInGb(),
+                options.getVolumeType().or("default"),
+                (filesystemOptions != null) ? filesystemOptions.getFilesystemType() : "none");
+        if (options.getIops().isPresent()) {
+            name += "/iops-" + options.getIops().get();
+        }
+        if (options.getThroughputMiBps().isPresent()) {
+            name += "/throughput-" + options.getThroughputMiBps().get();
+        }
+        if (options.getEncrypted().isPresent()) {
+            name += "/encrypted-" + options.getEncrypted().get();
+        }
+        return name;
+    }
+
+    /**
+     * The options with which the pool of the given name creates its volumes: exactly the block device options that
+     * are part of its {@link #poolName(BlockDeviceOptions, FilesystemOptions) name}, so that every volume in a pool
+     * is the same whichever request triggered its creation.
+     */
+    static BlockDeviceOptions poolOptions(BlockDeviceOptions options, String name) {
+        return new BlockDeviceOptions()
+                .zone(options.getZone())
+                .sizeInGb(options.getSizeInGb())
+                .volumeType(options.getVolumeType())
+                .iops(options.getIops())
+                .throughputMiBps(options.getThroughputMiBps())
+                .encrypted(options.getEncrypted())
+                .tags(ImmutableMap.of(POOL_TAG, name));
+    }
+
+    private class Pool {
+        private final String name;
+        private final BlockDeviceOptions options;
+        private final Deque<BlockDevice> idle = Queues.newLinkedBlockingDeque();
+        private final AtomicInteger creating = new AtomicInteger();
+        private boolean recovered;
+
+        private Pool(String name, BlockDeviceOptions options) {
+            this.name = name;
+            this.options = options;
+        }
+
+        /** Adopts the idle volumes left tagged for this pool, e.g. before Brooklyn was restarted. */
+        private synchronized void recoverOnce(AbstractVolumeManager manager, JcloudsLocation location) {
+            if (recovered) return;
+            recovered = true;
+            try {
+                List<BlockDevice> found = manager.findAvailableBlockDevices(location, ImmutableMap.of(POOL_TAG, name));
+                if (!found.isEmpty()) {
+                    LOG.info("Recovered {} idle volumes for pool {} in {}", new Object[] {found.size(), name, location});
+                    idle.addAll(found);
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Problem recovering volumes for pool " + name + " in " + location + " (continuing)", e);
+            }
+        }
+
+        private synchronized void refillIfNeeded(final AbstractVolumeManager manager, final JcloudsLocation location) {
+            int lowWaterMark = location.config().get(LOW_WATER_MARK);
+            int maxIdle = location.config().get(MAX_IDLE);
+            if (idle.size() + creating.get() >= lowWaterMark) {
+                return;
+            }
+            while (idle.size() + creating.get() < maxIdle) {
+                creating.incrementAndGet();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            BlockDevice device = manager.createBlockDevice(location, options);
+                            idle.addLast(device);
+                            LOG.debug("Added volume {} to pool {}", device, name);
+                        } catch (RuntimeException e) {
+                            LOG.warn("Problem creating volume for pool " + name + " in " + location, e);
+                        } finally {
+                            creating.decrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        Map<String, Integer> idleCounts = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Pool> entry : pools.entrySet()) {
+            idleCounts.put(entry.getKey(), entry.getValue().idle.size());
+        }
+        return "VolumePool" + idleCounts;
+    }
+}
@@ -0,0 +1,63 @@
+package brooklyn.location.blockstore.api;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import brooklyn.location.blockstore.BlockDeviceOptions;
+import brooklyn.location.blockstore.FilesystemOptions;
+
+/**
+ * Non-blocking counterpart of {@link VolumeManager}: every lifecycle step returns immediately with a future
+ * that completes once the cloud (or the machine) reports that step as done.
+ * <p>
+ * The semantics of each step, including what happens on timeout, match those of the corresponding
+ * {@link VolumeManager} method.
+ */
+public interface AsyncVolumeManager {
+
+    /**
+     * @see VolumeManager#createBlockDevice(JcloudsLocation, BlockDeviceOptions)
+     */
+    ListenableFuture<BlockDevice> createBlockDevice(JcloudsLocation location, BlockDeviceOptions options);
+
+    /**
+     * @see VolumeManager#attachBlockDevice(JcloudsMachineLocation, BlockDevice, BlockDeviceOptions)
+     */
+    ListenableFuture<AttachedBlockDevice> attachBlockDevice(JcloudsMachineLocation machine, BlockDevice blockDevice, BlockDeviceOptions options);
+
+    /**
+     * @see VolumeManager#detachBlockDevice(AttachedBlockDevice)
+     */
+    ListenableFuture<BlockDevice> detachBlockDevice(AttachedBlockDevice attachedBlockDevice);
+
+    /**
+     * @see VolumeManager#deleteBlockDevice(BlockDevice)
+     */
+    ListenableFuture<Void> deleteBlockDevice(BlockDevice blockDevice);
+
+    /**
+     * @see VolumeManager#createFilesystem(AttachedBlockDevice, FilesystemOptions)
+     */
+    ListenableFuture<Void> createFilesystem(AttachedBlockDevice attachedDevice, FilesystemOptions options);
+
+    /**
+     * @see VolumeManager#mountFilesystem(AttachedBlockDevice, FilesystemOptions)
+     */
+    ListenableFuture<MountedBlockDevice> mountFilesystem(AttachedBlockDevice attachedDevice, FilesystemOptions options);
+
+    /**
+     * @see VolumeManager#unmountFilesystem(MountedBlockDevice)
+     */
+    ListenableFuture<AttachedBlockDevice> unmountFilesystem(MountedBlockDevice mountedDevice);
+
+    /**
+     * Chains {@link #createBlockDevice} and {@link #attachBlockDevice}, then creates and mounts the filesystem.
+     *
+     * @see VolumeManager#createAttachAndMountVolume(JcloudsMachineLocation, BlockDeviceOptions, FilesystemOptions)
+     */
+    ListenableFuture<MountedBlockDevice> createAttachAndMountVolume(JcloudsMachineLocation machine,
+            BlockDeviceOptions blockDeviceOptions, FilesystemOptions filesystemOptions);
+
+}
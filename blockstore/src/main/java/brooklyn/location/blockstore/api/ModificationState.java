@@ -0,0 +1,24 @@
+package brooklyn.location.blockstore.api;
+
+/**
+ * Progress of a change to a live volume's performance settings, following the states EBS reports for a
+ * volume modification.
+ */
+public enum ModificationState {
+
+    /** The change has been requested, and the volume still has its old settings. */
+    MODIFYING,
+
+    /** The volume has its new settings, but may not yet perform to them everywhere. */
+    OPTIMIZING,
+
+    /** The volume fully has its new settings, or no change is in progress. */
+    COMPLETED,
+
+    /** The change could not be made, so the volume keeps its old settings. */
+    FAILED;
+
+    public boolean isDone() {
+        return this == COMPLETED || this == FAILED;
+    }
+}
@@ -1,10 +1,14 @@
 package brooklyn.location.blockstore.api;
 
+import java.util.List;
+import java.util.Map;
+
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
 
 import brooklyn.location.blockstore.BlockDeviceOptions;
 import brooklyn.location.blockstore.FilesystemOptions;
+import brooklyn.location.blockstore.PerformanceOptions;
 
 /**
  * Customization hooks to ensure that any volume instances provisioned via a corresponding jclouds location become associated
@@ -36,6 +40,17 @@ public interface VolumeManager {
      */
     public AttachedBlockDevice attachBlockDevice(JcloudsMachineLocation machine, BlockDevice blockDevice, BlockDeviceOptions options);
 
+    /**
+     * Returns a volume that is already attached to the given VM, as the cloud's own kind of device and under the
+     * name the cloud gives it for its suffix; e.g. to resize or change a volume that was attached earlier.
+     *
+     * @param machine The VM where the volume is attached
+     * @param volumeId The id of the volume in the cloud
+     * @param deviceSuffix The suffix the volume was attached with
+     * @throws IllegalArgumentException If the cloud has no such volume
+     */
+    public AttachedBlockDevice findAttachedBlockDevice(JcloudsMachineLocation machine, String volumeId, char deviceSuffix);
+
     /**
      * Attaches the given volume to the given VM, and mounts it.
      * 
@@ -91,6 +106,72 @@ public interface VolumeManager {
     public MountedBlockDevice createAttachAndMountVolume(JcloudsMachineLocation machine,
             BlockDeviceOptions blockDeviceOptions, FilesystemOptions filesystemOptions);
 
+    /**
+     * Creates a new volume for the given machine and attaches it, without creating a filesystem; see
+     * {@link #createFilesystemsAndMount(JcloudsMachineLocation, Map)}.
+     *
+     * @param machine The VM where the volume should be attached
+     * @param blockDeviceOptions Configuration for the device, e.g. the device's name and suffix
+     * @param filesystemOptions The filesystem the volume is for (e.g. to pick a pooled volume); may be null
+     */
+    public AttachedBlockDevice createAndAttachBlockDevice(JcloudsMachineLocation machine,
+            BlockDeviceOptions blockDeviceOptions, FilesystemOptions filesystemOptions);
+
+    /**
+     * Creates new volumes for the given machine and attaches them, without creating filesystems. Where the cloud
+     * adds a volume by changing the VM (e.g. Azure), they are all added in one change rather than one by one.
+     *
+     * @param machine The VM where the volumes should be attached
+     * @param volumes Configuration for each volume
+     * @return The attached devices, in the order given
+     */
+    public List<AttachedBlockDevice> createAndAttachBlockDevices(JcloudsMachineLocation machine, List<VolumeOptions> volumes);
+
+    /**
+     * Creates a filesystem on each of the given devices, all attached to the given machine, and mounts them.
+     * This is done in one go where the machine allows, rather than device by device.
+     *
+     * @param machine The VM where the devices are attached
+     * @param devices The devices, with the configuration of filesystem type and mount point for each
+     * @return The mounted devices, in the order given
+     */
+    public List<MountedBlockDevice> createFilesystemsAndMount(JcloudsMachineLocation machine,
+            Map<? extends AttachedBlockDevice, FilesystemOptions> devices);
+
+    /**
+     * Grows the given volume to the given size, and then the partition (if any) and filesystem on it to fill the
+     * new space, all while it stays attached and mounted.
+     *
+     * @param mountedDevice A device that is attached to a machine and mounted
+     * @param newSizeInGb The new size of the volume, which must be larger than its current size
+     * @throws UnsupportedOperationException If the cloud does not allow volumes to be resized while attached
+     */
+    public MountedBlockDevice resizeBlockDevice(MountedBlockDevice mountedDevice, int newSizeInGb);
+
+    /**
+     * Grows the partition (if any) and filesystem of the given device to fill it, while it stays mounted; e.g.
+     * after the volume was resized by other means.
+     */
+    public void growFilesystem(MountedBlockDevice mountedDevice);
+
+    /**
+     * Changes the type, IOPS and/or throughput of the given volume while it stays attached. Returns once the
+     * volume has its new settings, which may be before the cloud has finished optimizing it for them; see
+     * {@link #getModificationState(AttachedBlockDevice)}.
+     *
+     * @param attachedDevice A device that is attached to a machine
+     * @param options The settings to change; those absent are left as they are
+     * @return The state of the change
+     * @throws UnsupportedOperationException If the cloud does not allow these settings to be changed on a live volume
+     */
+    public ModificationState modifyPerformance(AttachedBlockDevice attachedDevice, PerformanceOptions options);
+
+    /**
+     * Returns the state of the latest {@link #modifyPerformance performance change} to the given volume, which is
+     * {@link ModificationState#COMPLETED} if none is in progress.
+     */
+    public ModificationState getModificationState(AttachedBlockDevice attachedDevice);
+
     /**
      * Unmounts the given device and detaches the volume from the given VM.
      */
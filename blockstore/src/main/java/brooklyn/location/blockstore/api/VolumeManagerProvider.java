@@ -0,0 +1,27 @@
+package brooklyn.location.blockstore.api;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+
+/**
+ * Plugin point for supplying a {@link VolumeManager} for further clouds, or replacing a built-in one.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader}, by listing them in
+ * {@code META-INF/services/brooklyn.location.blockstore.api.VolumeManagerProvider}, and are consulted before
+ * the built-in providers. They must have a public no-arg constructor.
+ *
+ * @see brooklyn.location.blockstore.VolumeManagerRegistry
+ */
+public interface VolumeManagerProvider {
+
+    /**
+     * @param provider The jclouds provider id, e.g. "aws-ec2"
+     * @return True if this can supply a volume manager for the given provider
+     */
+    boolean isSupported(String provider);
+
+    /**
+     * Creates a volume manager for the given location. The result is shared by all callers using that
+     * location, so must be thread-safe.
+     */
+    VolumeManager newVolumeManager(JcloudsLocation location);
+}
@@ -0,0 +1,161 @@
+package brooklyn.location.blockstore.azure.arm;
+
+import brooklyn.location.blockstore.JcloudsHttp;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.net.MediaType;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.brooklyn.util.guava.Maybe;
+import org.jclouds.azurecompute.arm.features.DiskApi;
+import org.jclouds.azurecompute.arm.filters.ApiVersionFilter;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads and changes the settings of managed disks and VMs that the jclouds Azure ARM model does not have: the
+ * provisioned IOPS and throughput of Premium SSD v2 and Ultra disks, and whether a VM can attach Ultra disks.
+ * The requests go through the same context as the {@link DiskApi}, authenticated by the same OAuth filter.
+ */
+public class AzureArmManagedDisks {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AzureArmManagedDisks.class);
+
+    /** The first version of the disks API with Premium SSD v2 disks. */
+    @VisibleForTesting
+    static final String DISK_API_VERSION = "2022-07-02";
+
+    /** The virtual machines API has its own versions. */
+    @VisibleForTesting
+    static final String VM_API_VERSION = "2022-08-01";
+
+    private static final String UPDATING = "Updating";
+
+    private final JcloudsHttp http;
+    private final URI endpoint;
+
+    public AzureArmManagedDisks(JcloudsHttp http) {
+        this.http = checkNotNull(http, "http");
+        this.endpoint = http.getProviderEndpoint();
+    }
+
+    /**
+     * Requests the given IOPS and/or throughput for the disk, which Azure applies while it stays attached.
+     *
+     * @param diskId The disk's resource id, e.g. /subscriptions/.../providers/Microsoft.Compute/disks/mydisk
+     */
+    public void setPerformance(String diskId, Maybe<Integer> iops, Maybe<Integer> throughputMiBps) {
+        LOG.debug("Setting performance of disk {}: iops={}; throughputMiBps={}", new Object[] {diskId, iops, throughputMiBps});
+        http.invoke(setPerformanceRequest(endpoint, diskId, iops, throughputMiBps, getFilters()));
+    }
+
+    /**
+     * @return The disk's provisioning state (e.g. Succeeded, Failed), where Succeeded means that it has the given
+     *         IOPS and/or throughput; until it has them, its state is Updating
+     */
+    public String getPerformanceState(String diskId, Maybe<Integer> iops, Maybe<Integer> throughputMiBps) {
+        return parsePerformanceState(http.invoke(getRequest(endpoint, diskId, DISK_API_VERSION, getFilters())), iops, throughputMiBps);
+    }
+
+    /**
+     * @param vmId The VM's resource id
+     * @return Whether the VM has the capability to attach Ultra disks, which can only be set while it is deallocated
+     */
+    public boolean isUltraSsdEnabled(String vmId) {
+        return parseUltraSsdEnabled(http.invoke(getRequest(endpoint, vmId, VM_API_VERSION, getFilters())));
+    }
+
+    /**
+     * The filters of the {@link DiskApi}, except for the one that adds its API version, which only applies to the
+     * API's own methods; the requests here give their version themselves.
+     */
+    private List<HttpRequestFilter> getFilters() {
+        return ImmutableList.copyOf(Iterables.filter(http.getFilters(DiskApi.class),
+                Predicates.not(Predicates.instanceOf(ApiVersionFilter.class))));
+    }
+
+    @VisibleForTesting
+    static HttpRequest setPerformanceRequest(URI endpoint, String diskId, Maybe<Integer> iops, Maybe<Integer> throughputMiBps,
+            List<HttpRequestFilter> filters) {
+        checkArgument(iops.isPresent() || throughputMiBps.isPresent(), "No iops or throughput to set for disk %s", diskId);
+        JsonObject properties = new JsonObject();
+        if (iops.isPresent()) {
+            properties.addProperty("diskIOPSReadWrite", iops.get());
+        }
+        if (throughputMiBps.isPresent()) {
+            properties.addProperty("diskMBpsReadWrite", throughputMiBps.get());
+        }
+        JsonObject body = new JsonObject();
+        body.add("properties", properties);
+
+        Payload payload = Payloads.newStringPayload(body.toString());
+        payload.getContentMetadata().setContentType(MediaType.JSON_UTF_8.withoutParameters().toString());
+        return HttpRequest.builder()
+                .method("PATCH")
+                .endpoint(resourceUri(endpoint, diskId, DISK_API_VERSION))
+                .payload(payload)
+                .filters(filters)
+                .build();
+    }
+
+    @VisibleForTesting
+    static HttpRequest getRequest(URI endpoint, String resourceId, String apiVersion, List<HttpRequestFilter> filters) {
+        return HttpRequest.builder()
+                .method("GET")
+                .endpoint(resourceUri(endpoint, resourceId, apiVersion))
+                .filters(filters)
+                .build();
+    }
+
+    private static URI resourceUri(URI endpoint, String resourceId, String apiVersion) {
+        // Resource ids are absolute paths, which replace any subscription path of the endpoint
+        return endpoint.resolve(resourceId + "?api-version=" + apiVersion);
+    }
+
+    @VisibleForTesting
+    static String parsePerformanceState(String diskJson, Maybe<Integer> iops, Maybe<Integer> throughputMiBps) {
+        JsonObject properties = getProperties(diskJson);
+        String result = getString(properties, "provisioningState");
+        boolean applied = (iops.isAbsent() || iops.get().equals(getInteger(properties, "diskIOPSReadWrite")))
+                && (throughputMiBps.isAbsent() || throughputMiBps.get().equals(getInteger(properties, "diskMBpsReadWrite")));
+        return ("Succeeded".equals(result) && !applied) ? UPDATING : result;
+    }
+
+    @VisibleForTesting
+    static boolean parseUltraSsdEnabled(String vmJson) {
+        JsonElement capabilities = getProperties(vmJson).get("additionalCapabilities");
+        if (capabilities == null || !capabilities.isJsonObject()) {
+            return false;
+        }
+        JsonElement result = capabilities.getAsJsonObject().get("ultraSSDEnabled");
+        return result != null && !result.isJsonNull() && result.getAsBoolean();
+    }
+
+    private static JsonObject getProperties(String resourceJson) {
+        JsonElement properties = new JsonParser().parse(resourceJson).getAsJsonObject().get("properties");
+        return (properties != null && properties.isJsonObject()) ? properties.getAsJsonObject() : new JsonObject();
+    }
+
+    private static String getString(JsonObject object, String name) {
+        JsonElement result = object.get(name);
+        return (result != null && !result.isJsonNull()) ? result.getAsString() : null;
+    }
+
+    private static Integer getInteger(JsonObject object, String name) {
+        JsonElement result = object.get(name);
+        return (result != null && !result.isJsonNull()) ? result.getAsInt() : null;
+    }
+}
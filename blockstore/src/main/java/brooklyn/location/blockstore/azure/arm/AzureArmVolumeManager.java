@@ -3,17 +3,34 @@ package brooklyn.location.blockstore.azure.arm;
 import brooklyn.location.blockstore.AbstractVolumeManager;
 import brooklyn.location.blockstore.BlockDeviceOptions;
 import brooklyn.location.blockstore.FilesystemOptions;
+import brooklyn.location.blockstore.JcloudsHttp;
+import brooklyn.location.blockstore.PerformanceOptions;
 import brooklyn.location.blockstore.api.AttachedBlockDevice;
 import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.ModificationState;
 import brooklyn.location.blockstore.api.MountedBlockDevice;
+import brooklyn.location.blockstore.api.VolumeOptions;
+import brooklyn.location.blockstore.wait.WaitResult;
+import brooklyn.location.blockstore.wait.WaitStrategies;
+import brooklyn.location.blockstore.wait.WaitStrategy;
+import brooklyn.location.blockstore.wait.Waits;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
-import org.apache.brooklyn.util.repeat.Repeater;
+import org.apache.brooklyn.util.guava.Maybe;
 import org.apache.brooklyn.util.text.Identifiers;
 import org.apache.brooklyn.util.text.StringShortener;
 import org.apache.brooklyn.util.text.Strings;
@@ -35,22 +52,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class AzureArmVolumeManager extends AbstractVolumeManager {
     
     // Azure "unmanaged disks" don't support separate creation and attachment phases.
-    // Therefore we override methods like createAttachAndMountVolume. If/when we switch
+    // Therefore we override methods like createAndAttachBlockDevice. If/when we switch
     // to using azure's DiskApi then we can refactor this code again. However, that is
     // not yet supported in jclouds (v2.0.1).
     
     // TODO:
     //  - What should the "lun" number be? Make this configurable?
-    //  - waitDiskToAppear: make timeouts configurable?
     //  - OSDeviceName: was "/dev/sdc" during testing; in contrast AWS has "/dev/xvdc".
     //    Is this dependent on the image? Do we need to make the prefix configurable?
 
@@ -62,15 +79,51 @@ public class AzureArmVolumeManager extends AbstractVolumeManager {
     private static final String DEVICE_PREFIX = "/dev/sd";
     private static final String OS_DEVICE_PREFIX = "/dev/sd";
 
-    private static final Duration TIMEOUT = Duration.minutes(2);
-
-    @Override
-    public MountedBlockDevice createAttachAndMountVolume(JcloudsMachineLocation machine, BlockDeviceOptions deviceOptions,
-            FilesystemOptions filesystemOptions) {
-        AttachedBlockDevice attached = createAndAttachBlockDevice(machine, deviceOptions);
-        createFilesystem(attached, filesystemOptions);
-        return mountFilesystem(attached, filesystemOptions);
-    }
+    /**
+     * Resource group of each VM found by searching, keyed by identity and machine id, so that the
+     * subscription's resource groups are searched at most once per VM.
+     */
+    private static final Cache<String, String> RESOURCE_GROUPS = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    public static final ConfigKey<Duration> DISK_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "blockstore.azurecompute-arm.diskTimeout", "How long to wait for a new disk to be provisioned and attached", Duration.minutes(2));
+
+    public static final ConfigKey<String> DEFAULT_VOLUME_TYPE = ConfigKeys.newStringConfigKey(
+            "blockstore.azurecompute-arm.defaultVolumeType", "Disk SKU of volumes that do not give a volumeType, e.g. Premium_LRS",
+            StorageAccountType.STANDARD_LRS.toString());
+
+    /**
+     * Disk SKUs by volume type, normalised by {@link #normalise(String)}; both the SKU names and shorter aliases
+     * are accepted.
+     */
+    private static final Map<String, String> STORAGE_ACCOUNT_TYPES = ImmutableMap.<String, String>builder()
+            .put("standard", "Standard_LRS")
+            .put("standardlrs", "Standard_LRS")
+            .put("standardssd", "StandardSSD_LRS")
+            .put("standardssdlrs", "StandardSSD_LRS")
+            .put("standardssdzrs", "StandardSSD_ZRS")
+            .put("premium", "Premium_LRS")
+            .put("premiumlrs", "Premium_LRS")
+            .put("premiumzrs", "Premium_ZRS")
+            .put("premiumv2", "PremiumV2_LRS")
+            .put("premiumv2lrs", "PremiumV2_LRS")
+            .put("ultra", "UltraSSD_LRS")
+            .put("ultrassd", "UltraSSD_LRS")
+            .put("ultrassdlrs", "UltraSSD_LRS")
+            .build();
+
+    private static final String ULTRA_SSD = "UltraSSD_LRS";
+
+    /** The SKUs whose IOPS and throughput are provisioned rather than fixed by size, and which have no host caching. */
+    private static final Set<String> PROVISIONED_PERFORMANCE_TYPES = ImmutableSet.of("PremiumV2_LRS", ULTRA_SSD);
+
+    private static final Map<String, DataDisk.CachingTypes> CACHING_TYPES = ImmutableMap.of(
+            "none", DataDisk.CachingTypes.NONE,
+            "readonly", DataDisk.CachingTypes.READ_ONLY,
+            "readwrite", DataDisk.CachingTypes.READ_WRITE);
 
     @Override
     public void deleteBlockDevice(BlockDevice blockDevice) {
@@ -95,6 +148,11 @@ public class AzureArmVolumeManager extends AbstractVolumeManager {
         throw new UnsupportedOperationException("Cannot detach block-device using 'unmanaged disk' api: device="+device);
     }
 
+    @Override
+    public boolean canCreateBlockDeviceWithoutMachine() {
+        return false;
+    }
+
     @Override
     public BlockDevice createBlockDevice(JcloudsLocation location, BlockDeviceOptions options) {
         throw new UnsupportedOperationException("Cannot create block-device using 'unmanaged disk' api, without attaching to VM: location="+location+"; options="+options);
@@ -126,25 +184,69 @@ public class AzureArmVolumeManager extends AbstractVolumeManager {
         return location.getComputeService().getContext().unwrapApi(AzureComputeApi.class);
     }
     
-    private AttachedBlockDevice createAndAttachBlockDevice(JcloudsMachineLocation machine, BlockDeviceOptions options) {
+    @Override
+    public AttachedBlockDevice createAndAttachBlockDevice(JcloudsMachineLocation machine, BlockDeviceOptions options,
+            FilesystemOptions filesystemOptions) {
+        return Iterables.getOnlyElement(createAndAttachBlockDevices(machine, ImmutableList.of(new VolumeOptions(options, filesystemOptions))));
+    }
+
+    /**
+     * Adds a data disk for each volume, with consecutive LUNs after those of the VM's existing disks, in a single
+     * update of the VM; so adding several disks takes one update cycle, rather than one each. The update waits for
+     * any other change to the VM's disks from here, and includes the disks of concurrent calls for the same VM.
+     */
+    @Override
+    public List<AttachedBlockDevice> createAndAttachBlockDevices(JcloudsMachineLocation machine, List<VolumeOptions> volumes) {
+        JcloudsLocation location = machine.getParent();
+        for (VolumeOptions volume : volumes) {
+            BlockDeviceOptions options = volume.getBlockDeviceOptions();
+            getCaching(getStorageAccountType(options.getVolumeType().or(location.config().get(DEFAULT_VOLUME_TYPE))), options);
+        }
+        return volumes.isEmpty() ? ImmutableList.<AttachedBlockDevice>of() : createAndAttachBlockDevicesQueued(machine, volumes);
+    }
+
+    @Override
+    protected List<AttachedBlockDevice> createAndAttachBlockDevicesNow(JcloudsMachineLocation machine, List<VolumeOptions> volumes) {
         JcloudsLocation location = machine.getParent();
+        List<BlockDeviceOptions> optionsList = Lists.newArrayList();
+        List<String> storageAccountTypes = Lists.newArrayList();
+        List<Optional<DataDisk.CachingTypes>> cachings = Lists.newArrayList();
+        for (VolumeOptions volume : volumes) {
+            BlockDeviceOptions options = volume.getBlockDeviceOptions();
+            String storageAccountType = getStorageAccountType(options.getVolumeType().or(location.config().get(DEFAULT_VOLUME_TYPE)));
+            optionsList.add(options);
+            storageAccountTypes.add(storageAccountType);
+            cachings.add(getCaching(storageAccountType, options));
+        }
         String region = getRegionName(location);
         
         String machineId = machine.getJcloudsId();
-        String unqualifiedMachineId = machineId.contains("/") ? machineId.substring(machineId.indexOf("/")) : machineId;
+        String unqualifiedMachineId = getUnqualifiedMachineId(machineId);
         String storageAccountName = newStorageAccountName(unqualifiedMachineId);
 
         final AzureComputeApi api = getApi(location);
-        Optional<String> resourceGroupName = tryFindResourceGroupName(api, unqualifiedMachineId, region);
+        String cacheKey = location.getIdentity() + ":" + machineId;
+        Optional<String> resourceGroupName = getResourceGroupName(api, cacheKey, machineId, region);
         if (!resourceGroupName.isPresent()) {
             throw new IllegalStateException("Cannot create disk; VM "+unqualifiedMachineId+" not found in any resource group, machine "+machine+" in "+location);
         }
         
-        LOG.info("Creating and attaching device: location={}; machine={}; options={}; machineId={}; resourceGroupName={}", 
-                new Object[] {location, machine, options, machineId, resourceGroupName.get()});
+        LOG.info("Creating and attaching {} devices: location={}; machine={}; options={}; machineId={}; resourceGroupName={}", 
+                new Object[] {optionsList.size(), location, machine, optionsList, machineId, resourceGroupName.get()});
 
         VirtualMachineApi vmApi = api.getVirtualMachineApi(resourceGroupName.get());
         VirtualMachine vm = vmApi.get(unqualifiedMachineId);
+        if (vm == null) {
+            // The cached or derived resource group is stale (e.g. the VM was moved); search again, once.
+            LOG.debug("VM {} not found in resource group {}; searching all resource groups", unqualifiedMachineId, resourceGroupName.get());
+            RESOURCE_GROUPS.invalidate(cacheKey);
+            resourceGroupName = tryFindResourceGroupName(api, unqualifiedMachineId, region);
+            if (resourceGroupName.isPresent()) {
+                RESOURCE_GROUPS.put(cacheKey, resourceGroupName.get());
+                vmApi = api.getVirtualMachineApi(resourceGroupName.get());
+                vm = vmApi.get(unqualifiedMachineId);
+            }
+        }
         if (vm == null) {
             throw new IllegalStateException("Cannot create disk; VM "+unqualifiedMachineId+" not found in "+location+", resource group "+resourceGroupName+", for "+machine);
         }
@@ -152,21 +254,294 @@ public class AzureArmVolumeManager extends AbstractVolumeManager {
         if (diskApi == null) {
             throw new IllegalStateException("Cannot create disk; Disk "+unqualifiedMachineId+" not found in "+location+", resource group "+resourceGroupName+", for "+machine);
         }
+        if (storageAccountTypes.contains(ULTRA_SSD) && !getManagedDisks(location).isUltraSsdEnabled(vm.id())) {
+            throw new IllegalStateException("Cannot create "+ULTRA_SSD+" disk; VM "+unqualifiedMachineId+" does not have the "
+                    + "ultraSSDEnabled capability, which must be set when the VM is created or while it is deallocated, for "+machine);
+        }
         
-        int numExistingDisks = coundDataDisks(vm);
-        int lun = numExistingDisks; // starts from 0, so if have one disk already then next will be "1"  
+        int firstLun = nextLun(vm);
+        List<DataDisk> newDataDisks = Lists.newArrayList();
+        for (int i = 0; i < optionsList.size(); i++) {
+            newDataDisks.add(newDataDisk(vm.name(), optionsList.get(i).getSizeInGb(), firstLun + i, storageAccountTypes.get(i), cachings.get(i)));
+        }
+        List<Disk> disks = addDisks(vmApi, diskApi, vm, newDataDisks, WaitStrategies.forLocation(location, DISK_TIMEOUT));
 
-        Disk disk = addDisk(vmApi, diskApi, vm, options.getSizeInGb(), lun);
-        
-        BlockDevice blockDevice = new AzureArmBlockDevice(location, disk, resourceGroupName.get(), storageAccountName);
-        return blockDevice.attachedTo(machine, getVolumeDeviceName(options.getDeviceSuffix()));
+        for (int i = 0; i < disks.size(); i++) {
+            BlockDeviceOptions options = optionsList.get(i);
+            if (options.getIops().isPresent() || options.getThroughputMiBps().isPresent()) {
+                setPerformance(location, disks.get(i).id(), options.getIops(), options.getThroughputMiBps());
+            }
+        }
+
+        List<AttachedBlockDevice> result = Lists.newArrayList();
+        for (int i = 0; i < disks.size(); i++) {
+            BlockDevice blockDevice = new AzureArmBlockDevice(location, disks.get(i), resourceGroupName.get(), storageAccountName);
+            result.add(blockDevice.attachedTo(machine, getVolumeDeviceName(optionsList.get(i).getDeviceSuffix())));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the new size on the VM's data disk of the same name, in one update of the VM as when it was added.
+     * Azure only grows an attached managed disk if the VM size and disk type allow it (otherwise the update
+     * fails, and the VM must be deallocated first).
+     */
+    @Override
+    protected void resizeVolume(AttachedBlockDevice attachedDevice, final int newSizeInGb) {
+        updateDataDisk(attachedDevice, "resized",
+                new Function<DataDisk, DataDisk>() {
+                    @Override
+                    public DataDisk apply(DataDisk dataDisk) {
+                        return dataDisk.toBuilder().diskSizeGB(Integer.toString(newSizeInGb)).build();
+                    }
+                },
+                new Predicate<Disk>() {
+                    @Override
+                    public boolean apply(Disk disk) {
+                        return disk.properties().diskSizeGB() != null && disk.properties().diskSizeGB() >= newSizeInGb;
+                    }
+                });
     }
 
-    private int coundDataDisks(VirtualMachine vm) {
+    /**
+     * Changes the SKU of the VM's data disk to the given volume type (e.g. Premium_LRS), in one update of the VM;
+     * or the provisioned IOPS and/or throughput of a Premium SSD v2 or Ultra disk, which Azure changes on the disk
+     * itself. Azure only changes the SKU of an attached managed disk where the VM allows it (otherwise the update
+     * fails, and the VM must be deallocated first), and not to or from the SKUs with provisioned performance.
+     */
+    @Override
+    protected ModificationState modifyVolumePerformance(AttachedBlockDevice attachedDevice, PerformanceOptions options) {
+        if (options.getVolumeType().isPresent()) {
+            final String storageAccountType = getStorageAccountType(options.getVolumeType().get());
+            if (PROVISIONED_PERFORMANCE_TYPES.contains(storageAccountType)) {
+                throw new UnsupportedOperationException("Cannot change Azure disk " + attachedDevice + " to " + storageAccountType
+                        + "; it must be created as such");
+            }
+            checkPerformance(storageAccountType, options.getIops(), options.getThroughputMiBps());
+            updateDataDisk(attachedDevice, "changed to " + storageAccountType,
+                    new Function<DataDisk, DataDisk>() {
+                        @Override
+                        public DataDisk apply(DataDisk dataDisk) {
+                            String managedDiskId = dataDisk.managedDiskParameters() != null ? dataDisk.managedDiskParameters().id() : null;
+                            return dataDisk.toBuilder()
+                                    .managedDiskParameters(ManagedDiskParameters.create(managedDiskId, storageAccountType))
+                                    .build();
+                        }
+                    },
+                    new Predicate<Disk>() {
+                        @Override
+                        public boolean apply(Disk disk) {
+                            return hasSku(disk, storageAccountType);
+                        }
+                    });
+        } else if (options.getIops().isPresent() || options.getThroughputMiBps().isPresent()) {
+            Disk disk = getDisk(attachedDevice);
+            checkPerformance(disk.sku() != null ? disk.sku().name() : null, options.getIops(), options.getThroughputMiBps());
+            setPerformance(attachedDevice.getLocation(), disk.id(), options.getIops(), options.getThroughputMiBps());
+        }
+        return ModificationState.COMPLETED;
+    }
+
+    /**
+     * Sets the provisioned IOPS and/or throughput of the given disk, and waits until it has them.
+     */
+    private void setPerformance(JcloudsLocation location, final String diskId, final Maybe<Integer> iops,
+            final Maybe<Integer> throughputMiBps) {
+        final AzureArmManagedDisks managedDisks = getManagedDisks(location);
+        managedDisks.setPerformance(diskId, iops, throughputMiBps);
+
+        WaitResult<String> result = Waits.waitFor("azurecompute-arm.disk-performance-set", "waiting for disk performance to be set: " + diskId,
+                WaitStrategies.forLocation(location, DISK_TIMEOUT),
+                new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return managedDisks.getPerformanceState(diskId, iops, throughputMiBps);
+                    }
+                },
+                new Predicate<String>() {
+                    @Override
+                    public boolean apply(String state) {
+                        return ImmutableSet.of("Succeeded", "Failed", "Canceled").contains(state);
+                    }
+                });
+        if (!result.isSuccess() || !"Succeeded".equals(result.getLastValue())) {
+            throw new IllegalStateException("Disk performance not set successfully: disk="+diskId+"; iops="+iops
+                    +"; throughputMiBps="+throughputMiBps+"; state="+result.getLastValue());
+        }
+    }
+
+    private Disk getDisk(AttachedBlockDevice attachedDevice) {
+        JcloudsMachineLocation machine = attachedDevice.getMachine();
+        JcloudsLocation location = machine.getParent();
+        String machineId = machine.getJcloudsId();
+        AzureComputeApi api = getApi(location);
+        Optional<String> resourceGroupName = getResourceGroupName(api, location.getIdentity() + ":" + machineId, machineId, getRegionName(location));
+        if (!resourceGroupName.isPresent()) {
+            throw new IllegalStateException("Cannot find disk; VM "+getUnqualifiedMachineId(machineId)+" not found in any resource group, machine "+machine+" in "+location);
+        }
+        Disk result = api.getDiskApi(resourceGroupName.get()).get(attachedDevice.getId());
+        if (result == null) {
+            throw new IllegalStateException("Disk "+attachedDevice.getId()+" not found in "+location+", resource group "+resourceGroupName.get());
+        }
+        return result;
+    }
+
+    @VisibleForTesting
+    protected AzureArmManagedDisks getManagedDisks(JcloudsLocation location) {
+        return new AzureArmManagedDisks(new JcloudsHttp(location.getComputeService().getContext().utils().injector()));
+    }
+
+    private static boolean hasSku(Disk disk, String storageAccountType) {
+        return disk.sku() != null && storageAccountType.equalsIgnoreCase(disk.sku().name());
+    }
+
+    /**
+     * Changes the VM's data disk for the given device, in one update of the VM, and waits until the disk's
+     * provisioning has succeeded with the change {@code applied}. The update waits for any other change to the
+     * VM's disks from here.
+     */
+    private Disk updateDataDisk(final AttachedBlockDevice attachedDevice, final String change, final Function<DataDisk, DataDisk> update,
+            final Predicate<Disk> applied) {
+        return executeOnMachine(attachedDevice.getMachine(), new Callable<Disk>() {
+            @Override
+            public Disk call() {
+                return updateDataDiskNow(attachedDevice, change, update, applied);
+            }
+        });
+    }
+
+    private Disk updateDataDiskNow(AttachedBlockDevice attachedDevice, String change, Function<DataDisk, DataDisk> update,
+            final Predicate<Disk> applied) {
+        JcloudsMachineLocation machine = attachedDevice.getMachine();
+        JcloudsLocation location = machine.getParent();
+        String machineId = machine.getJcloudsId();
+        String unqualifiedMachineId = getUnqualifiedMachineId(machineId);
+        final String diskName = attachedDevice.getId();
+
+        AzureComputeApi api = getApi(location);
+        Optional<String> resourceGroupName = getResourceGroupName(api, location.getIdentity() + ":" + machineId, machineId, getRegionName(location));
+        if (!resourceGroupName.isPresent()) {
+            throw new IllegalStateException("Cannot update disk; VM "+unqualifiedMachineId+" not found in any resource group, machine "+machine+" in "+location);
+        }
+        VirtualMachineApi vmApi = api.getVirtualMachineApi(resourceGroupName.get());
+        VirtualMachine vm = vmApi.get(unqualifiedMachineId);
+        if (vm == null) {
+            throw new IllegalStateException("Cannot update disk; VM "+unqualifiedMachineId+" not found in "+location+", resource group "+resourceGroupName.get()+", for "+machine);
+        }
+        final DiskApi diskApi = api.getDiskApi(resourceGroupName.get());
+
+        VirtualMachineProperties oldProperties = vm.properties();
+        StorageProfile oldStorageProfile = oldProperties.storageProfile();
+        ImmutableList.Builder<DataDisk> newDataDisks = ImmutableList.builder();
+        boolean found = false;
+        for (DataDisk dataDisk : oldStorageProfile.dataDisks()) {
+            if (diskName.equals(dataDisk.name())) {
+                newDataDisks.add(update.apply(dataDisk));
+                found = true;
+            } else {
+                newDataDisks.add(dataDisk);
+            }
+        }
+        if (!found) {
+            throw new IllegalStateException("Cannot update disk; "+diskName+" is not a data disk of VM "+vm.name());
+        }
+        StorageProfile newStorageProfile = oldStorageProfile.toBuilder().dataDisks(newDataDisks.build()).build();
+        VirtualMachineProperties newProperties = oldProperties.toBuilder().storageProfile(newStorageProfile).build();
+
+        VirtualMachine newVm = vm.toBuilder().properties(newProperties).build();
+
+        vmApi.createOrUpdate(vm.name(), newVm.location(), newVm.properties(), newVm.tags(), newVm.plan());
+
+        WaitResult<Disk> result = Waits.waitFor("azurecompute-arm.disk-updated", "waiting for disk to be " + change + ": " + diskName,
+                WaitStrategies.forLocation(location, DISK_TIMEOUT),
+                new Callable<Disk>() {
+                    @Override
+                    public Disk call() throws Exception {
+                        return diskApi.get(diskName);
+                    }
+                },
+                new Predicate<Disk>() {
+                    @Override
+                    public boolean apply(Disk disk) {
+                        return disk != null && (!"Succeeded".equals(disk.properties().provisioningState())
+                                ? ImmutableSet.of("Failed", "Canceled").contains(disk.properties().provisioningState())
+                                : applied.apply(disk));
+                    }
+                });
+        Disk latest = result.getLastValue();
+        if (!result.isSuccess() || !"Succeeded".equals(latest.properties().provisioningState())) {
+            throw new IllegalStateException("Disk not "+change+" successfully "+latest);
+        }
+        return latest;
+    }
+
+    /**
+     * @return The disk SKU for the given volume type, which is either a SKU (e.g. Premium_LRS) or an alias for one
+     *         (e.g. premium, standardssd, premiumv2 or ultra), case-insensitively
+     * @throws IllegalArgumentException If the volume type is not known
+     */
+    @VisibleForTesting
+    static String getStorageAccountType(String volumeType) {
+        String result = STORAGE_ACCOUNT_TYPES.get(normalise(volumeType));
+        if (result == null) {
+            throw new IllegalArgumentException("Unknown Azure volumeType '" + volumeType + "'; expected one of "
+                    + ImmutableSet.copyOf(STORAGE_ACCOUNT_TYPES.values()));
+        }
+        return result;
+    }
+
+    /**
+     * Checks the options that depend on the disk SKU, returning the host caching for the disk if given.
+     * <p>
+     * Only Premium SSD v2 and Ultra disks have provisioned IOPS and throughput; where they are given, they are
+     * set once the disk exists, as the jclouds data disk model has no such settings.
+     */
+    @VisibleForTesting
+    static Optional<DataDisk.CachingTypes> getCaching(String storageAccountType, BlockDeviceOptions options) {
+        checkPerformance(storageAccountType, options.getIops(), options.getThroughputMiBps());
+        if (!options.getHostCaching().isPresent()) {
+            return Optional.absent();
+        }
+        DataDisk.CachingTypes result = CACHING_TYPES.get(normalise(options.getHostCaching().get()));
+        if (result == null) {
+            throw new IllegalArgumentException("Unknown Azure hostCaching '" + options.getHostCaching().get()
+                    + "'; expected None, ReadOnly or ReadWrite");
+        }
+        if (result != DataDisk.CachingTypes.NONE && PROVISIONED_PERFORMANCE_TYPES.contains(storageAccountType)) {
+            throw new IllegalArgumentException("Azure " + storageAccountType + " disks do not support host caching: " + options);
+        }
+        return Optional.of(result);
+    }
+
+    private static void checkPerformance(String storageAccountType, Maybe<Integer> iops, Maybe<Integer> throughputMiBps) {
+        if ((iops.isPresent() || throughputMiBps.isPresent()) && !PROVISIONED_PERFORMANCE_TYPES.contains(storageAccountType)) {
+            throw new IllegalArgumentException("Azure " + storageAccountType + " disks do not have provisioned iops or throughput: iops="
+                    + iops + "; throughputMiBps=" + throughputMiBps);
+        }
+    }
+
+    private static String normalise(String value) {
+        return value.toLowerCase().replace("_", "").replace("-", "");
+    }
+
+    /**
+     * The LUN after the highest of the VM's data disks, starting from 0; so a disk that was removed from the middle
+     * does not cause a clash.
+     */
+    private int nextLun(VirtualMachine vm) {
         VirtualMachineProperties properties = vm.properties();
         StorageProfile storageProfile = properties.storageProfile();
         List<DataDisk> dataDisks = (storageProfile != null) ? storageProfile.dataDisks() : null;
-        return (dataDisks != null) ? dataDisks.size() : 0;
+        int result = 0;
+        if (dataDisks != null) {
+            for (DataDisk dataDisk : dataDisks) {
+                if (dataDisk.lun() != null) {
+                    result = Math.max(result, dataDisk.lun() + 1);
+                }
+            }
+            result = Math.max(result, dataDisks.size());
+        }
+        return result;
     }
     
     private String newStorageAccountName(String unqualifiedMachineId) {
@@ -190,34 +565,81 @@ public class AzureArmVolumeManager extends AbstractVolumeManager {
         }
     }
 
-    private Disk addDisk(VirtualMachineApi vmApi, DiskApi diskApi, VirtualMachine vm, int diskSizeGB, int lun) {
+    private DataDisk newDataDisk(String vmName, int diskSizeGB, int lun, String storageAccountType,
+            Optional<DataDisk.CachingTypes> caching) {
+        DataDisk.Builder result = DataDisk.builder().name(vmName + '-' + lun + "-disk")
+                .diskSizeGB(Integer.toString(diskSizeGB))
+                .lun(lun)
+                .createOption(DataDisk.DiskCreateOptionTypes.EMPTY)
+                .managedDiskParameters(ManagedDiskParameters.create(null, storageAccountType));
+        if (caching.isPresent()) {
+            result.caching(caching.get());
+        }
+        return result.build();
+    }
+
+    /**
+     * Appends the new data disks to the VM in one update, then waits for each; as Azure provisions them together,
+     * the wait for all of them is about as long as for one.
+     */
+    private List<Disk> addDisks(VirtualMachineApi vmApi, DiskApi diskApi, VirtualMachine vm, List<DataDisk> newDataDisks,
+            WaitStrategy strategy) {
         String vmName = vm.name();
         VirtualMachineProperties oldProperties = vm.properties();
         StorageProfile oldStorageProfile = oldProperties.storageProfile();
         List<DataDisk> oldDataDisks = oldStorageProfile.dataDisks();
 
-        final String diskName = vmName + '-' + lun + "-disk";
-        DataDisk newDataDisk = DataDisk.builder().name(diskName)
-                .diskSizeGB(Integer.toString(diskSizeGB))
-                .lun(lun)
-                .createOption(DataDisk.DiskCreateOptionTypes.EMPTY)
-                .managedDiskParameters(ManagedDiskParameters.create(null, StorageAccountType.STANDARD_LRS.toString()))
-                .build();
-
-        ImmutableList<DataDisk> newDataDisks = ImmutableList.<DataDisk> builder().addAll(oldDataDisks).add(newDataDisk).build();
-        StorageProfile newStorageProfile = oldStorageProfile.toBuilder().dataDisks(newDataDisks).build();
+        ImmutableList<DataDisk> dataDisks = ImmutableList.<DataDisk> builder().addAll(oldDataDisks).addAll(newDataDisks).build();
+        StorageProfile newStorageProfile = oldStorageProfile.toBuilder().dataDisks(dataDisks).build();
         VirtualMachineProperties newProperties = oldProperties.toBuilder().storageProfile(newStorageProfile).build();
 
         VirtualMachine newVm = vm.toBuilder().properties(newProperties).build();
         
         vmApi.createOrUpdate(vmName, newVm.location(), newVm.properties(), newVm.tags(), newVm.plan());
-        return waitDiskToAppear(diskApi, diskName, TIMEOUT);
+
+        List<Disk> result = Lists.newArrayList();
+        for (DataDisk newDataDisk : newDataDisks) {
+            result.add(waitDiskToAppear(diskApi, newDataDisk.name(), strategy));
+        }
+        return result;
     }
 
     private String getRegionName(JcloudsLocation location) {
         return location.getRegion();
     }
 
+    /**
+     * Returns the resource group of the given VM. The jclouds id of an Azure ARM node is
+     * "resourceGroup/vmName", so this normally needs no API calls at all. Otherwise, or if that
+     * turned out to be stale, the result of {@link #tryFindResourceGroupName searching} is cached.
+     */
+    private Optional<String> getResourceGroupName(AzureComputeApi api, String cacheKey, String machineId, String region) {
+        String cached = RESOURCE_GROUPS.getIfPresent(cacheKey);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<String> fromId = getResourceGroupNameFromId(machineId);
+        if (fromId.isPresent()) {
+            return fromId;
+        }
+        Optional<String> found = tryFindResourceGroupName(api, getUnqualifiedMachineId(machineId), region);
+        if (found.isPresent()) {
+            RESOURCE_GROUPS.put(cacheKey, found.get());
+        }
+        return found;
+    }
+
+    @VisibleForTesting
+    static Optional<String> getResourceGroupNameFromId(String machineId) {
+        int separator = machineId.indexOf('/');
+        return (separator > 0) ? Optional.of(machineId.substring(0, separator)) : Optional.<String>absent();
+    }
+
+    @VisibleForTesting
+    static String getUnqualifiedMachineId(String machineId) {
+        return machineId.contains("/") ? machineId.substring(machineId.indexOf('/') + 1) : machineId;
+    }
+
     private Optional<String> tryFindResourceGroupName(AzureComputeApi api, String vmName, String region) {
         String defaultResourceGroupName = "jclouds-" + region;
         if (resourceGroupContainsVm(api, defaultResourceGroupName, vmName)) {
@@ -242,29 +664,31 @@ public class AzureArmVolumeManager extends AbstractVolumeManager {
         return vmApi.get(vmName) != null;
     }
 
-    private Disk waitDiskToAppear(final DiskApi diskApi, final String diskName, Duration waitTime) {
+    private Disk waitDiskToAppear(final DiskApi diskApi, final String diskName, WaitStrategy strategy) {
         checkNotNull(diskName, "diskName must not be null");
-        final AtomicReference<Disk> latest = new AtomicReference<>();
 
-        Repeater.create("Waiting Disk to complete: " + diskName)
-                .every(1, TimeUnit.SECONDS)
-                .limitTimeTo(waitTime)
-                .until(new Callable<Boolean>() {
+        WaitResult<Disk> result = Waits.waitFor("azurecompute-arm.disk-provisioned", "waiting for disk to complete: " + diskName,
+                strategy,
+                new Callable<Disk>() {
+                    @Override
+                    public Disk call() throws Exception {
+                        return diskApi.get(diskName);
+                    }
+                },
+                new Predicate<Disk>() {
                     @Override
-                    public Boolean call() throws Exception {
-                        Disk disk = diskApi.get(diskName);
-                        latest.set(disk);
+                    public boolean apply(Disk disk) {
                         return disk != null && ImmutableSet.of("Succeeded", "Failed", "Canceled").contains(disk.properties().provisioningState());
                     }
-                })
-                .run();
-        if (latest.get() == null || !"Succeeded".equals(latest.get().properties().provisioningState())) {
-            throw new IllegalStateException("Disk not created successfully "+latest.get());
+                });
+        Disk latest = result.getLastValue();
+        if (latest == null || !"Succeeded".equals(latest.properties().provisioningState())) {
+            throw new IllegalStateException("Disk not created successfully "+latest);
         }
-        if (!"Attached".equals(latest.get().properties().diskState())) {
-            throw new IllegalStateException("Disk has not been attached "+latest.get());
+        if (!"Attached".equals(latest.properties().diskState())) {
+            throw new IllegalStateException("Disk has not been attached "+latest);
         }
-        return latest.get();
+        return latest;
     }
 
     private static class AzureArmBlockDevice implements BlockDevice {
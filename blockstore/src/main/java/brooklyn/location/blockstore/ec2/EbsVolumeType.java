@@ -0,0 +1,169 @@
+package brooklyn.location.blockstore.ec2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.brooklyn.util.guava.Maybe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+import brooklyn.location.blockstore.BlockDeviceOptions;
+
+/**
+ * The EBS volume types, with the limits AWS places on the size, IOPS and throughput of each, so that options that
+ * would be rejected fail before a volume is requested.
+ */
+public enum EbsVolumeType {
+
+    //      value       size          iops              iops/GiB  throughput
+    STANDARD("standard", 1, 1024,     0, 0,             0,        0, 0),
+    GP2     ("gp2",      1, 16384,    0, 0,             0,        0, 0),
+    GP3     ("gp3",      1, 16384,    3000, 16000,      500,      125, 1000),
+    IO1     ("io1",      4, 16384,    100, 64000,       50,       0, 0),
+    IO2     ("io2",      4, 65536,    100, 256000,      1000,     0, 0),
+    ST1     ("st1",      125, 16384,  0, 0,             0,        0, 0),
+    SC1     ("sc1",      125, 16384,  0, 0,             0,        0, 0);
+
+    private static final Logger LOG = LoggerFactory.getLogger(EbsVolumeType.class);
+
+    /** The most throughput (MiB/s) per provisioned IOPS, for gp3 and as delivered by io1 and io2. */
+    private static final double MAX_THROUGHPUT_PER_IOPS = 0.25;
+
+    private final String value;
+    private final int minSizeInGb;
+    private final int maxSizeInGb;
+    private final int minIops;
+    private final int maxIops;
+    private final int maxIopsPerGb;
+    private final int minThroughputMiBps;
+    private final int maxThroughputMiBps;
+
+    EbsVolumeType(String value, int minSizeInGb, int maxSizeInGb, int minIops, int maxIops, int maxIopsPerGb,
+            int minThroughputMiBps, int maxThroughputMiBps) {
+        this.value = value;
+        this.minSizeInGb = minSizeInGb;
+        this.maxSizeInGb = maxSizeInGb;
+        this.minIops = minIops;
+        this.maxIops = maxIops;
+        this.maxIopsPerGb = maxIopsPerGb;
+        this.minThroughputMiBps = minThroughputMiBps;
+        this.maxThroughputMiBps = maxThroughputMiBps;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /** Whether IOPS can be provisioned. */
+    public boolean hasIops() {
+        return maxIops > 0;
+    }
+
+    /** Whether throughput can be provisioned separately from IOPS. */
+    public boolean hasThroughput() {
+        return maxThroughputMiBps > 0;
+    }
+
+    /** Whether IOPS must be provisioned, rather than there being a baseline. */
+    public boolean requiresIops() {
+        return hasIops() && !hasThroughput();
+    }
+
+    /**
+     * @return The type with the given API value (e.g. "gp3"), or absent for types not known here
+     */
+    public static Optional<EbsVolumeType> fromValue(String value) {
+        for (EbsVolumeType type : values()) {
+            if (type.value.equalsIgnoreCase(value)) {
+                return Optional.of(type);
+            }
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * @throws IllegalArgumentException If AWS would reject a volume of this type with the given settings
+     */
+    public void validate(int sizeInGb, Maybe<Integer> iops, Maybe<Integer> throughputMiBps) {
+        if (sizeInGb > 0) {
+            checkArgument(sizeInGb >= minSizeInGb && sizeInGb <= maxSizeInGb, "%s volumes must be %s-%s GiB, not %s",
+                    value, minSizeInGb, maxSizeInGb, sizeInGb);
+        }
+        if (!hasIops()) {
+            checkArgument(iops.isAbsent(), "%s volumes do not have provisioned iops", value);
+        } else if (requiresIops()) {
+            checkArgument(iops.isPresent(), "%s volumes require iops", value);
+        }
+        if (iops.isPresent()) {
+            checkArgument(iops.get() >= minIops && iops.get() <= maxIops, "%s volumes must have %s-%s iops, not %s",
+                    value, minIops, maxIops, iops.get());
+            // gp3 has its baseline whatever the size
+            if (sizeInGb > 0 && iops.get() > (hasThroughput() ? minIops : 0)) {
+                checkArgument(iops.get() <= maxIopsPerGb * sizeInGb, "%s volumes can have at most %s iops per GiB, not %s iops for %s GiB",
+                        value, maxIopsPerGb, iops.get(), sizeInGb);
+            }
+        }
+        if (!hasThroughput()) {
+            checkArgument(throughputMiBps.isAbsent(), "%s volumes do not have provisioned throughput", value);
+        } else if (throughputMiBps.isPresent()) {
+            checkArgument(throughputMiBps.get() >= minThroughputMiBps && throughputMiBps.get() <= maxThroughputMiBps,
+                    "%s volumes must have %s-%s MiB/s throughput, not %s", value, minThroughputMiBps, maxThroughputMiBps, throughputMiBps.get());
+            int effectiveIops = iops.or(minIops);
+            checkArgument(throughputMiBps.get() <= Math.max(minThroughputMiBps, effectiveIops * MAX_THROUGHPUT_PER_IOPS),
+                    "%s volumes can have at most %s MiB/s throughput per iops, not %s MiB/s for %s iops",
+                    value, MAX_THROUGHPUT_PER_IOPS, throughputMiBps.get(), effectiveIops);
+        }
+    }
+
+    /**
+     * Completes and checks the options for a new volume. Where no type is given but IOPS or throughput are, gp3
+     * is chosen if it can meet them (being cheaper than gp2 for the same performance), and otherwise io2. A gp3
+     * volume without IOPS is given those needed to carry the requested throughput, where that is more than the
+     * included baseline; IOPS that are given are only raised to the baseline, and must carry the throughput
+     * themselves. An io2 volume chosen for its throughput is given the IOPS that deliver it instead, as its
+     * throughput cannot be set separately.
+     *
+     * @throws IllegalArgumentException If AWS would reject the volume
+     */
+    public static BlockDeviceOptions resolve(BlockDeviceOptions options) {
+        BlockDeviceOptions result = BlockDeviceOptions.copy(options);
+        Maybe<Integer> iops = options.getIops();
+        Maybe<Integer> throughput = options.getThroughputMiBps();
+        int iopsForThroughput = throughput.isPresent() ? (int) Math.ceil(throughput.get() / MAX_THROUGHPUT_PER_IOPS) : 0;
+
+        boolean chosen = false;
+        if (!options.getVolumeType().isPresent()) {
+            if (iops.isAbsent() && throughput.isAbsent()) {
+                return result;
+            }
+            EbsVolumeType type = (iops.or(0) <= GP3.maxIops && throughput.or(0) <= GP3.maxThroughputMiBps) ? GP3 : IO2;
+            result.volumeType(type.value);
+            chosen = true;
+        }
+        Optional<EbsVolumeType> type = fromValue(result.getVolumeType().get());
+        if (!type.isPresent()) {
+            LOG.debug("Not checking options for volume type {}, not known here: {}", result.getVolumeType().get(), options);
+            return result;
+        }
+
+        if (type.get() == GP3) {
+            if (iops.isPresent()) {
+                if (iops.get() < GP3.minIops) {
+                    result.iops(GP3.minIops);
+                }
+            } else if (iopsForThroughput > GP3.minIops) {
+                result.iops(Math.min(iopsForThroughput, GP3.maxIops));
+            }
+        } else if (chosen && throughput.isPresent()) {
+            result.throughputMiBps(Maybe.<Integer>absent());
+            result.iops(Math.max(iops.or(type.get().minIops), iopsForThroughput));
+        }
+        if (!result.getIops().equals(iops) || !result.getVolumeType().equals(options.getVolumeType())) {
+            LOG.debug("Resolved EBS volume options {} to type {} with iops {}", new Object[] {options, result.getVolumeType(), result.getIops()});
+        }
+
+        type.get().validate(result.getSizeInGb(), result.getIops(), result.getThroughputMiBps());
+        return result;
+    }
+}
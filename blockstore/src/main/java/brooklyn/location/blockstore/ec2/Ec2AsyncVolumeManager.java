@@ -0,0 +1,116 @@
+package brooklyn.location.blockstore.ec2;
+
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.jclouds.ec2.domain.Attachment;
+import org.jclouds.ec2.domain.Volume;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+
+import brooklyn.location.blockstore.AsyncVolumeManagerAdapter;
+import brooklyn.location.blockstore.BlockDeviceOptions;
+import brooklyn.location.blockstore.Devices;
+import brooklyn.location.blockstore.FilesystemOptions;
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.MountedBlockDevice;
+
+/**
+ * Non-blocking EBS volume management: requests are issued on the executor and the wait for the volume to
+ * become available, or attached, is a future from the shared {@link Ec2VolumeStatusPoller} rather than a
+ * sleeping thread.
+ */
+public class Ec2AsyncVolumeManager extends AsyncVolumeManagerAdapter {
+
+    public Ec2AsyncVolumeManager(Ec2VolumeManager delegate, ListeningScheduledExecutorService executor) {
+        super(delegate, executor);
+    }
+
+    @Override
+    public Ec2VolumeManager getDelegate() {
+        return (Ec2VolumeManager) delegate;
+    }
+
+    @Override
+    public ListenableFuture<BlockDevice> createBlockDevice(final JcloudsLocation location, final BlockDeviceOptions options) {
+        ListenableFuture<BlockDevice> requested = executor.submit(new Callable<BlockDevice>() {
+            @Override
+            public BlockDevice call() throws Exception {
+                return getDelegate().requestBlockDevice(location, options);
+            }
+        });
+        return then(requested, new Function<BlockDevice, ListenableFuture<BlockDevice>>() {
+            @Override
+            public ListenableFuture<BlockDevice> apply(final BlockDevice device) {
+                return then(waitForVolumeToBeAvailable(device), new Function<Volume, ListenableFuture<BlockDevice>>() {
+                    @Override
+                    public ListenableFuture<BlockDevice> apply(Volume volume) {
+                        return Futures.immediateFuture(device);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<AttachedBlockDevice> attachBlockDevice(final JcloudsMachineLocation machine, final BlockDevice blockDevice,
+            final BlockDeviceOptions options) {
+        ListenableFuture<Attachment> requested = executor.submit(new Callable<Attachment>() {
+            @Override
+            public Attachment call() throws Exception {
+                return getDelegate().requestAttachBlockDevice(machine, blockDevice, options);
+            }
+        });
+        return then(requested, new Function<Attachment, ListenableFuture<AttachedBlockDevice>>() {
+            @Override
+            public ListenableFuture<AttachedBlockDevice> apply(final Attachment attachment) {
+                ListenableFuture<Volume> attached = getDelegate().waitForVolumeAttachment(blockDevice, attachment.getInstanceId(),
+                        getDelegate().getAttachedWaitStrategy(machine.getParent()));
+                return then(attached, new Function<Volume, ListenableFuture<AttachedBlockDevice>>() {
+                    @Override
+                    public ListenableFuture<AttachedBlockDevice> apply(Volume volume) {
+                        return Futures.immediateFuture(blockDevice.attachedTo(machine, attachment.getDevice()));
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<BlockDevice> detachBlockDevice(final AttachedBlockDevice attachedBlockDevice) {
+        ListenableFuture<Void> requested = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                getDelegate().requestDetachBlockDevice(attachedBlockDevice);
+                return null;
+            }
+        });
+        return then(requested, new Function<Void, ListenableFuture<BlockDevice>>() {
+            @Override
+            public ListenableFuture<BlockDevice> apply(Void input) {
+                return then(waitForVolumeToBeAvailable(attachedBlockDevice), new Function<Volume, ListenableFuture<BlockDevice>>() {
+                    @Override
+                    public ListenableFuture<BlockDevice> apply(Volume volume) {
+                        return Futures.immediateFuture(Devices.newBlockDevice(attachedBlockDevice.getLocation(), volume.getId()));
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<MountedBlockDevice> createAttachAndMountVolume(JcloudsMachineLocation machine,
+            BlockDeviceOptions blockDeviceOptions, FilesystemOptions filesystemOptions) {
+        return chainCreateAttachAndMountVolume(machine, blockDeviceOptions, filesystemOptions);
+    }
+
+    private ListenableFuture<Volume> waitForVolumeToBeAvailable(BlockDevice device) {
+        return getDelegate().waitForVolumeStatus(device, Volume.Status.AVAILABLE,
+                getDelegate().getAvailableWaitStrategy(device.getLocation()));
+    }
+}
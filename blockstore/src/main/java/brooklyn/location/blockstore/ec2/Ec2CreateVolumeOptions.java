@@ -0,0 +1,16 @@
+package brooklyn.location.blockstore.ec2;
+
+import org.jclouds.ec2.options.CreateVolumeOptions;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Adds the options that jclouds' {@link CreateVolumeOptions} does not yet have, e.g. the throughput of gp3 volumes.
+ */
+public class Ec2CreateVolumeOptions extends CreateVolumeOptions {
+
+    public Ec2CreateVolumeOptions withThroughput(int throughputMiBps) {
+        formParameters.replaceValues("Throughput", ImmutableList.of(Integer.toString(throughputMiBps)));
+        return this;
+    }
+}
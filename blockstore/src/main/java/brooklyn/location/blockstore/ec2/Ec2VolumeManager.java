@@ -1,43 +1,83 @@
 package brooklyn.location.blockstore.ec2;
 
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
-import org.apache.brooklyn.util.repeat.Repeater;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.ec2.EC2Api;
 import org.jclouds.ec2.domain.Attachment;
 import org.jclouds.ec2.domain.Volume;
 import org.jclouds.ec2.features.ElasticBlockStoreApi;
 import org.jclouds.ec2.features.TagApi;
-import org.jclouds.ec2.options.CreateVolumeOptions;
 import org.jclouds.ec2.options.DetachVolumeOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import brooklyn.location.blockstore.AbstractVolumeManager;
 import brooklyn.location.blockstore.BlockDeviceOptions;
 import brooklyn.location.blockstore.Devices;
+import brooklyn.location.blockstore.JcloudsHttp;
+import brooklyn.location.blockstore.PerformanceOptions;
+import brooklyn.location.blockstore.StripedBlockDevice;
 import brooklyn.location.blockstore.api.AttachedBlockDevice;
 import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.ModificationState;
+import brooklyn.location.blockstore.wait.WaitResult;
+import brooklyn.location.blockstore.wait.WaitStrategies;
+import brooklyn.location.blockstore.wait.WaitStrategy;
+import brooklyn.location.blockstore.wait.Waits;
 
 /**
  * For managing EBS volumes via EC2-compatible APIs.
+ * <p>
+ * The manager holds an {@link Ec2VolumeStatusPoller} per account and region, so it should be long-lived (see
+ * {@link brooklyn.location.blockstore.VolumeManagerRegistry}) and {@link #close closed} when no longer needed.
  */
-public class Ec2VolumeManager extends AbstractVolumeManager {
+public class Ec2VolumeManager extends AbstractVolumeManager implements Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(Ec2VolumeManager.class);
 
     private static final String DEVICE_PREFIX = "/dev/sd";
     private static final String OS_DEVICE_PREFIX = "/dev/xvd";
+    private static final String NVME_BY_ID_PREFIX = "/dev/disk/by-id/nvme-Amazon_Elastic_Block_Store_";
+
+    public static final ConfigKey<Duration> VOLUME_AVAILABLE_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "blockstore.aws-ec2.volumeAvailableTimeout", "How long to wait for an EBS volume to become available", Duration.ONE_MINUTE);
+
+    public static final ConfigKey<Duration> VOLUME_MODIFIED_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "blockstore.aws-ec2.volumeModifiedTimeout", "How long to wait for a modification of an EBS volume to take effect",
+            Duration.FIVE_MINUTES);
+
+    public static final ConfigKey<Duration> VOLUME_ATTACHED_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "blockstore.aws-ec2.volumeAttachedTimeout", "How long to wait for an EBS volume to be attached", Duration.ONE_MINUTE);
+
+    /** One poller per endpoint, credentials and region. */
+    private final ConcurrentMap<List<String>, Ec2VolumeStatusPoller> statusPollers = Maps.newConcurrentMap();
+    private volatile boolean closed;
 
     @Override
     protected String getVolumeDeviceName(char deviceSuffix) {
@@ -49,22 +89,56 @@ public class Ec2VolumeManager extends AbstractVolumeManager {
         return OS_DEVICE_PREFIX + deviceSuffix;
     }
 
+    /**
+     * On Nitro instances EBS volumes are NVMe devices, numbered in the order they were attached rather than by
+     * the requested name. They are found instead by the by-id link derived from their serial number, which is
+     * the volume id without the dash; some images also link the requested name (e.g. /dev/sdh) to the device.
+     */
+    @Override
+    protected List<String> getOSDeviceNames(AttachedBlockDevice attachedDevice) {
+        return ImmutableList.of(
+                getOSDeviceName(attachedDevice.getDeviceSuffix()),
+                getVolumeDeviceName(attachedDevice.getDeviceSuffix()),
+                getNvmeDeviceName(attachedDevice.getId()));
+    }
+
+    @VisibleForTesting
+    static String getNvmeDeviceName(String volumeId) {
+        return NVME_BY_ID_PREFIX + volumeId.replace("-", "");
+    }
+
     @Override
     public BlockDevice createBlockDevice(JcloudsLocation location, BlockDeviceOptions options) {
+        BlockDevice device = requestBlockDevice(location, options);
+        waitForVolumeToBeAvailable(device);
+
+        LOG.debug("Created block device: id="+device.getId()+"; location="+location);
+        return device;
+    }
+
+    /**
+     * Issues the request to create a volume, without waiting for it to become available.
+     */
+    protected BlockDevice requestBlockDevice(JcloudsLocation location, BlockDeviceOptions options) {
         LOG.debug("Creating block device: location={}; options={}", location, options);
 
         ElasticBlockStoreApi ebsApi = getEbsApi(location);
         TagApi tagApi = getTagApi(location);
 
-        CreateVolumeOptions cvo = CreateVolumeOptions.Builder.withSize(options.getSizeInGb());
+        options = EbsVolumeType.resolve(options);
+        Ec2CreateVolumeOptions cvo = new Ec2CreateVolumeOptions();
+        cvo.withSize(options.getSizeInGb());
         if (options.getIops().isPresent()) {
-            cvo = cvo.withIops(options.getIops().get());
+            cvo.withIops(options.getIops().get());
+        }
+        if (options.getThroughputMiBps().isPresent()) {
+            cvo.withThroughput(options.getThroughputMiBps().get());
         }
         if (options.getEncrypted().isPresent()) {
-            cvo = cvo.isEncrypted(options.getEncrypted().get());
+            cvo.isEncrypted(options.getEncrypted().get());
         }
         if (options.getVolumeType().isPresent()) {
-            cvo = cvo.volumeType(options.getVolumeType().get());
+            cvo.volumeType(options.getVolumeType().get());
         }
         
         Volume volume = ebsApi.createVolumeInAvailabilityZone(options.getZone(), cvo);
@@ -72,15 +146,22 @@ public class Ec2VolumeManager extends AbstractVolumeManager {
             tagApi.applyToResources(options.getTags(), ImmutableList.of(volume.getId()));
         }
 
-        BlockDevice device = Devices.newBlockDevice(location, volume.getId());
-        waitForVolumeToBeAvailable(device);
-
-        LOG.debug("Created block device: id="+device.getId()+"; location="+location);
-        return device;
+        return Devices.newBlockDevice(location, volume.getId());
     }
 
     @Override
     public AttachedBlockDevice attachBlockDevice(JcloudsMachineLocation machine, BlockDevice blockDevice, BlockDeviceOptions options) {
+        Attachment attachment = requestAttachBlockDevice(machine, blockDevice, options);
+        waitForVolumeToBeAttached(blockDevice, attachment.getInstanceId());
+
+        LOG.debug("Finished attaching block device: machine={}; device={}; options={}", new Object[]{machine, blockDevice, options});
+        return blockDevice.attachedTo(machine, attachment.getDevice());
+    }
+
+    /**
+     * Issues the request to attach a volume, without waiting for the attachment to complete.
+     */
+    protected Attachment requestAttachBlockDevice(JcloudsMachineLocation machine, BlockDevice blockDevice, BlockDeviceOptions options) {
         LOG.debug("Attaching block device: machine={}; device={}; options={}", new Object[]{machine, blockDevice, options});
 
         Optional<NodeMetadata> node = machine.getOptionalNode();
@@ -92,15 +173,23 @@ public class Ec2VolumeManager extends AbstractVolumeManager {
         String region = getRegionName(location);
         ElasticBlockStoreApi ebsApi = getEbsApi(location);
         
-        Attachment attachment = ebsApi.attachVolumeInRegion(region, blockDevice.getId(),
+        return ebsApi.attachVolumeInRegion(region, blockDevice.getId(),
                 node.get().getProviderId(), getVolumeDeviceName(options.getDeviceSuffix()));
-
-        LOG.debug("Finished attaching block device: machine={}; device={}; options={}", new Object[]{machine, blockDevice, options});
-        return blockDevice.attachedTo(machine, attachment.getDevice());
     }
 
     @Override
     public BlockDevice detachBlockDevice(AttachedBlockDevice attachedBlockDevice) {
+        requestDetachBlockDevice(attachedBlockDevice);
+        Volume volume = waitForVolumeToBeAvailable(attachedBlockDevice);
+
+        LOG.debug("Finished detaching block device: {}", attachedBlockDevice);
+        return Devices.newBlockDevice(attachedBlockDevice.getLocation(), volume.getId());
+    }
+
+    /**
+     * Issues the request to detach a volume, without waiting for it to become available again.
+     */
+    protected void requestDetachBlockDevice(AttachedBlockDevice attachedBlockDevice) {
         LOG.debug("Detaching block device: {}", attachedBlockDevice);
 
         Optional<NodeMetadata> node = attachedBlockDevice.getMachine().getOptionalNode();
@@ -116,10 +205,6 @@ public class Ec2VolumeManager extends AbstractVolumeManager {
                 DetachVolumeOptions.Builder
                         .fromDevice(attachedBlockDevice.getDeviceName())
                         .fromInstance(instanceId));
-        Volume volume = waitForVolumeToBeAvailable(attachedBlockDevice);
-
-        LOG.debug("Finished detaching block device: {}", attachedBlockDevice);
-        return Devices.newBlockDevice(attachedBlockDevice.getLocation(), volume.getId());
     }
 
     @Override
@@ -131,6 +216,78 @@ public class Ec2VolumeManager extends AbstractVolumeManager {
         ebsApi.deleteVolumeInRegion(region, blockDevice.getId());
     }
 
+    /**
+     * Modifies the volume's size with ModifyVolume, and waits for the modification to be optimizing, by when the
+     * volume has its new size.
+     */
+    @Override
+    protected void resizeVolume(AttachedBlockDevice attachedDevice, int newSizeInGb) {
+        modifyVolume(attachedDevice, ImmutableMap.of("Size", Integer.toString(newSizeInGb)));
+    }
+
+    /**
+     * Changes the volume's type, IOPS and/or throughput with ModifyVolume, and waits for the modification to be
+     * optimizing, by when the volume has its new performance (if not yet all of it); AWS then takes up to a few
+     * hours to complete it, tracked by {@link #getModificationState(AttachedBlockDevice)}.
+     */
+    @Override
+    protected ModificationState modifyVolumePerformance(AttachedBlockDevice attachedDevice, PerformanceOptions options) {
+        if (options.isEmpty()) {
+            return getModificationState(attachedDevice);
+        }
+        Volume volume = describeVolume(attachedDevice);
+        checkState(volume != null, "Volume %s not found", attachedDevice.getId());
+        Map<String, String> changes = Ec2VolumeModifications.getPerformanceChanges(volume.getVolumeType(), volume.getIops(),
+                volume.getSize(), options);
+        return modifyVolume(attachedDevice, changes);
+    }
+
+    @Override
+    public ModificationState getModificationState(AttachedBlockDevice attachedDevice) {
+        if (attachedDevice instanceof StripedBlockDevice.Attached) {
+            return super.getModificationState(attachedDevice);
+        }
+        return getVolumeModifications(attachedDevice.getLocation()).getModificationState(attachedDevice.getId());
+    }
+
+    private ModificationState modifyVolume(BlockDevice device, Map<String, String> changes) {
+        final Ec2VolumeModifications modifications = getVolumeModifications(device.getLocation());
+        final String volumeId = device.getId();
+        modifications.modifyVolume(volumeId, changes);
+
+        WaitResult<ModificationState> result = Waits.waitFor("aws-ec2.volume-modified",
+                "waiting for modification of volume " + volumeId + " to take effect",
+                getModifiedWaitStrategy(device.getLocation()),
+                new Callable<ModificationState>() {
+                    @Override
+                    public ModificationState call() throws Exception {
+                        return modifications.getModificationState(volumeId);
+                    }
+                },
+                new Predicate<ModificationState>() {
+                    @Override
+                    public boolean apply(ModificationState state) {
+                        return state != ModificationState.MODIFYING;
+                    }
+                });
+        ModificationState state = result.getLastValue();
+        if (state == ModificationState.FAILED) {
+            throw new IllegalStateException("Modification of volume " + volumeId + " failed: " + changes);
+        } else if (!result.isSuccess()) {
+            LOG.error("Modification of volume {} still not in effect after timeout; continuing. Last known state was: {}", volumeId, state);
+        }
+        return (state != null) ? state : ModificationState.MODIFYING;
+    }
+
+    protected Ec2VolumeModifications getVolumeModifications(JcloudsLocation location) {
+        return new Ec2VolumeModifications(new JcloudsHttp(location.getComputeService().getContext().utils().injector()),
+                getRegionName(location));
+    }
+
+    protected WaitStrategy getModifiedWaitStrategy(JcloudsLocation location) {
+        return WaitStrategies.forLocation(location, VOLUME_MODIFIED_TIMEOUT);
+    }
+
     /**
      * Describes the given volume. Or returns null if it is not found.
      */
@@ -143,6 +300,32 @@ public class Ec2VolumeManager extends AbstractVolumeManager {
         return Iterables.getFirst(volumes, null);
     }
     
+    @Override
+    protected boolean supportsPooling() {
+        return true;
+    }
+
+    @Override
+    protected List<BlockDevice> findAvailableBlockDevices(JcloudsLocation location, Map<String, String> tags) {
+        ImmutableMultimap.Builder<String, String> filter = ImmutableMultimap.builder();
+        filter.put("status", Volume.Status.AVAILABLE.value());
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            filter.put("tag:" + tag.getKey(), tag.getValue());
+        }
+        Set<Volume> volumes = getEbsApi(location).describeVolumesInRegionWithFilter(getRegionName(location), filter.build());
+
+        ImmutableList.Builder<BlockDevice> result = ImmutableList.builder();
+        for (Volume volume : volumes) {
+            result.add(Devices.newBlockDevice(location, volume.getId()));
+        }
+        return result.build();
+    }
+
+    @Override
+    protected void tagBlockDevice(BlockDevice device, Map<String, String> tags) {
+        getTagApi(device.getLocation()).applyToResources(tags, ImmutableList.of(device.getId()));
+    }
+
     // Naming convention is things like "us-east-1" or "us-east-1c"; strip off the availability zone suffix.
     // This is a hack to get around that jclouds accepts regions with the suffix for creating VMs, but not for ebsClient calls.
     private String getRegionName(JcloudsLocation location) {
@@ -185,25 +368,110 @@ public class Ec2VolumeManager extends AbstractVolumeManager {
      * @return the last fetched volume
      */
     private Volume waitForVolumeToBeAvailable(final BlockDevice device) {
-        final AtomicReference<Volume> lastVolume = new AtomicReference<Volume>();
-        
-        boolean available = Repeater.create("waiting for volume available:" + device)
-                .every(1, TimeUnit.SECONDS)
-                .limitTimeTo(60, TimeUnit.SECONDS)
-                .until(new Callable<Boolean>() {
+        try {
+            return waitForVolumeStatus(device, Volume.Status.AVAILABLE, getAvailableWaitStrategy(device.getLocation())).get();
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Returns a future for the volume reaching the given status, completed with the last known volume (having
+     * logged an error) if that does not happen within the strategy's timeout.
+     * <p>
+     * All waits in the same region share one {@link Ec2VolumeStatusPoller}, so that many in-flight volumes are
+     * described in a single call per poll.
+     */
+    public ListenableFuture<Volume> waitForVolumeStatus(BlockDevice device, final Volume.Status status, WaitStrategy strategy) {
+        return getStatusPoller(device.getLocation()).waitFor("aws-ec2.volume-" + status.value(), device.getId(),
+                new Predicate<Volume>() {
+                    @Override
+                    public boolean apply(Volume volume) {
+                        return volume.getStatus() == status;
+                    }
+                }, strategy);
+    }
+
+    /**
+     * Waits for the volume's attachment to the given instance to be {@link Attachment.Status#ATTACHED attached}.
+     * If it is not attached after a delay, logs an error.
+     * @return the last fetched volume
+     */
+    private Volume waitForVolumeToBeAttached(final BlockDevice device, String instanceId) {
+        try {
+            return waitForVolumeAttachment(device, instanceId, getAttachedWaitStrategy(device.getLocation())).get();
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Returns a future for the volume's attachment to the given instance being reported as attached, completed
+     * with the last known volume (having logged an error) if that does not happen within the strategy's timeout.
+     */
+    public ListenableFuture<Volume> waitForVolumeAttachment(BlockDevice device, final String instanceId, WaitStrategy strategy) {
+        return getStatusPoller(device.getLocation()).waitFor("aws-ec2.volume-attached", device.getId(),
+                new Predicate<Volume>() {
                     @Override
-                    public Boolean call() throws Exception {
-                        Volume volume = describeVolume(device);
-                        lastVolume.set(volume);
-                        return volume.getStatus() == Volume.Status.AVAILABLE;
-                    }})
-                .run();
+                    public boolean apply(Volume volume) {
+                        for (Attachment attachment : volume.getAttachments()) {
+                            if (instanceId.equals(attachment.getInstanceId()) && attachment.getStatus() == Attachment.Status.ATTACHED) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                }, strategy);
+    }
+
+    protected WaitStrategy getAttachedWaitStrategy(JcloudsLocation location) {
+        return WaitStrategies.forLocation(location, VOLUME_ATTACHED_TIMEOUT);
+    }
 
-        if (!available) {
-            LOG.error("Volume {} still not available. Last known was: {}; continuing", device, lastVolume.get());
+    protected WaitStrategy getAvailableWaitStrategy(JcloudsLocation location) {
+        return WaitStrategies.forLocation(location, VOLUME_AVAILABLE_TIMEOUT);
+    }
+
+    /**
+     * @throws IllegalStateException If the manager has been closed
+     */
+    protected Ec2VolumeStatusPoller getStatusPoller(JcloudsLocation location) {
+        String region = getRegionName(location);
+        // Not logged, so may include the credential
+        List<String> key = Arrays.asList(location.getEndpoint(), location.getIdentity(), location.getCredential(), region);
+        Ec2VolumeStatusPoller poller = statusPollers.get(key);
+        if (poller == null) {
+            checkState(!closed, "Volume manager %s is closed", this);
+            Ec2VolumeStatusPoller newPoller = new Ec2VolumeStatusPoller(region, getEbsApi(location));
+            poller = statusPollers.putIfAbsent(key, newPoller);
+            if (poller == null) {
+                poller = newPoller;
+                if (closed) {
+                    // Raced with close
+                    statusPollers.remove(key, poller);
+                    poller.close();
+                }
+            }
         }
+        return poller;
+    }
 
-        return lastVolume.get();
+    /**
+     * Closes the status pollers, failing any waits still pending on them.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (List<String> key : statusPollers.keySet()) {
+            Ec2VolumeStatusPoller poller = statusPollers.remove(key);
+            if (poller != null) {
+                poller.close();
+            }
+        }
     }
 
 }
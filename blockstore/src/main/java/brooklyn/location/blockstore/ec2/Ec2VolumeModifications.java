@@ -0,0 +1,175 @@
+package brooklyn.location.blockstore.ec2;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.brooklyn.util.guava.Maybe;
+import org.jclouds.aws.AWSResponseException;
+import org.jclouds.ec2.features.ElasticBlockStoreApi;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.jclouds.io.Payloads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.net.HttpHeaders;
+
+import brooklyn.location.blockstore.JcloudsHttp;
+import brooklyn.location.blockstore.PerformanceOptions;
+import brooklyn.location.blockstore.api.ModificationState;
+
+/**
+ * Calls EC2's ModifyVolume and DescribeVolumesModifications, which jclouds' {@link ElasticBlockStoreApi} does not
+ * have, as form requests signed in the same way as that API's.
+ * <p>
+ * A modification goes from modifying to optimizing, by when the volume has its new size and type (so that a
+ * filesystem can be grown), to completed.
+ */
+public class Ec2VolumeModifications {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Ec2VolumeModifications.class);
+
+    /** The first version of the EC2 API with ModifyVolume. */
+    @VisibleForTesting
+    static final String API_VERSION = "2016-11-15";
+
+    private static final Pattern MODIFICATION_STATE = Pattern.compile("<modificationState>\\s*([a-zA-Z]+)\\s*</modificationState>");
+    private static final String MODIFICATION_NOT_FOUND = "InvalidVolumeModification.NotFound";
+
+    private final JcloudsHttp http;
+    private final URI endpoint;
+
+    public Ec2VolumeModifications(JcloudsHttp http, String region) {
+        this.http = checkNotNull(http, "http");
+        this.endpoint = http.getRegionEndpoint(region);
+    }
+
+    /**
+     * Requests the given changes to the volume, keyed by their ModifyVolume parameter names (e.g. Size).
+     *
+     * @return The state of the modification that EC2 reports straight away, usually {@link ModificationState#MODIFYING}
+     */
+    public ModificationState modifyVolume(String volumeId, Map<String, String> changes) {
+        LOG.debug("Modifying volume {}: {}", volumeId, changes);
+        String response = http.invoke(modifyVolumeRequest(endpoint, volumeId, changes, getFilters()));
+        ModificationState result = parseModificationState(response);
+        if (result == null) {
+            throw new IllegalStateException("No modification state in response to modifying volume " + volumeId + ": " + response);
+        }
+        return result;
+    }
+
+    /**
+     * @return The state of the volume's latest modification, or {@link ModificationState#COMPLETED} if it has never
+     *         been modified
+     */
+    public ModificationState getModificationState(String volumeId) {
+        String response;
+        try {
+            response = http.invoke(describeVolumesModificationsRequest(endpoint, volumeId, getFilters()));
+        } catch (AWSResponseException e) {
+            if (e.getError() != null && MODIFICATION_NOT_FOUND.equals(e.getError().getCode())) {
+                return ModificationState.COMPLETED;
+            }
+            throw e;
+        }
+        ModificationState result = parseModificationState(response);
+        return (result != null) ? result : ModificationState.COMPLETED;
+    }
+
+    /**
+     * Maps the performance settings to ModifyVolume parameters, checking them against the limits of the volume's
+     * resulting type. IOPS that are not given are taken to stay as they are where the volume already has
+     * provisioned IOPS, as AWS keeps them.
+     *
+     * @param currentType The volume's current type (e.g. gp2)
+     * @param currentIops The volume's current IOPS, if known
+     * @param sizeInGb The volume's size
+     * @throws IllegalArgumentException If AWS would reject a volume of the resulting type with those settings
+     */
+    public static Map<String, String> getPerformanceChanges(String currentType, Integer currentIops, int sizeInGb,
+            PerformanceOptions options) {
+        String newType = options.getVolumeType().or(currentType);
+        Optional<EbsVolumeType> type = EbsVolumeType.fromValue(newType);
+        if (type.isPresent()) {
+            Maybe<Integer> iops = options.getIops();
+            Optional<EbsVolumeType> oldType = EbsVolumeType.fromValue(currentType);
+            if (iops.isAbsent() && currentIops != null && oldType.isPresent() && oldType.get().hasIops() && type.get().hasIops()) {
+                iops = Maybe.of(currentIops);
+            }
+            type.get().validate(sizeInGb, iops, options.getThroughputMiBps());
+        } else {
+            LOG.debug("Not checking performance changes for volume type {}, not known here: {}", newType, options);
+        }
+
+        ImmutableMap.Builder<String, String> result = ImmutableMap.builder();
+        if (options.getVolumeType().isPresent()) {
+            result.put("VolumeType", options.getVolumeType().get());
+        }
+        if (options.getIops().isPresent()) {
+            result.put("Iops", Integer.toString(options.getIops().get()));
+        }
+        if (options.getThroughputMiBps().isPresent()) {
+            result.put("Throughput", Integer.toString(options.getThroughputMiBps().get()));
+        }
+        return result.build();
+    }
+
+    private List<HttpRequestFilter> getFilters() {
+        return http.getFilters(ElasticBlockStoreApi.class);
+    }
+
+    @VisibleForTesting
+    static HttpRequest modifyVolumeRequest(URI endpoint, String volumeId, Map<String, String> changes, List<HttpRequestFilter> filters) {
+        ImmutableMultimap.Builder<String, String> params = ImmutableMultimap.<String, String>builder()
+                .put("Action", "ModifyVolume")
+                .put("Version", API_VERSION)
+                .put("VolumeId", volumeId);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            params.put(change.getKey(), change.getValue());
+        }
+        return formRequest(endpoint, params.build(), filters);
+    }
+
+    @VisibleForTesting
+    static HttpRequest describeVolumesModificationsRequest(URI endpoint, String volumeId, List<HttpRequestFilter> filters) {
+        return formRequest(endpoint, ImmutableMultimap.of(
+                "Action", "DescribeVolumesModifications",
+                "Version", API_VERSION,
+                "VolumeId.1", volumeId), filters);
+    }
+
+    private static HttpRequest formRequest(URI endpoint, ImmutableMultimap<String, String> params, List<HttpRequestFilter> filters) {
+        // The signer needs the host header, which jclouds' EC2 APIs add as virtual hosts
+        URI uri = (endpoint.getPath() == null || endpoint.getPath().isEmpty()) ? endpoint.resolve("/") : endpoint;
+        return HttpRequest.builder()
+                .method("POST")
+                .endpoint(uri)
+                .addHeader(HttpHeaders.HOST, uri.getHost())
+                .payload(Payloads.newUrlEncodedFormPayload(params))
+                .filters(filters)
+                .build();
+    }
+
+    /**
+     * @return The first modification state in the given ModifyVolume or DescribeVolumesModifications response, or
+     *         null if there is none
+     */
+    @VisibleForTesting
+    static ModificationState parseModificationState(String response) {
+        Matcher matcher = MODIFICATION_STATE.matcher(response);
+        if (!matcher.find()) {
+            return null;
+        }
+        return ModificationState.valueOf(matcher.group(1).toUpperCase());
+    }
+}
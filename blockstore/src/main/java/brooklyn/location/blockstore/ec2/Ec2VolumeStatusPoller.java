@@ -0,0 +1,298 @@
+package brooklyn.location.blockstore.ec2;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.jclouds.ec2.domain.Volume;
+import org.jclouds.ec2.features.ElasticBlockStoreApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import brooklyn.location.blockstore.wait.WaitResult;
+import brooklyn.location.blockstore.wait.WaitStrategy;
+import brooklyn.location.blockstore.wait.Waits;
+
+/**
+ * Polls the status of every volume being waited on in a region with a single DescribeVolumes call per tick,
+ * rather than one call per volume, to stay clear of EC2 API throttling when many volumes are in flight.
+ * <p>
+ * Each waiter backs off according to its own {@link WaitStrategy}; a tick describes only the volumes whose
+ * next poll is due, and the next tick is scheduled for the earliest of the remaining waiters. The poller only
+ * runs while there are waiters. A waiter whose timeout expires is completed with the last volume seen (or null),
+ * mirroring the previous per-volume wait which logged and continued.
+ * <p>
+ * A poller belongs to the {@link Ec2VolumeManager} that created it, and is {@link #close closed} along with that
+ * manager, so that it does not outlive the API it was given. Each poller has its own scheduler thread (unless
+ * one is passed in), so that slow calls in one region do not delay polls in another; the thread exits while
+ * there are no waiters.
+ */
+public class Ec2VolumeStatusPoller implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Ec2VolumeStatusPoller.class);
+
+    private static final long RETRY_AFTER_PROBLEM_MS = 1000;
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final String region;
+    private final ElasticBlockStoreApi ebsApi;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+
+    private final ListMultimap<String, Waiter> waiters = LinkedListMultimap.create();
+    private ScheduledFuture<?> ticker;
+    private long tickAt;
+    private boolean closed;
+
+    /**
+     * Creates a poller with its own scheduler thread, which is shut down when the poller is closed.
+     */
+    public Ec2VolumeStatusPoller(String region, ElasticBlockStoreApi ebsApi) {
+        this(region, ebsApi, newScheduler(region), true);
+    }
+
+    public Ec2VolumeStatusPoller(String region, ElasticBlockStoreApi ebsApi, ScheduledExecutorService scheduler) {
+        this(region, ebsApi, scheduler, false);
+    }
+
+    private Ec2VolumeStatusPoller(String region, ElasticBlockStoreApi ebsApi, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.region = region;
+        this.ebsApi = checkNotNull(ebsApi, "ebsApi");
+        this.scheduler = checkNotNull(scheduler, "scheduler");
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    private static ScheduledExecutorService newScheduler(String region) {
+        ScheduledThreadPoolExecutor result = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-blockstore-ec2-poller-" + region + "-%d")
+                .setDaemon(true)
+                .build());
+        result.setKeepAliveTime(IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        result.allowCoreThreadTimeOut(true);
+        result.setRemoveOnCancelPolicy(true);
+        return result;
+    }
+
+    /**
+     * Returns a future that completes with the volume once {@code condition} accepts it, or with the last
+     * volume seen once the strategy's timeout has expired.
+     *
+     * @param name The kind of wait, under which its duration is {@link Waits#record recorded}
+     * @throws IllegalStateException If the poller has been closed
+     */
+    public ListenableFuture<Volume> waitFor(String name, String volumeId, Predicate<? super Volume> condition, WaitStrategy strategy) {
+        long now = System.currentTimeMillis();
+        Waiter waiter = new Waiter(name, volumeId, condition, strategy, now);
+        synchronized (waiters) {
+            checkState(!closed, "Volume status poller for %s is closed", region);
+            waiters.put(volumeId, waiter);
+            scheduleTick(now);
+        }
+        return waiter.result;
+    }
+
+    public int getPendingCount() {
+        synchronized (waiters) {
+            return waiters.size();
+        }
+    }
+
+    /**
+     * Stops polling, failing any waits still pending, and shuts down the scheduler if the poller created it.
+     */
+    @Override
+    public void close() {
+        List<Waiter> pending;
+        synchronized (waiters) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (ticker != null) {
+                ticker.cancel(false);
+                ticker = null;
+            }
+            pending = ImmutableList.copyOf(waiters.values());
+            waiters.clear();
+        }
+        for (Waiter waiter : pending) {
+            waiter.result.setException(new IllegalStateException("Volume status poller for " + region
+                    + " closed while waiting for volume " + waiter.volumeId));
+        }
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        Set<String> volumeIds;
+        synchronized (waiters) {
+            ticker = null;
+            ImmutableSet.Builder<String> due = ImmutableSet.builder();
+            for (Waiter waiter : waiters.values()) {
+                if (waiter.nextPollAt <= now) due.add(waiter.volumeId);
+            }
+            volumeIds = due.build();
+        }
+
+        Map<String, Volume> volumes = volumeIds.isEmpty() ? Maps.<String, Volume>newHashMap() : describe(volumeIds);
+        now = System.currentTimeMillis();
+
+        List<Waiter> finished;
+        synchronized (waiters) {
+            ImmutableList.Builder<Waiter> builder = ImmutableList.builder();
+            for (Waiter waiter : waiters.values()) {
+                if (waiter.result.isCancelled()) {
+                    builder.add(waiter);
+                    continue;
+                }
+                if (!volumeIds.contains(waiter.volumeId) || waiter.nextPollAt > now) {
+                    continue;
+                }
+                Volume volume = volumes.get(waiter.volumeId);
+                waiter.attempts++;
+                if (volume != null) waiter.latest = volume;
+                if ((volume != null && waiter.condition.apply(volume)) || now >= waiter.deadline) {
+                    builder.add(waiter);
+                } else {
+                    long delay = waiter.strategy.getDelay(waiter.attempts).toMilliseconds();
+                    waiter.nextPollAt = Math.min(now + delay, waiter.deadline);
+                }
+            }
+            finished = builder.build();
+            for (Waiter waiter : finished) {
+                waiters.remove(waiter.volumeId, waiter);
+            }
+            scheduleTick(now);
+        }
+
+        for (Waiter waiter : finished) {
+            if (waiter.result.isCancelled()) {
+                continue;
+            }
+            boolean success = waiter.latest != null && waiter.condition.apply(waiter.latest);
+            if (!success) {
+                LOG.error("Volume {} still not in expected state. Last known was: {}; continuing", waiter.volumeId, waiter.latest);
+            }
+            Waits.record(waiter.name, "waiting for volume " + waiter.volumeId + " in " + region,
+                    new WaitResult<Volume>(success, waiter.latest, null, waiter.attempts, Duration.millis(now - waiter.started)));
+            waiter.result.set(waiter.latest);
+        }
+    }
+
+    /**
+     * Describes all the given volumes in one call. If that fails (e.g. one of the volumes was deleted or is not
+     * yet visible) falls back to describing each individually, so that one bad volume does not hold up the rest.
+     */
+    private Map<String, Volume> describe(Set<String> volumeIds) {
+        Map<String, Volume> result = Maps.newHashMap();
+        try {
+            for (Volume volume : ebsApi.describeVolumesInRegion(region, Iterables.toArray(volumeIds, String.class))) {
+                result.put(volume.getId(), volume);
+            }
+        } catch (RuntimeException e) {
+            if (volumeIds.size() == 1) {
+                LOG.debug("Problem describing volume " + volumeIds + " in " + region + " (will retry)", e);
+                return result;
+            }
+            LOG.debug("Problem describing volumes " + volumeIds + " in " + region + "; describing individually", e);
+            for (String volumeId : volumeIds) {
+                try {
+                    Volume volume = Iterables.getFirst(ebsApi.describeVolumesInRegion(region, volumeId), null);
+                    if (volume != null) result.put(volumeId, volume);
+                } catch (RuntimeException e2) {
+                    LOG.debug("Problem describing volume " + volumeId + " in " + region + " (will retry)", e2);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ensures a tick is scheduled for when the earliest waiter is next due, if there are any waiters.
+     * Must hold lock on waiters.
+     */
+    private void scheduleTick(long now) {
+        if (closed || waiters.isEmpty()) {
+            if (ticker != null) {
+                ticker.cancel(false);
+                ticker = null;
+            }
+            return;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (Waiter waiter : waiters.values()) {
+            earliest = Math.min(earliest, waiter.nextPollAt);
+        }
+        if (ticker != null) {
+            if (tickAt <= earliest) {
+                return;
+            }
+            ticker.cancel(false);
+        }
+        tickAt = earliest;
+        ticker = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (RuntimeException e) {
+                    LOG.warn("Problem polling volume status in " + region + " (continuing)", e);
+                    synchronized (waiters) {
+                        // back off every waiter so that a persistent problem does not spin
+                        long now = System.currentTimeMillis();
+                        for (Waiter waiter : waiters.values()) {
+                            waiter.nextPollAt = Math.max(waiter.nextPollAt, now + RETRY_AFTER_PROBLEM_MS);
+                        }
+                        ticker = null;
+                        scheduleTick(now);
+                    }
+                }
+            }
+        }, Math.max(0, earliest - now), TimeUnit.MILLISECONDS);
+    }
+
+    private static class Waiter {
+        private final String name;
+        private final String volumeId;
+        private final Predicate<? super Volume> condition;
+        private final WaitStrategy strategy;
+        private final long started;
+        private final long deadline;
+        private final SettableFuture<Volume> result = SettableFuture.create();
+        private volatile Volume latest;
+        private int attempts;
+        private long nextPollAt;
+
+        private Waiter(String name, String volumeId, Predicate<? super Volume> condition, WaitStrategy strategy, long now) {
+            this.name = name;
+            this.volumeId = volumeId;
+            this.condition = condition;
+            this.strategy = checkNotNull(strategy, "strategy");
+            this.started = now;
+            this.deadline = now + strategy.getTimeout().toMilliseconds();
+            this.nextPollAt = now;
+        }
+    }
+}
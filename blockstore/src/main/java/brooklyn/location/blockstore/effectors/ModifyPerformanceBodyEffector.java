@@ -0,0 +1,194 @@
+package brooklyn.location.blockstore.effectors;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import brooklyn.location.blockstore.PerformanceOptions;
+import brooklyn.location.blockstore.VolumeManagerFactory;
+import brooklyn.location.blockstore.api.VolumeManager;
+import brooklyn.location.blockstore.wait.WaitStrategies;
+import brooklyn.location.blockstore.wait.Waits;
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.effector.AddEffector;
+import org.apache.brooklyn.core.effector.EffectorBody;
+import org.apache.brooklyn.core.effector.EffectorTasks;
+import org.apache.brooklyn.core.effector.Effectors;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.config.ConfigBag;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.reflect.TypeToken;
+
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.ModificationState;
+
+/**
+ * Effector for changing the type, IOPS and/or throughput of an attached disk during runtime, without detaching it.
+ * It is applied in the same way as {@link ExtraHddBodyEffector}:
+ * <pre>
+ *    brooklyn.initializers:
+ *     - type: brooklyn.location.blockstore.effectors.ModifyPerformanceBodyEffector
+ * </pre>
+ *
+ * The disk is identified by its volume id and the suffix it was attached with; settings that are omitted are left
+ * as they are. For example:
+ * <pre>
+ *    volumeId: vol-0123456789abcdef0
+ *    deviceSuffix: h
+ *    iops: 16000
+ * </pre>
+ *
+ * The effector returns once the disk has its new settings. The state of the change for each volume is published
+ * in the {@link #MODIFICATION_STATE} sensor, which is kept up to date in the background while the cloud is still
+ * optimizing the disk for them.
+ */
+public class ModifyPerformanceBodyEffector extends AddEffector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModifyPerformanceBodyEffector.class);
+
+    public static final ConfigKey<String> VOLUME_ID = ConfigKeys.newStringConfigKey(
+            "volumeId", "Id of the volume to change");
+
+    public static final ConfigKey<Character> DEVICE_SUFFIX = ConfigKeys.newConfigKey(
+            Character.class, "deviceSuffix", "Suffix of the device the volume was attached as");
+
+    public static final ConfigKey<String> VOLUME_TYPE = ConfigKeys.newStringConfigKey(
+            "volumeType", "New type of the volume; if omitted, the type is not changed");
+
+    public static final ConfigKey<Integer> IOPS = ConfigKeys.newIntegerConfigKey(
+            "iops", "New provisioned IOPS of the volume; if omitted, the IOPS are not changed");
+
+    public static final ConfigKey<Integer> THROUGHPUT_MIBPS = ConfigKeys.newIntegerConfigKey(
+            "throughputMiBps", "New provisioned throughput of the volume; if omitted, the throughput is not changed");
+
+    /** Set on the machine's location. */
+    public static final ConfigKey<Duration> MODIFICATION_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "blockstore.modificationTimeout", "How long to keep tracking a change to a volume's performance", Duration.hours(24));
+
+    public static final AttributeSensor<Map<String, ModificationState>> MODIFICATION_STATE = Sensors.newSensor(
+            new TypeToken<Map<String, ModificationState>>() {},
+            "blockstore.volume.modificationState", "State of the latest performance change of each volume, by volume id");
+
+    public static final String MODIFY_PERFORMANCE_EFFECTOR_NAME = "modifyPerformance";
+
+    public ModifyPerformanceBodyEffector() {
+        super(newEffectorBuilder().build());
+    }
+
+    public static Effectors.EffectorBuilder<ModificationState> newEffectorBuilder() {
+        ConfigBag bag = ConfigBag.newInstance();
+        bag.put(EFFECTOR_NAME, MODIFY_PERFORMANCE_EFFECTOR_NAME);
+
+        Effectors.EffectorBuilder<ModificationState> eff = AddEffector.newEffectorBuilder(ModificationState.class, bag)
+                .parameter(VOLUME_ID)
+                .parameter(DEVICE_SUFFIX)
+                .parameter(VOLUME_TYPE)
+                .parameter(IOPS)
+                .parameter(THROUGHPUT_MIBPS)
+                .description("An effector to change the type, iops and/or throughput of an attached hdd of the provisioned vm")
+                .impl(new Body());
+
+        return eff;
+    }
+
+    @Override
+    public void apply(EntityLocal entity) {
+        super.apply(entity);
+    }
+
+    public static class Body extends EffectorBody<ModificationState> {
+
+        @Override
+        public ModificationState call(ConfigBag parameters) {
+            String volumeId = Preconditions.checkNotNull(parameters.get(VOLUME_ID), VOLUME_ID.getName() + " is required");
+            Character deviceSuffix = Preconditions.checkNotNull(parameters.get(DEVICE_SUFFIX), DEVICE_SUFFIX.getName() + " is required");
+            PerformanceOptions options = new PerformanceOptions();
+            if (parameters.get(VOLUME_TYPE) != null) options.volumeType(parameters.get(VOLUME_TYPE));
+            if (parameters.get(IOPS) != null) options.iops(parameters.get(IOPS));
+            if (parameters.get(THROUGHPUT_MIBPS) != null) options.throughputMiBps(parameters.get(THROUGHPUT_MIBPS));
+            Preconditions.checkArgument(!options.isEmpty(), "One of %s, %s or %s is required",
+                    VOLUME_TYPE.getName(), IOPS.getName(), THROUGHPUT_MIBPS.getName());
+
+            JcloudsMachineLocation machine = EffectorTasks.getMachine(entity(), JcloudsMachineLocation.class);
+
+            LOG.info("Invoking effector " + MODIFY_PERFORMANCE_EFFECTOR_NAME + " for volume " + volumeId + " with " + options);
+
+            return modify(entity(), VolumeManagerFactory.getVolumeManager(machine), machine, volumeId, deviceSuffix, options);
+        }
+    }
+
+    /**
+     * Changes the volume, having had the manager find it as the cloud's own kind of device, and records the state
+     * of the change on the entity; tracking it in the background if it is not done.
+     */
+    @VisibleForTesting
+    static ModificationState modify(final Entity entity, final VolumeManager volumeManager, final JcloudsMachineLocation machine,
+            String volumeId, char deviceSuffix, PerformanceOptions options) {
+        final AttachedBlockDevice device = volumeManager.findAttachedBlockDevice(machine, volumeId, deviceSuffix);
+
+        recordState(entity, volumeId, ModificationState.MODIFYING);
+        ModificationState state;
+        try {
+            state = volumeManager.modifyPerformance(device, options);
+        } catch (RuntimeException e) {
+            recordState(entity, volumeId, ModificationState.FAILED);
+            throw e;
+        }
+        recordState(entity, volumeId, state);
+
+        if (!state.isDone()) {
+            Entities.submit(entity, Tasks.<ModificationState>builder()
+                    .displayName("Tracking performance change of volume " + volumeId)
+                    .body(new Callable<ModificationState>() {
+                        @Override
+                        public ModificationState call() throws Exception {
+                            return trackState(entity, volumeManager, device, machine);
+                        }
+                    })
+                    .build());
+        }
+        return state;
+    }
+
+    private static ModificationState trackState(final Entity entity, final VolumeManager volumeManager,
+            final AttachedBlockDevice device, JcloudsMachineLocation machine) {
+        return Waits.waitFor("blockstore.volume-modified", "waiting for performance change of volume " + device.getId(),
+                WaitStrategies.forLocation(machine.getParent(), MODIFICATION_TIMEOUT),
+                new Callable<ModificationState>() {
+                    @Override
+                    public ModificationState call() throws Exception {
+                        ModificationState state = volumeManager.getModificationState(device);
+                        recordState(entity, device.getId(), state);
+                        return state;
+                    }
+                },
+                new Predicate<ModificationState>() {
+                    @Override
+                    public boolean apply(ModificationState state) {
+                        return state != null && state.isDone();
+                    }
+                }).getLastValue();
+    }
+
+    private static void recordState(Entity entity, String volumeId, ModificationState state) {
+        synchronized (entity) {
+            Map<String, ModificationState> states = MutableMap.copyOf(entity.sensors().get(MODIFICATION_STATE));
+            if (state != states.put(volumeId, state)) {
+                entity.sensors().set(MODIFICATION_STATE, states);
+            }
+        }
+    }
+}
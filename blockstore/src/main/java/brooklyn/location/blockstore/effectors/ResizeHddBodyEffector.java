@@ -0,0 +1,117 @@
+package brooklyn.location.blockstore.effectors;
+
+import brooklyn.location.blockstore.VolumeManagerFactory;
+import brooklyn.location.blockstore.api.VolumeManager;
+import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.effector.AddEffector;
+import org.apache.brooklyn.core.effector.EffectorBody;
+import org.apache.brooklyn.core.effector.EffectorTasks;
+import org.apache.brooklyn.core.effector.Effectors;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.util.core.config.ConfigBag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import brooklyn.location.blockstore.api.MountedBlockDevice;
+
+/**
+ * Effector for growing an attached disk during runtime, along with the partition and filesystem on it, without
+ * unmounting it. It is applied in the same way as {@link ExtraHddBodyEffector}:
+ * <pre>
+ *    brooklyn.initializers:
+ *     - type: brooklyn.location.blockstore.effectors.ResizeHddBodyEffector
+ * </pre>
+ *
+ * The disk is identified by its volume id (e.g. the EBS volume id, or the disk name on Azure), the suffix it was
+ * attached with and its mount point. For example:
+ * <pre>
+ *    volumeId: vol-0123456789abcdef0
+ *    deviceSuffix: h
+ *    mountPoint: /mount/brooklyn/h
+ *    sizeInGb: 200
+ * </pre>
+ *
+ * If sizeInGb is omitted the disk is not resized, but its filesystem is grown into whatever space there is: use this
+ * where the cloud's API cannot resize volumes, after resizing the volume with the cloud's own tools.
+ */
+public class ResizeHddBodyEffector extends AddEffector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResizeHddBodyEffector.class);
+
+    public static final ConfigKey<String> VOLUME_ID = ConfigKeys.newStringConfigKey(
+            "volumeId", "Id of the volume to resize");
+
+    public static final ConfigKey<Character> DEVICE_SUFFIX = ConfigKeys.newConfigKey(
+            Character.class, "deviceSuffix", "Suffix of the device the volume was attached as");
+
+    public static final ConfigKey<String> MOUNT_POINT = ConfigKeys.newStringConfigKey(
+            "mountPoint", "Where the volume's filesystem is mounted");
+
+    public static final ConfigKey<Integer> SIZE_IN_GB = ConfigKeys.newIntegerConfigKey(
+            "sizeInGb", "New size of the volume; if omitted, only the filesystem is grown");
+
+    public static final String RESIZE_HDD_EFFECTOR_NAME = "resizeHdd";
+
+    public ResizeHddBodyEffector() {
+        super(newEffectorBuilder().build());
+    }
+
+    public static Effectors.EffectorBuilder<MountedBlockDevice> newEffectorBuilder() {
+        ConfigBag bag = ConfigBag.newInstance();
+        bag.put(EFFECTOR_NAME, RESIZE_HDD_EFFECTOR_NAME);
+
+        Effectors.EffectorBuilder<MountedBlockDevice> eff = AddEffector.newEffectorBuilder(MountedBlockDevice.class, bag)
+                .parameter(VOLUME_ID)
+                .parameter(DEVICE_SUFFIX)
+                .parameter(MOUNT_POINT)
+                .parameter(SIZE_IN_GB)
+                .description("An effector to resize an attached hdd of the provisioned vm, and grow its filesystem")
+                .impl(new Body());
+
+        return eff;
+    }
+
+    @Override
+    public void apply(EntityLocal entity) {
+        super.apply(entity);
+    }
+
+    public static class Body extends EffectorBody<MountedBlockDevice> {
+
+        @Override
+        public MountedBlockDevice call(ConfigBag parameters) {
+            String volumeId = Preconditions.checkNotNull(parameters.get(VOLUME_ID), VOLUME_ID.getName() + " is required");
+            Character deviceSuffix = Preconditions.checkNotNull(parameters.get(DEVICE_SUFFIX), DEVICE_SUFFIX.getName() + " is required");
+            String mountPoint = Preconditions.checkNotNull(parameters.get(MOUNT_POINT), MOUNT_POINT.getName() + " is required");
+            Integer sizeInGb = parameters.get(SIZE_IN_GB);
+
+            JcloudsMachineLocation machine = EffectorTasks.getMachine(entity(), JcloudsMachineLocation.class);
+
+            LOG.info("Invoking effector " + RESIZE_HDD_EFFECTOR_NAME + " for volume " + volumeId + " at " + mountPoint
+                    + " with size " + sizeInGb);
+
+            return resize(VolumeManagerFactory.getVolumeManager(machine), machine, volumeId, deviceSuffix, mountPoint, sizeInGb);
+        }
+    }
+
+    /**
+     * Resizes the volume, or only grows its filesystem if no size is given, having had the manager find it as the
+     * cloud's own kind of device.
+     */
+    @VisibleForTesting
+    static MountedBlockDevice resize(VolumeManager volumeManager, JcloudsMachineLocation machine, String volumeId,
+            char deviceSuffix, String mountPoint, Integer sizeInGb) {
+        MountedBlockDevice device = volumeManager.findAttachedBlockDevice(machine, volumeId, deviceSuffix)
+                .mountedAt(mountPoint);
+        if (sizeInGb == null) {
+            volumeManager.growFilesystem(device);
+            return device;
+        }
+        return volumeManager.resizeBlockDevice(device, sizeInGb);
+    }
+}
@@ -0,0 +1,145 @@
+package brooklyn.location.blockstore.gce;
+
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.jclouds.googlecomputeengine.domain.Operation;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+
+import brooklyn.location.blockstore.AsyncVolumeManagerAdapter;
+import brooklyn.location.blockstore.BlockDeviceOptions;
+import brooklyn.location.blockstore.FilesystemOptions;
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.MountedBlockDevice;
+
+/**
+ * Non-blocking GCE disk management: each create, attach, detach and delete operation is issued on the
+ * executor and its completion is a scheduled poll of the operation rather than a sleeping thread.
+ */
+public class GoogleComputeEngineAsyncVolumeManager extends AsyncVolumeManagerAdapter {
+
+    public GoogleComputeEngineAsyncVolumeManager(GoogleComputeEngineVolumeManager delegate, ListeningScheduledExecutorService executor) {
+        super(delegate, executor);
+    }
+
+    @Override
+    public GoogleComputeEngineVolumeManager getDelegate() {
+        return (GoogleComputeEngineVolumeManager) delegate;
+    }
+
+    @Override
+    public ListenableFuture<BlockDevice> createBlockDevice(final JcloudsLocation location, final BlockDeviceOptions options) {
+        final String name = getDelegate().getOrMakeName(location, options);
+        ListenableFuture<Operation> requested = executor.submit(new Callable<Operation>() {
+            @Override
+            public Operation call() throws Exception {
+                return getDelegate().requestBlockDevice(location, options, name);
+            }
+        });
+        return afterOperation(location, requested, new Callable<BlockDevice>() {
+            @Override
+            public BlockDevice call() throws Exception {
+                return getDelegate().getCreatedBlockDevice(location, options.getZone(), name);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<AttachedBlockDevice> attachBlockDevice(final JcloudsMachineLocation machine, final BlockDevice blockDevice,
+            final BlockDeviceOptions options) {
+        ListenableFuture<Operation> requested = executor.submit(new Callable<Operation>() {
+            @Override
+            public Operation call() throws Exception {
+                return getDelegate().requestAttachBlockDevice(machine, blockDevice, options);
+            }
+        });
+        return afterOperation(machine.getParent(), requested, new Callable<AttachedBlockDevice>() {
+            @Override
+            public AttachedBlockDevice call() throws Exception {
+                return getDelegate().getAttachedBlockDevice(machine, blockDevice, options);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<BlockDevice> detachBlockDevice(final AttachedBlockDevice attachedBlockDevice) {
+        ListenableFuture<Operation> requested = executor.submit(new Callable<Operation>() {
+            @Override
+            public Operation call() throws Exception {
+                return getDelegate().requestDetachBlockDevice(attachedBlockDevice);
+            }
+        });
+        return afterOperation(attachedBlockDevice.getLocation(), requested, new Callable<BlockDevice>() {
+            @Override
+            public BlockDevice call() throws Exception {
+                return getDelegate().asDetachedBlockDevice(attachedBlockDevice);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> deleteBlockDevice(final BlockDevice blockDevice) {
+        ListenableFuture<Operation> requested = executor.submit(new Callable<Operation>() {
+            @Override
+            public Operation call() throws Exception {
+                return getDelegate().requestDeleteBlockDevice(blockDevice);
+            }
+        });
+        return afterOperation(blockDevice.getLocation(), requested, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<MountedBlockDevice> createAttachAndMountVolume(JcloudsMachineLocation machine,
+            BlockDeviceOptions blockDeviceOptions, FilesystemOptions filesystemOptions) {
+        return chainCreateAttachAndMountVolume(machine, blockDeviceOptions, filesystemOptions);
+    }
+
+    /**
+     * Once {@code requested} yields an operation, polls it until done and then completes with {@code result}, or
+     * fails if the done operation reports errors.
+     */
+    private <T> ListenableFuture<T> afterOperation(final JcloudsLocation location, ListenableFuture<Operation> requested,
+            final Callable<T> result) {
+        ListenableFuture<Operation> done = then(requested, new Function<Operation, ListenableFuture<Operation>>() {
+            @Override
+            public ListenableFuture<Operation> apply(final Operation operation) {
+                return waitForOperationToBeDone(location, operation);
+            }
+        });
+        return then(done, new Function<Operation, ListenableFuture<T>>() {
+            @Override
+            public ListenableFuture<T> apply(Operation operation) {
+                GoogleComputeEngineVolumeManager.checkOperationSucceeded(operation);
+                return executor.submit(result);
+            }
+        });
+    }
+
+    private ListenableFuture<Operation> waitForOperationToBeDone(final JcloudsLocation location, final Operation operation) {
+        return poll("google-compute-engine.operation", "waiting for operation to be done: " + operation.name(),
+                new Callable<Operation>() {
+                    @Override
+                    public Operation call() throws Exception {
+                        return getDelegate().describeOperation(location, operation);
+                    }
+                },
+                new Predicate<Operation>() {
+                    @Override
+                    public boolean apply(Operation current) {
+                        return current != null && current.status() == Operation.Status.DONE;
+                    }
+                },
+                getDelegate().getOperationWaitStrategy(location));
+    }
+}
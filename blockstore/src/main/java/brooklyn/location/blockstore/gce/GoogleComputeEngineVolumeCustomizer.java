@@ -2,28 +2,54 @@ package brooklyn.location.blockstore.gce;
 
 import java.util.List;
 
-import org.apache.brooklyn.location.jclouds.BasicJcloudsLocationCustomizer;
-import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsLocationCustomizer;
-import org.jclouds.compute.ComputeService;
-import org.jclouds.compute.options.TemplateOptions;
 
+import com.google.common.collect.Lists;
+
+import brooklyn.location.blockstore.BlockDeviceOptions;
+import brooklyn.location.blockstore.FilesystemOptions;
+import brooklyn.location.blockstore.NewVolumeCustomizer;
+import brooklyn.location.blockstore.api.VolumeOptions;
+
+/**
+ * Customizers that give a GCE VM additional persistent disks as it is provisioned.
+ * <p>
+ * jclouds' GCE adapter only puts the boot disk in the instance insert request (its template options have no data
+ * disks), so the disks are instead created in the template phase, while the instance is inserted and boots, in
+ * the location's zone; as soon as the instance exists they are attached, concurrently, with their device names,
+ * type and auto-delete ({@link BlockDeviceOptions#deleteOnTermination()}), and mounted. See
+ * {@link NewVolumeCustomizer#CREATE_EARLY}.
+ */
 public class GoogleComputeEngineVolumeCustomizer {
 
-    // FIXME This is Alex's guess! Untested.
-    // FIXME How to set capacities, rather than just number of disks?
-    // FIXME There is no GoogleComputeEngineTemplateOptions.disks!
+    /** Suffix of the first disk added by {@link #withNewVolume(List)}. */
+    private static final char FIRST_DEVICE_SUFFIX = 'f';
+
+    /**
+     * Adds disks of the given sizes (in GB), with suffixes from {@value #FIRST_DEVICE_SUFFIX}, each mounted as
+     * ext4 at /mount/brooklyn/&lt;suffix&gt;, and deleted along with the VM.
+     */
     public static JcloudsLocationCustomizer withNewVolume(final List<Integer> capacities) {
-        return new BasicJcloudsLocationCustomizer() {
-            @Override
-            public void customize(JcloudsLocation location, ComputeService computeService, TemplateOptions templateOptions) {
-                throw new UnsupportedOperationException("Unsupported for GCE");
-//                Set<PersistentDisk> disks = MutableSet.of();
-//                for (int i=0; i<capacities.size(); i++) {
-//                    disks.add(new PersistentDisk(Mode.READ_WRITE, null, "sd"+(char)('f'+i), true, true));
-//                }
-//                ((GoogleComputeEngineTemplateOptions)templateOptions).disks(disks);
-            }
-        };
+        List<VolumeOptions> volumes = Lists.newArrayList();
+        for (int i = 0; i < capacities.size(); i++) {
+            char suffix = (char) (FIRST_DEVICE_SUFFIX + i);
+            volumes.add(new VolumeOptions(
+                    new BlockDeviceOptions()
+                            .sizeInGb(capacities.get(i))
+                            .deviceSuffix(suffix)
+                            .deleteOnTermination(true),
+                    new FilesystemOptions("/mount/brooklyn/" + suffix, "ext4")));
+        }
+        return withNewVolumes(volumes);
+    }
+
+    /**
+     * Adds the given disks, created while the VM boots and then attached and mounted together.
+     */
+    public static JcloudsLocationCustomizer withNewVolumes(List<VolumeOptions> volumes) {
+        NewVolumeCustomizer result = new NewVolumeCustomizer(volumes);
+        result.setCreateEarly(true);
+        result.setParallelism(Math.max(1, volumes.size()));
+        return result;
     }
 }
@@ -3,36 +3,51 @@ package brooklyn.location.blockstore.gce;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.net.URI;
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
-import org.apache.brooklyn.util.repeat.Repeater;
-import org.jclouds.ContextBuilder;
-import org.jclouds.encryption.bouncycastle.config.BouncyCastleCryptoModule;
+import org.apache.brooklyn.util.time.Duration;
 import org.jclouds.googlecomputeengine.GoogleComputeEngineApi;
 import org.jclouds.googlecomputeengine.domain.AttachDisk;
 import org.jclouds.googlecomputeengine.domain.Disk;
+import org.jclouds.googlecomputeengine.domain.DiskType;
+import org.jclouds.googlecomputeengine.domain.Instance;
 import org.jclouds.googlecomputeengine.domain.Operation;
 import org.jclouds.googlecomputeengine.features.DiskApi;
 import org.jclouds.googlecomputeengine.features.InstanceApi;
 import org.jclouds.googlecomputeengine.options.DiskCreationOptions;
-import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
-import org.jclouds.sshj.config.SshjSshClientModule;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.ImmutableSet;
-import com.google.inject.Module;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.net.MediaType;
 
 import brooklyn.location.blockstore.AbstractVolumeManager;
 import brooklyn.location.blockstore.BlockDeviceOptions;
+import brooklyn.location.blockstore.JcloudsApiCache;
+import brooklyn.location.blockstore.JcloudsHttp;
+import brooklyn.location.blockstore.PerformanceOptions;
 import brooklyn.location.blockstore.api.AttachedBlockDevice;
 import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.ModificationState;
 import brooklyn.location.blockstore.api.MountedBlockDevice;
+import brooklyn.location.blockstore.wait.WaitResult;
+import brooklyn.location.blockstore.wait.WaitStrategies;
+import brooklyn.location.blockstore.wait.WaitStrategy;
+import brooklyn.location.blockstore.wait.Waits;
 
 public class GoogleComputeEngineVolumeManager extends AbstractVolumeManager {
 
@@ -40,6 +55,9 @@ public class GoogleComputeEngineVolumeManager extends AbstractVolumeManager {
     private static final String PROVIDER = "google-compute-engine";
     private static final String DEVICE_PREFIX = "/dev/disk/by-id/google-";
 
+    public static final ConfigKey<Duration> OPERATION_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "blockstore.google-compute-engine.operationTimeout", "How long to wait for a disk operation to be done", Duration.ONE_MINUTE);
+
     @Override
     protected String getVolumeDeviceName(char deviceSuffix) {
         return DEVICE_PREFIX + deviceSuffix;
@@ -52,25 +70,61 @@ public class GoogleComputeEngineVolumeManager extends AbstractVolumeManager {
 
     @Override
     public BlockDevice createBlockDevice(JcloudsLocation location, BlockDeviceOptions options) {
+        String name = getOrMakeName(location, options);
+        Operation operation = requestBlockDevice(location, options, name);
+        waitForOperationToBeDone(location, operation);
+        return getCreatedBlockDevice(location, options.getZone(), name);
+    }
+
+    /**
+     * Issues the request to create a disk with the given name, returning the operation to wait on.
+     */
+    protected Operation requestBlockDevice(JcloudsLocation location, BlockDeviceOptions options, String name) {
         LOG.info("Creating device: location={}; options={}", location, options);
 
         GoogleComputeEngineApi computeApi = getGoogleComputeEngineApi(location);
         DiskApi diskApi = computeApi.disksInZone(options.getZone());
-        String name = getOrMakeName(location, options);
 
-        DiskCreationOptions diskOptions = new DiskCreationOptions.Builder()
-                .sizeGb(options.getSizeInGb())
-                .build();
-        Operation operation = diskApi.create(name, diskOptions);
-        waitForOperationToBeDone(computeApi, operation);
+        DiskCreationOptions.Builder diskOptions = new DiskCreationOptions.Builder()
+                .sizeGb(options.getSizeInGb());
+        if (options.getVolumeType().isPresent()) {
+            diskOptions.type(getDiskType(computeApi, options.getZone(), options.getVolumeType().get()));
+        }
+        return diskApi.create(name, diskOptions.build());
+    }
 
-        Disk created = diskApi.get(name);
+    /**
+     * Looks up a disk whose creation operation has completed.
+     */
+    protected BlockDevice getCreatedBlockDevice(JcloudsLocation location, String zone, String name) {
+        Disk created = getGoogleComputeEngineApi(location).disksInZone(zone).get(name);
         LOG.info("Created device: location={}, device={}", location, created);
         return new GCEBlockDevice(location, created);
     }
 
     @Override
     public AttachedBlockDevice attachBlockDevice(JcloudsMachineLocation machine, BlockDevice device, BlockDeviceOptions options) {
+        Operation operation = requestAttachBlockDevice(machine, device, options);
+        waitForOperationToBeDone(machine.getParent(), operation);
+        return getAttachedBlockDevice(machine, device, options);
+    }
+
+    /**
+     * Looks up the disk in the machine's zone, as the operations on an attached disk need its record.
+     */
+    @Override
+    public AttachedBlockDevice findAttachedBlockDevice(JcloudsMachineLocation machine, String volumeId, char deviceSuffix) {
+        String zone = machine.getNode().getLocation().getId();
+        Disk disk = getGoogleComputeEngineApi(machine.getParent()).disksInZone(zone).get(volumeId);
+        checkArgument(disk != null, "No disk %s in zone %s", volumeId, zone);
+        return new GCEBlockDevice(machine.getParent(), disk).attachedTo(machine, getVolumeDeviceName(deviceSuffix));
+    }
+
+    /**
+     * Issues the request to attach a disk, returning the operation to wait on. The disk is given the device name
+     * of the options' suffix, so that it appears in the guest as {@code /dev/disk/by-id/google-<suffix>}.
+     */
+    protected Operation requestAttachBlockDevice(JcloudsMachineLocation machine, BlockDevice device, BlockDeviceOptions options) {
         checkArgument(device instanceof GCEBlockDevice, "GCE volume manager cannot handle device: %s", device);
         Disk disk = GCEBlockDevice.class.cast(device).getDisk();
         LOG.info("Attaching device: machine={}; device={}; options={}", new Object[]{machine, device, options});
@@ -80,22 +134,51 @@ public class GoogleComputeEngineVolumeManager extends AbstractVolumeManager {
         String zone = getZoneFromDisk(disk);
         InstanceApi instanceApi = computeApi.instancesInZone(zone);
 
-        Operation operation = instanceApi.attachDisk(machine.getNode().getName(), AttachDisk.existingDisk(disk.selfLink()));
-
-        waitForOperationToBeDone(computeApi, operation);
-        return device.attachedTo(machine, getVolumeDeviceName(options.getDeviceSuffix()));
+        // With deleteOnTermination the disk is deleted by GCE along with the instance
+        AttachDisk attachDisk = AttachDisk.create(AttachDisk.Type.PERSISTENT, AttachDisk.Mode.READ_WRITE, disk.selfLink(),
+                String.valueOf(options.getDeviceSuffix()), false, null, options.deleteOnTermination(), null, null);
+        return instanceApi.attachDisk(machine.getNode().getName(), attachDisk);
+    }
 
-        // FIXME Previous code shown below - is this AttachDisk.existingDisk functionally equivalent?!
-        // How do we force it to have options.getDeviceSuffix()?
-//        new AttachDiskOption()
-//                .source(disk.selfLink())
-//                .type(AttachDisk.Type.PERSISTENT)
-//                .mode(AttachDisk.Mode.READ_WRITE)
-//                .deviceName(String.valueOf(options.getDeviceSuffix())));
+    /**
+     * Returns the device for a disk whose attach operation has completed, at the guest path of the device name
+     * that the instance actually reports for the disk; that is the requested one, unless GCE chose another.
+     */
+    protected AttachedBlockDevice getAttachedBlockDevice(JcloudsMachineLocation machine, BlockDevice device, BlockDeviceOptions options) {
+        checkArgument(device instanceof GCEBlockDevice, "GCE volume manager cannot handle device: %s", device);
+        Disk disk = GCEBlockDevice.class.cast(device).getDisk();
+        String requested = String.valueOf(options.getDeviceSuffix());
+
+        InstanceApi instanceApi = getGoogleComputeEngineApi(machine.getParent()).instancesInZone(getZoneFromDisk(disk));
+        Instance instance = instanceApi.get(machine.getNode().getName());
+        String deviceName = null;
+        if (instance != null && instance.disks() != null) {
+            for (Instance.AttachedDisk attached : instance.disks()) {
+                if (disk.selfLink().equals(attached.source())) {
+                    deviceName = attached.deviceName();
+                }
+            }
+        }
+        if (deviceName == null) {
+            LOG.warn("Disk {} not found on instance {} after attaching; assuming device name {}", new Object[] {disk.name(), machine, requested});
+            deviceName = requested;
+        } else if (!deviceName.equals(requested)) {
+            LOG.warn("Disk {} attached to {} as device {}, not {} as requested", new Object[] {disk.name(), machine, deviceName, requested});
+        }
+        return device.attachedTo(machine, DEVICE_PREFIX + deviceName);
     }
 
     @Override
     public BlockDevice detachBlockDevice(AttachedBlockDevice device) {
+        Operation operation = requestDetachBlockDevice(device);
+        waitForOperationToBeDone(device.getLocation(), operation);
+        return asDetachedBlockDevice(device);
+    }
+
+    /**
+     * Issues the request to detach a disk, returning the operation to wait on.
+     */
+    protected Operation requestDetachBlockDevice(AttachedBlockDevice device) {
         checkArgument(device instanceof GCEBlockDevice, "GCE volume manager cannot handle device: %s", device);
         Disk disk = GCEBlockDevice.class.cast(device).getDisk();
         LOG.info("Detaching device: {}", device);
@@ -104,16 +187,38 @@ public class GoogleComputeEngineVolumeManager extends AbstractVolumeManager {
         String zone = getZoneFromDisk(disk);
         InstanceApi instanceApi = computeApi.instancesInZone(zone);
 
-        Operation operation = instanceApi.detachDisk(
+        return instanceApi.detachDisk(
                 device.getMachine().getNode().getName(), 
-                String.valueOf(device.getDeviceSuffix()));
-        waitForOperationToBeDone(computeApi, operation);
+                getGceDeviceName(device.getDeviceName()));
+    }
+
+    /**
+     * @return The name by which the instance knows an attached disk with the given guest path: the last part of
+     *         {@code /dev/disk/by-id/google-<name>}, or else the path's last character, its suffix
+     */
+    @VisibleForTesting
+    static String getGceDeviceName(String deviceName) {
+        if (deviceName.startsWith(DEVICE_PREFIX)) {
+            return deviceName.substring(DEVICE_PREFIX.length());
+        }
+        return deviceName.substring(deviceName.length() - 1);
+    }
 
-        return new GCEBlockDevice(device.getLocation(), disk);
+    protected BlockDevice asDetachedBlockDevice(AttachedBlockDevice device) {
+        checkArgument(device instanceof GCEBlockDevice, "GCE volume manager cannot handle device: %s", device);
+        return new GCEBlockDevice(device.getLocation(), GCEBlockDevice.class.cast(device).getDisk());
     }
 
     @Override
     public void deleteBlockDevice(BlockDevice device) {
+        Operation operation = requestDeleteBlockDevice(device);
+        waitForOperationToBeDone(device.getLocation(), operation);
+    }
+
+    /**
+     * Issues the request to delete a disk, returning the operation to wait on.
+     */
+    protected Operation requestDeleteBlockDevice(BlockDevice device) {
         checkArgument(device instanceof GCEBlockDevice, "GCE volume manager cannot handle device: %s", device);
         Disk disk = GCEBlockDevice.class.cast(device).getDisk();
         LOG.info("Deleting device: {}", device);
@@ -122,8 +227,95 @@ public class GoogleComputeEngineVolumeManager extends AbstractVolumeManager {
         String zone = getZoneFromDisk(disk);
         DiskApi diskApi = computeApi.disksInZone(zone);
 
-        Operation operation = diskApi.delete(device.getId());
-        waitForOperationToBeDone(computeApi, operation);
+        return diskApi.delete(device.getId());
+    }
+
+    /**
+     * Resizes the disk with disks.resize, which GCE allows while it is attached, and waits for the operation.
+     */
+    @Override
+    protected void resizeVolume(AttachedBlockDevice attachedDevice, int newSizeInGb) {
+        checkArgument(attachedDevice instanceof GCEBlockDevice, "GCE volume manager cannot handle device: %s", attachedDevice);
+        Disk disk = GCEBlockDevice.class.cast(attachedDevice).getDisk();
+        JcloudsHttp http = getHttp(attachedDevice.getLocation());
+        String response = http.invoke(resizeRequest(disk.selfLink(), newSizeInGb, http.getFilters(DiskApi.class)));
+        waitForOperationToBeDone(attachedDevice.getLocation(), http.getJson().fromJson(response, Operation.class));
+    }
+
+    @VisibleForTesting
+    static HttpRequest resizeRequest(URI diskSelfLink, int newSizeInGb, List<HttpRequestFilter> filters) {
+        Payload payload = Payloads.newStringPayload("{\"sizeGb\":\"" + newSizeInGb + "\"}");
+        payload.getContentMetadata().setContentType(MediaType.JSON_UTF_8.withoutParameters().toString());
+        return HttpRequest.builder()
+                .method("POST")
+                .endpoint(URI.create(diskSelfLink + "/resize"))
+                .payload(payload)
+                .filters(filters)
+                .build();
+    }
+
+    /**
+     * Sets the provisioned IOPS and/or throughput of the disk with disks.update, which GCE allows while it is
+     * attached for the disk types that have them (e.g. pd-extreme and Hyperdisk, at most once every few hours),
+     * and waits for the operation; GCE applies them at once, so the change is then complete. A disk's type
+     * cannot be changed in place, only by recreating it from a snapshot.
+     */
+    @Override
+    protected ModificationState modifyVolumePerformance(AttachedBlockDevice attachedDevice, PerformanceOptions options) {
+        checkArgument(attachedDevice instanceof GCEBlockDevice, "GCE volume manager cannot handle device: %s", attachedDevice);
+        Disk disk = GCEBlockDevice.class.cast(attachedDevice).getDisk();
+        if (options.getVolumeType().isPresent() && !isOfType(disk, options.getVolumeType().get())) {
+            throw new UnsupportedOperationException("Cannot change the type of GCE disk " + attachedDevice + " to "
+                    + options.getVolumeType().get() + " in place; recreate it from a snapshot instead");
+        }
+        if (options.getIops().isAbsent() && options.getThroughputMiBps().isAbsent()) {
+            return ModificationState.COMPLETED;
+        }
+        JcloudsHttp http = getHttp(attachedDevice.getLocation());
+        String response = http.invoke(updatePerformanceRequest(disk.selfLink(), options, http.getFilters(DiskApi.class)));
+        waitForOperationToBeDone(attachedDevice.getLocation(), http.getJson().fromJson(response, Operation.class));
+        return ModificationState.COMPLETED;
+    }
+
+    private static boolean isOfType(Disk disk, String volumeType) {
+        String path = (disk.type() != null) ? disk.type().getPath() : null;
+        return path != null && path.substring(path.lastIndexOf('/') + 1).equals(volumeType);
+    }
+
+    @VisibleForTesting
+    static HttpRequest updatePerformanceRequest(URI diskSelfLink, PerformanceOptions options, List<HttpRequestFilter> filters) {
+        List<String> fields = Lists.newArrayList();
+        List<String> values = Lists.newArrayList();
+        if (options.getIops().isPresent()) {
+            fields.add("provisionedIops");
+            values.add("\"provisionedIops\":\"" + options.getIops().get() + "\"");
+        }
+        if (options.getThroughputMiBps().isPresent()) {
+            fields.add("provisionedThroughput");
+            values.add("\"provisionedThroughput\":\"" + options.getThroughputMiBps().get() + "\"");
+        }
+        checkArgument(!fields.isEmpty(), "No provisioned iops or throughput to update: %s", options);
+        StringBuilder query = new StringBuilder();
+        for (String field : fields) {
+            query.append("paths=").append(field).append('&');
+        }
+        query.append("updateMask=").append(Joiner.on(',').join(fields));
+
+        Payload payload = Payloads.newStringPayload("{" + Joiner.on(',').join(values) + "}");
+        payload.getContentMetadata().setContentType(MediaType.JSON_UTF_8.withoutParameters().toString());
+        return HttpRequest.builder()
+                .method("PATCH")
+                .endpoint(URI.create(diskSelfLink + "?" + query))
+                .payload(payload)
+                .filters(filters)
+                .build();
+    }
+
+    /**
+     * Fetches the latest state of the given operation.
+     */
+    protected Operation describeOperation(JcloudsLocation location, Operation operation) {
+        return getGoogleComputeEngineApi(location).operations().get(operation.selfLink());
     }
 
     /**
@@ -140,18 +332,40 @@ public class GoogleComputeEngineVolumeManager extends AbstractVolumeManager {
         return diskApi.get(device.getId());
     }
 
-    private GoogleComputeEngineApi getGoogleComputeEngineApi(JcloudsLocation location) {
-        String identity = location.getIdentity();
-        String credential = location.getCredential();
-        Iterable<Module> modules = ImmutableSet.<Module> of(
-                new SshjSshClientModule(),
-                new SLF4JLoggingModule(),
-                new BouncyCastleCryptoModule());
+    /**
+     * Returns the API of the location's own compute-service context, so that disk operations reuse its
+     * injector and OAuth token. Only for a location that is not itself a GCE location (and so has no such
+     * context) is a separate API built, and that is shared through the {@link JcloudsApiCache}.
+     */
+    protected GoogleComputeEngineApi getGoogleComputeEngineApi(JcloudsLocation location) {
+        if (PROVIDER.equals(location.getProvider())) {
+            return location.getComputeService().getContext().unwrapApi(GoogleComputeEngineApi.class);
+        }
+        return JcloudsApiCache.getInstance().getApi(PROVIDER, null, location.getIdentity(), location.getCredential(),
+                GoogleComputeEngineApi.class);
+    }
+
+    /**
+     * Returns requests through the same context as {@link #getGoogleComputeEngineApi(JcloudsLocation)}.
+     */
+    protected JcloudsHttp getHttp(JcloudsLocation location) {
+        if (PROVIDER.equals(location.getProvider())) {
+            return new JcloudsHttp(location.getComputeService().getContext().utils().injector());
+        }
+        return new JcloudsHttp(JcloudsApiCache.getInstance().getContext(PROVIDER, null, location.getIdentity(), location.getCredential())
+                .utils().injector());
+    }
 
-        return ContextBuilder.newBuilder(PROVIDER)
-              .credentials(identity, credential)
-              .modules(modules)
-              .buildApi(GoogleComputeEngineApi.class);
+    /**
+     * @return The URI of the given disk type (e.g. pd-ssd, pd-balanced) in the zone
+     * @throws IllegalArgumentException If the zone has no such disk type
+     */
+    private URI getDiskType(GoogleComputeEngineApi computeApi, String zone, String volumeType) {
+        DiskType diskType = computeApi.diskTypesInZone(zone).get(volumeType);
+        if (diskType == null) {
+            throw new IllegalArgumentException("Unknown GCE volumeType '" + volumeType + "' in zone " + zone);
+        }
+        return diskType.selfLink();
     }
 
     private String getZoneFromDisk(Disk disk) {
@@ -160,28 +374,53 @@ public class GoogleComputeEngineVolumeManager extends AbstractVolumeManager {
         return zonePath.substring(zonePath.lastIndexOf('/')+1);
     }
 
-    private Operation waitForOperationToBeDone(final GoogleComputeEngineApi api, final Operation operation) {
-
+    private Operation waitForOperationToBeDone(final JcloudsLocation location, final Operation operation) {
         checkNotNull(operation, "operation should not be null");
-        final AtomicReference<Operation> latest = new AtomicReference<Operation>(operation);
-        boolean done = Repeater.create("Waiting for operation to be done: " + operation.name())
-                .every(1, TimeUnit.SECONDS)
-                .limitTimeTo(60, TimeUnit.SECONDS)
-                .until(new Callable<Boolean>() {
+        final GoogleComputeEngineApi api = getGoogleComputeEngineApi(location);
+        WaitResult<Operation> result = Waits.waitFor("google-compute-engine.operation",
+                "waiting for operation to be done: " + operation.name(),
+                getOperationWaitStrategy(location),
+                new Callable<Operation>() {
+                    @Override
+                    public Operation call() throws Exception {
+                        return api.operations().get(operation.selfLink());
+                    }
+                },
+                new Predicate<Operation>() {
                     @Override
-                    public Boolean call() throws Exception {
-                        Operation current = api.operations().get(operation.selfLink());
-                        latest.set(current);
-                        return current.status() == Operation.Status.DONE;
+                    public boolean apply(Operation current) {
+                        return current != null && current.status() == Operation.Status.DONE;
                     }
-                })
-                .run();
-        if (done) {
-            return latest.get();
-        } else {
-            LOG.error("Operation {} still incomplete after timeout. Trying to continue. Last poll found: {}", operation.name(), latest.get());
-            return latest.get();
+                });
+        Operation latest = (result.getLastValue() != null) ? result.getLastValue() : operation;
+        if (!result.isSuccess()) {
+            LOG.error("Operation {} still incomplete after timeout. Trying to continue. Last poll found: {}", operation.name(), latest);
         }
+        checkOperationSucceeded(latest);
+        return latest;
+    }
+
+    /**
+     * A done operation may still have failed (e.g. a quota was exceeded or the disk is in use elsewhere), which
+     * GCE reports in its error rather than its status.
+     *
+     * @throws IllegalStateException If the operation is done but reports errors
+     */
+    @VisibleForTesting
+    static void checkOperationSucceeded(Operation operation) {
+        if (operation == null || operation.status() != Operation.Status.DONE || operation.error() == null) {
+            return;
+        }
+        List<String> messages = Lists.newArrayList();
+        for (Operation.Error.Entry entry : operation.error().errors()) {
+            messages.add(entry.code() + ": " + entry.message());
+        }
+        throw new IllegalStateException("Operation " + operation.name() + " on " + operation.targetLink() + " failed: "
+                + Joiner.on("; ").join(messages));
+    }
+
+    protected WaitStrategy getOperationWaitStrategy(JcloudsLocation location) {
+        return WaitStrategies.forLocation(location, OPERATION_TIMEOUT);
     }
 
     // GCE-specific classes used rather than those in Devices to keep track of the Disk object through a Volume's life
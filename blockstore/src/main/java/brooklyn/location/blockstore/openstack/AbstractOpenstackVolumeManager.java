@@ -1,23 +1,54 @@
 package brooklyn.location.blockstore.openstack;
 
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.util.time.Duration;
+import org.jclouds.Context;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
 import org.jclouds.openstack.cinder.v1.CinderApi;
 import org.jclouds.openstack.cinder.v1.domain.Volume;
 import org.jclouds.openstack.cinder.v1.features.VolumeApi;
 import org.jclouds.openstack.cinder.v1.options.CreateVolumeOptions;
 import org.jclouds.openstack.cinder.v1.predicates.VolumePredicates;
+import org.jclouds.openstack.keystone.v2_0.domain.Access;
+import org.jclouds.openstack.keystone.v2_0.domain.Endpoint;
+import org.jclouds.openstack.keystone.v2_0.domain.Service;
 import org.jclouds.openstack.nova.v2_0.NovaApi;
 import org.jclouds.openstack.nova.v2_0.domain.VolumeAttachment;
 import org.jclouds.openstack.nova.v2_0.extensions.VolumeAttachmentApi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.net.MediaType;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
 import brooklyn.location.blockstore.AbstractVolumeManager;
 import brooklyn.location.blockstore.BlockDeviceOptions;
 import brooklyn.location.blockstore.Devices;
+import brooklyn.location.blockstore.JcloudsHttp;
 import brooklyn.location.blockstore.api.AttachedBlockDevice;
 import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.wait.WaitResult;
+import brooklyn.location.blockstore.wait.WaitStrategies;
+import brooklyn.location.blockstore.wait.Waits;
 
 /**
  * For managing volumes in OpenStack Cinder (e.g. Rackspace).
@@ -27,11 +58,24 @@ public abstract class AbstractOpenstackVolumeManager extends AbstractVolumeManag
     private static final Logger LOG = LoggerFactory.getLogger(AbstractOpenstackVolumeManager.class);
     private static final String DEVICE_PREFIX = "/dev/sd";
     private static final String OS_DEVICE_PREFIX = "/dev/vd";
+    private static final String EXTEND_IN_USE_MICROVERSION = "3.42";
+    private static final String VOLUME_V3_SERVICE_TYPE = "volumev3";
+    private static final String DETACH_FIRST_HINT = "detach it and extend it with the cloud's own tools, then attach and "
+            + "mount it again and grow its filesystem";
+
+    public static final ConfigKey<Duration> VOLUME_EXTENDED_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "blockstore.openstack.volumeExtendedTimeout", "How long to wait for a Cinder volume to be extended", Duration.FIVE_MINUTES);
 
     protected abstract CinderApi getCinderApi(JcloudsLocation location);
 
     protected abstract NovaApi getNovaApi(JcloudsLocation location);
 
+    /**
+     * @return The context of {@link #getCinderApi(JcloudsLocation)}'s provider, for requests the API has no
+     *         methods for
+     */
+    protected abstract Context getCinderContext(JcloudsLocation location);
+
     protected abstract String getRegion(JcloudsLocation location);
 
     protected abstract String getZone(JcloudsLocation location);
@@ -127,6 +171,108 @@ public abstract class AbstractOpenstackVolumeManager extends AbstractVolumeManag
         volumeApi.delete(blockDevice.getId());
     }
 
+    /**
+     * Extends the volume with the os-extend action, and waits for it to be in use again with the new size.
+     * <p>
+     * Cinder only extends a volume that is in use from volume API microversion 3.42, which the v1 and v2 APIs
+     * ignore; so the request goes to the cloud's v3 endpoint, from the Keystone service catalog, rather than to
+     * that of the {@link CinderApi}.
+     *
+     * @throws UnsupportedOperationException If the cloud has no v3 endpoint in the region, or does not extend
+     *         volumes that are in use; the volume must then be detached to be extended
+     */
+    @Override
+    protected void resizeVolume(AttachedBlockDevice attachedDevice, final int newSizeInGb) {
+        JcloudsLocation location = attachedDevice.getLocation();
+        String region = getRegion(location);
+        Injector injector = getCinderContext(location).utils().injector();
+        Access access = injector.getInstance(Key.get(new TypeLiteral<Supplier<Access>>() {})).get();
+        Optional<URI> endpoint = findEndpoint(access, VOLUME_V3_SERVICE_TYPE, region);
+        if (!endpoint.isPresent()) {
+            throw new UnsupportedOperationException("Cannot extend volume " + attachedDevice + " while it is attached: the cloud has no "
+                    + VOLUME_V3_SERVICE_TYPE + " endpoint in region " + region + "; " + DETACH_FIRST_HINT);
+        }
+        JcloudsHttp http = new JcloudsHttp(injector);
+        try {
+            http.invoke(extendRequest(endpoint.get(), attachedDevice.getId(), newSizeInGb, http.getFilters(VolumeApi.class)));
+        } catch (RuntimeException e) {
+            if (isRejectedWhileInUse(e)) {
+                throw new UnsupportedOperationException("Cannot extend volume " + attachedDevice + " while it is attached: the cloud's "
+                        + "Cinder is older than volume API " + EXTEND_IN_USE_MICROVERSION + "; " + DETACH_FIRST_HINT, e);
+            }
+            throw e;
+        }
+
+        final VolumeApi volumeApi = getCinderApi(location).getVolumeApi(region);
+        final String volumeId = attachedDevice.getId();
+        WaitResult<Volume> result = Waits.waitFor("openstack.volume-extended", "waiting for volume " + volumeId + " to be extended",
+                WaitStrategies.forLocation(location, VOLUME_EXTENDED_TIMEOUT),
+                new Callable<Volume>() {
+                    @Override
+                    public Volume call() throws Exception {
+                        return volumeApi.get(volumeId);
+                    }
+                },
+                new Predicate<Volume>() {
+                    @Override
+                    public boolean apply(Volume volume) {
+                        return volume != null && volume.getSize() >= newSizeInGb && volume.getStatus() == Volume.Status.IN_USE;
+                    }
+                });
+        if (!result.isSuccess()) {
+            throw new IllegalStateException("Volume " + volumeId + " not extended to " + newSizeInGb + "GB; last known was: "
+                    + result.getLastValue());
+        }
+    }
+
+    /**
+     * @return The public URL of the catalog's endpoint for the given service type in the given region
+     */
+    @VisibleForTesting
+    static Optional<URI> findEndpoint(Iterable<Service> catalog, String serviceType, String region) {
+        for (Service service : catalog) {
+            if (!serviceType.equals(service.getType())) continue;
+            for (Endpoint endpoint : service) {
+                if (region.equals(endpoint.getRegion()) && endpoint.getPublicURL() != null) {
+                    return Optional.of(endpoint.getPublicURL());
+                }
+            }
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Whether the extend request failed because the cloud only extends available volumes, or does not know the
+     * requested microversion.
+     */
+    @VisibleForTesting
+    static boolean isRejectedWhileInUse(Throwable e) {
+        for (Throwable cause : Throwables.getCausalChain(e)) {
+            if (cause instanceof HttpResponseException && ((HttpResponseException) cause).getResponse() != null) {
+                HttpResponseException httpException = (HttpResponseException) cause;
+                int status = httpException.getResponse().getStatusCode();
+                String content = Strings.nullToEmpty(httpException.getContent());
+                if (status == 406 || (status == 400 && content.contains("must be available"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @VisibleForTesting
+    static HttpRequest extendRequest(URI endpoint, String volumeId, int newSizeInGb, List<HttpRequestFilter> filters) {
+        Payload payload = Payloads.newStringPayload("{\"os-extend\":{\"new_size\":" + newSizeInGb + "}}");
+        payload.getContentMetadata().setContentType(MediaType.JSON_UTF_8.withoutParameters().toString());
+        return HttpRequest.builder()
+                .method("POST")
+                .endpoint(URI.create(endpoint.toString().replaceAll("/+$", "") + "/volumes/" + volumeId + "/action"))
+                .addHeader("OpenStack-API-Version", "volume " + EXTEND_IN_USE_MICROVERSION)
+                .payload(payload)
+                .filters(filters)
+                .build();
+    }
+
     /**
      * Describes the given volume. Or returns null if it is not found.
      */
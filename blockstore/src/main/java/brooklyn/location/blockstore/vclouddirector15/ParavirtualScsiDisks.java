@@ -0,0 +1,207 @@
+package brooklyn.location.blockstore.vclouddirector15;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.jclouds.vcloud.director.v1_5.domain.RasdItemsList;
+import org.jclouds.vcloud.director.v1_5.domain.dmtf.RasdItem;
+import org.jclouds.vcloud.director.v1_5.domain.dmtf.cim.CimString;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import brooklyn.location.blockstore.FilesystemCommands;
+
+/**
+ * Adds VMware Paravirtual SCSI (PVSCSI) controllers and disks to a VM's hardware section, in the same way as
+ * jclouds' {@code AddScsiLogicSASBus} and {@code NewScsiLogicSASDisk} do for LSI Logic SAS.
+ * <p>
+ * A VM has at most {@link #MAX_BUSES} SCSI controllers of any kind, each with up to 15 disks (unit 7 being the
+ * controller itself). New disks are spread over the VM's paravirtual controllers, each going to the one with
+ * the fewest disks, so that their I/O is queued in parallel.
+ * <p>
+ * Linux names SCSI disks (sdb, sdc, ...) in controller and target order, not in the order they were added, so a
+ * paravirtual disk is found in the guest by its {@link #getGuestPath SCSI target} instead, which follows from the
+ * bus of its controller and its unit number.
+ */
+public class ParavirtualScsiDisks {
+
+    public static final String PARAVIRTUAL_SUBTYPE = "VirtualSCSI";
+    public static final int MAX_BUSES = 4;
+
+    private static final String VCLOUD_NS = "http://www.vmware.com/vcloud/v1.5";
+    private static final int MAX_UNITS = 16;
+    private static final int CONTROLLER_UNIT = 7;
+    private static final int FIRST_DISK_INSTANCE_ID = 2000;
+
+    /** The Linux driver of paravirtual SCSI controllers. */
+    public static final String GUEST_DRIVER = "vmw_pvscsi";
+
+    private ParavirtualScsiDisks() {}
+
+    /**
+     * Adds paravirtual controllers to the list, as far as there are free SCSI buses, until it has {@code count}.
+     *
+     * @return The instance ids of the list's paravirtual controllers, by bus number
+     */
+    public static List<String> ensureControllers(RasdItemsList items, int count) {
+        checkArgument(count > 0 && count <= MAX_BUSES, "There can be 1-%s SCSI controllers, not %s", MAX_BUSES, count);
+        List<String> result = Lists.newArrayList(getControllers(items));
+        Set<Integer> usedBuses = Sets.newHashSet();
+        for (RasdItem item : items) {
+            if (isScsiController(item) && item.getAddress() != null) {
+                usedBuses.add(Integer.parseInt(item.getAddress()));
+            }
+        }
+        for (int bus = 0; bus < MAX_BUSES && result.size() < count; bus++) {
+            if (usedBuses.add(bus)) {
+                String instanceId = Integer.toString(nextInstanceId(items, false));
+                items.add(RasdItem.builder()
+                        .address(Integer.toString(bus))
+                        .description("SCSI Controller")
+                        .elementName("SCSI Controller " + bus)
+                        .instanceID(instanceId)
+                        .resourceType(RasdItem.ResourceType.PARALLEL_SCSI_HBA)
+                        .resourceSubType(PARAVIRTUAL_SUBTYPE)
+                        .build());
+                result.add(instanceId);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalStateException("Cannot add a paravirtual SCSI controller; all " + MAX_BUSES + " SCSI buses are in use");
+        }
+        return result;
+    }
+
+    /**
+     * Adds a disk of the given size to the list, on whichever of the given controllers has the fewest disks.
+     *
+     * @param storageProfileHref The storage profile for the disk, if not the VM's default
+     * @return The new disk
+     */
+    public static RasdItem addDisk(RasdItemsList items, List<String> controllers, int sizeInGb, Optional<String> storageProfileHref) {
+        String controller = null;
+        int fewestDisks = Integer.MAX_VALUE;
+        for (String candidate : controllers) {
+            int disks = getUsedUnits(items, candidate).size();
+            if (disks < fewestDisks && disks < MAX_UNITS - 1) {
+                controller = candidate;
+                fewestDisks = disks;
+            }
+        }
+        if (controller == null) {
+            throw new IllegalStateException("Cannot add a disk; paravirtual SCSI controllers " + controllers + " are full");
+        }
+        Set<Integer> usedUnits = getUsedUnits(items, controller);
+        int unit = 0;
+        while (unit == CONTROLLER_UNIT || usedUnits.contains(unit)) {
+            unit++;
+        }
+
+        CimString hostResource = new CimString("");
+        hostResource.getOtherAttributes().put(new QName(VCLOUD_NS, "capacity"), "" + (sizeInGb * 1024));
+        hostResource.getOtherAttributes().put(new QName(VCLOUD_NS, "busType"), "6");
+        hostResource.getOtherAttributes().put(new QName(VCLOUD_NS, "busSubType"), PARAVIRTUAL_SUBTYPE);
+        if (storageProfileHref.isPresent()) {
+            setStorageProfile(hostResource, storageProfileHref.get());
+        }
+        RasdItem result = RasdItem.builder()
+                .addressOnParent(Integer.toString(unit))
+                .parent(controller)
+                .description("Hard disk")
+                .elementName("Hard disk " + (countDisks(items) + 1))
+                .instanceID(Integer.toString(nextInstanceId(items, true)))
+                .resourceType(RasdItem.ResourceType.DISK_DRIVE)
+                .hostResources(ImmutableList.of(hostResource))
+                .build();
+        items.add(result);
+        return result;
+    }
+
+    /**
+     * @return The {@link FilesystemCommands#scsiTarget SCSI target} under which a Linux guest sees the given
+     *         paravirtual disk: its unit on the {@value #GUEST_DRIVER} host of its controller. The guest's hosts are
+     *         told apart by the order of their PCI addresses, which is assumed to follow the controllers' bus
+     *         numbers, as vSphere places SCSI controllers 0-3 in ascending PCI slots; their exact addresses are not
+     *         relied on, as they vary with the virtual hardware.
+     */
+    public static String getGuestPath(RasdItemsList items, RasdItem disk) {
+        int hostIndex = getControllers(items).indexOf(disk.getParent());
+        if (hostIndex < 0) {
+            throw new IllegalStateException("Cannot find the paravirtual SCSI controller of disk " + disk.getInstanceID()
+                    + " (controller " + disk.getParent() + ")");
+        }
+        return FilesystemCommands.scsiTarget(GUEST_DRIVER, hostIndex, Integer.parseInt(disk.getAddressOnParent()));
+    }
+
+    /**
+     * Places the disk with the given host resource on the given storage profile, rather than the VM's default.
+     */
+    public static void setStorageProfile(CimString hostResource, String storageProfileHref) {
+        hostResource.getOtherAttributes().put(new QName(VCLOUD_NS, "storageProfileHref"), storageProfileHref);
+        hostResource.getOtherAttributes().put(new QName(VCLOUD_NS, "storageProfileOverrideVmDefault"), "true");
+    }
+
+    /**
+     * @return The instance ids of the list's paravirtual controllers, by bus number
+     */
+    public static List<String> getControllers(RasdItemsList items) {
+        List<RasdItem> controllers = Lists.newArrayList();
+        for (RasdItem item : items) {
+            if (isScsiController(item) && PARAVIRTUAL_SUBTYPE.equals(item.getResourceSubType())) {
+                controllers.add(item);
+            }
+        }
+        List<String> result = Lists.newArrayList();
+        for (int bus = 0; bus < MAX_BUSES; bus++) {
+            for (RasdItem controller : controllers) {
+                if (Integer.toString(bus).equals(controller.getAddress())) {
+                    result.add(controller.getInstanceID());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isScsiController(RasdItem item) {
+        return RasdItem.ResourceType.PARALLEL_SCSI_HBA.equals(item.getResourceType());
+    }
+
+    private static Set<Integer> getUsedUnits(RasdItemsList items, String controller) {
+        Set<Integer> result = Sets.newHashSet();
+        for (RasdItem item : items) {
+            if (controller.equals(item.getParent()) && item.getAddressOnParent() != null) {
+                result.add(Integer.parseInt(item.getAddressOnParent()));
+            }
+        }
+        return result;
+    }
+
+    private static int countDisks(RasdItemsList items) {
+        int result = 0;
+        for (RasdItem item : items) {
+            if (RasdItem.ResourceType.DISK_DRIVE.equals(item.getResourceType())) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /** Disks are numbered from {@value #FIRST_DISK_INSTANCE_ID}, and controllers below that. */
+    private static int nextInstanceId(RasdItemsList items, boolean disk) {
+        int result = disk ? FIRST_DISK_INSTANCE_ID : 1;
+        for (RasdItem item : items) {
+            int id = Integer.parseInt(item.getInstanceID());
+            if ((id >= FIRST_DISK_INSTANCE_ID) == disk) {
+                result = Math.max(result, id + 1);
+            }
+        }
+        return result;
+    }
+}
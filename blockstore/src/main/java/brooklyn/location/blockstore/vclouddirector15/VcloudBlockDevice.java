@@ -2,6 +2,7 @@ package brooklyn.location.blockstore.vclouddirector15;
 
 import brooklyn.location.blockstore.api.AttachedBlockDevice;
 import brooklyn.location.blockstore.api.MountedBlockDevice;
+import com.google.common.base.Optional;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
 import org.jclouds.vcloud.director.v1_5.domain.Vm;
@@ -12,12 +13,23 @@ public class VcloudBlockDevice implements AttachedBlockDevice {
     private JcloudsMachineLocation jcloudsMachineLocation;
     private Vm vm;
     private String osDeviceName;
+    private String guestPath;
 
     public VcloudBlockDevice(RasdItem rasdItem, JcloudsMachineLocation jcloudsMachineLocation, Vm vm, String osDeviceName) {
+        this(rasdItem, jcloudsMachineLocation, vm, osDeviceName, null);
+    }
+
+    /**
+     * @param guestPath The path or {@link brooklyn.location.blockstore.FilesystemCommands#scsiTarget SCSI target} under
+     *                  which the guest sees the disk, where its {@code /dev/sd} name cannot be relied on
+     */
+    public VcloudBlockDevice(RasdItem rasdItem, JcloudsMachineLocation jcloudsMachineLocation, Vm vm, String osDeviceName,
+            String guestPath) {
         this.rasdItem = rasdItem;
         this.jcloudsMachineLocation = jcloudsMachineLocation;
         this.vm = vm;
         this.osDeviceName = osDeviceName;
+        this.guestPath = guestPath;
     }
 
     protected VcloudBlockDevice(VcloudBlockDevice vcloudBlockDevice) {
@@ -25,6 +37,7 @@ public class VcloudBlockDevice implements AttachedBlockDevice {
         this.jcloudsMachineLocation = vcloudBlockDevice.jcloudsMachineLocation;
         this.vm = vcloudBlockDevice.vm;
         this.osDeviceName = vcloudBlockDevice.osDeviceName;
+        this.guestPath = vcloudBlockDevice.guestPath;
     }
 
     /**
@@ -34,6 +47,14 @@ public class VcloudBlockDevice implements AttachedBlockDevice {
         return vm;
     }
 
+    /**
+     * @return The path or SCSI target under which the guest sees the disk, if its {@code /dev/sd} name cannot be relied on
+     *         (e.g. on paravirtual controllers)
+     */
+    public Optional<String> getGuestPath() {
+        return Optional.fromNullable(guestPath);
+    }
+
     @Override
     public String getId() {
         return rasdItem.getInstanceID();
@@ -5,15 +5,26 @@ import brooklyn.location.blockstore.BlockDeviceOptions;
 import brooklyn.location.blockstore.FilesystemOptions;
 import brooklyn.location.blockstore.api.AttachedBlockDevice;
 import brooklyn.location.blockstore.api.BlockDevice;
-import brooklyn.location.blockstore.api.MountedBlockDevice;
+import brooklyn.location.blockstore.api.VolumeOptions;
+import brooklyn.location.blockstore.wait.WaitResult;
+import brooklyn.location.blockstore.wait.WaitStrategies;
+import brooklyn.location.blockstore.wait.Waits;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.reflect.TypeToken;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
-import org.apache.brooklyn.util.repeat.Repeater;
+import org.apache.brooklyn.util.time.Duration;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.util.Predicates2;
 import org.jclouds.vcloud.director.v1_5.VCloudDirectorApi;
@@ -32,8 +43,10 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
 
 public class VcloudVolumeManager extends AbstractVolumeManager {
     private static final String VCLOUD_DISKS_ARE_BOUND_TO_VM_MSG = "In Vcloud Director each disk is bound to the VM. Disks will be deleted on VM termination.";
@@ -41,6 +54,19 @@ public class VcloudVolumeManager extends AbstractVolumeManager {
     public static final long EDIT_VM_TIMEOUT_MS = 600000L;
     public static final String OS_DEVICE_PREFIX = "/dev/sd";
 
+    public static final ConfigKey<Duration> VOLUME_AVAILABLE_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "blockstore.vcloud-director.volumeAvailableTimeout", "How long to wait for a new disk to be visible on the VM", Duration.minutes(2));
+
+    @SuppressWarnings("serial")
+    public static final ConfigKey<Map<String, String>> STORAGE_PROFILES = ConfigKeys.newConfigKey(
+            new TypeToken<Map<String, String>>() {},
+            "blockstore.vcloud-director.storageProfiles",
+            "The href of each storage profile that a volume's storageProfile can name, e.g. "
+                    + "{ssd: https://vcd.example.com/api/vdcStorageProfile/<id>}", ImmutableMap.<String, String>of());
+
+    private static final String LSI_LOGIC_SAS = "lsilogicsas";
+    private static final String PARAVIRTUAL = "paravirtual";
+
     @Override
     protected String getVolumeDeviceName(char deviceSuffix) {
         return null;
@@ -51,54 +77,111 @@ public class VcloudVolumeManager extends AbstractVolumeManager {
         return OS_DEVICE_PREFIX + deviceSuffix;
     }
 
+    /**
+     * A paravirtual disk is found only by its SCSI target: its {@code /dev/sd} name depends on the order of the
+     * controllers, so could be that of another disk.
+     */
+    @Override
+    protected List<String> getOSDeviceNames(AttachedBlockDevice attachedDevice) {
+        if (attachedDevice instanceof VcloudBlockDevice && ((VcloudBlockDevice) attachedDevice).getGuestPath().isPresent()) {
+            return ImmutableList.of(((VcloudBlockDevice) attachedDevice).getGuestPath().get());
+        }
+        return super.getOSDeviceNames(attachedDevice);
+    }
+
+    @Override
+    public boolean canCreateBlockDeviceWithoutMachine() {
+        return false;
+    }
+
     @Override
     public BlockDevice createBlockDevice(JcloudsLocation jcloudsLocation, BlockDeviceOptions options) {
         throw new IllegalStateException("This method shouldn't be called for Vcloud Director.");
     }
 
     @Override
-    public MountedBlockDevice createAttachAndMountVolume(JcloudsMachineLocation machine, BlockDeviceOptions deviceOptions,
-                                                         FilesystemOptions filesystemOptions) {
-        BlockDevice device = createBlockDevice(machine, deviceOptions);
-        AttachedBlockDevice attached = attachBlockDevice(machine, device, deviceOptions);
-        createFilesystem(attached, filesystemOptions);
-        return mountFilesystem(attached, filesystemOptions);
+    public AttachedBlockDevice createAndAttachBlockDevice(JcloudsMachineLocation machine, BlockDeviceOptions deviceOptions,
+                                                          FilesystemOptions filesystemOptions) {
+        return Iterables.getOnlyElement(createAndAttachBlockDevices(machine, ImmutableList.of(new VolumeOptions(deviceOptions, filesystemOptions))));
     }
 
+    /**
+     * Adds a new hard disk to the VM, once no other change to the VM's disks is in progress from here; vCloud
+     * Director replaces the VM's whole disk list on every change, so concurrent changes would lose disks.
+     */
     public BlockDevice createBlockDevice(JcloudsMachineLocation jcloudsMachineLocation, BlockDeviceOptions options) {
+        return createAndAttachBlockDevice(jcloudsMachineLocation, options, null);
+    }
+
+    /**
+     * Adds a hard disk for each volume, at consecutive SCSI addresses, in a single reconfiguration of the VM, and
+     * waits for them all to appear; so adding several disks costs one reconfiguration, rather than one each. The
+     * reconfiguration waits for any other change to the VM's disks from here, and includes the disks of concurrent
+     * calls for the same VM.
+     */
+    @Override
+    public List<AttachedBlockDevice> createAndAttachBlockDevices(JcloudsMachineLocation machine, List<VolumeOptions> volumes) {
+        for (VolumeOptions volume : volumes) {
+            getScsiController(volume.getBlockDeviceOptions());
+            getStorageProfileHref(machine.getParent(), volume.getBlockDeviceOptions());
+        }
+        return volumes.isEmpty() ? ImmutableList.<AttachedBlockDevice>of() : createAndAttachBlockDevicesQueued(machine, volumes);
+    }
+
+    @Override
+    protected List<AttachedBlockDevice> createAndAttachBlockDevicesNow(JcloudsMachineLocation jcloudsMachineLocation, List<VolumeOptions> volumes) {
         Optional<NodeMetadata> vcloudNodeMetadata = jcloudsMachineLocation.getOptionalNode();
-        VCloudDirectorApi vCloudDirectorApi = jcloudsMachineLocation.getParent().getComputeService().getContext().unwrapApi(VCloudDirectorApi.class);
+        VCloudDirectorApi vCloudDirectorApi = getApi(jcloudsMachineLocation.getParent());
         VmApi vmApi = vCloudDirectorApi.getVmApi();
         TaskApi taskApi = vCloudDirectorApi.getTaskApi();
         Vm vm = Vm.builder().id(vcloudNodeMetadata.get().getId()).build();
         RasdItemsList virtualHardwareSectionDisks = vmApi.getVirtualHardwareSectionDisks(vm.getId());
 
-        if (!Iterables.tryFind(virtualHardwareSectionDisks, NewScsiLogicSASDisk.SCSI_LSILOGICSAS_PREDICATE).isPresent()) {
+        boolean lsiLogicSas = false;
+        for (VolumeOptions volume : volumes) {
+            lsiLogicSas |= LSI_LOGIC_SAS.equals(getScsiController(volume.getBlockDeviceOptions()));
+        }
+        if (lsiLogicSas && !Iterables.tryFind(virtualHardwareSectionDisks, NewScsiLogicSASDisk.SCSI_LSILOGICSAS_PREDICATE).isPresent()) {
             virtualHardwareSectionDisks = new AddScsiLogicSASBus().addScsiLogicSASBus(virtualHardwareSectionDisks);
         }
 
-        RasdItem nextDisk = new NewScsiLogicSASDisk().apply(virtualHardwareSectionDisks);
+        List<VcloudBlockDevice> devices = Lists.newArrayList();
+        for (VolumeOptions volume : volumes) {
+            BlockDeviceOptions options = volume.getBlockDeviceOptions();
+            Optional<String> storageProfileHref = getStorageProfileHref(jcloudsMachineLocation.getParent(), options);
+            // Each disk is added to the list before the next is made, so that it takes the next SCSI address
+            RasdItem newDiskToBeCreated;
+            String guestPath = null;
+            if (PARAVIRTUAL.equals(getScsiController(options))) {
+                List<String> controllers = ParavirtualScsiDisks.ensureControllers(virtualHardwareSectionDisks, options.getScsiControllers().or(1));
+                newDiskToBeCreated = ParavirtualScsiDisks.addDisk(virtualHardwareSectionDisks, controllers, options.getSizeInGb(), storageProfileHref);
+                guestPath = ParavirtualScsiDisks.getGuestPath(virtualHardwareSectionDisks, newDiskToBeCreated);
+            } else {
+                RasdItem nextDisk = new NewScsiLogicSASDisk().apply(virtualHardwareSectionDisks);
 
-        CimString newDiskHostResource = new CimString(Iterables.getOnlyElement(nextDisk.getHostResources()));
-        Preconditions.checkNotNull(newDiskHostResource, "HostResource for the existing disk should not be null");
-        newDiskHostResource.getOtherAttributes().put(new QName("http://www.vmware.com/vcloud/v1.5", "capacity"), "" + (options.getSizeInGb() * 1024));
-        RasdItem newDiskToBeCreated = RasdItem.builder()
-                .fromRasdItem(nextDisk) // The same AddressOnParent (SCSI Controller)
-                .hostResources(ImmutableList.of(newDiskHostResource)) // NB! Use hostResources to override hostResources from newDisk
-                .build();
-        virtualHardwareSectionDisks.add(newDiskToBeCreated);
+                CimString newDiskHostResource = new CimString(Iterables.getOnlyElement(nextDisk.getHostResources()));
+                Preconditions.checkNotNull(newDiskHostResource, "HostResource for the existing disk should not be null");
+                newDiskHostResource.getOtherAttributes().put(new QName("http://www.vmware.com/vcloud/v1.5", "capacity"), "" + (options.getSizeInGb() * 1024));
+                if (storageProfileHref.isPresent()) {
+                    ParavirtualScsiDisks.setStorageProfile(newDiskHostResource, storageProfileHref.get());
+                }
+                newDiskToBeCreated = RasdItem.builder()
+                        .fromRasdItem(nextDisk) // The same AddressOnParent (SCSI Controller)
+                        .hostResources(ImmutableList.of(newDiskHostResource)) // NB! Use hostResources to override hostResources from newDisk
+                        .build();
+                virtualHardwareSectionDisks.add(newDiskToBeCreated);
+            }
+            devices.add(new VcloudBlockDevice(newDiskToBeCreated, jcloudsMachineLocation, vm, getOSDeviceName(options.getDeviceSuffix()), guestPath));
+        }
+        LOG.info("Adding {} disks to VM {} in one reconfiguration: {}", new Object[] {devices.size(), vm.getId(), volumes});
         Task task = vmApi.editVirtualHardwareSectionDisks(vm.getId(), virtualHardwareSectionDisks);
-        Predicates2.retry(
-                new TaskSuccess(taskApi),
-                Predicates2.DEFAULT_PERIOD * 5L,
-                Predicates2.DEFAULT_MAX_PERIOD * 5L,
-                EDIT_VM_TIMEOUT_MS).apply(task);
-        String osDeviceName = getOSDeviceName(options.getDeviceSuffix());
-        VcloudBlockDevice vcloudBlockDevice = new VcloudBlockDevice(newDiskToBeCreated, jcloudsMachineLocation, vm, osDeviceName);
+        if (!waitForTask(taskApi, task)) {
+            throw new IllegalStateException("Disks not added successfully to VM " + vm.getId() + ": " + volumes + "; task " + task);
+        }
 
         // Extra check for which seems to be necessary.
-        waitForVolumeToBeAvailable(vcloudBlockDevice);
-        return vcloudBlockDevice;
+        waitForVolumesToBeAvailable(devices);
+        return ImmutableList.<AttachedBlockDevice>copyOf(devices);
     }
 
     // In Vcloud Director, Hard Disk is bound to the VM
@@ -107,6 +190,30 @@ public class VcloudVolumeManager extends AbstractVolumeManager {
         return (VcloudBlockDevice)blockDevice;
     }
 
+    /**
+     * Finds the hard disk among the VM's, by its instance id; a disk on a paravirtual controller is given its SCSI
+     * target in the guest, as for a new one.
+     */
+    @Override
+    public AttachedBlockDevice findAttachedBlockDevice(JcloudsMachineLocation machine, final String volumeId, char deviceSuffix) {
+        VCloudDirectorApi vCloudDirectorApi = getApi(machine.getParent());
+        String vmId = machine.getOptionalNode().get().getId();
+        RasdItemsList virtualHardwareSectionDisks = vCloudDirectorApi.getVmApi().getVirtualHardwareSectionDisks(vmId);
+
+        Optional<RasdItem> disk = Iterables.tryFind(virtualHardwareSectionDisks, new Predicate<RasdItem>() {
+            @Override public boolean apply(@Nullable RasdItem input) {
+                return RasdItem.ResourceType.DISK_DRIVE.equals(input.getResourceType()) && volumeId.equals(input.getInstanceID());
+            }
+        });
+        if (!disk.isPresent()) {
+            throw new IllegalArgumentException("No hard disk " + volumeId + " on VM " + vmId);
+        }
+        String guestPath = ParavirtualScsiDisks.getControllers(virtualHardwareSectionDisks).contains(disk.get().getParent())
+                ? ParavirtualScsiDisks.getGuestPath(virtualHardwareSectionDisks, disk.get())
+                : null;
+        return new VcloudBlockDevice(disk.get(), machine, Vm.builder().id(vmId).build(), getOSDeviceName(deviceSuffix), guestPath);
+    }
+
     // In Vcloud Director, Hard Disk is bound to the VM
     @Override
     public BlockDevice detachBlockDevice(AttachedBlockDevice attachedBlockDevice) {
@@ -119,21 +226,145 @@ public class VcloudVolumeManager extends AbstractVolumeManager {
         LOG.info("delete Block device queried. " + VCLOUD_DISKS_ARE_BOUND_TO_VM_MSG);
     }
 
-    protected void waitForVolumeToBeAvailable(final VcloudBlockDevice device) {
-        boolean available = Repeater.create("waiting for volume available:" + device)
-                .every(1, TimeUnit.SECONDS)
-                .limitTimeTo(120, TimeUnit.SECONDS)
-                .until(new Callable<Boolean>() {
+    /**
+     * Sets the new capacity on the VM's hard disk, which vCloud Director allows while the VM is running
+     * (provided the VM has no snapshots).
+     */
+    @Override
+    protected void resizeVolume(final AttachedBlockDevice attachedDevice, final int newSizeInGb) {
+        executeOnMachine(attachedDevice.getMachine(), new Callable<Void>() {
+            @Override
+            public Void call() {
+                resizeVolumeNow(attachedDevice, newSizeInGb);
+                return null;
+            }
+        });
+    }
+
+    private void resizeVolumeNow(final AttachedBlockDevice attachedDevice, int newSizeInGb) {
+        JcloudsMachineLocation machine = attachedDevice.getMachine();
+        VCloudDirectorApi vCloudDirectorApi = getApi(machine.getParent());
+        VmApi vmApi = vCloudDirectorApi.getVmApi();
+        String vmId = machine.getOptionalNode().get().getId();
+        RasdItemsList virtualHardwareSectionDisks = vmApi.getVirtualHardwareSectionDisks(vmId);
+
+        Optional<RasdItem> disk = Iterables.tryFind(virtualHardwareSectionDisks, new Predicate<RasdItem>() {
+            @Override public boolean apply(@Nullable RasdItem input) {
+                return RasdItem.ResourceType.DISK_DRIVE.equals(input.getResourceType()) && attachedDevice.getId().equals(input.getInstanceID());
+            }
+        });
+        if (!disk.isPresent()) {
+            throw new IllegalStateException("Cannot resize disk; " + attachedDevice + " not found on VM " + vmId);
+        }
+
+        CimString hostResource = new CimString(Iterables.getOnlyElement(disk.get().getHostResources()));
+        hostResource.getOtherAttributes().put(new QName("http://www.vmware.com/vcloud/v1.5", "capacity"), "" + (newSizeInGb * 1024));
+        RasdItem resizedDisk = RasdItem.builder()
+                .fromRasdItem(disk.get())
+                .hostResources(ImmutableList.of(hostResource))
+                .build();
+        virtualHardwareSectionDisks.remove(disk.get());
+        virtualHardwareSectionDisks.add(resizedDisk);
+
+        Task task = vmApi.editVirtualHardwareSectionDisks(vmId, virtualHardwareSectionDisks);
+        if (!waitForTask(vCloudDirectorApi.getTaskApi(), task)) {
+            throw new IllegalStateException("Disk not resized successfully: " + attachedDevice + "; task " + task);
+        }
+    }
+
+    /**
+     * @return {@value #LSI_LOGIC_SAS} (the default) or {@value #PARAVIRTUAL}
+     * @throws IllegalArgumentException If the options name another kind of controller, or several LSI Logic SAS
+     *         controllers
+     */
+    @VisibleForTesting
+    static String getScsiController(BlockDeviceOptions options) {
+        String controller = options.getScsiController().or(LSI_LOGIC_SAS).toLowerCase().replace("-", "").replace("_", "");
+        if (ImmutableSet.of("paravirtual", "pvscsi", "virtualscsi").contains(controller)) {
+            Preconditions.checkArgument(options.getScsiControllers().or(1) <= ParavirtualScsiDisks.MAX_BUSES,
+                    "There can be at most %s SCSI controllers: %s", ParavirtualScsiDisks.MAX_BUSES, options);
+            return PARAVIRTUAL;
+        } else if (ImmutableSet.of("lsilogicsas", "lsisas", "lsi").contains(controller)) {
+            Preconditions.checkArgument(options.getScsiControllers().or(1) == 1,
+                    "Disks can only be spread over several paravirtual SCSI controllers: %s", options);
+            return LSI_LOGIC_SAS;
+        }
+        throw new IllegalArgumentException("Unknown scsiController '" + options.getScsiController().get()
+                + "'; expected lsilogicsas or paravirtual");
+    }
+
+    /**
+     * @return The href of the options' storage profile, which is either given as such or named in the location's
+     *         {@link #STORAGE_PROFILES}; or absent for the VM's default storage profile
+     */
+    @VisibleForTesting
+    static Optional<String> getStorageProfileHref(JcloudsLocation location, BlockDeviceOptions options) {
+        if (!options.getStorageProfile().isPresent()) {
+            return Optional.absent();
+        }
+        String storageProfile = options.getStorageProfile().get();
+        if (storageProfile.startsWith("http://") || storageProfile.startsWith("https://")) {
+            return Optional.of(storageProfile);
+        }
+        Map<String, String> storageProfiles = location.config().get(STORAGE_PROFILES);
+        if (storageProfiles == null || !storageProfiles.containsKey(storageProfile)) {
+            throw new IllegalArgumentException("Unknown vCloud storage profile '" + storageProfile + "'; give its href, or add it to "
+                    + STORAGE_PROFILES.getName() + " of " + location);
+        }
+        return Optional.of(storageProfiles.get(storageProfile));
+    }
+
+    protected VCloudDirectorApi getApi(JcloudsLocation location) {
+        return location.getComputeService().getContext().unwrapApi(VCloudDirectorApi.class);
+    }
+
+    private boolean waitForTask(TaskApi taskApi, Task task) {
+        return Predicates2.retry(
+                new TaskSuccess(taskApi),
+                Predicates2.DEFAULT_PERIOD * 5L,
+                Predicates2.DEFAULT_MAX_PERIOD * 5L,
+                EDIT_VM_TIMEOUT_MS).apply(task);
+    }
+
+    /**
+     * Waits until all the devices appear on their VM, checking all of them with each read of the VM's disks.
+     */
+    protected void waitForVolumesToBeAvailable(final List<VcloudBlockDevice> devices) {
+        final VcloudBlockDevice first = devices.get(0);
+        WaitResult<Set<String>> result = Waits.waitFor("vcloud-director.volume-available",
+                "waiting for volumes available: " + devices,
+                WaitStrategies.forLocation(first.getMachine().getParent(), VOLUME_AVAILABLE_TIMEOUT),
+                new Callable<Set<String>>() {
                     @Override
-                    public Boolean call() throws Exception {
-                        Optional<RasdItem> volume = describeVolume(device);
-                        return volume.isPresent();
-                    }})
-                .run();
+                    public Set<String> call() throws Exception {
+                        return describeMissingVolumes(first, devices);
+                    }},
+                new Predicate<Set<String>>() {
+                    @Override
+                    public boolean apply(Set<String> missing) {
+                        return missing.isEmpty();
+                    }});
 
-        if (!available) {
-            LOG.error("Volume {} still not available. Last known was: {}; continuing", device, null);
+        if (!result.isSuccess()) {
+            LOG.error("Volumes {} still not available on VM {}; continuing", result.getLastValue(), first.getVm().getId());
+        }
+    }
+
+    /**
+     * @return The ids of the devices not (yet) on the VM of the given device, from one read of its disks
+     */
+    private Set<String> describeMissingVolumes(VcloudBlockDevice device, List<VcloudBlockDevice> devices) {
+        RasdItemsList disks = getApi(device.getMachine().getParent()).getVmApi().getVirtualHardwareSectionDisks(device.getVm().getId());
+        Set<String> result = Sets.newLinkedHashSet();
+        for (VcloudBlockDevice expected : devices) {
+            result.add(expected.getId());
+        }
+        for (RasdItem disk : disks) {
+            if (RasdItem.ResourceType.DISK_DRIVE.equals(disk.getResourceType())) {
+                result.remove(disk.getInstanceID());
+            }
         }
+        return result;
     }
 
     public static Optional<RasdItem> describeVolume(final VcloudBlockDevice device) {
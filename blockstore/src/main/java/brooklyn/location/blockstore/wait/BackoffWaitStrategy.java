@@ -0,0 +1,73 @@
+package brooklyn.location.blockstore.wait;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Random;
+
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Exponential backoff with jitter: the first delay is {@code initialDelay}, each subsequent one is
+ * {@code multiplier} times longer up to {@code maxDelay}, and each is then randomly spread by up to
+ * {@code jitter} (a fraction, e.g. 0.2 for &plusmn;20%) so that many concurrent waits do not poll in lock-step.
+ * <p>
+ * A multiplier of 1 and jitter of 0 gives a fixed polling interval.
+ */
+public class BackoffWaitStrategy implements WaitStrategy {
+
+    private static final Random RANDOM = new Random();
+
+    private final Duration initialDelay;
+    private final double multiplier;
+    private final Duration maxDelay;
+    private final double jitter;
+    private final Duration timeout;
+    private final Random random;
+
+    public BackoffWaitStrategy(Duration initialDelay, double multiplier, Duration maxDelay, double jitter, Duration timeout) {
+        this(initialDelay, multiplier, maxDelay, jitter, timeout, RANDOM);
+    }
+
+    BackoffWaitStrategy(Duration initialDelay, double multiplier, Duration maxDelay, double jitter, Duration timeout, Random random) {
+        checkArgument(multiplier >= 1, "multiplier must be at least 1, but was %s", multiplier);
+        checkArgument(jitter >= 0 && jitter < 1, "jitter must be in [0,1), but was %s", jitter);
+        this.initialDelay = checkNotNull(initialDelay, "initialDelay");
+        this.multiplier = multiplier;
+        this.maxDelay = checkNotNull(maxDelay, "maxDelay");
+        this.jitter = jitter;
+        this.timeout = checkNotNull(timeout, "timeout");
+        this.random = checkNotNull(random, "random");
+    }
+
+    @Override
+    public Duration getDelay(int attempt) {
+        double base = initialDelay.toMilliseconds() * Math.pow(multiplier, Math.max(0, attempt - 1));
+        base = Math.min(base, maxDelay.toMilliseconds());
+        double spread = (jitter == 0) ? 1 : 1 - jitter + (2 * jitter * random.nextDouble());
+        return Duration.millis(Math.max(0L, Math.round(base * spread)));
+    }
+
+    @Override
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public BackoffWaitStrategy withTimeout(Duration timeout) {
+        return new BackoffWaitStrategy(initialDelay, multiplier, maxDelay, jitter, timeout, random);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("initialDelay", initialDelay)
+                .add("multiplier", multiplier)
+                .add("maxDelay", maxDelay)
+                .add("jitter", jitter)
+                .add("timeout", timeout)
+                .toString();
+    }
+}
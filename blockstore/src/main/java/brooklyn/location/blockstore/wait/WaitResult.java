@@ -0,0 +1,63 @@
+package brooklyn.location.blockstore.wait;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * The outcome of a {@link Waits#waitFor wait}: whether the condition was met, the last value polled,
+ * and how long it actually took.
+ */
+public class WaitResult<T> {
+
+    private final boolean success;
+    private final T lastValue;
+    private final Exception lastError;
+    private final int attempts;
+    private final Duration elapsed;
+
+    public WaitResult(boolean success, @Nullable T lastValue, @Nullable Exception lastError, int attempts, Duration elapsed) {
+        this.success = success;
+        this.lastValue = lastValue;
+        this.lastError = lastError;
+        this.attempts = attempts;
+        this.elapsed = elapsed;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    @Nullable
+    public T getLastValue() {
+        return lastValue;
+    }
+
+    /**
+     * @return The exception thrown by the most recent failed poll, if any
+     */
+    @Nullable
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("success", success)
+                .add("attempts", attempts)
+                .add("elapsed", elapsed)
+                .add("lastValue", lastValue)
+                .toString();
+    }
+}
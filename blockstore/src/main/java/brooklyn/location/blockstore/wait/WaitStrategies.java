@@ -0,0 +1,60 @@
+package brooklyn.location.blockstore.wait;
+
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * Builds the {@link WaitStrategy} for a wait from the location's configuration.
+ * <p>
+ * By default every wait uses exponential backoff with jitter, configured by the {@code blockstore.wait.*} keys
+ * below. A custom strategy can be supplied instead with {@link #WAIT_STRATEGY}. Either way, the timeout comes
+ * from the per-provider key given by the caller, e.g.
+ * {@link brooklyn.location.blockstore.ec2.Ec2VolumeManager#VOLUME_AVAILABLE_TIMEOUT}.
+ */
+public class WaitStrategies {
+
+    public static final ConfigKey<WaitStrategy> WAIT_STRATEGY = ConfigKeys.newConfigKey(
+            WaitStrategy.class,
+            "blockstore.wait.strategy", "Custom strategy for polling volume state; overrides the blockstore.wait.* backoff settings");
+
+    public static final ConfigKey<Duration> INITIAL_DELAY = ConfigKeys.newDurationConfigKey(
+            "blockstore.wait.initialDelay", "Delay before the second poll of volume state", Duration.millis(250));
+
+    public static final ConfigKey<Double> MULTIPLIER = ConfigKeys.newDoubleConfigKey(
+            "blockstore.wait.multiplier", "Factor by which the delay between polls of volume state grows", 1.5);
+
+    public static final ConfigKey<Duration> MAX_DELAY = ConfigKeys.newDurationConfigKey(
+            "blockstore.wait.maxDelay", "Longest delay between polls of volume state", Duration.TEN_SECONDS);
+
+    public static final ConfigKey<Double> JITTER = ConfigKeys.newDoubleConfigKey(
+            "blockstore.wait.jitter", "Fraction by which each delay between polls is randomly spread", 0.2);
+
+    private WaitStrategies() {}
+
+    /**
+     * @return The strategy configured on the location, with its timeout taken from {@code timeoutKey}.
+     */
+    public static WaitStrategy forLocation(JcloudsLocation location, ConfigKey<Duration> timeoutKey) {
+        Duration timeout = location.config().get(timeoutKey);
+        WaitStrategy custom = location.config().get(WAIT_STRATEGY);
+        if (custom != null) {
+            return custom.withTimeout(timeout);
+        }
+        return backoff(
+                location.config().get(INITIAL_DELAY),
+                location.config().get(MULTIPLIER),
+                location.config().get(MAX_DELAY),
+                location.config().get(JITTER),
+                timeout);
+    }
+
+    public static WaitStrategy backoff(Duration initialDelay, double multiplier, Duration maxDelay, double jitter, Duration timeout) {
+        return new BackoffWaitStrategy(initialDelay, multiplier, maxDelay, jitter, timeout);
+    }
+
+    public static WaitStrategy fixed(Duration period, Duration timeout) {
+        return new BackoffWaitStrategy(period, 1, period, 0, timeout);
+    }
+}
@@ -0,0 +1,28 @@
+package brooklyn.location.blockstore.wait;
+
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * Decides how often to poll while waiting for a cloud resource to change state, and for how long.
+ *
+ * @see WaitStrategies
+ * @see Waits
+ */
+public interface WaitStrategy {
+
+    /**
+     * @param attempt The number of polls made so far (starting at 1 after the first poll)
+     * @return How long to wait before the next poll
+     */
+    Duration getDelay(int attempt);
+
+    /**
+     * @return How long to keep polling before giving up
+     */
+    Duration getTimeout();
+
+    /**
+     * @return A copy of this strategy with a different timeout
+     */
+    WaitStrategy withTimeout(Duration timeout);
+}
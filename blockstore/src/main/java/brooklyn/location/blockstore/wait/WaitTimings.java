@@ -0,0 +1,62 @@
+package brooklyn.location.blockstore.wait;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Running totals of how long waits of one kind (e.g. "aws-ec2.volume-available") have actually taken.
+ *
+ * @see Waits#getTimings()
+ */
+public class WaitTimings {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    void record(WaitResult<?> result) {
+        long millis = result.getElapsed().toMilliseconds();
+        count.incrementAndGet();
+        if (!result.isSuccess()) timeouts.incrementAndGet();
+        totalMillis.addAndGet(millis);
+        long max;
+        do {
+            max = maxMillis.get();
+        } while (millis > max && !maxMillis.compareAndSet(max, millis));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public Duration getTotal() {
+        return Duration.millis(totalMillis.get());
+    }
+
+    public Duration getMean() {
+        long n = count.get();
+        return Duration.millis(n == 0 ? 0 : totalMillis.get() / n);
+    }
+
+    public Duration getMax() {
+        return Duration.millis(maxMillis.get());
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("count", getCount())
+                .add("timeouts", getTimeouts())
+                .add("mean", getMean())
+                .add("max", getMax())
+                .toString();
+    }
+}
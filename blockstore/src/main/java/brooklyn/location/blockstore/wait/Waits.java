@@ -0,0 +1,93 @@
+package brooklyn.location.blockstore.wait;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Blocking polls driven by a {@link WaitStrategy}, recording how long each kind of wait actually takes.
+ */
+public class Waits {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Waits.class);
+
+    private static final ConcurrentMap<String, WaitTimings> TIMINGS = Maps.newConcurrentMap();
+
+    private Waits() {}
+
+    /**
+     * Calls {@code probe} until {@code done} accepts its result or the strategy's timeout expires, sleeping
+     * between polls as the strategy dictates. Exceptions from the probe are treated as transient.
+     *
+     * @param name The kind of wait, under which its timing is recorded (e.g. "aws-ec2.volume-available")
+     * @param description What is being waited for, for logging
+     */
+    public static <T> WaitResult<T> waitFor(String name, String description, WaitStrategy strategy,
+            Callable<T> probe, Predicate<? super T> done) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        long timeoutMillis = strategy.getTimeout().toMilliseconds();
+        T latest = null;
+        Exception lastError = null;
+        int attempt = 0;
+        boolean success = false;
+
+        while (true) {
+            attempt++;
+            try {
+                latest = probe.call();
+                lastError = null;
+                if (done.apply(latest)) {
+                    success = true;
+                    break;
+                }
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Problem " + description + " (will retry)", e);
+                lastError = e;
+            }
+            long remaining = timeoutMillis - stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            if (remaining <= 0) {
+                break;
+            }
+            Time.sleep(Math.min(strategy.getDelay(attempt).toMilliseconds(), remaining));
+        }
+
+        return record(name, description, new WaitResult<T>(success, latest, lastError, attempt,
+                Duration.millis(stopwatch.elapsed(TimeUnit.MILLISECONDS))));
+    }
+
+    /**
+     * Records the outcome of a wait of the given kind, e.g. one driven asynchronously.
+     */
+    public static <T> WaitResult<T> record(String name, String description, WaitResult<T> result) {
+        WaitTimings timings = TIMINGS.get(name);
+        if (timings == null) {
+            WaitTimings newTimings = new WaitTimings();
+            timings = TIMINGS.putIfAbsent(name, newTimings);
+            if (timings == null) timings = newTimings;
+        }
+        timings.record(result);
+        LOG.debug("Finished {}: success={}; elapsed={}; polls={}",
+                new Object[] {description, result.isSuccess(), result.getElapsed(), result.getAttempts()});
+        return result;
+    }
+
+    /**
+     * @return The timings recorded so far, keyed by kind of wait.
+     */
+    public static Map<String, WaitTimings> getTimings() {
+        return ImmutableMap.copyOf(TIMINGS);
+    }
+}
@@ -0,0 +1,179 @@
+package brooklyn.location.blockstore;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class FilesystemCommandsTest {
+
+    @Test
+    public void testScriptFormatsAllDevicesBeforeMounting() throws Exception {
+        String script = new FilesystemCommands()
+                .formatAndMount("/dev/xvdh", new FilesystemOptions("/mnt/h", "ext4"))
+                .formatAndMount("/dev/xvdi", new FilesystemOptions("/mnt/i", "xfs"))
+                .build();
+
+        assertTrue(script.indexOf("e4fsprogs") < script.indexOf("mkfs"), script);
+        assertTrue(script.contains("mkfs -t xfs -f $dev_1"), script);
+        assertTrue(script.indexOf("mkfs -t xfs -f $dev_1") < script.indexOf("mount /mnt/h"), script);
+        assertTrue(script.contains("wait $pid_0"), script);
+        assertTrue(script.contains("wait $pid_1"), script);
+        assertTrue(script.contains(FilesystemCommands.RESULT_MARKER + " /dev/xvdh $status_0"), script);
+        assertTrue(script.contains(FilesystemCommands.RESULT_MARKER + " /dev/xvdi $status_1"), script);
+    }
+
+    @Test
+    public void testMountOnlyDoesNotFormat() throws Exception {
+        String script = new FilesystemCommands()
+                .mount("/dev/xvdh", new FilesystemOptions("/mnt/h", "ext4"))
+                .build();
+
+        assertFalse(script.contains("mkfs"), script);
+        assertFalse(script.contains("e4fsprogs"), script);
+        assertTrue(script.contains("mount /mnt/h"), script);
+    }
+
+    @Test
+    public void testWaitsForAnyAliasAndReportsFirstName() throws Exception {
+        String script = new FilesystemCommands()
+                .formatAndMount(ImmutableList.of("/dev/xvdh", "/dev/disk/by-id/nvme-Amazon_Elastic_Block_Store_vol0123"),
+                        new FilesystemOptions("/mnt/h", "ext4"))
+                .build();
+
+        assertTrue(script.contains("blockstore_wait_for_device 60 /dev/xvdh /dev/disk/by-id/nvme-Amazon_Elastic_Block_Store_vol0123"), script);
+        assertTrue(script.contains("mkfs -t ext4 -F $dev_0"), script);
+        assertTrue(script.contains(FilesystemCommands.RESULT_MARKER + " /dev/xvdh $status_0"), script);
+        assertFalse(script.contains("sleep 1;"), script);
+    }
+
+    @Test
+    public void testWaitsForScsiTargetOfDriver() throws Exception {
+        String target = FilesystemCommands.scsiTarget("vmw_pvscsi", 1, 2);
+        String script = new FilesystemCommands()
+                .formatAndMount(target, new FilesystemOptions("/mnt/h", "ext4"))
+                .build();
+
+        assertEquals(target, "scsi-target:vmw_pvscsi:1:2");
+        assertTrue(script.contains("blockstore_wait_for_device 60 " + target), script);
+        assertTrue(script.contains("blockstore_scsi_device()"), script);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsScsiTargetOfUnsafeDriver() throws Exception {
+        FilesystemCommands.scsiTarget("vmw_pvscsi; reboot", 0, 0);
+    }
+
+    @Test
+    public void testFormatIfNeededProbesAndGrows() throws Exception {
+        String script = new FilesystemCommands()
+                .formatAndMount("/dev/xvdh", FilesystemOptions.fromMap(ImmutableMap.of(
+                        "mountPoint", "/mnt/h", "filesystemType", "ext4", "formatIfNeeded", "true")))
+                .build();
+
+        assertTrue(script.contains("blkid -o value -s TYPE $dev_0"), script);
+        assertTrue(script.contains("[ -z \"$existing_0\" ]"), script);
+        assertTrue(script.contains("status_0=wrong-filesystem"), script);
+        assertTrue(script.contains("resize2fs $dev_0"), script);
+    }
+
+    @Test
+    public void testAlwaysFormatsByDefault() throws Exception {
+        String script = new FilesystemCommands()
+                .formatAndMount("/dev/xvdh", new FilesystemOptions("/mnt/h", "ext4"))
+                .build();
+
+        assertFalse(script.contains("blkid"), script);
+    }
+
+    @Test
+    public void testProfileAndOptions() throws Exception {
+        String script = new FilesystemCommands()
+                .formatAndMount("/dev/xvdh", FilesystemOptions.fromMap(ImmutableMap.of(
+                        "mountPoint", "/mnt/h", "filesystemType", "ext4", "profile", "database", "mkfsOptions", "-m 0")))
+                .formatAndMount("/dev/xvdi", new FilesystemOptions("/mnt/i", "xfs").mountOptions("noatime,nobarrier"))
+                .build();
+
+        assertTrue(script.contains("mkfs -t ext4 -F -E lazy_itable_init=1,lazy_journal_init=1,nodiscard -m 0 $dev_0"), script);
+        assertTrue(script.contains("/mnt/h ext4 noatime,nodiratime 0 0"), script);
+        assertTrue(script.contains("mkfs -t xfs -f $dev_1"), script);
+        assertTrue(script.contains("/mnt/i xfs noatime,nobarrier 0 0"), script);
+    }
+
+    @Test
+    public void testDefaultMountOptions() throws Exception {
+        FilesystemOptions options = new FilesystemOptions("/mnt/h", "ext4");
+
+        assertEquals(options.getEffectiveMountOptions(), "noatime");
+        assertEquals(options.getEffectiveMkfsOptions(), "");
+        assertEquals(options.profile(FilesystemProfile.LOG).getEffectiveMountOptions(), "noatime,nodiratime,commit=60");
+    }
+
+    @Test
+    public void testStripedCreatesArrayAlignedToStripes() throws Exception {
+        String script = new FilesystemCommands()
+                .striped("/dev/md/blockstore-h", ImmutableList.<List<String>>of(ImmutableList.of("/dev/xvdh"), ImmutableList.of("/dev/xvdi")),
+                        512, new FilesystemOptions("/mnt/h", "ext4").profile(FilesystemProfile.DATABASE), true, true)
+                .build();
+
+        assertTrue(script.contains("mdadm --create /dev/md/blockstore-h --run --level=0 --chunk=512 --raid-devices=2 $members_0"), script);
+        assertTrue(script.contains("mkfs -t ext4 -F -E lazy_itable_init=1,lazy_journal_init=1,nodiscard,stride=128,stripe_width=256 $dev_0"), script);
+        assertTrue(script.contains("mdadm --detail --brief /dev/md/blockstore-h"), script);
+        assertTrue(script.contains(FilesystemCommands.RESULT_MARKER + " /dev/md/blockstore-h $status_0"), script);
+    }
+
+    @Test
+    public void testStripedMountReassembles() throws Exception {
+        String script = new FilesystemCommands()
+                .striped("/dev/md/blockstore-h", ImmutableList.<List<String>>of(ImmutableList.of("/dev/xvdh"), ImmutableList.of("/dev/xvdi")),
+                        512, new FilesystemOptions("/mnt/h", "xfs"), false, true)
+                .build();
+
+        assertTrue(script.contains("mdadm --assemble /dev/md/blockstore-h $members_0"), script);
+        assertFalse(script.contains("mdadm --create"), script);
+        assertFalse(script.contains("mkfs"), script);
+    }
+
+    @Test
+    public void testMergeMkfsOptions() throws Exception {
+        assertEquals(FilesystemCommands.mergeMkfsOptions("", "-E stride=1"), "-E stride=1");
+        assertEquals(FilesystemCommands.mergeMkfsOptions("-m 0", ""), "-m 0");
+        assertEquals(FilesystemCommands.mergeMkfsOptions("-E a=1 -m 0", "-E stride=1"), "-E a=1,stride=1 -m 0");
+        assertEquals(FilesystemCommands.mergeMkfsOptions("-K", "-d su=512k,sw=2"), "-K -d su=512k,sw=2");
+    }
+
+    @Test
+    public void testGrowFindsMountedDeviceAndWaitsForNewSize() throws Exception {
+        String script = new FilesystemCommands()
+                .grow("/dev/sdh", new FilesystemOptions("/mnt/h"), 200)
+                .build();
+
+        assertFalse(script.contains("blockstore_wait_for_device 60"), script);
+        assertFalse(script.contains("mkfs"), script);
+        assertTrue(script.contains("$2 == \"/mnt/h\""), script);
+        assertTrue(script.contains("blockstore_grow_device $dev_0 419430400"), script);
+        assertTrue(script.contains("growpart"), script);
+        assertTrue(script.contains("resize2fs $dev_0"), script);
+        assertTrue(script.contains("xfs_growfs /mnt/h"), script);
+        assertTrue(script.contains(FilesystemCommands.RESULT_MARKER + " /dev/sdh $status_0"), script);
+    }
+
+    @Test
+    public void testParseResults() throws Exception {
+        String output = "file /dev/xvdi does not exist (waiting)\n"
+                + FilesystemCommands.RESULT_MARKER + " /dev/xvdh ok\n"
+                + "some other output\n"
+                + FilesystemCommands.RESULT_MARKER + " /dev/xvdi device-not-found\n";
+
+        Map<String, String> results = FilesystemCommands.parseResults(output);
+
+        assertEquals(results, ImmutableMap.of("/dev/xvdh", "ok", "/dev/xvdi", "device-not-found"));
+    }
+}
@@ -0,0 +1,108 @@
+package brooklyn.location.blockstore;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+
+public class JcloudsApiCacheTest {
+
+    @Test
+    public void testReusesApiForSameKey() throws Exception {
+        JcloudsApiCache cache = new JcloudsApiCache(1, 1, TimeUnit.HOURS, Ticker.systemTicker());
+        RecordingApi first = get(cache, "myendpoint", "myidentity");
+        RecordingApi second = get(cache, "myendpoint", "myidentity");
+        RecordingApi other = get(cache, "myendpoint", "otheridentity");
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testDoesNotEvictApisInUseByManyAccounts() throws Exception {
+        JcloudsApiCache cache = new JcloudsApiCache(1, 1, TimeUnit.HOURS, Ticker.systemTicker());
+        RecordingApi first = get(cache, "myendpoint", "identity0");
+        for (int i = 1; i < 100; i++) {
+            get(cache, "myendpoint", "identity" + i);
+        }
+
+        assertFalse(first.closed);
+        assertSame(get(cache, "myendpoint", "identity0"), first);
+        assertEquals(cache.size(), 100);
+    }
+
+    @Test
+    public void testClosesExpiredApisAfterGracePeriod() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        JcloudsApiCache cache = new JcloudsApiCache(60, 10, TimeUnit.MINUTES, ticker);
+        RecordingApi first = get(cache, "endpoint1", "myidentity");
+
+        ticker.advance(61, TimeUnit.MINUTES);
+        RecordingApi second = get(cache, "endpoint2", "myidentity");
+        assertEquals(cache.size(), 1);
+        assertFalse(first.closed, "closed during grace period");
+
+        ticker.advance(11, TimeUnit.MINUTES);
+        assertSame(get(cache, "endpoint2", "myidentity"), second);
+        assertTrue(first.closed);
+        assertFalse(second.closed);
+    }
+
+    @Test
+    public void testInvalidateAllClosesImmediately() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        JcloudsApiCache cache = new JcloudsApiCache(60, 10, TimeUnit.MINUTES, ticker);
+        RecordingApi first = get(cache, "endpoint1", "myidentity");
+        ticker.advance(61, TimeUnit.MINUTES);
+        RecordingApi second = get(cache, "endpoint2", "myidentity");
+
+        cache.invalidateAll();
+
+        assertTrue(first.closed);
+        assertTrue(second.closed);
+        assertEquals(cache.size(), 0);
+    }
+
+    private RecordingApi get(JcloudsApiCache cache, String endpoint, String identity) {
+        JcloudsApiCache.Key key = new JcloudsApiCache.Key("myprovider", endpoint, identity, "mycredential", RecordingApi.class);
+        return cache.getApi(key, RecordingApi.class, new Callable<RecordingApi>() {
+            @Override
+            public RecordingApi call() {
+                return new RecordingApi();
+            }
+        });
+    }
+
+    private static class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long time, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(time));
+        }
+    }
+
+    private static class RecordingApi implements Closeable {
+        private volatile boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
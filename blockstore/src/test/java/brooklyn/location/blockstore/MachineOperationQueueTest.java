@@ -0,0 +1,143 @@
+package brooklyn.location.blockstore;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class MachineOperationQueueTest {
+
+    private MachineOperationQueue queue;
+    private ExecutorService executor;
+    private List<List<String>> batches;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        queue = new MachineOperationQueue();
+        executor = Executors.newCachedThreadPool();
+        batches = new CopyOnWriteArrayList<List<String>>();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCoalescesRequestsQueuedWhileMachineBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> busy = hold("vm1", release);
+
+        List<Future<String>> results = Lists.newArrayList();
+        for (String request : ImmutableList.of("a", "b", "c")) {
+            results.add(submit("vm1", request, false));
+        }
+        waitForQueued(busy, results);
+        release.countDown();
+
+        assertEquals(results.get(0).get(10, TimeUnit.SECONDS), "A");
+        assertEquals(results.get(1).get(10, TimeUnit.SECONDS), "B");
+        assertEquals(results.get(2).get(10, TimeUnit.SECONDS), "C");
+        assertEquals(batches.size(), 1, "batches=" + batches);
+        assertEquals(batches.get(0).size(), 3, "batches=" + batches);
+    }
+
+    @Test
+    public void testRunsOtherMachinesWhileOneIsBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        hold("vm1", release);
+        try {
+            assertEquals(submit("vm2", "a", false).get(10, TimeUnit.SECONDS), "A");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testFailsEveryRequestInFailedBatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> busy = hold("vm1", release);
+        List<Future<String>> results = ImmutableList.of(submit("vm1", "a", true), submit("vm1", "b", true));
+        waitForQueued(busy, results);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException, "cause=" + e.getCause());
+            }
+        }
+    }
+
+    /** Holds the machine until released. */
+    private Future<?> hold(final String key, final CountDownLatch release) throws Exception {
+        final CountDownLatch held = new CountDownLatch(1);
+        Future<?> result = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                queue.execute(key, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        held.countDown();
+                        release.await();
+                        return null;
+                    }
+                });
+            }
+        });
+        assertTrue(held.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private Future<String> submit(final String key, final String request, final boolean fail) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return queue.submit(key, "upper", request, new Function<List<String>, List<String>>() {
+                    @Override
+                    public List<String> apply(List<String> requests) {
+                        batches.add(requests);
+                        if (fail) {
+                            throw new IllegalStateException("failed " + requests);
+                        }
+                        List<String> result = Lists.newArrayList();
+                        for (String request : requests) {
+                            result.add(request.toUpperCase());
+                        }
+                        return result;
+                    }
+                });
+            }
+        });
+    }
+
+    /** Gives the submitting threads time to queue their requests and block on the busy machine. */
+    private void waitForQueued(Future<?> busy, List<Future<String>> results) throws Exception {
+        Thread.sleep(500);
+        assertTrue(batches.isEmpty(), "batches=" + batches);
+        for (Future<String> result : results) {
+            assertFalse(result.isDone());
+        }
+        assertFalse(busy.isDone());
+    }
+}
@@ -0,0 +1,291 @@
+package brooklyn.location.blockstore;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.jclouds.compute.domain.TemplateBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import brooklyn.location.blockstore.api.VolumeManager;
+import brooklyn.location.blockstore.api.VolumeOptions;
+
+public class NewVolumeCustomizerTest {
+
+    private LocalManagementContext mgmt;
+    private JcloudsLocation location;
+    private StubVolumeManager manager;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        mgmt = LocalManagementContextForTests.newInstance();
+        location = (JcloudsLocation) mgmt.getLocationRegistry().getLocationManaged("jclouds:aws-ec2:us-east-1a",
+                ImmutableMap.of("identity", "dummy", "credential", "dummy"));
+        manager = new StubVolumeManager();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    @Test
+    public void testAttachesVolumesCreatedEarly() throws Exception {
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h', 'i'));
+        customizer.setCreateEarly(true);
+
+        customizer.customize(location, null, (TemplateBuilder) null);
+        customizer.customize(location, null, machine("us-east-1a"));
+
+        assertEquals(manager.created.size(), 2);
+        for (BlockDeviceOptions created : manager.created) {
+            assertEquals(created.getZone(), "us-east-1a");
+        }
+        assertEquals(ImmutableSet.copyOf(manager.attached), ImmutableSet.of("vol-1", "vol-2"));
+        assertEquals(ImmutableSet.copyOf(manager.mounted), ImmutableSet.of("vol-1", "vol-2"));
+        assertTrue(manager.deleted.isEmpty(), "deleted=" + manager.deleted);
+    }
+
+    @Test
+    public void testReplacesVolumesCreatedEarlyInAnotherZone() throws Exception {
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h'));
+        customizer.setCreateEarly(true);
+
+        customizer.customize(location, null, (TemplateBuilder) null);
+        customizer.customize(location, null, machine("us-east-1b"));
+
+        assertEquals(manager.created.size(), 2);
+        assertEquals(manager.created.get(1).getZone(), "us-east-1b");
+        assertEquals(manager.deleted, ImmutableList.of("vol-1"));
+        assertEquals(manager.attached, ImmutableList.of("vol-2"));
+    }
+
+    @Test
+    public void testDoesNotDiscardVolumesOfOtherCustomizers() throws Exception {
+        StubVolumeManager otherManager = new StubVolumeManager();
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h'));
+        NewVolumeCustomizer other = newCustomizer(otherManager, volumes('i'));
+        customizer.setCreateEarly(true);
+        other.setCreateEarly(true);
+
+        customizer.customize(location, null, (TemplateBuilder) null);
+        other.customize(location, null, (TemplateBuilder) null);
+        customizer.customize(location, null, machine("us-east-1a"));
+        other.customize(location, null, machine("us-east-1a"));
+
+        assertEquals(manager.created.size(), 1);
+        assertEquals(manager.attached, ImmutableList.of("vol-1"));
+        assertEquals(otherManager.created.size(), 1);
+        assertEquals(otherManager.attached, ImmutableList.of("vol-1"));
+        assertTrue(manager.deleted.isEmpty(), "deleted=" + manager.deleted);
+        assertTrue(otherManager.deleted.isEmpty(), "deleted=" + otherManager.deleted);
+    }
+
+    @Test
+    public void testDiscardsVolumesLeftByEarlierAttempt() throws Exception {
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h'));
+        customizer.setCreateEarly(true);
+
+        // The first attempt's machine never came up, so obtain tries again on the same thread
+        customizer.customize(location, null, (TemplateBuilder) null);
+        customizer.customize(location, null, (TemplateBuilder) null);
+        customizer.customize(location, null, machine("us-east-1a"));
+
+        assertDeletedEventually(ImmutableList.of("vol-1"));
+        assertEquals(manager.attached.size(), 1);
+        assertFalse(manager.attached.contains("vol-1"), "attached=" + manager.attached);
+    }
+
+    @Test
+    public void testDeletesVolumesNotAttachedInTime() throws Exception {
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h', 'i'));
+        customizer.setCreateEarly(true);
+        customizer.setCreateEarlyTimeout(Duration.millis(10));
+
+        customizer.customize(location, null, (TemplateBuilder) null);
+
+        assertDeletedEventually(ImmutableList.of("vol-1", "vol-2"));
+    }
+
+    @Test
+    public void testMountsConcurrentVolumesInOrder() throws Exception {
+        // Each volume's attach waits for the next one's, so they finish in reverse order
+        final Map<Character, CountDownLatch> attachedLatches = ImmutableMap.of(
+                'h', new CountDownLatch(1), 'i', new CountDownLatch(1), 'j', new CountDownLatch(1));
+        manager = new StubVolumeManager() {
+            @Override
+            protected void onAttach(BlockDeviceOptions options) throws Exception {
+                CountDownLatch next = attachedLatches.get((char) (options.getDeviceSuffix() + 1));
+                if (next != null) assertTrue(next.await(10, TimeUnit.SECONDS));
+                attachedLatches.get(options.getDeviceSuffix()).countDown();
+            }
+        };
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h', 'i', 'j'));
+        customizer.setParallelism(3);
+
+        customizer.customize(location, null, machine("us-east-1a"));
+
+        List<Character> mountedSuffixes = Lists.newArrayList();
+        for (String id : manager.mounted) {
+            mountedSuffixes.add(manager.suffixes.get(id));
+        }
+        assertEquals(mountedSuffixes, ImmutableList.of('h', 'i', 'j'));
+    }
+
+    @Test
+    public void testCollectErrorsMountsTheOthersAndReportsAllFailures() throws Exception {
+        manager = new StubVolumeManager() {
+            @Override
+            protected void onAttach(BlockDeviceOptions options) throws Exception {
+                if (options.getDeviceSuffix() != 'i') return;
+                throw new IllegalStateException("simulated failure of " + options.getDeviceSuffix());
+            }
+        };
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h', 'i', 'j', 'k'));
+        customizer.setParallelism(2);
+        customizer.setFailurePolicy(NewVolumeCustomizer.FailurePolicy.COLLECT_ERRORS);
+
+        try {
+            customizer.customize(location, null, machine("us-east-1a"));
+            Asserts.shouldHaveFailedPreviously();
+        } catch (Exception e) {
+            Asserts.expectedFailureContains(e, "Failed to create and attach 1 of 4 volumes", "simulated failure of i");
+        }
+
+        assertEquals(manager.mounted.size(), 3);
+        assertEquals(ImmutableSet.copyOf(manager.suffixes.values()), ImmutableSet.of('h', 'j', 'k'));
+    }
+
+    @Test
+    public void testFailFastDeletesVolumesCreatedBeforeAndDuringFailure() throws Exception {
+        final CountDownLatch allCreated = new CountDownLatch(3);
+        final CountDownLatch failedLatch = new CountDownLatch(1);
+        manager = new StubVolumeManager() {
+            @Override
+            protected void onCreate(BlockDeviceOptions options) throws Exception {
+                allCreated.countDown();
+            }
+
+            @Override
+            protected void onAttach(BlockDeviceOptions options) throws Exception {
+                // All three are in progress before any is attached
+                assertTrue(allCreated.await(10, TimeUnit.SECONDS));
+                if (options.getDeviceSuffix() == 'i') {
+                    failedLatch.countDown();
+                    throw new IllegalStateException("simulated failure of i");
+                } else {
+                    // Still being attached when the failure is seen
+                    assertTrue(failedLatch.await(10, TimeUnit.SECONDS));
+                    Thread.sleep(200);
+                }
+            }
+        };
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h', 'i', 'j', 'k'));
+        customizer.setParallelism(3);
+
+        try {
+            customizer.customize(location, null, machine("us-east-1a"));
+            Asserts.shouldHaveFailedPreviously();
+        } catch (Exception e) {
+            Asserts.expectedFailureContains(e, "simulated failure of i");
+        }
+
+        // k was never started; h and j were attached, so are detached and deleted; i is deleted as its attach failed
+        assertEquals(manager.created.size(), 3);
+        assertEquals(ImmutableSet.copyOf(manager.suffixes.values()), ImmutableSet.of('h', 'j'));
+        assertEquals(ImmutableSet.copyOf(manager.detached), ImmutableSet.copyOf(manager.attached));
+        assertEquals(manager.deleted.size(), 3);
+        assertTrue(manager.mounted.isEmpty(), "mounted=" + manager.mounted);
+    }
+
+    @Test
+    public void testAddsVolumesInOneBatchWhereCloudCreatesThemOnTheMachine() throws Exception {
+        manager = new StubVolumeManager(false);
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h', 'i', 'j'));
+        customizer.setParallelism(3);
+
+        customizer.customize(location, null, machine("us-east-1a"));
+
+        assertEquals(manager.batches.size(), 1);
+        List<Character> batchSuffixes = Lists.newArrayList();
+        for (VolumeOptions volume : manager.batches.get(0)) {
+            assertEquals(volume.getBlockDeviceOptions().getZone(), "us-east-1a");
+            batchSuffixes.add(volume.getBlockDeviceOptions().getDeviceSuffix());
+        }
+        assertEquals(batchSuffixes, ImmutableList.of('h', 'i', 'j'));
+        assertEquals(manager.mounted, manager.attached);
+        assertEquals(manager.mounted.size(), 3);
+    }
+
+    @Test
+    public void testAddsSingleVolumeWithoutBatchWhereCloudCreatesItOnTheMachine() throws Exception {
+        manager = new StubVolumeManager(false);
+        NewVolumeCustomizer customizer = newCustomizer(volumes('h'));
+
+        customizer.customize(location, null, machine("us-east-1a"));
+
+        assertTrue(manager.batches.isEmpty(), "batches=" + manager.batches);
+        assertEquals(manager.mounted, ImmutableList.of("vol-1"));
+    }
+
+    private void assertDeletedEventually(final List<String> ids) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(ImmutableSet.copyOf(manager.deleted), ImmutableSet.copyOf(ids));
+            }
+        });
+    }
+
+    private NewVolumeCustomizer newCustomizer(List<VolumeOptions> volumes) {
+        return newCustomizer(manager, volumes);
+    }
+
+    private static NewVolumeCustomizer newCustomizer(final VolumeManager manager, List<VolumeOptions> volumes) {
+        return new NewVolumeCustomizer(volumes) {
+            @Override
+            protected VolumeManager getVolumeManager(JcloudsLocation location) {
+                return manager;
+            }
+
+            @Override
+            protected VolumeManager getVolumeManager(JcloudsMachineLocation machine) {
+                return manager;
+            }
+        };
+    }
+
+    static List<VolumeOptions> volumes(char... suffixes) {
+        List<VolumeOptions> result = Lists.newArrayList();
+        for (char suffix : suffixes) {
+            result.add(new VolumeOptions(
+                    new BlockDeviceOptions().sizeInGb(1).deviceSuffix(suffix),
+                    new FilesystemOptions("/mnt/" + suffix, "ext4")));
+        }
+        return result;
+    }
+
+    /** A machine in the given zone of the location, that supports only what the customizer uses. */
+    JcloudsMachineLocation machine(String zone) {
+        return StubVolumeManager.newMachine(location, zone);
+    }
+}
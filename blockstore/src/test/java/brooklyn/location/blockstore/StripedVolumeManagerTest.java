@@ -0,0 +1,60 @@
+package brooklyn.location.blockstore;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import brooklyn.location.blockstore.api.ModificationState;
+
+public class StripedVolumeManagerTest {
+
+    @Test
+    public void testMemberOptionsDivideSizeAndIops() throws Exception {
+        BlockDeviceOptions options = BlockDeviceOptions.fromMap(ImmutableMap.of(
+                "name", "data", "sizeInGb", 1000, "iops", 3000, "deviceSuffix", "h", "stripes", 3));
+
+        BlockDeviceOptions first = StripedVolumeManager.memberOptions(options, 0);
+        BlockDeviceOptions last = StripedVolumeManager.memberOptions(options, 2);
+
+        assertEquals(first.getStripes(), 1);
+        assertEquals(first.getSizeInGb(), 334);
+        assertEquals(first.getIops().get(), Integer.valueOf(1000));
+        assertEquals(first.getDeviceSuffix(), 'h');
+        assertEquals(first.getName(), "data-0");
+        assertEquals(last.getDeviceSuffix(), 'j');
+        assertEquals(last.getName(), "data-2");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMemberOptionsRejectsSuffixBeyondZ() throws Exception {
+        BlockDeviceOptions options = BlockDeviceOptions.fromMap(ImmutableMap.of("sizeInGb", 10, "deviceSuffix", "y", "stripes", 3));
+        StripedVolumeManager.memberOptions(options, 2);
+    }
+
+    @Test
+    public void testMemberPerformanceOptionsDivideIopsAndThroughput() throws Exception {
+        PerformanceOptions options = PerformanceOptions.fromMap(ImmutableMap.of(
+                "volumeType", "gp3", "iops", 16000, "throughputMiBps", 1000));
+
+        PerformanceOptions member = StripedVolumeManager.memberOptions(options, 3);
+
+        assertEquals(member.getVolumeType().get(), "gp3");
+        assertEquals(member.getIops().get(), Integer.valueOf(5334));
+        assertEquals(member.getThroughputMiBps().get(), Integer.valueOf(334));
+    }
+
+    @Test
+    public void testCombineModificationStates() throws Exception {
+        assertEquals(StripedVolumeManager.combine(ImmutableList.of(ModificationState.COMPLETED, ModificationState.OPTIMIZING)),
+                ModificationState.OPTIMIZING);
+        assertEquals(StripedVolumeManager.combine(ImmutableList.of(ModificationState.OPTIMIZING, ModificationState.MODIFYING)),
+                ModificationState.MODIFYING);
+        assertEquals(StripedVolumeManager.combine(ImmutableList.of(ModificationState.MODIFYING, ModificationState.FAILED)),
+                ModificationState.FAILED);
+        assertEquals(StripedVolumeManager.combine(ImmutableList.of(ModificationState.COMPLETED, ModificationState.COMPLETED)),
+                ModificationState.COMPLETED);
+    }
+}
@@ -0,0 +1,231 @@
+package brooklyn.location.blockstore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.domain.LocationBuilder;
+import org.jclouds.domain.LocationScope;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.ModificationState;
+import brooklyn.location.blockstore.api.MountedBlockDevice;
+import brooklyn.location.blockstore.api.VolumeOptions;
+
+/**
+ * A volume manager that creates, attaches and mounts nothing, but records the calls made to it. Tests override
+ * {@link #onCreate(BlockDeviceOptions)} and {@link #onAttach(BlockDeviceOptions)} to fail or delay those steps.
+ */
+public class StubVolumeManager extends AbstractVolumeManager {
+
+    public final List<BlockDeviceOptions> created = new CopyOnWriteArrayList<BlockDeviceOptions>();
+    public final List<String> attached = new CopyOnWriteArrayList<String>();
+    public final List<String> detached = new CopyOnWriteArrayList<String>();
+    public final List<String> deleted = new CopyOnWriteArrayList<String>();
+    public final List<String> mounted = new CopyOnWriteArrayList<String>();
+    /** The device suffix with which each volume was attached, by id. */
+    public final Map<String, Character> suffixes = Maps.newConcurrentMap();
+    public final Map<String, Map<String, String>> tags = Maps.newConcurrentMap();
+    /** The volumes of each {@link #createAndAttachBlockDevices} call, for managers that cannot create without a machine. */
+    public final List<List<VolumeOptions>> batches = new CopyOnWriteArrayList<List<VolumeOptions>>();
+    /** The devices returned by {@link #findAttachedBlockDevice}, in order. */
+    public final List<AttachedBlockDevice> found = new CopyOnWriteArrayList<AttachedBlockDevice>();
+    /** The devices resized, or whose filesystem was grown, in order. */
+    public final List<MountedBlockDevice> grown = new CopyOnWriteArrayList<MountedBlockDevice>();
+    /** The new size of each volume resized, by id. */
+    public final Map<String, Integer> resized = Maps.newConcurrentMap();
+    /** The options each volume's performance was changed with, by id. */
+    public final Map<String, PerformanceOptions> modified = Maps.newConcurrentMap();
+    /** The state in which each change of performance is left; tests set it to leave changes in progress. */
+    public volatile ModificationState modificationState = ModificationState.COMPLETED;
+    /** Volumes returned by {@link #findAvailableBlockDevices}, by the value of their pool tag. */
+    public final Map<String, List<BlockDevice>> available = Maps.newConcurrentMap();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final boolean canCreateWithoutMachine;
+
+    public StubVolumeManager() {
+        this(true);
+    }
+
+    public StubVolumeManager(boolean canCreateWithoutMachine) {
+        this.canCreateWithoutMachine = canCreateWithoutMachine;
+    }
+
+    /** Called before each volume is created; throw to fail it. */
+    protected void onCreate(BlockDeviceOptions options) throws Exception {
+    }
+
+    /** Called before each volume is attached; throw to fail it. */
+    protected void onAttach(BlockDeviceOptions options) throws Exception {
+    }
+
+    @Override
+    protected String getVolumeDeviceName(char deviceSuffix) {
+        return "/dev/sd" + deviceSuffix;
+    }
+
+    @Override
+    protected String getOSDeviceName(char deviceSuffix) {
+        return "/dev/xvd" + deviceSuffix;
+    }
+
+    @Override
+    public BlockDevice createBlockDevice(JcloudsLocation location, BlockDeviceOptions options) {
+        try {
+            onCreate(options);
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+        created.add(options);
+        return Devices.newBlockDevice(location, "vol-" + nextId.incrementAndGet());
+    }
+
+    @Override
+    public AttachedBlockDevice attachBlockDevice(JcloudsMachineLocation machine, BlockDevice blockDevice, BlockDeviceOptions options) {
+        try {
+            onAttach(options);
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+        attached.add(blockDevice.getId());
+        suffixes.put(blockDevice.getId(), options.getDeviceSuffix());
+        return blockDevice.attachedTo(machine, getVolumeDeviceName(options.getDeviceSuffix()));
+    }
+
+    @Override
+    public AttachedBlockDevice findAttachedBlockDevice(JcloudsMachineLocation machine, String volumeId, char deviceSuffix) {
+        AttachedBlockDevice result = super.findAttachedBlockDevice(machine, volumeId, deviceSuffix);
+        found.add(result);
+        return result;
+    }
+
+    /**
+     * Where volumes cannot be created without a machine, adds them in one queued change to the machine, as the
+     * Azure and vCloud managers do.
+     */
+    @Override
+    public List<AttachedBlockDevice> createAndAttachBlockDevices(JcloudsMachineLocation machine, List<VolumeOptions> volumes) {
+        if (canCreateWithoutMachine) {
+            return super.createAndAttachBlockDevices(machine, volumes);
+        }
+        batches.add(ImmutableList.copyOf(volumes));
+        return createAndAttachBlockDevicesQueued(machine, volumes);
+    }
+
+    @Override
+    protected List<AttachedBlockDevice> createAndAttachBlockDevicesNow(JcloudsMachineLocation machine, List<VolumeOptions> volumes) {
+        List<AttachedBlockDevice> result = Lists.newArrayList();
+        for (VolumeOptions volume : volumes) {
+            BlockDevice device = createBlockDevice(machine.getParent(), volume.getBlockDeviceOptions());
+            result.add(attachBlockDevice(machine, device, volume.getBlockDeviceOptions()));
+        }
+        return result;
+    }
+
+    @Override
+    public BlockDevice detachBlockDevice(AttachedBlockDevice attachedBlockDevice) {
+        detached.add(attachedBlockDevice.getId());
+        return attachedBlockDevice;
+    }
+
+    @Override
+    public void deleteBlockDevice(BlockDevice blockDevice) {
+        deleted.add(blockDevice.getId());
+    }
+
+    /** Records the resize, without growing the filesystem on the machine. */
+    @Override
+    public MountedBlockDevice resizeBlockDevice(MountedBlockDevice mountedDevice, int newSizeInGb) {
+        resized.put(mountedDevice.getId(), newSizeInGb);
+        grown.add(mountedDevice);
+        return mountedDevice;
+    }
+
+    @Override
+    public void growFilesystem(MountedBlockDevice mountedDevice) {
+        grown.add(mountedDevice);
+    }
+
+    @Override
+    protected ModificationState modifyVolumePerformance(AttachedBlockDevice attachedDevice, PerformanceOptions options) {
+        modified.put(attachedDevice.getId(), options);
+        return modificationState;
+    }
+
+    @Override
+    public boolean canCreateBlockDeviceWithoutMachine() {
+        return canCreateWithoutMachine;
+    }
+
+    @Override
+    public List<MountedBlockDevice> createFilesystemsAndMount(JcloudsMachineLocation machine,
+            Map<? extends AttachedBlockDevice, FilesystemOptions> devices) {
+        List<MountedBlockDevice> result = Lists.newArrayList();
+        for (Map.Entry<? extends AttachedBlockDevice, FilesystemOptions> entry : devices.entrySet()) {
+            mounted.add(entry.getKey().getId());
+            result.add(entry.getKey().mountedAt(entry.getValue().getMountPoint()));
+        }
+        return result;
+    }
+
+    @Override
+    protected boolean supportsPooling() {
+        return true;
+    }
+
+    @Override
+    protected List<BlockDevice> findAvailableBlockDevices(JcloudsLocation location, Map<String, String> tags) {
+        List<BlockDevice> result = available.remove(tags.get(VolumePool.POOL_TAG));
+        return (result != null) ? result : ImmutableList.<BlockDevice>of();
+    }
+
+    @Override
+    protected void tagBlockDevice(BlockDevice device, Map<String, String> tags) {
+        this.tags.put(device.getId(), tags);
+    }
+
+    /**
+     * A machine in the given zone of the location, which has a node but does nothing else.
+     */
+    public static JcloudsMachineLocation newMachine(final JcloudsLocation location, String zone) {
+        final NodeMetadata node = new NodeMetadataBuilder()
+                .id("i-1234")
+                .providerId("i-1234")
+                .name("stub")
+                .status(NodeMetadata.Status.RUNNING)
+                .location(new LocationBuilder().scope(LocationScope.ZONE).id(zone).description(zone).build())
+                .build();
+        return (JcloudsMachineLocation) Proxy.newProxyInstance(StubVolumeManager.class.getClassLoader(),
+                new Class<?>[] {JcloudsMachineLocation.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getOptionalNode": return Optional.of(node);
+                            case "getParent": return location;
+                            case "getJcloudsId": return node.getId();
+                            case "equals": return proxy == args[0];
+                            case "hashCode": return System.identityHashCode(proxy);
+                            case "toString": return "StubMachine[" + node.getId() + "]";
+                            default: throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                });
+    }
+}
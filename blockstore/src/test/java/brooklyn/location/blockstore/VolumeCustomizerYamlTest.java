@@ -69,4 +69,44 @@ public class VolumeCustomizerYamlTest extends AbstractYamlTest {
         assertEquals(filesystemOptions.getMountPoint(), "/my/mount/point");
         assertEquals(filesystemOptions.getFilesystemType(), "ext4");
     }
+
+    @Test
+    public void testInstantiateConcurrentCustomizer() throws Exception {
+        String yaml = Joiner.on("\n").join(
+                "location:",
+                "  aws-ec2:us-east-1:",
+                "    customizers:",
+                "    - $brooklyn:object:",
+                "        type: "+NewVolumeCustomizer.class.getName(),
+                "        object.fields:",
+                "          parallelism: 3",
+                "          failurePolicy: collect_errors",
+                "          createEarly: true",
+                "          volumes:",
+                "          - blockDevice:",
+                "              sizeInGb: 1",
+                "              deviceSuffix: 'h'",
+                "            filesystem:",
+                "              mountPoint: /my/mount/h",
+                "              filesystemType: ext4",
+                "          - blockDevice:",
+                "              sizeInGb: 2",
+                "              deviceSuffix: 'i'",
+                "            filesystem:",
+                "              mountPoint: /my/mount/i",
+                "              filesystemType: ext4",
+                "services:",
+                "- type: "+BasicApplication.class.getName());
+
+        Entity app = createAndStartApplication(yaml);
+        waitForApplicationTasks(app);
+
+        JcloudsLocation loc = (JcloudsLocation) Iterables.getOnlyElement(app.getLocations());
+        NewVolumeCustomizer customizer = (NewVolumeCustomizer) Iterables.getOnlyElement(loc.config().get(JcloudsLocation.JCLOUDS_LOCATION_CUSTOMIZERS));
+
+        assertEquals(customizer.getVolumes().size(), 2);
+        assertEquals(customizer.config().get(NewVolumeCustomizer.PARALLELISM), (Integer) 3);
+        assertEquals(customizer.config().get(NewVolumeCustomizer.FAILURE_POLICY), NewVolumeCustomizer.FailurePolicy.COLLECT_ERRORS);
+        assertEquals(customizer.config().get(NewVolumeCustomizer.CREATE_EARLY), Boolean.TRUE);
+    }
 }
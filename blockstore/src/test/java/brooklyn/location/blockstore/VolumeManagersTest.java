@@ -1,8 +1,16 @@
 package brooklyn.location.blockstore;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executors;
+
 import org.apache.brooklyn.api.location.LocationSpec;
 import org.apache.brooklyn.api.location.MachineLocation;
 import org.apache.brooklyn.core.entity.Entities;
@@ -13,8 +21,19 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import brooklyn.location.blockstore.api.AsyncVolumeManager;
+import brooklyn.location.blockstore.api.BlockDevice;
+import brooklyn.location.blockstore.api.VolumeManager;
+import brooklyn.location.blockstore.api.VolumeManagerProvider;
 import brooklyn.location.blockstore.azure.arm.AzureArmVolumeManager;
+import brooklyn.location.blockstore.ec2.Ec2AsyncVolumeManager;
 import brooklyn.location.blockstore.ec2.Ec2VolumeManager;
+import brooklyn.location.blockstore.gce.GoogleComputeEngineAsyncVolumeManager;
 import brooklyn.location.blockstore.gce.GoogleComputeEngineVolumeManager;
 import brooklyn.location.blockstore.openstack.OpenStackLocationConfig;
 import brooklyn.location.blockstore.openstack.OpenstackVolumeManager;
@@ -24,14 +43,20 @@ import brooklyn.location.blockstore.rackspace.RackspaceVolumeManager;
 public class VolumeManagersTest {
 
     private LocalManagementContext ctx;
+    private ListeningScheduledExecutorService executor;
 
     @BeforeMethod(alwaysRun = true)
     public void setUp() {
         ctx = new LocalManagementContext();
+        executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor());
     }
 
     @AfterMethod(alwaysRun = true)
     public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
         if (ctx != null) {
             Entities.destroyAll(ctx);
             ctx = null;
@@ -73,6 +98,67 @@ public class VolumeManagersTest {
         assertEquals(VolumeManagers.newVolumeManager(openstackLocation).getClass(), OpenstackVolumeManager.class);
     }
 
+    @Test
+    public void testAsyncVolumeManagers() {
+        assertEquals(VolumeManagers.newAsyncVolumeManager(locationFor("aws-ec2:us-east-1c"), executor).getClass(), Ec2AsyncVolumeManager.class);
+        assertEquals(VolumeManagers.newAsyncVolumeManager(locationFor("google-compute-engine"), executor).getClass(), GoogleComputeEngineAsyncVolumeManager.class);
+        assertEquals(VolumeManagers.newAsyncVolumeManager(locationFor("azurecompute-arm:westeurope"), executor).getClass(), AsyncVolumeManagerAdapter.class);
+    }
+
+    @Test
+    public void testAsyncVolumeManagerForPluginManager() throws Exception {
+        final BlockDevice device = Devices.newBlockDevice(locationFor("aws-ec2:us-east-1c"), "vol-1");
+        // A plugin's manager need not extend AbstractVolumeManager
+        VolumeManager pluginManager = (VolumeManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {VolumeManager.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("createBlockDevice")) return device;
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        AsyncVolumeManager asyncManager = VolumeManagers.newAsyncVolumeManager(pluginManager, executor);
+
+        assertEquals(asyncManager.getClass(), AsyncVolumeManagerAdapter.class);
+        assertSame(((AsyncVolumeManagerAdapter) asyncManager).getDelegate(), pluginManager);
+        assertSame(asyncManager.createBlockDevice(device.getLocation(), new BlockDeviceOptions()).get(), device);
+    }
+
+    @Test
+    public void testGetVolumeManagerIsSharedPerLocation() {
+        JcloudsLocation ec2Location = locationFor("aws-ec2:us-east-1c");
+        JcloudsLocation otherLocation = locationFor("aws-ec2:us-east-1c");
+
+        VolumeManager volumeManager = VolumeManagers.getVolumeManager(ec2Location);
+        assertSame(VolumeManagers.getVolumeManager(ec2Location), volumeManager);
+        assertNotSame(VolumeManagers.getVolumeManager(otherLocation), volumeManager);
+        assertNotSame(VolumeManagers.newVolumeManager(ec2Location), volumeManager);
+
+        ctx.getLocationManager().unmanage(ec2Location);
+        assertNotSame(VolumeManagerRegistry.getInstance().getVolumeManager(ec2Location), volumeManager);
+    }
+
+    @Test
+    public void testRegistryConsultsPluginsFirst() {
+        final VolumeManager pluginManager = new OpenstackVolumeManager();
+        VolumeManagerProvider plugin = new VolumeManagerProvider() {
+            @Override public boolean isSupported(String provider) {
+                return provider.equals("aws-ec2");
+            }
+            @Override public VolumeManager newVolumeManager(JcloudsLocation location) {
+                return pluginManager;
+            }
+        };
+        VolumeManagerRegistry registry = new VolumeManagerRegistry(Iterables.concat(
+                ImmutableList.of(plugin), VolumeManagerRegistry.builtInProviders()));
+
+        assertSame(registry.getVolumeManager(locationFor("aws-ec2:us-east-1c")), pluginManager);
+        assertEquals(registry.getVolumeManager(locationFor("azurecompute-arm:westeurope")).getClass(), AzureArmVolumeManager.class);
+        assertFalse(registry.isSupported("softlayer"));
+    }
+
     @Test(expectedExceptions = {IllegalArgumentException.class})
     public void testNewVolumeManagerThrowsOnInvalidLocation() {
         MachineLocation loc = ctx.getLocationManager().createLocation(LocationSpec.create(SimulatedLocation.class));
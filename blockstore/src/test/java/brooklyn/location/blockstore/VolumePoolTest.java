@@ -0,0 +1,141 @@
+package brooklyn.location.blockstore;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import brooklyn.location.blockstore.api.BlockDevice;
+
+public class VolumePoolTest {
+
+    private LocalManagementContext mgmt;
+    private JcloudsLocation location;
+    private StubVolumeManager manager;
+    private VolumePool pool;
+    private FilesystemOptions filesystem;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        mgmt = LocalManagementContextForTests.newInstance();
+        location = (JcloudsLocation) mgmt.getLocationRegistry().getLocationManaged("jclouds:aws-ec2:us-east-1", ImmutableMap.of(
+                "identity", "dummy",
+                "credential", "dummy",
+                VolumePool.ENABLED.getName(), true,
+                VolumePool.LOW_WATER_MARK.getName(), 1,
+                VolumePool.MAX_IDLE.getName(), 2));
+        manager = new StubVolumeManager();
+        // Refills run on the calling thread, so are done when take returns
+        pool = new VolumePool(MoreExecutors.newDirectExecutorService());
+        filesystem = new FilesystemOptions("/mnt/data", "ext4");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    @Test
+    public void testRefillsToMaxIdleWhenEmpty() {
+        BlockDeviceOptions options = gp2().tags(ImmutableMap.of("owner", "me"));
+
+        assertFalse(pool.take(manager, location, options, filesystem).isPresent());
+
+        assertEquals(manager.created.size(), 2);
+        assertEquals(pool.getIdleCount(location, options, filesystem), 2);
+        for (BlockDeviceOptions created : manager.created) {
+            assertEquals(created.getTags(), ImmutableMap.of(VolumePool.POOL_TAG, "us-east-1a/100/gp2/ext4"));
+        }
+    }
+
+    @Test
+    public void testTakesIdleVolumeAndTagsIt() {
+        BlockDeviceOptions options = gp2().tags(ImmutableMap.of("owner", "me"));
+        pool.take(manager, location, options, filesystem);
+
+        Optional<BlockDevice> taken = pool.take(manager, location, options, filesystem);
+
+        assertTrue(taken.isPresent());
+        assertEquals(manager.tags.get(taken.get().getId()), ImmutableMap.of("owner", "me", VolumePool.POOL_TAG, VolumePool.TAKEN));
+        assertEquals(pool.getIdleCount(location, options, filesystem), 1);
+    }
+
+    @Test
+    public void testRefillsOnlyBelowLowWaterMark() {
+        BlockDeviceOptions options = gp2();
+        pool.take(manager, location, options, filesystem);
+        assertEquals(manager.created.size(), 2);
+
+        // One left idle, which is not below the low-water mark of 1
+        pool.take(manager, location, options, filesystem);
+        assertEquals(manager.created.size(), 2);
+
+        // None left idle, so refilled to 2 again
+        pool.take(manager, location, options, filesystem);
+        assertEquals(manager.created.size(), 4);
+        assertEquals(pool.getIdleCount(location, options, filesystem), 2);
+    }
+
+    @Test
+    public void testRecoversTaggedVolumes() {
+        BlockDevice left = Devices.newBlockDevice(location, "vol-left");
+        manager.available.put("us-east-1a/100/gp2/ext4", ImmutableList.of(left));
+
+        Optional<BlockDevice> taken = pool.take(manager, location, gp2(), filesystem);
+
+        assertEquals(taken.get().getId(), "vol-left");
+    }
+
+    @Test
+    public void testSeparatesEncryptedFromUnencryptedVolumes() {
+        BlockDeviceOptions encrypted = gp2().encrypted(true);
+        BlockDeviceOptions unencrypted = gp2().encrypted(false);
+        assertNotEquals(VolumePool.poolName(encrypted, filesystem), VolumePool.poolName(unencrypted, filesystem));
+        assertNotEquals(VolumePool.poolName(encrypted, filesystem), VolumePool.poolName(gp2(), filesystem));
+
+        pool.take(manager, location, encrypted, filesystem);
+
+        assertEquals(pool.getIdleCount(location, unencrypted, filesystem), 0);
+        assertFalse(pool.take(manager, location, unencrypted, filesystem).isPresent());
+        for (BlockDeviceOptions created : manager.created.subList(0, 2)) {
+            assertEquals(created.getEncrypted().get(), Boolean.TRUE);
+        }
+        for (BlockDeviceOptions created : manager.created.subList(2, 4)) {
+            assertEquals(created.getEncrypted().get(), Boolean.FALSE);
+        }
+    }
+
+    @Test
+    public void testRefillsWithTheOptionsInThePoolName() {
+        BlockDeviceOptions options = new BlockDeviceOptions().zone("us-east-1a").sizeInGb(100).volumeType("gp3")
+                .iops(6000).throughputMiBps(500).encrypted(true).deviceSuffix('k').tags(ImmutableMap.of("owner", "me"));
+        String name = VolumePool.poolName(options, filesystem);
+        assertEquals(name, "us-east-1a/100/gp3/ext4/iops-6000/throughput-500/encrypted-true");
+
+        pool.take(manager, location, options, filesystem);
+
+        assertEquals(manager.created.size(), 2);
+        for (BlockDeviceOptions created : manager.created) {
+            assertEquals(VolumePool.poolName(created, filesystem), name);
+            assertEquals(created.getThroughputMiBps().get(), Integer.valueOf(500));
+            assertEquals(created.getTags(), ImmutableMap.of(VolumePool.POOL_TAG, name));
+        }
+    }
+
+    private static BlockDeviceOptions gp2() {
+        return new BlockDeviceOptions().zone("us-east-1a").sizeInGb(100).volumeType("gp2");
+    }
+}
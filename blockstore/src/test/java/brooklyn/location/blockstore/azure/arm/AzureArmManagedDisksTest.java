@@ -0,0 +1,63 @@
+package brooklyn.location.blockstore.azure.arm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.apache.brooklyn.util.guava.Maybe;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class AzureArmManagedDisksTest {
+
+    private static final URI ENDPOINT = URI.create("https://management.azure.com/subscriptions/1234");
+    private static final String DISK_ID = "/subscriptions/1234/resourceGroups/jclouds-westeurope/providers/Microsoft.Compute/disks/myvm-0-disk";
+
+    @Test
+    public void testBuildsSetPerformanceRequest() {
+        HttpRequest request = AzureArmManagedDisks.setPerformanceRequest(ENDPOINT, DISK_ID, Maybe.of(20000), Maybe.of(400),
+                ImmutableList.<HttpRequestFilter>of());
+
+        assertEquals(request.getMethod(), "PATCH");
+        assertEquals(request.getEndpoint(), URI.create("https://management.azure.com" + DISK_ID
+                + "?api-version=" + AzureArmManagedDisks.DISK_API_VERSION));
+        assertEquals(request.getPayload().getContentMetadata().getContentType(), "application/json");
+        assertEquals(request.getPayload().getRawContent().toString(),
+                "{\"properties\":{\"diskIOPSReadWrite\":20000,\"diskMBpsReadWrite\":400}}");
+    }
+
+    @Test
+    public void testBuildsSetIopsOnlyRequest() {
+        HttpRequest request = AzureArmManagedDisks.setPerformanceRequest(ENDPOINT, DISK_ID, Maybe.of(20000), Maybe.<Integer>absent(),
+                ImmutableList.<HttpRequestFilter>of());
+
+        assertEquals(request.getPayload().getRawContent().toString(), "{\"properties\":{\"diskIOPSReadWrite\":20000}}");
+    }
+
+    @Test
+    public void testParsesPerformanceState() {
+        String disk = "{\"name\":\"myvm-0-disk\",\"sku\":{\"name\":\"UltraSSD_LRS\"},"
+                + "\"properties\":{\"diskIOPSReadWrite\":20000,\"diskMBpsReadWrite\":400,\"provisioningState\":\"Succeeded\"}}";
+
+        assertEquals(AzureArmManagedDisks.parsePerformanceState(disk, Maybe.of(20000), Maybe.of(400)), "Succeeded");
+        assertEquals(AzureArmManagedDisks.parsePerformanceState(disk, Maybe.of(20000), Maybe.<Integer>absent()), "Succeeded");
+        assertEquals(AzureArmManagedDisks.parsePerformanceState(disk, Maybe.of(40000), Maybe.<Integer>absent()), "Updating");
+        assertEquals(AzureArmManagedDisks.parsePerformanceState(
+                "{\"properties\":{\"diskIOPSReadWrite\":2000,\"provisioningState\":\"Failed\"}}", Maybe.of(20000), Maybe.<Integer>absent()),
+                "Failed");
+    }
+
+    @Test
+    public void testParsesUltraSsdEnabled() {
+        assertTrue(AzureArmManagedDisks.parseUltraSsdEnabled(
+                "{\"name\":\"myvm\",\"properties\":{\"additionalCapabilities\":{\"ultraSSDEnabled\":true}}}"));
+        assertFalse(AzureArmManagedDisks.parseUltraSsdEnabled(
+                "{\"name\":\"myvm\",\"properties\":{\"additionalCapabilities\":{\"ultraSSDEnabled\":false}}}"));
+        assertFalse(AzureArmManagedDisks.parseUltraSsdEnabled("{\"name\":\"myvm\",\"properties\":{}}"));
+    }
+}
@@ -0,0 +1,61 @@
+package brooklyn.location.blockstore.azure.arm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import org.jclouds.azurecompute.arm.domain.DataDisk;
+import org.testng.annotations.Test;
+
+import brooklyn.location.blockstore.BlockDeviceOptions;
+
+public class AzureArmVolumeManagerTest {
+
+    @Test
+    public void testParsesQualifiedMachineId() {
+        assertEquals(AzureArmVolumeManager.getResourceGroupNameFromId("jclouds-westeurope/myvm").get(), "jclouds-westeurope");
+        assertEquals(AzureArmVolumeManager.getUnqualifiedMachineId("jclouds-westeurope/myvm"), "myvm");
+    }
+
+    @Test
+    public void testParsesUnqualifiedMachineId() {
+        assertFalse(AzureArmVolumeManager.getResourceGroupNameFromId("myvm").isPresent());
+        assertEquals(AzureArmVolumeManager.getUnqualifiedMachineId("myvm"), "myvm");
+    }
+
+    @Test
+    public void testMapsVolumeTypeAliasesToSkus() {
+        assertEquals(AzureArmVolumeManager.getStorageAccountType("Premium_LRS"), "Premium_LRS");
+        assertEquals(AzureArmVolumeManager.getStorageAccountType("premium"), "Premium_LRS");
+        assertEquals(AzureArmVolumeManager.getStorageAccountType("standard-ssd"), "StandardSSD_LRS");
+        assertEquals(AzureArmVolumeManager.getStorageAccountType("PremiumV2"), "PremiumV2_LRS");
+        assertEquals(AzureArmVolumeManager.getStorageAccountType("ultra"), "UltraSSD_LRS");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsUnknownVolumeType() {
+        AzureArmVolumeManager.getStorageAccountType("gp3");
+    }
+
+    @Test
+    public void testParsesHostCaching() {
+        assertEquals(AzureArmVolumeManager.getCaching("Premium_LRS", new BlockDeviceOptions().hostCaching("ReadOnly")).get(),
+                DataDisk.CachingTypes.READ_ONLY);
+        assertFalse(AzureArmVolumeManager.getCaching("Premium_LRS", new BlockDeviceOptions()).isPresent());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsHostCachingOnUltraDisks() {
+        AzureArmVolumeManager.getCaching("UltraSSD_LRS", new BlockDeviceOptions().hostCaching("ReadWrite"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsIopsOnSizedSkus() {
+        AzureArmVolumeManager.getCaching("Premium_LRS", new BlockDeviceOptions().iops(5000));
+    }
+
+    @Test
+    public void testAcceptsIopsOnProvisionedSkus() {
+        assertFalse(AzureArmVolumeManager.getCaching("PremiumV2_LRS", new BlockDeviceOptions().iops(5000).throughputMiBps(200)).isPresent());
+        assertFalse(AzureArmVolumeManager.getCaching("UltraSSD_LRS", new BlockDeviceOptions().iops(20000)).isPresent());
+    }
+}
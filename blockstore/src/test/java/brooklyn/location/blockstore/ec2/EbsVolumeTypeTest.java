@@ -0,0 +1,99 @@
+package brooklyn.location.blockstore.ec2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import brooklyn.location.blockstore.BlockDeviceOptions;
+
+public class EbsVolumeTypeTest {
+
+    @Test
+    public void testThroughputCarriedThroughFromMapAndCopy() throws Exception {
+        BlockDeviceOptions options = BlockDeviceOptions.fromMap(ImmutableMap.of(
+                "sizeInGb", 500, "volumeType", "gp3", "throughputMiBps", "500"));
+
+        assertEquals(options.getThroughputMiBps().get(), Integer.valueOf(500));
+        assertEquals(BlockDeviceOptions.copy(options).getThroughputMiBps().get(), Integer.valueOf(500));
+    }
+
+    @Test
+    public void testNoPerformanceTargetLeavesTypeToCloud() throws Exception {
+        BlockDeviceOptions resolved = EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(100));
+
+        assertFalse(resolved.getVolumeType().isPresent());
+        assertFalse(resolved.getIops().isPresent());
+    }
+
+    @Test
+    public void testThroughputTargetChoosesGp3WithEnoughIops() throws Exception {
+        BlockDeviceOptions resolved = EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(500).throughputMiBps(1000));
+
+        assertEquals(resolved.getVolumeType().get(), "gp3");
+        assertEquals(resolved.getIops().get(), Integer.valueOf(4000));
+        assertEquals(resolved.getThroughputMiBps().get(), Integer.valueOf(1000));
+    }
+
+    @Test
+    public void testModestThroughputOnGp3KeepsBaselineIops() throws Exception {
+        BlockDeviceOptions resolved = EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(100).volumeType("gp3").throughputMiBps(250));
+
+        assertFalse(resolved.getIops().isPresent());
+    }
+
+    @Test
+    public void testHighIopsTargetChoosesIo2() throws Exception {
+        BlockDeviceOptions resolved = EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(100).iops(40000));
+
+        assertEquals(resolved.getVolumeType().get(), "io2");
+        assertEquals(resolved.getIops().get(), Integer.valueOf(40000));
+    }
+
+    @Test
+    public void testUnknownTypeIsNotChecked() throws Exception {
+        BlockDeviceOptions resolved = EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(100).volumeType("gp4").iops(1));
+
+        assertEquals(resolved.getIops().get(), Integer.valueOf(1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsThroughputAboveGp3RatioForExplicitIops() throws Exception {
+        EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(500).volumeType("gp3").iops(3000).throughputMiBps(1000));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsThroughputAboveGp3RatioForExplicitIopsAboveBaseline() throws Exception {
+        // 1000 MiB/s needs 4000 iops; explicit iops are not raised to carry it
+        EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(500).volumeType("gp3").iops(3500).throughputMiBps(1000));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsThroughputAboveGp3RatioForExplicitIopsBelowBaseline() throws Exception {
+        EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(500).volumeType("gp3").iops(1000).throughputMiBps(1000));
+    }
+
+    @Test
+    public void testRaisesExplicitGp3IopsToBaseline() throws Exception {
+        BlockDeviceOptions resolved = EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(100).volumeType("gp3").iops(1000).throughputMiBps(250));
+
+        assertEquals(resolved.getIops().get(), Integer.valueOf(3000));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsThroughputOnIo2() throws Exception {
+        EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(100).volumeType("io2").iops(10000).throughputMiBps(500));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsIo1IopsAboveRatio() throws Exception {
+        EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(100).volumeType("io1").iops(10000));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsIopsOnGp2() throws Exception {
+        EbsVolumeType.resolve(new BlockDeviceOptions().sizeInGb(100).volumeType("gp2").iops(1000));
+    }
+}
@@ -0,0 +1,92 @@
+package brooklyn.location.blockstore.ec2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.net.URI;
+
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import brooklyn.location.blockstore.PerformanceOptions;
+import brooklyn.location.blockstore.api.ModificationState;
+
+public class Ec2VolumeModificationsTest {
+
+    private static final URI ENDPOINT = URI.create("https://ec2.us-east-1.amazonaws.com");
+
+    @Test
+    public void testBuildsModifyVolumeRequest() {
+        HttpRequest request = Ec2VolumeModifications.modifyVolumeRequest(ENDPOINT, "vol-1234", ImmutableMap.of("Size", "200"),
+                ImmutableList.<HttpRequestFilter>of());
+
+        assertEquals(request.getMethod(), "POST");
+        assertEquals(request.getEndpoint(), URI.create("https://ec2.us-east-1.amazonaws.com/"));
+        assertEquals(request.getFirstHeaderOrNull("Host"), "ec2.us-east-1.amazonaws.com");
+        assertEquals(request.getPayload().getContentMetadata().getContentType(), "application/x-www-form-urlencoded");
+        assertEquals(request.getPayload().getRawContent().toString(),
+                "Action=ModifyVolume&Version=" + Ec2VolumeModifications.API_VERSION + "&VolumeId=vol-1234&Size=200");
+    }
+
+    @Test
+    public void testBuildsDescribeVolumesModificationsRequest() {
+        HttpRequest request = Ec2VolumeModifications.describeVolumesModificationsRequest(ENDPOINT, "vol-1234",
+                ImmutableList.<HttpRequestFilter>of());
+
+        assertEquals(request.getMethod(), "POST");
+        assertEquals(request.getPayload().getRawContent().toString(),
+                "Action=DescribeVolumesModifications&Version=" + Ec2VolumeModifications.API_VERSION + "&VolumeId.1=vol-1234");
+    }
+
+    @Test
+    public void testParsesModificationState() {
+        assertEquals(Ec2VolumeModifications.parseModificationState(
+                "<ModifyVolumeResponse xmlns=\"http://ec2.amazonaws.com/doc/2016-11-15/\">"
+                + "<requestId>5jkdf074-37ed-4004-8671-a78ee82bf1cbEXAMPLE</requestId>"
+                + "<volumeModification>"
+                + "<targetIops>10000</targetIops><originalIops>300</originalIops>"
+                + "<modificationState>modifying</modificationState>"
+                + "<targetSize>200</targetSize><volumeId>vol-1234</volumeId>"
+                + "</volumeModification></ModifyVolumeResponse>"),
+                ModificationState.MODIFYING);
+        assertEquals(Ec2VolumeModifications.parseModificationState(
+                "<DescribeVolumesModificationsResponse><volumeModificationSet><item>"
+                + "<modificationState>optimizing</modificationState><progress>40</progress>"
+                + "</item></volumeModificationSet></DescribeVolumesModificationsResponse>"),
+                ModificationState.OPTIMIZING);
+    }
+
+    @Test
+    public void testParsesNoModification() {
+        assertNull(Ec2VolumeModifications.parseModificationState(
+                "<DescribeVolumesModificationsResponse><volumeModificationSet/></DescribeVolumesModificationsResponse>"));
+    }
+
+    @Test
+    public void testMapsPerformanceChangesToParameters() {
+        assertEquals(Ec2VolumeModifications.getPerformanceChanges("gp2", 300, 100,
+                new PerformanceOptions().volumeType("gp3").iops(6000).throughputMiBps(500)),
+                ImmutableMap.of("VolumeType", "gp3", "Iops", "6000", "Throughput", "500"));
+    }
+
+    @Test
+    public void testKeepsProvisionedIopsWhenChangingThroughput() {
+        // 6000 iops carry 1000 MiB/s, which gp3's baseline 3000 iops would not
+        assertEquals(Ec2VolumeModifications.getPerformanceChanges("gp3", 6000, 100, new PerformanceOptions().throughputMiBps(1000)),
+                ImmutableMap.of("Throughput", "1000"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsPerformanceBeyondTypeLimits() {
+        Ec2VolumeModifications.getPerformanceChanges("gp3", 3000, 100, new PerformanceOptions().iops(20000));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsIopsOnGp2() {
+        Ec2VolumeModifications.getPerformanceChanges("gp3", 3000, 100, new PerformanceOptions().volumeType("gp2").iops(3000));
+    }
+}
@@ -0,0 +1,251 @@
+package brooklyn.location.blockstore.ec2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.jclouds.ec2.domain.Volume;
+import org.jclouds.ec2.features.ElasticBlockStoreApi;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import brooklyn.location.blockstore.wait.WaitStrategies;
+import brooklyn.location.blockstore.wait.WaitStrategy;
+
+public class Ec2VolumeStatusPollerTest {
+
+    private static final String REGION = "us-east-1";
+
+    private ScheduledExecutorService scheduler;
+    private FakeEbs ebs;
+    private Ec2VolumeStatusPoller poller;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        ebs = new FakeEbs();
+        poller = new Ec2VolumeStatusPoller(REGION, ebs.api(), scheduler);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (poller != null) poller.close();
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testDescribesAllDueVolumesInOneCall() throws Exception {
+        ebs.availableAfter("vol-1", 2);
+        ebs.availableAfter("vol-2", 2);
+        ebs.availableAfter("vol-3", 2);
+
+        List<ListenableFuture<Volume>> futures = whilePaused(new Callable<List<ListenableFuture<Volume>>>() {
+            @Override
+            public List<ListenableFuture<Volume>> call() {
+                return ImmutableList.of(
+                        waitForAvailable("vol-1", fixed(10, 60000)),
+                        waitForAvailable("vol-2", fixed(10, 60000)),
+                        waitForAvailable("vol-3", fixed(10, 60000)));
+            }
+        });
+
+        for (ListenableFuture<Volume> future : futures) {
+            assertEquals(future.get(10, TimeUnit.SECONDS).getStatus(), Volume.Status.AVAILABLE);
+        }
+        assertEquals(ebs.calls, ImmutableList.of(
+                ImmutableSet.of("vol-1", "vol-2", "vol-3"),
+                ImmutableSet.of("vol-1", "vol-2", "vol-3")));
+        assertEquals(poller.getPendingCount(), 0);
+    }
+
+    @Test
+    public void testDescribesOnlyVolumesWhoseBackoffIsDue() throws Exception {
+        ebs.availableAfter("vol-fast", 3);
+        ebs.availableAfter("vol-slow", Integer.MAX_VALUE);
+
+        List<ListenableFuture<Volume>> futures = whilePaused(new Callable<List<ListenableFuture<Volume>>>() {
+            @Override
+            public List<ListenableFuture<Volume>> call() {
+                return ImmutableList.of(
+                        waitForAvailable("vol-fast", fixed(10, 60000)),
+                        waitForAvailable("vol-slow", fixed(60 * 60 * 1000, 2 * 60 * 60 * 1000)));
+            }
+        });
+
+        assertEquals(futures.get(0).get(10, TimeUnit.SECONDS).getStatus(), Volume.Status.AVAILABLE);
+        assertEquals(ebs.calls, ImmutableList.of(
+                ImmutableSet.of("vol-fast", "vol-slow"),
+                ImmutableSet.of("vol-fast"),
+                ImmutableSet.of("vol-fast")));
+        assertFalse(futures.get(1).isDone());
+        assertEquals(poller.getPendingCount(), 1);
+    }
+
+    @Test
+    public void testDescribesIndividuallyWhenBatchFails() throws Exception {
+        ebs.availableAfter("vol-1", 1);
+        ebs.missing.add("vol-gone");
+
+        List<ListenableFuture<Volume>> futures = whilePaused(new Callable<List<ListenableFuture<Volume>>>() {
+            @Override
+            public List<ListenableFuture<Volume>> call() {
+                return ImmutableList.of(
+                        waitForAvailable("vol-1", fixed(10, 60000)),
+                        waitForAvailable("vol-gone", fixed(60 * 60 * 1000, 2 * 60 * 60 * 1000)));
+            }
+        });
+
+        assertEquals(futures.get(0).get(10, TimeUnit.SECONDS).getStatus(), Volume.Status.AVAILABLE);
+        assertEquals(ebs.calls.get(0), ImmutableSet.of("vol-1", "vol-gone"));
+        assertTrue(ebs.calls.contains(ImmutableSet.of("vol-1")), "calls=" + ebs.calls);
+        assertTrue(ebs.calls.contains(ImmutableSet.of("vol-gone")), "calls=" + ebs.calls);
+        assertFalse(futures.get(1).isDone());
+    }
+
+    @Test
+    public void testCompletesWithLastVolumeOnTimeout() throws Exception {
+        ebs.availableAfter("vol-1", Integer.MAX_VALUE);
+
+        Volume result = waitForAvailable("vol-1", fixed(10, 50)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(result.getId(), "vol-1");
+        assertEquals(result.getStatus(), Volume.Status.CREATING);
+        assertEquals(poller.getPendingCount(), 0);
+    }
+
+    @Test
+    public void testCloseFailsPendingWaits() throws Exception {
+        ebs.availableAfter("vol-1", Integer.MAX_VALUE);
+        ListenableFuture<Volume> future = waitForAvailable("vol-1", fixed(60 * 60 * 1000, 2 * 60 * 60 * 1000));
+
+        poller.close();
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Asserts.shouldHaveFailedPreviously();
+        } catch (ExecutionException e) {
+            Asserts.expectedFailureContains(e.getCause(), "closed while waiting for volume vol-1");
+        }
+        try {
+            waitForAvailable("vol-2", fixed(10, 60000));
+            Asserts.shouldHaveFailedPreviously();
+        } catch (IllegalStateException e) {
+            Asserts.expectedFailureContains(e, "closed");
+        }
+    }
+
+    /**
+     * Holds up the scheduler while the waits are registered, so that their first polls fall in the same tick.
+     */
+    private <T> T whilePaused(Callable<T> registration) throws Exception {
+        final CountDownLatch paused = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        scheduler.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                paused.countDown();
+                resume.await();
+                return null;
+            }
+        });
+        assertTrue(paused.await(10, TimeUnit.SECONDS));
+        try {
+            return registration.call();
+        } finally {
+            resume.countDown();
+        }
+    }
+
+    private ListenableFuture<Volume> waitForAvailable(String volumeId, WaitStrategy strategy) {
+        return poller.waitFor("test.volume-available", volumeId, new Predicate<Volume>() {
+            @Override
+            public boolean apply(Volume volume) {
+                return volume.getStatus() == Volume.Status.AVAILABLE;
+            }
+        }, strategy);
+    }
+
+    private static WaitStrategy fixed(long delayMillis, long timeoutMillis) {
+        return WaitStrategies.fixed(Duration.millis(delayMillis), Duration.millis(timeoutMillis));
+    }
+
+    /**
+     * Describes volumes as creating until they have been described a given number of times, and fails any call
+     * that includes a missing volume, as EC2 does.
+     */
+    private static class FakeEbs {
+        private final List<Set<String>> calls = new CopyOnWriteArrayList<Set<String>>();
+        private final Set<String> missing = Sets.newConcurrentHashSet();
+        private final Map<String, Integer> describesUntilAvailable = Maps.newConcurrentMap();
+        private final Map<String, Integer> describes = Maps.newConcurrentMap();
+
+        void availableAfter(String volumeId, int describeCount) {
+            describesUntilAvailable.put(volumeId, describeCount);
+        }
+
+        ElasticBlockStoreApi api() {
+            return (ElasticBlockStoreApi) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {ElasticBlockStoreApi.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            switch (method.getName()) {
+                                case "describeVolumesInRegion": return describe((String[]) args[1]);
+                                case "toString": return "FakeEbs";
+                                default: throw new UnsupportedOperationException(method.getName());
+                            }
+                        }
+                    });
+        }
+
+        private Set<Volume> describe(String[] volumeIds) {
+            calls.add(ImmutableSet.copyOf(volumeIds));
+            ImmutableSet.Builder<Volume> result = ImmutableSet.builder();
+            for (String volumeId : volumeIds) {
+                if (missing.contains(volumeId)) {
+                    throw new IllegalStateException("InvalidVolume.NotFound: " + volumeId);
+                }
+            }
+            for (String volumeId : volumeIds) {
+                Integer previous = describes.get(volumeId);
+                int count = (previous == null) ? 1 : previous + 1;
+                describes.put(volumeId, count);
+                Volume.Status status = (count >= describesUntilAvailable.get(volumeId)) ? Volume.Status.AVAILABLE : Volume.Status.CREATING;
+                result.add(Volume.builder()
+                        .region(REGION)
+                        .id(volumeId)
+                        .size(10)
+                        .availabilityZone(REGION + "a")
+                        .status(status)
+                        .createTime(new Date())
+                        .build());
+            }
+            return result.build();
+        }
+    }
+}
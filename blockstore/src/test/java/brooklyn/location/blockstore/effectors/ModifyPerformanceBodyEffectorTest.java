@@ -0,0 +1,81 @@
+package brooklyn.location.blockstore.effectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.core.test.entity.TestApplication;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.apache.brooklyn.test.Asserts;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+import brooklyn.location.blockstore.PerformanceOptions;
+import brooklyn.location.blockstore.StubVolumeManager;
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.ModificationState;
+
+public class ModifyPerformanceBodyEffectorTest {
+
+    private LocalManagementContext mgmt;
+    private TestApplication app;
+    private JcloudsMachineLocation machine;
+    private StubVolumeManager manager;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        mgmt = LocalManagementContextForTests.newInstance();
+        app = mgmt.getEntityManager().createEntity(EntitySpec.create(TestApplication.class));
+        JcloudsLocation location = (JcloudsLocation) mgmt.getLocationRegistry().getLocationManaged("jclouds:aws-ec2:us-east-1a",
+                ImmutableMap.of("identity", "dummy", "credential", "dummy"));
+        machine = StubVolumeManager.newMachine(location, "us-east-1a");
+        manager = new StubVolumeManager();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    @Test
+    public void testModifiesDeviceFoundByManager() throws Exception {
+        PerformanceOptions options = new PerformanceOptions().iops(16000);
+
+        ModificationState result = ModifyPerformanceBodyEffector.modify(app, manager, machine, "vol-1", 'h', options);
+
+        AttachedBlockDevice found = Iterables.getOnlyElement(manager.found);
+        assertEquals(found.getId(), "vol-1");
+        assertEquals(found.getDeviceSuffix(), 'h');
+        assertSame(found.getMachine(), machine);
+        assertEquals(manager.modified, ImmutableMap.of("vol-1", options));
+        assertEquals(result, ModificationState.COMPLETED);
+        assertEquals(app.sensors().get(ModifyPerformanceBodyEffector.MODIFICATION_STATE),
+                ImmutableMap.of("vol-1", ModificationState.COMPLETED));
+    }
+
+    @Test
+    public void testTracksChangeInProgress() throws Exception {
+        manager.modificationState = ModificationState.OPTIMIZING;
+
+        ModificationState result = ModifyPerformanceBodyEffector.modify(app, manager, machine, "vol-1", 'h',
+                new PerformanceOptions().throughputMiBps(500));
+
+        assertEquals(result, ModificationState.OPTIMIZING);
+        // The stub reports the change as completed when asked
+        Asserts.succeedsEventually(new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(app.sensors().get(ModifyPerformanceBodyEffector.MODIFICATION_STATE),
+                        ImmutableMap.of("vol-1", ModificationState.COMPLETED));
+            }
+        });
+    }
+}
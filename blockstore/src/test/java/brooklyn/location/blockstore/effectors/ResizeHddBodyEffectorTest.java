@@ -0,0 +1,67 @@
+package brooklyn.location.blockstore.effectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+import brooklyn.location.blockstore.StubVolumeManager;
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.MountedBlockDevice;
+
+public class ResizeHddBodyEffectorTest {
+
+    private LocalManagementContext mgmt;
+    private JcloudsMachineLocation machine;
+    private StubVolumeManager manager;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        mgmt = LocalManagementContextForTests.newInstance();
+        JcloudsLocation location = (JcloudsLocation) mgmt.getLocationRegistry().getLocationManaged("jclouds:aws-ec2:us-east-1a",
+                ImmutableMap.of("identity", "dummy", "credential", "dummy"));
+        machine = StubVolumeManager.newMachine(location, "us-east-1a");
+        manager = new StubVolumeManager();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    @Test
+    public void testResizesDeviceFoundByManager() throws Exception {
+        MountedBlockDevice result = ResizeHddBodyEffector.resize(manager, machine, "vol-1", 'h', "/mount/brooklyn/h", 200);
+
+        AttachedBlockDevice found = Iterables.getOnlyElement(manager.found);
+        assertEquals(found.getId(), "vol-1");
+        assertEquals(found.getDeviceSuffix(), 'h');
+        assertSame(found.getMachine(), machine);
+        assertEquals(manager.resized, ImmutableMap.of("vol-1", 200));
+        assertSame(Iterables.getOnlyElement(manager.grown), result);
+        assertEquals(result.getDeviceName(), found.getDeviceName());
+        assertEquals(result.getMountPoint(), "/mount/brooklyn/h");
+    }
+
+    @Test
+    public void testOnlyGrowsFilesystemWithoutSize() throws Exception {
+        MountedBlockDevice result = ResizeHddBodyEffector.resize(manager, machine, "vol-1", 'h', "/mount/brooklyn/h", null);
+
+        assertEquals(manager.found.size(), 1);
+        assertTrue(manager.resized.isEmpty(), "resized=" + manager.resized);
+        assertEquals(manager.grown, ImmutableList.of(result));
+        assertEquals(result.getMountPoint(), "/mount/brooklyn/h");
+    }
+}
@@ -0,0 +1,101 @@
+package brooklyn.location.blockstore.gce;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.jclouds.compute.domain.TemplateBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import brooklyn.location.blockstore.BlockDeviceOptions;
+import brooklyn.location.blockstore.NewVolumeCustomizer;
+import brooklyn.location.blockstore.StubVolumeManager;
+import brooklyn.location.blockstore.api.VolumeManager;
+import brooklyn.location.blockstore.api.VolumeOptions;
+
+public class GoogleComputeEngineVolumeCustomizerTest {
+
+    private LocalManagementContext mgmt;
+    private JcloudsLocation location;
+    private StubVolumeManager manager;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        mgmt = LocalManagementContextForTests.newInstance();
+        location = (JcloudsLocation) mgmt.getLocationRegistry().getLocationManaged("jclouds:google-compute-engine:europe-west1-b",
+                ImmutableMap.of("identity", "dummy", "credential", "dummy"));
+        manager = new StubVolumeManager();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    @Test
+    public void testNewVolumesAreCreatedEarlyAndDeletedWithTheVm() throws Exception {
+        NewVolumeCustomizer customizer = (NewVolumeCustomizer) GoogleComputeEngineVolumeCustomizer.withNewVolume(ImmutableList.of(10, 20));
+
+        assertEquals(customizer.getConfig(NewVolumeCustomizer.CREATE_EARLY), Boolean.TRUE);
+        assertEquals(customizer.getConfig(NewVolumeCustomizer.PARALLELISM), Integer.valueOf(2));
+        List<Character> suffixes = Lists.newArrayList();
+        List<Integer> sizes = Lists.newArrayList();
+        for (VolumeOptions volume : customizer.getVolumes()) {
+            BlockDeviceOptions options = volume.getBlockDeviceOptions();
+            suffixes.add(options.getDeviceSuffix());
+            sizes.add(options.getSizeInGb());
+            assertTrue(options.deleteOnTermination(), "options=" + options);
+            assertEquals(volume.getFilesystemOptions().getMountPoint(), "/mount/brooklyn/" + options.getDeviceSuffix());
+        }
+        assertEquals(suffixes, ImmutableList.of('f', 'g'));
+        assertEquals(sizes, ImmutableList.of(10, 20));
+    }
+
+    @Test
+    public void testCreatesNewVolumesWhileTheVmBoots() throws Exception {
+        NewVolumeCustomizer gce = (NewVolumeCustomizer) GoogleComputeEngineVolumeCustomizer.withNewVolume(ImmutableList.of(10, 20));
+        NewVolumeCustomizer customizer = newCustomizer(gce.getVolumes());
+        customizer.setCreateEarly(gce.getConfig(NewVolumeCustomizer.CREATE_EARLY));
+        customizer.setParallelism(gce.getConfig(NewVolumeCustomizer.PARALLELISM));
+
+        customizer.customize(location, null, (TemplateBuilder) null);
+        JcloudsMachineLocation machine = StubVolumeManager.newMachine(location, "europe-west1-b");
+        customizer.customize(location, null, machine);
+
+        assertEquals(manager.created.size(), 2);
+        for (BlockDeviceOptions created : manager.created) {
+            assertEquals(created.getZone(), "europe-west1-b");
+            assertTrue(created.deleteOnTermination(), "created=" + created);
+        }
+        assertEquals(ImmutableSet.copyOf(manager.suffixes.values()), ImmutableSet.of('f', 'g'));
+        assertEquals(ImmutableSet.copyOf(manager.mounted), ImmutableSet.of("vol-1", "vol-2"));
+        assertTrue(manager.deleted.isEmpty(), "deleted=" + manager.deleted);
+    }
+
+    private NewVolumeCustomizer newCustomizer(List<VolumeOptions> volumes) {
+        return new NewVolumeCustomizer(volumes) {
+            @Override
+            protected VolumeManager getVolumeManager(JcloudsLocation location) {
+                return manager;
+            }
+
+            @Override
+            protected VolumeManager getVolumeManager(JcloudsMachineLocation machine) {
+                return manager;
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package brooklyn.location.blockstore.gce;
+
+import static org.testng.Assert.assertEquals;
+
+import java.net.URI;
+
+import org.apache.brooklyn.test.Asserts;
+import org.jclouds.googlecomputeengine.domain.Operation;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import brooklyn.location.blockstore.PerformanceOptions;
+
+public class GoogleComputeEngineVolumeManagerTest {
+
+    @Test
+    public void testDetachesByDeviceNameFromGuestPath() {
+        assertEquals(GoogleComputeEngineVolumeManager.getGceDeviceName("/dev/disk/by-id/google-h"), "h");
+        assertEquals(GoogleComputeEngineVolumeManager.getGceDeviceName("/dev/disk/by-id/google-persistent-disk-1"), "persistent-disk-1");
+    }
+
+    @Test
+    public void testFallsBackToSuffixForOtherPaths() {
+        assertEquals(GoogleComputeEngineVolumeManager.getGceDeviceName("/dev/sdh"), "h");
+    }
+
+    @Test
+    public void testBuildsResizeRequest() {
+        URI disk = URI.create("https://www.googleapis.com/compute/v1/projects/myproject/zones/europe-west1-b/disks/mydisk");
+
+        HttpRequest request = GoogleComputeEngineVolumeManager.resizeRequest(disk, 200, ImmutableList.<HttpRequestFilter>of());
+
+        assertEquals(request.getMethod(), "POST");
+        assertEquals(request.getEndpoint(), URI.create(disk + "/resize"));
+        assertEquals(request.getPayload().getContentMetadata().getContentType(), "application/json");
+        assertEquals(request.getPayload().getRawContent().toString(), "{\"sizeGb\":\"200\"}");
+    }
+
+    @Test
+    public void testBuildsUpdatePerformanceRequest() {
+        URI disk = URI.create("https://www.googleapis.com/compute/v1/projects/myproject/zones/europe-west1-b/disks/mydisk");
+
+        HttpRequest request = GoogleComputeEngineVolumeManager.updatePerformanceRequest(disk,
+                new PerformanceOptions().iops(20000).throughputMiBps(600), ImmutableList.<HttpRequestFilter>of());
+
+        assertEquals(request.getMethod(), "PATCH");
+        assertEquals(request.getEndpoint(), URI.create(disk
+                + "?paths=provisionedIops&paths=provisionedThroughput&updateMask=provisionedIops,provisionedThroughput"));
+        assertEquals(request.getPayload().getContentMetadata().getContentType(), "application/json");
+        assertEquals(request.getPayload().getRawContent().toString(),
+                "{\"provisionedIops\":\"20000\",\"provisionedThroughput\":\"600\"}");
+    }
+
+    @Test
+    public void testFailsDoneOperationWithErrors() {
+        Operation.Error error = Operation.Error.create(ImmutableList.of(
+                Operation.Error.Entry.create("QUOTA_EXCEEDED", null, "Quota 'SSD_TOTAL_GB' exceeded")));
+        try {
+            GoogleComputeEngineVolumeManager.checkOperationSucceeded(operation(Operation.Status.DONE, error));
+            Asserts.shouldHaveFailedPreviously();
+        } catch (IllegalStateException e) {
+            Asserts.expectedFailureContains(e, "QUOTA_EXCEEDED: Quota 'SSD_TOTAL_GB' exceeded");
+        }
+    }
+
+    @Test
+    public void testAcceptsDoneOperationWithoutErrors() {
+        GoogleComputeEngineVolumeManager.checkOperationSucceeded(operation(Operation.Status.DONE, null));
+    }
+
+    private static Operation operation(Operation.Status status, Operation.Error error) {
+        URI zone = URI.create("https://www.googleapis.com/compute/v1/projects/myproject/zones/europe-west1-b");
+        return Operation.create("1", null, URI.create(zone + "/operations/operation-1"), "operation-1", null,
+                URI.create(zone + "/disks/mydisk"), "2", null, status, null, "me", 100, null, null, null, null, null,
+                "insert", error, null, null, zone);
+    }
+}
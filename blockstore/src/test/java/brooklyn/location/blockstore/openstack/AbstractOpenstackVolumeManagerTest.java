@@ -0,0 +1,74 @@
+package brooklyn.location.blockstore.openstack;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.openstack.keystone.v2_0.domain.Endpoint;
+import org.jclouds.openstack.keystone.v2_0.domain.Service;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class AbstractOpenstackVolumeManagerTest {
+
+    private static final URI V1_ENDPOINT = URI.create("https://cloud.example.com:8776/v1/project");
+    private static final URI V3_ENDPOINT = URI.create("https://cloud.example.com:8776/v3/project");
+
+    @Test
+    public void testFindsVolumeV3EndpointInRegion() throws Exception {
+        Iterable<Service> catalog = ImmutableList.of(
+                service("volume", endpoint("RegionOne", V1_ENDPOINT)),
+                service("volumev3", endpoint("RegionTwo", URI.create("https://other.example.com/v3/project")),
+                        endpoint("RegionOne", V3_ENDPOINT)));
+
+        assertEquals(AbstractOpenstackVolumeManager.findEndpoint(catalog, "volumev3", "RegionOne"), Optional.of(V3_ENDPOINT));
+    }
+
+    @Test
+    public void testFindsNoEndpointWithoutVolumeV3Service() throws Exception {
+        Iterable<Service> catalog = ImmutableList.of(service("volume", endpoint("RegionOne", V1_ENDPOINT)));
+
+        assertFalse(AbstractOpenstackVolumeManager.findEndpoint(catalog, "volumev3", "RegionOne").isPresent());
+    }
+
+    @Test
+    public void testExtendRequestGoesToEndpointWithMicroversion() throws Exception {
+        HttpRequest request = AbstractOpenstackVolumeManager.extendRequest(V3_ENDPOINT, "vol-1", 200,
+                ImmutableList.<HttpRequestFilter>of());
+
+        assertEquals(request.getEndpoint(), URI.create(V3_ENDPOINT + "/volumes/vol-1/action"));
+        assertEquals(request.getFirstHeaderOrNull("OpenStack-API-Version"), "volume 3.42");
+    }
+
+    @Test
+    public void testRecognizesRejectionOfVolumeInUse() throws Exception {
+        String content = "{\"badRequest\": {\"message\": \"Invalid volume: Volume status must be available to extend.\", \"code\": 400}}";
+
+        assertTrue(AbstractOpenstackVolumeManager.isRejectedWhileInUse(new IllegalStateException(httpException(400, content))));
+        assertTrue(AbstractOpenstackVolumeManager.isRejectedWhileInUse(httpException(406, "Version 3.42 is not supported by the API.")));
+        assertFalse(AbstractOpenstackVolumeManager.isRejectedWhileInUse(httpException(400, "Invalid input for field/attribute new_size.")));
+        assertFalse(AbstractOpenstackVolumeManager.isRejectedWhileInUse(new IllegalStateException("must be available")));
+    }
+
+    private static Service service(String type, Endpoint... endpoints) {
+        return Service.builder().type(type).name(type).endpoints(ImmutableSet.copyOf(endpoints)).build();
+    }
+
+    private static Endpoint endpoint(String region, URI publicUrl) {
+        return Endpoint.builder().region(region).publicURL(publicUrl).tenantId("project").build();
+    }
+
+    private static HttpResponseException httpException(int status, String content) {
+        HttpResponse response = HttpResponse.builder().statusCode(status).message("Error").build();
+        return new HttpResponseException("request failed", null, response, content);
+    }
+}
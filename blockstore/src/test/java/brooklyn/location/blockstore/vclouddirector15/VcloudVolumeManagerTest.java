@@ -0,0 +1,217 @@
+package brooklyn.location.blockstore.vclouddirector15;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.location.jclouds.JcloudsMachineLocation;
+import org.jclouds.vcloud.director.v1_5.VCloudDirectorApi;
+import org.jclouds.vcloud.director.v1_5.domain.RasdItemsList;
+import org.jclouds.vcloud.director.v1_5.domain.Task;
+import org.jclouds.vcloud.director.v1_5.domain.dmtf.RasdItem;
+import org.jclouds.vcloud.director.v1_5.domain.dmtf.cim.CimString;
+import org.jclouds.vcloud.director.v1_5.features.TaskApi;
+import org.jclouds.vcloud.director.v1_5.features.VmApi;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import brooklyn.location.blockstore.BlockDeviceOptions;
+import brooklyn.location.blockstore.StubVolumeManager;
+import brooklyn.location.blockstore.api.AttachedBlockDevice;
+import brooklyn.location.blockstore.api.VolumeOptions;
+
+public class VcloudVolumeManagerTest {
+
+    private LocalManagementContext mgmt;
+    private JcloudsMachineLocation machine;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        mgmt = LocalManagementContextForTests.newInstance();
+        JcloudsLocation location = (JcloudsLocation) mgmt.getLocationRegistry().getLocationManaged(
+                "jclouds:vcloud-director:https://vcd.example.com/api", ImmutableMap.of("identity", "dummy", "credential", "dummy"));
+        machine = StubVolumeManager.newMachine(location, "vdc");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    @Test
+    public void testDefaultsToLsiLogicSas() {
+        assertEquals(VcloudVolumeManager.getScsiController(new BlockDeviceOptions()), "lsilogicsas");
+    }
+
+    @Test
+    public void testAcceptsParavirtualAliases() {
+        assertEquals(VcloudVolumeManager.getScsiController(new BlockDeviceOptions().scsiController("PVSCSI").scsiControllers(4)), "paravirtual");
+        assertEquals(VcloudVolumeManager.getScsiController(new BlockDeviceOptions().scsiController("VirtualSCSI")), "paravirtual");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsMoreThanFourControllers() {
+        VcloudVolumeManager.getScsiController(new BlockDeviceOptions().scsiController("paravirtual").scsiControllers(5));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsSeveralLsiLogicSasControllers() {
+        VcloudVolumeManager.getScsiController(new BlockDeviceOptions().scsiControllers(2));
+    }
+
+    @Test
+    public void testUsesStorageProfileHrefAsGiven() {
+        String href = "https://vcd.example.com/api/vdcStorageProfile/1234";
+        assertEquals(VcloudVolumeManager.getStorageProfileHref(null, new BlockDeviceOptions().storageProfile(href)).get(), href);
+        assertFalse(VcloudVolumeManager.getStorageProfileHref(null, new BlockDeviceOptions()).isPresent());
+    }
+
+    @Test
+    public void testResolvesGuestPathsOfDisksSpreadOverControllers() {
+        RasdItemsList items = RasdItemsList.builder().items(Sets.<RasdItem>newLinkedHashSet()).build();
+        // The boot disk, at unit 0 of an LSI Logic SAS controller on bus 0
+        items.add(RasdItem.builder().instanceID("2").address("0").resourceType(RasdItem.ResourceType.PARALLEL_SCSI_HBA)
+                .resourceSubType("lsilogicsas").build());
+        items.add(RasdItem.builder().instanceID("2000").parent("2").addressOnParent("0")
+                .resourceType(RasdItem.ResourceType.DISK_DRIVE).build());
+
+        List<String> controllers = ParavirtualScsiDisks.ensureControllers(items, 2);
+        assertEquals(controllers.size(), 2);
+        List<String> paths = Lists.newArrayList();
+        for (int i = 0; i < 4; i++) {
+            RasdItem disk = ParavirtualScsiDisks.addDisk(items, controllers, 10, Optional.<String>absent());
+            paths.add(ParavirtualScsiDisks.getGuestPath(items, disk));
+        }
+
+        // Disks alternate between the controllers on buses 1 and 2 (the first and second vmw_pvscsi hosts),
+        // so their /dev/sd names would not follow this order
+        assertEquals(paths, ImmutableList.of(
+                "scsi-target:vmw_pvscsi:0:0",
+                "scsi-target:vmw_pvscsi:1:0",
+                "scsi-target:vmw_pvscsi:0:1",
+                "scsi-target:vmw_pvscsi:1:1"));
+    }
+
+    @Test
+    public void testAddsSeveralDisksInOneReconfiguration() throws Exception {
+        RasdItemsList items = RasdItemsList.builder().items(Sets.<RasdItem>newLinkedHashSet()).build();
+        items.add(RasdItem.builder().instanceID("2").address("0").resourceType(RasdItem.ResourceType.PARALLEL_SCSI_HBA)
+                .resourceSubType("lsilogicsas").build());
+        items.add(RasdItem.builder().instanceID("2000").parent("2").addressOnParent("0").elementName("Hard disk 1")
+                .resourceType(RasdItem.ResourceType.DISK_DRIVE).hostResources(ImmutableList.of(new CimString(""))).build());
+        StubVmApi vmApi = new StubVmApi(items);
+        VcloudVolumeManager manager = new StubVcloudVolumeManager(vmApi);
+
+        List<AttachedBlockDevice> devices = manager.createAndAttachBlockDevices(machine, ImmutableList.of(
+                new VolumeOptions(new BlockDeviceOptions().sizeInGb(10).deviceSuffix('b'), null),
+                new VolumeOptions(new BlockDeviceOptions().sizeInGb(20).deviceSuffix('c'), null),
+                new VolumeOptions(new BlockDeviceOptions().sizeInGb(30).deviceSuffix('d'), null)));
+
+        assertEquals(vmApi.edits.get(), 1);
+        List<String> addresses = Lists.newArrayList();
+        Set<String> ids = Sets.newLinkedHashSet();
+        for (RasdItem disk : vmApi.items) {
+            if (RasdItem.ResourceType.DISK_DRIVE.equals(disk.getResourceType()) && !"2000".equals(disk.getInstanceID())) {
+                addresses.add(disk.getAddressOnParent());
+                ids.add(disk.getInstanceID());
+            }
+        }
+        assertEquals(addresses, ImmutableList.of("1", "2", "3"));
+        List<String> deviceIds = Lists.newArrayList();
+        List<String> deviceNames = Lists.newArrayList();
+        for (AttachedBlockDevice device : devices) {
+            deviceIds.add(device.getId());
+            deviceNames.add(device.getDeviceName());
+        }
+        assertEquals(deviceIds, ImmutableList.copyOf(ids));
+        assertEquals(deviceNames, ImmutableList.of("/dev/sdb", "/dev/sdc", "/dev/sdd"));
+        // One read to add the disks to, and one to confirm that they all appeared
+        assertEquals(vmApi.reads.get(), 2);
+    }
+
+    private static class StubVcloudVolumeManager extends VcloudVolumeManager {
+        private final VCloudDirectorApi api;
+
+        StubVcloudVolumeManager(final StubVmApi vmApi) {
+            final TaskApi taskApi = newProxy(TaskApi.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (Task.class.equals(method.getReturnType())) return StubVmApi.task(Task.Status.SUCCESS);
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+            api = newProxy(VCloudDirectorApi.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                        case "getVmApi": return vmApi.proxy;
+                        case "getTaskApi": return taskApi;
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+            });
+        }
+
+        @Override
+        protected VCloudDirectorApi getApi(JcloudsLocation location) {
+            return api;
+        }
+    }
+
+    /**
+     * A VM's disks, which each edit replaces, counting the reads and edits of them.
+     */
+    private static class StubVmApi {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger edits = new AtomicInteger();
+        final VmApi proxy;
+        volatile Set<RasdItem> items;
+
+        StubVmApi(Iterable<RasdItem> items) {
+            this.items = Sets.newLinkedHashSet(items);
+            proxy = newProxy(VmApi.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                        case "getVirtualHardwareSectionDisks":
+                            reads.incrementAndGet();
+                            return RasdItemsList.builder().items(Sets.newLinkedHashSet(StubVmApi.this.items)).build();
+                        case "editVirtualHardwareSectionDisks":
+                            edits.incrementAndGet();
+                            StubVmApi.this.items = Sets.newLinkedHashSet((RasdItemsList) args[1]);
+                            return task(Task.Status.RUNNING);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+            });
+        }
+
+        static Task task(Task.Status status) {
+            return Task.builder().id("task-1").name("task").href(URI.create("https://vcd.example.com/api/task/1"))
+                    .status(status).build();
+        }
+    }
+
+    private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(VcloudVolumeManagerTest.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+}
@@ -0,0 +1,81 @@
+package brooklyn.location.blockstore.wait;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicates;
+
+public class BackoffWaitStrategyTest {
+
+    @Test
+    public void testDelayGrowsUpToMax() throws Exception {
+        WaitStrategy strategy = WaitStrategies.backoff(Duration.millis(100), 2, Duration.millis(500), 0, Duration.ONE_MINUTE);
+
+        assertEquals(strategy.getDelay(1), Duration.millis(100));
+        assertEquals(strategy.getDelay(2), Duration.millis(200));
+        assertEquals(strategy.getDelay(3), Duration.millis(400));
+        assertEquals(strategy.getDelay(4), Duration.millis(500));
+        assertEquals(strategy.getDelay(100), Duration.millis(500));
+    }
+
+    @Test
+    public void testJitterStaysWithinBounds() throws Exception {
+        WaitStrategy strategy = new BackoffWaitStrategy(Duration.millis(1000), 1, Duration.millis(1000), 0.2, Duration.ONE_MINUTE, new Random(0));
+
+        for (int i = 0; i < 100; i++) {
+            long delay = strategy.getDelay(1).toMilliseconds();
+            assertTrue(delay >= 800 && delay <= 1200, "delay=" + delay);
+        }
+    }
+
+    @Test
+    public void testFixedHasNoJitter() throws Exception {
+        WaitStrategy strategy = WaitStrategies.fixed(Duration.millis(250), Duration.ONE_MINUTE);
+
+        assertEquals(strategy.getDelay(1), Duration.millis(250));
+        assertEquals(strategy.getDelay(10), Duration.millis(250));
+        assertEquals(strategy.withTimeout(Duration.ONE_SECOND).getTimeout(), Duration.ONE_SECOND);
+    }
+
+    @Test
+    public void testWaitForRecordsTiming() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        WaitResult<Integer> result = Waits.waitFor("test.succeeds", "counting", WaitStrategies.fixed(Duration.ONE_MILLISECOND, Duration.ONE_MINUTE),
+                new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return calls.incrementAndGet();
+                    }
+                },
+                Predicates.equalTo(3));
+
+        assertTrue(result.isSuccess());
+        assertEquals(result.getLastValue(), Integer.valueOf(3));
+        assertEquals(result.getAttempts(), 3);
+        assertEquals(Waits.getTimings().get("test.succeeds").getCount(), 1);
+    }
+
+    @Test
+    public void testWaitForTimesOut() throws Exception {
+        WaitResult<Integer> result = Waits.waitFor("test.times-out", "never done", WaitStrategies.fixed(Duration.millis(10), Duration.millis(50)),
+                new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        throw new IllegalStateException("simulated failure");
+                    }
+                },
+                Predicates.<Integer>alwaysTrue());
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getLastError() instanceof IllegalStateException);
+        assertEquals(Waits.getTimings().get("test.times-out").getTimeouts(), 1);
+    }
+}